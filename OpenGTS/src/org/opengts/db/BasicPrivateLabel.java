@@ -374,6 +374,7 @@ public class BasicPrivateLabel
 
     /* ReportDisplay properties */
     public  static final String PROP_ReportDisplay_showGoogleKML            = "reportDisplay.showGoogleKML";        // true|false
+    public  static final String PROP_ReportDisplay_streamHTML               = "reportDisplay.streamHTML";           // true|false
 
     /* UserInfo properties */
     public  static final String PROP_UserInfo_allowDuplicateContactEmail    = "userInfo.allowDuplicateContactEmail";// true|false
@@ -1521,6 +1522,28 @@ public class BasicPrivateLabel
         }
     }
 
+    /**
+    *** Returns the SubdivisionProvider for this BasicPrivatelabel, as named by the
+    *** "SubdivisionProvider.name" property.
+    *** @return The SubdivisionProvider, or null if not defined
+    **/
+    public SubdivisionProvider getSubdivisionProvider()
+    {
+        String name = RTConfig.getString(DBConfig.PROP_SubdivisionProvider_name, null);
+        if (StringTools.isBlank(name)) {
+            return null;
+        }
+        ReverseGeocodeProvider rgp = this.getReverseGeocodeProvider(name);
+        if (rgp instanceof SubdivisionProvider) {
+            return rgp.isEnabled()? (SubdivisionProvider)rgp : null;
+        } else {
+            if (rgp != null) {
+                Print.logWarn("ReverseGeocodeProvider is not a SubdivisionProvider: " + name);
+            }
+            return null;
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     /**
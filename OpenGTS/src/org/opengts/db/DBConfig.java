@@ -566,6 +566,140 @@ public class DBConfig
     **/
     public static final String PROP_Device_EventDataInsertionListener   = "Device.EventDataInsertionListener";
 
+    /**
+    *** Runtime Configuration Property<br>
+    *** The interval at which the DeviceUpdateHub checks the Device table for events inserted
+    *** by other processes, while clients are waiting for updates (0 to disable).<br>
+    *** Type: Long
+    **/
+    public static final String PROP_DeviceUpdateHub_pollIntervalSec     = "DeviceUpdateHub.pollIntervalSec";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** The maximum number of recent device updates retained by the DeviceUpdateHub per account.<br>
+    *** Type: Integer
+    **/
+    public static final String PROP_DeviceUpdateHub_maxUpdates          = "DeviceUpdateHub.maxUpdates";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** The maximum number of clients (servlet threads) which may concurrently wait for updates
+    *** in the DeviceUpdateHub.  Additional clients are told to fall back to periodic updates.<br>
+    *** Type: Integer
+    **/
+    public static final String PROP_DeviceUpdateHub_maxWaiters          = "DeviceUpdateHub.maxWaiters";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** Enable serving fleet-map last-event positions from the in-memory FleetSnapshotCache.<br>
+    *** Type: Boolean
+    **/
+    public static final String PROP_FleetSnapshotCache_enable           = "FleetSnapshotCache.enable";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** The maximum age of an account fleet snapshot before it is fully rebuilt (0 for no limit).<br>
+    *** Type: Long
+    **/
+    public static final String PROP_FleetSnapshotCache_maxAgeSec        = "FleetSnapshotCache.maxAgeSec";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** The minimum interval between checks for events inserted by other processes (0 to disable).<br>
+    *** Type: Long
+    **/
+    public static final String PROP_FleetSnapshotCache_syncIntervalSec  = "FleetSnapshotCache.syncIntervalSec";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** The time after which an account fleet snapshot which has not been requested is discarded (0 for never).<br>
+    *** Type: Long
+    **/
+    public static final String PROP_FleetSnapshotCache_maxIdleSec       = "FleetSnapshotCache.maxIdleSec";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** Enable server-side clustering of fleet-map devices (requires "FleetSnapshotCache.enable").<br>
+    *** Type: Boolean
+    **/
+    public static final String PROP_FleetSnapshotCache_clusters         = "FleetSnapshotCache.clusters";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** The minimum number of devices in a fleet map for which server-side clustering is applied.<br>
+    *** Type: Integer
+    **/
+    public static final String PROP_FleetSnapshotCache_clusterMinDevices = "FleetSnapshotCache.clusterMinDevices";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** The age (milliseconds) an inserted event must reach before it is returned by the
+    *** EventChangeFeed, to allow for concurrent insert transactions which have not yet 
+    *** committed, and for clock differences between inserting hosts.<br>
+    *** Type: Long
+    **/
+    public static final String PROP_EventChangeFeed_settleMillis        = "EventChangeFeed.settleMillis";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** Enable maintaining (at event insertion) and reading the EventDailyRollup table.<br>
+    *** Type: Boolean
+    **/
+    public static final String PROP_EventDailyRollup_enable             = "EventDailyRollup.enable";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** Verify the event counts of the EventDailyRollup records against the EventData
+    *** table (with "COUNT(*)") before they are used (default true).<br>
+    *** Type: Boolean
+    **/
+    public static final String PROP_EventDailyRollup_verifyCounts       = "EventDailyRollup.verifyCounts";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** Enable maintaining (at event insertion) and reading the TripSegment table.<br>
+    *** Type: Boolean
+    **/
+    public static final String PROP_TripSegment_enable                  = "TripSegment.enable";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** Trip delimiter used for the TripSegment table ("speed", "ignition", "engine",
+    *** "start", or "default").<br>
+    *** Type: String
+    **/
+    public static final String PROP_TripSegment_tripStartType           = "TripSegment.tripStartType";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** Minimum moving speed (km/h) for the TripSegment "speed" trip delimiter.<br>
+    *** Type: Double
+    **/
+    public static final String PROP_TripSegment_minimumSpeedKPH         = "TripSegment.minimumSpeedKPH";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** Minimum stopped time (seconds) for the TripSegment "speed" trip delimiter.<br>
+    *** Type: Long
+    **/
+    public static final String PROP_TripSegment_minimumStoppedTime      = "TripSegment.minimumStoppedTime";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** Stop a TripSegment "speed" trip on ignition-off.<br>
+    *** Type: Boolean
+    **/
+    public static final String PROP_TripSegment_stopOnIgnitionOff       = "TripSegment.stopOnIgnitionOff";
+
+    /**
+    *** Runtime Configuration Property<br>
+    *** Minimum interval (seconds) between updates of the "last event time" of the current
+    *** TripSegment, when no segment change occurs.  Reports only use the TripSegment table
+    *** when this time covers the last event in the report range.<br>
+    *** Type: Long
+    **/
+    public static final String PROP_TripSegment_lastEventInterval       = "TripSegment.lastEventInterval";
+
     // ----------------------
 
     /**
@@ -645,6 +779,14 @@ public class DBConfig
     **/
     public static final String PROP_EventData_minimumPostedSpeedLimit   = "EventData.minimumPostedSpeedLimit";
 
+    /**
+    *** Runtime Configuration Property<br>
+    *** True to select only the EventData columns required by a report/map/output format
+    *** (other columns are loaded when first accessed)<br>
+    *** Type: Boolean
+    **/
+    public static final String PROP_EventData_selectProjection          = "EventData.selectProjection";
+
     // ----------------------
 
     /**
@@ -784,6 +926,13 @@ public class DBConfig
     **/
     public static final String PROP_track_showUserAgent                 = "track.showUserAgent";
 
+    /**
+    *** Runtime Configuration Property<br>
+    *** True to compress ("gzip"/"deflate") text responses, when accepted by the client.<br>
+    *** Type: Boolean
+    **/
+    public static final String PROP_track_compressResponse              = "track.compressResponse";
+
     /**
     *** Runtime Configuration Property<br>
     *** The overriding directory, used to find the JavaScript code.<br>
@@ -891,6 +1040,16 @@ public class DBConfig
     **/
     public static final String PROP_SubdivisionProvider_class           = "SubdivisionProvider.class";
 
+    /**
+    *** Runtime Configuration Property<br>
+    *** The name of a ReverseGeocodeProvider, which must also implement SubdivisionProvider 
+    *** (ie. "subdivision"), used to set the EventData subdivision when the active 
+    *** ReverseGeocodeProvider does not return one.<br>
+    *** Used for Border-Crossing detection.<br>
+    *** Type: String
+    **/
+    public static final String PROP_SubdivisionProvider_name            = "SubdivisionProvider.name";
+
     // ----------------------
 
     /**
@@ -1023,6 +1182,7 @@ public class DBConfig
         new RTKey.Entry(PROP_EventData_allowInnoDBCountWithWhere    , true                          , "Allow 'count(*)' with WHERE"),
         new RTKey.Entry(PROP_EventData_keyedAccountDeviceTime       , false                         , "Create AltKey Account/Device/Timestamp"),
         new RTKey.Entry(PROP_EventData_keyedCreationTime            , false                         , "Keyed 'EventData.creationTime'"),
+        new RTKey.Entry(PROP_EventData_selectProjection             , true                          , "Select only required columns"),
         new RTKey.Entry(PROP_Geozone_alwaysActive                   , true                          , "Geozones Always Active"),
         new RTKey.Entry(PROP_Geozone_maximumVertices                , -1                            , "Maximum Number of Geozone Vertices"),
         new RTKey.Entry(PROP_Geozone_dftRadius_pointRadius          , 3000                          , "Default Point Radius"),
@@ -1037,12 +1197,14 @@ public class DBConfig
         new RTKey.Entry(PROP_FuelRegister_levelDecreaseThreshold    , 0.30                          , "FuelLevel 'decrease' threshold"),
         new RTKey.Entry(PROP_track_baseURI                          , null                          , "'Track' Base URI"),
         new RTKey.Entry(PROP_track_requireCookies                   , true                          , "'Track' Require Enabled Cookies"),
+        new RTKey.Entry(PROP_track_compressResponse                 , true                          , "'Track' Compress Responses"),
         new RTKey.Entry(PROP_track_js_directory                     , "./js"                        , "'Track' JavaScript Directory"),
         new RTKey.Entry(PROP_track_offlineFile                      , null                          , "'Track' Offline File"),
         new RTKey.Entry(PROP_track_enableService                    , false                         , "'Track' Enable 'Service'"),
         new RTKey.Entry(PROP_track_service_customCommandHandler     , null                          , "'Service' custom command handler"),
         new RTKey.Entry(PROP_track_service_authKey                  , ""/*"auth"*/                  , "'Service' Authorization obfuscation key"),
         new RTKey.Entry(PROP_SubdivisionProvider_class              , null                          , "SubdivisionProvider class"),
+        new RTKey.Entry(PROP_SubdivisionProvider_name               , null                          , "SubdivisionProvider ReverseGeocodeProvider name"),
         new RTKey.Entry(PROP_EventFunctionMapFactory_class          , null                          , "EventFunctionMapFactory subclass"),
         new RTKey.Entry(PROP_EventIdentifierMapFactory_class        , null                          , "EventIdentifierMapFactory subclass"),
         new RTKey.Entry(PROP_Transport_queryEnabled                 , false                         , "Enable DB Transport query"),
@@ -1319,6 +1481,8 @@ public class DBConfig
                 PACKAGE_TABLES_       + "DeviceList"   ,
                 PACKAGE_TABLES_       + "Driver"       ,
                 PACKAGE_TABLES_       + "EventData"    ,
+                PACKAGE_TABLES_       + "EventDailyRollup",
+                PACKAGE_TABLES_       + "TripSegment",
                 PACKAGE_TABLES_       + "Geozone"      ,
                 PACKAGE_TABLES_       + "Resource"     ,
                 PACKAGE_TABLES_       + "Role"         ,
@@ -0,0 +1,528 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Publishes device position updates to waiting (long-poll) clients.
+//  Updates are received from the EventData insertion path (for events inserted
+//  within this JVM), and optionally from a shared periodic check of the Device
+//  table "lastUpdateTime" (for events inserted by other processes, such as
+//  stand-alone DCS modules).  Each account maintains a bounded list of recent
+//  updates, identified by a monotonically increasing sequence number.
+//  Each waiting client holds a servlet thread, so the number of concurrent waiters
+//  is bounded ("DeviceUpdateHub.maxWaiters").  Clients over the limit receive a
+//  "busy" response and fall back to periodic updates.
+// ----------------------------------------------------------------------------
+package org.opengts.db;
+
+import java.util.*;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+import org.opengts.db.tables.*;
+
+public class DeviceUpdateHub
+    implements EventDataInsertionListener
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final long   DEFAULT_POLL_INTERVAL_SEC   = 15L;
+    public  static final int    DEFAULT_MAX_UPDATES         = 1000;
+    public  static final int    DEFAULT_MAX_WAITERS         = 50;
+
+    private static final long   POLL_CLOCK_SKEW_SEC         = 5L;
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** A single device position update
+    **/
+    public static class DeviceUpdate
+    {
+        private long    sequence    = 0L;
+        private String  accountID   = null;
+        private String  deviceID    = null;
+        private long    timestamp   = 0L;
+        private int     statusCode  = StatusCodes.STATUS_NONE;
+        private double  latitude    = 0.0;
+        private double  longitude   = 0.0;
+        private double  speedKPH    = 0.0;
+        private double  heading     = 0.0;
+        public DeviceUpdate(String acctID, String devID, long ts, int sc,
+            double lat, double lon, double kph, double hdg) {
+            this.accountID  = acctID;
+            this.deviceID   = devID;
+            this.timestamp  = ts;
+            this.statusCode = sc;
+            this.latitude   = lat;
+            this.longitude  = lon;
+            this.speedKPH   = kph;
+            this.heading    = hdg;
+        }
+        public DeviceUpdate(EventData ev) {
+            this(ev.getAccountID(), ev.getDeviceID(), ev.getTimestamp(), ev.getStatusCode(),
+                ev.getLatitude(), ev.getLongitude(), ev.getSpeedKPH(), ev.getHeading());
+        }
+        public long getSequence() {
+            return this.sequence;
+        }
+        public String getAccountID() {
+            return this.accountID;
+        }
+        public String getDeviceID() {
+            return this.deviceID;
+        }
+        public long getTimestamp() {
+            return this.timestamp;
+        }
+        public int getStatusCode() {
+            return this.statusCode;
+        }
+        public double getLatitude() {
+            return this.latitude;
+        }
+        public double getLongitude() {
+            return this.longitude;
+        }
+        public double getSpeedKPH() {
+            return this.speedKPH;
+        }
+        public double getHeading() {
+            return this.heading;
+        }
+        public JSON._Object toJsonObject() {
+            JSON._Object obj = new JSON._Object();
+            obj.addKeyValue("dev", this.getDeviceID());
+            obj.addKeyValue("ts" , this.getTimestamp());
+            obj.addKeyValue("sc" , this.getStatusCode());
+            obj.addKeyValue("lat", this.getLatitude());
+            obj.addKeyValue("lon", this.getLongitude());
+            obj.addKeyValue("kph", this.getSpeedKPH());
+            obj.addKeyValue("hdg", this.getHeading());
+            return obj;
+        }
+    }
+
+    /**
+    *** The result of a request for updates
+    **/
+    public static class Updates
+    {
+        private long                        sequence    = 0L;
+        private boolean                     reset       = false;
+        private boolean                     busy        = false;
+        private java.util.List<DeviceUpdate> updates    = null;
+        public Updates(long seq, boolean reset, java.util.List<DeviceUpdate> updates) {
+            this.sequence = seq;
+            this.reset    = reset;
+            this.updates  = (updates != null)? updates : new Vector<DeviceUpdate>();
+        }
+        /* true if the maximum number of waiting clients was reached (client should poll) */
+        public boolean isBusy() {
+            return this.busy;
+        }
+        /* the sequence number to pass on the next request */
+        public long getSequence() {
+            return this.sequence;
+        }
+        /* true if updates were missed and the client should reload all devices */
+        public boolean isReset() {
+            return this.reset;
+        }
+        /* the most recent update for each changed device */
+        public java.util.List<DeviceUpdate> getUpdates() {
+            return this.updates;
+        }
+        public boolean isEmpty() {
+            return !this.reset && this.updates.isEmpty();
+        }
+        public JSON._Object toJsonObject() {
+            JSON._Object obj = new JSON._Object();
+            obj.addKeyValue("seq"  , this.getSequence());
+            obj.addKeyValue("reset", this.isReset());
+            if (this.isBusy()) {
+                obj.addKeyValue("busy", true);
+            }
+            JSON._Array upd = new JSON._Array();
+            for (DeviceUpdate du : this.getUpdates()) {
+                upd.addValue(du.toJsonObject());
+            }
+            obj.addKeyValue("updates", upd);
+            return obj;
+        }
+    }
+
+    /**
+    *** Per-account update channel
+    **/
+    private static class AccountChannel
+    {
+        private String                      accountID   = null;
+        private long                        sequence    = 0L;
+        private LinkedList<DeviceUpdate>    updates     = new LinkedList<DeviceUpdate>();
+        private long                        pollTimeMS  = 0L;
+        private long                        pollUpdTS   = 0L;   // Device "lastUpdateTime" watermark
+        private Map<String,Long>            devEventTS  = new HashMap<String,Long>(); // last published event per device
+        private boolean                     polling     = false;
+        public AccountChannel(String acctID) {
+            this.accountID   = acctID;
+            this.pollTimeMS  = System.currentTimeMillis();
+            this.pollUpdTS   = DateTime.getCurrentTimeSec();
+        }
+        private boolean isPublished(String devID, long eventTS) {
+            // -- assumes synchronized
+            Long pubTS = this.devEventTS.get(devID);
+            return (pubTS != null) && (eventTS <= pubTS.longValue());
+        }
+        public String getAccountID() {
+            return this.accountID;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private static DeviceUpdateHub  hubInstance = null;
+
+    /**
+    *** Gets the DeviceUpdateHub singleton instance.  The instance is registered
+    *** as an EventDataInsertionListener when first requested.
+    **/
+    public static DeviceUpdateHub getInstance()
+    {
+        if (DeviceUpdateHub.hubInstance == null) {
+            synchronized (DeviceUpdateHub.class) {
+                if (DeviceUpdateHub.hubInstance == null) { // retest
+                    DeviceUpdateHub hub = new DeviceUpdateHub();
+                    Device.addEventDataInsertionListener(hub);
+                    Print.logDebug("Installed DeviceUpdateHub");
+                    DeviceUpdateHub.hubInstance = hub;
+                }
+            }
+        }
+        return DeviceUpdateHub.hubInstance;
+    }
+
+    /**
+    *** Returns true if the DeviceUpdateHub singleton instance has been created
+    **/
+    public static boolean isInstalled()
+    {
+        return (DeviceUpdateHub.hubInstance != null);
+    }
+
+    // ------------------------------------------------------------------------
+
+    private Map<String,AccountChannel>  channels        = new HashMap<String,AccountChannel>();
+    private long                        pollIntervalMS  = 0L;
+    private int                         maxUpdates      = DEFAULT_MAX_UPDATES;
+    private int                         maxWaiters      = DEFAULT_MAX_WAITERS;
+    private int                         waiterCount     = 0;
+
+    /**
+    *** Constructor
+    **/
+    private DeviceUpdateHub()
+    {
+        super();
+        this.pollIntervalMS = RTConfig.getLong(DBConfig.PROP_DeviceUpdateHub_pollIntervalSec, DEFAULT_POLL_INTERVAL_SEC) * 1000L;
+        this.maxUpdates     = RTConfig.getInt( DBConfig.PROP_DeviceUpdateHub_maxUpdates     , DEFAULT_MAX_UPDATES);
+        if (this.maxUpdates <= 0) { this.maxUpdates = DEFAULT_MAX_UPDATES; }
+        this.maxWaiters     = RTConfig.getInt( DBConfig.PROP_DeviceUpdateHub_maxWaiters     , DEFAULT_MAX_WAITERS);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the update channel for the specified account
+    **/
+    private AccountChannel _getChannel(String acctID)
+    {
+        synchronized (this.channels) {
+            AccountChannel ch = this.channels.get(acctID);
+            if (ch == null) {
+                ch = new AccountChannel(acctID);
+                this.channels.put(acctID, ch);
+            }
+            return ch;
+        }
+    }
+
+    /**
+    *** Gets the current update sequence number for the specified account
+    **/
+    public long getSequence(String acctID)
+    {
+        if (StringTools.isBlank(acctID)) {
+            return 0L;
+        }
+        AccountChannel ch = this._getChannel(acctID);
+        synchronized (ch) {
+            return ch.sequence;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** EventDataInsertionListener: EventData will be inserted (ignored)
+    **/
+    public void eventWillInsert(EventData evdb)
+    {
+        // -- ignore
+    }
+
+    /**
+    *** EventDataInsertionListener: EventData has been inserted
+    **/
+    public void eventDidInsert(EventData evdb)
+    {
+        if ((evdb != null) && evdb.isValidGeoPoint()) {
+            this.publish(new DeviceUpdate(evdb));
+        }
+    }
+
+    /**
+    *** Publishes the specified update to all clients waiting on the update account
+    **/
+    public void publish(DeviceUpdate du)
+    {
+        if ((du == null) || StringTools.isBlank(du.getAccountID())) {
+            return;
+        }
+        AccountChannel ch = this._getChannel(du.getAccountID());
+        synchronized (ch) {
+            du.sequence = ++ch.sequence;
+            ch.updates.add(du);
+            while (ch.updates.size() > this.maxUpdates) {
+                ch.updates.removeFirst();
+            }
+            if (!ch.isPublished(du.getDeviceID(), du.getTimestamp())) {
+                // -- avoid republishing this event from the Device table check
+                ch.devEventTS.put(du.getDeviceID(), new Long(du.getTimestamp()));
+            }
+            ch.notifyAll();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Waits for updates newer than the specified sequence number, for the specified devices
+    *** @param acctID    The account ID
+    *** @param devIDs    The set of devices for which updates are returned (null for all devices)
+    *** @param sinceSeq  The sequence number returned by the previous request
+    ***                  (or by <code>getSequence</code>)
+    *** @param timeoutMS The maximum time to wait for updates
+    *** @return The updates (empty if the timeout expired, "busy" if the maximum number
+    ***         of waiting clients has been reached)
+    **/
+    public Updates waitForUpdates(String acctID, Set<String> devIDs, long sinceSeq, long timeoutMS)
+    {
+        if (StringTools.isBlank(acctID)) {
+            return new Updates(sinceSeq, false, null);
+        }
+
+        /* bound the number of waiting clients (each holds a servlet thread) */
+        synchronized (this) {
+            if ((this.maxWaiters > 0) && (this.waiterCount >= this.maxWaiters)) {
+                AccountChannel ch = this._getChannel(acctID);
+                synchronized (ch) {
+                    Updates upd = this._getUpdates(ch, devIDs, sinceSeq);
+                    upd.busy = upd.isEmpty();
+                    return upd;
+                }
+            }
+            this.waiterCount++;
+        }
+        try {
+            return this._waitForUpdates(acctID, devIDs, sinceSeq, timeoutMS);
+        } finally {
+            synchronized (this) {
+                this.waiterCount--;
+            }
+        }
+
+    }
+
+    /**
+    *** Waits for updates newer than the specified sequence number (see "waitForUpdates")
+    **/
+    private Updates _waitForUpdates(String acctID, Set<String> devIDs, long sinceSeq, long timeoutMS)
+    {
+        AccountChannel ch = this._getChannel(acctID);
+        long endMS = System.currentTimeMillis() + Math.max(timeoutMS, 0L);
+        for (;;) {
+
+            /* check Device table for updates from other processes */
+            this._pollDevices(ch);
+
+            /* collect updates */
+            synchronized (ch) {
+                Updates upd = this._getUpdates(ch, devIDs, sinceSeq);
+                if (!upd.isEmpty()) {
+                    return upd;
+                }
+                sinceSeq = upd.getSequence(); // skip updates for other devices
+                long waitMS = endMS - System.currentTimeMillis();
+                if (waitMS <= 0L) {
+                    return upd;
+                }
+                if (this.pollIntervalMS > 0L) {
+                    long pollMS = (ch.pollTimeMS + this.pollIntervalMS) - System.currentTimeMillis();
+                    waitMS = Math.max(Math.min(waitMS, pollMS), 1L);
+                }
+                try {
+                    ch.wait(waitMS);
+                } catch (InterruptedException ie) {
+                    return upd;
+                }
+            }
+
+        }
+    }
+
+    /**
+    *** Returns the most recent update for each device updated since the specified sequence number
+    **/
+    private Updates _getUpdates(AccountChannel ch, Set<String> devIDs, long sinceSeq)
+    {
+        // -- assumes synchronized on 'ch'
+        if (sinceSeq >= ch.sequence) {
+            return new Updates(ch.sequence, false, null);
+        }
+        long firstSeq = ch.updates.isEmpty()? (ch.sequence + 1L) : ch.updates.getFirst().getSequence();
+        if ((sinceSeq < 0L) || ((sinceSeq + 1L) < firstSeq)) {
+            // -- updates have been discarded, client must reload
+            return new Updates(ch.sequence, true, null);
+        }
+        Map<String,DeviceUpdate> latest = new LinkedHashMap<String,DeviceUpdate>();
+        for (Iterator<DeviceUpdate> i = ch.updates.descendingIterator(); i.hasNext();) {
+            DeviceUpdate du = i.next();
+            if (du.getSequence() <= sinceSeq) {
+                break;
+            }
+            String devID = du.getDeviceID();
+            if (((devIDs == null) || devIDs.contains(devID)) && !latest.containsKey(devID)) {
+                latest.put(devID, du);
+            }
+        }
+        return new Updates(ch.sequence, false, new Vector<DeviceUpdate>(latest.values()));
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Checks the Device table for events inserted by other processes.  At most one
+    *** check is performed per account per poll interval, regardless of the number
+    *** of waiting clients.  Devices are selected by "lastUpdateTime" (server time),
+    *** since "lastEventTimestamp" is device time and may arrive out of order across
+    *** devices.  Each selected device is published only if its last event is newer
+    *** than the last event already published for that device.
+    **/
+    private void _pollDevices(AccountChannel ch)
+    {
+
+        /* poll due? */
+        long sinceTS;
+        long nowTS;
+        synchronized (ch) {
+            long nowMS = System.currentTimeMillis();
+            if ((this.pollIntervalMS <= 0L) || ch.polling || ((nowMS - ch.pollTimeMS) < this.pollIntervalMS)) {
+                return;
+            }
+            ch.polling    = true;
+            ch.pollTimeMS = nowMS;
+            sinceTS       = ch.pollUpdTS;
+            nowTS         = nowMS / 1000L;
+        }
+
+        /* select updated devices */
+        String acctID = ch.getAccountID();
+        java.util.List<DeviceUpdate> updList = new Vector<DeviceUpdate>();
+        boolean pollOK = false;
+        try {
+
+            /* devices with new events */
+            Map<String,Long> updated = Device.getDeviceIDsUpdatedSince(acctID, sinceTS - POLL_CLOCK_SKEW_SEC);
+            java.util.List<String> changed = new Vector<String>();
+            synchronized (ch) {
+                for (String devID : updated.keySet()) {
+                    long eventTS = updated.get(devID).longValue();
+                    if ((eventTS > 0L) && !ch.isPublished(devID, eventTS)) {
+                        changed.add(devID);
+                    }
+                }
+            }
+
+            /* load last positions */
+            if (!changed.isEmpty()) {
+                Account account = Account.getAccount(acctID);
+                if (account != null) {
+                    for (String devID : changed) {
+                        Device dev = Device.getDevice(account, devID,
+                            Device.FLD_lastEventTimestamp,
+                            Device.FLD_lastEventStatusCode,
+                            Device.FLD_lastValidLatitude,
+                            Device.FLD_lastValidLongitude,
+                            Device.FLD_lastValidSpeedKPH,
+                            Device.FLD_lastValidHeading);
+                        if (dev == null) { continue; }
+                        double lat = dev.getLastValidLatitude();
+                        double lon = dev.getLastValidLongitude();
+                        if (!GeoPoint.isValid(lat,lon)) { continue; }
+                        updList.add(new DeviceUpdate(
+                            acctID, devID,
+                            dev.getLastEventTimestamp(),
+                            dev.getLastEventStatusCode(),
+                            lat, lon,
+                            dev.getLastValidSpeedKPH(),
+                            dev.getLastValidHeading()));
+                    }
+                }
+            }
+            pollOK = true;
+
+        } catch (DBException dbe) {
+            Print.logError("Checking Device updates ["+acctID+"]: " + dbe);
+        } finally {
+            synchronized (ch) {
+                if (pollOK) {
+                    // -- advance watermark only after a successful check
+                    ch.pollUpdTS = Math.max(ch.pollUpdTS, nowTS);
+                }
+                ch.polling = false;
+            }
+        }
+
+        /* publish */
+        for (DeviceUpdate du : updList) {
+            synchronized (ch) {
+                if (ch.isPublished(du.getDeviceID(), du.getTimestamp())) {
+                    continue; // published by the insertion path in the meantime
+                }
+            }
+            this.publish(du);
+        }
+
+    }
+
+    // ------------------------------------------------------------------------
+
+}
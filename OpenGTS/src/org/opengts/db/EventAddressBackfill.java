@@ -0,0 +1,532 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Fills in blank EventData addresses over a time range.  Events are read in
+//  time windows, their locations are deduplicated through a ReverseGeocodeCache,
+//  the unique locations are reverse-geocoded in parallel (rate limited), and the
+//  results are written back with one UPDATE per location.  The end of the last
+//  completed time window, and the account/device being backfilled, are saved to
+//  an optional checkpoint file, so that an interrupted backfill can be resumed.
+//  A checkpoint written for a different account/device is refused.
+//  The updated events change the EventData range signatures (blank address count),
+//  which invalidates the ReportCache entries for the affected devices and ranges.
+//  Invoked via "bin/admin.pl EventData -backfillAddress -account=<id> ..."
+// ----------------------------------------------------------------------------
+package org.opengts.db;
+
+import java.util.*;
+import java.io.*;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+import org.opengts.geocoder.*;
+
+import org.opengts.db.tables.*;
+
+public class EventAddressBackfill
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final int    DEFAULT_THREADS             = 4;
+    public  static final double DEFAULT_MAX_PER_SECOND      = 10.0;
+    public  static final long   DEFAULT_WINDOW_SEC          = DateTime.HourSeconds(1);
+    public  static final int    DEFAULT_UPDATE_BATCH_SIZE   = 200;
+
+    /* checkpoint file keys */
+    private static final String CKPT_ACCOUNT                = "account";
+    private static final String CKPT_DEVICE                 = "device";
+    private static final String CKPT_TIMESTAMP              = "timestamp";
+    private static final String CKPT_ALL_DEVICES            = "*";
+
+    private static final String ADDRESS_FIELDS[]            = new String[] {
+        EventData.FLD_address,
+        EventData.FLD_streetAddress,
+        EventData.FLD_city,
+        EventData.FLD_stateProvince,
+        EventData.FLD_postalCode,
+        EventData.FLD_country,
+        EventData.FLD_subdivision,
+    };
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** EventData primary key (less the accountID)
+    **/
+    private static class EventKey
+    {
+        private String deviceID   = null;
+        private long   timestamp  = 0L;
+        private int    statusCode = 0;
+        public EventKey(EventData ev) {
+            this.deviceID   = ev.getDeviceID();
+            this.timestamp  = ev.getTimestamp();
+            this.statusCode = ev.getStatusCode();
+        }
+    }
+
+    /**
+    *** Events sharing the same (encoded) location
+    **/
+    private static class CellEvents
+    {
+        private GeoPoint                 geoPoint = null;
+        private boolean                  stopped  = false;
+        private java.util.List<EventKey> events   = new Vector<EventKey>();
+        private ReverseGeocode           rg       = null;
+        public CellEvents(GeoPoint gp) {
+            this.geoPoint = gp;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private Account                 account         = null;
+    private String                  deviceID        = null;
+    private BasicPrivateLabel       privLabel       = null;
+    private ReverseGeocodeProvider  rgProvider      = null;
+    private ReverseGeocodeCache     rgCache         = null;
+
+    private int                     maxThreads      = DEFAULT_THREADS;
+    private long                    minIntervalMS   = 0L;
+    private long                    nextRequestMS   = 0L;
+    private Object                  rateLock        = new Object();
+    private long                    windowSec       = DEFAULT_WINDOW_SEC;
+    private int                     updateBatchSize = DEFAULT_UPDATE_BATCH_SIZE;
+    private File                    checkpointFile  = null;
+
+    private long                    countEvents     = 0L;
+    private long                    countLookups    = 0L;
+    private long                    countUpdated    = 0L;
+
+    /**
+    *** Constructor
+    *** @param account  The Account whose events will be updated
+    *** @param deviceID The Device ID (null/blank for all devices in the account)
+    **/
+    public EventAddressBackfill(Account account, String deviceID)
+    {
+        super();
+        this.account   = account;
+        this.deviceID  = !StringTools.isBlank(deviceID)? deviceID : null;
+        this.privLabel = account.getPrivateLabel();
+        this.rgProvider = (this.privLabel != null)? this.privLabel.getReverseGeocodeProvider() : null;
+        this.rgCache   = new ReverseGeocodeCache();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sets the number of concurrent reverse-geocode requests
+    **/
+    public void setMaximumThreads(int threads)
+    {
+        this.maxThreads = (threads > 0)? threads : 1;
+    }
+
+    /**
+    *** Sets the maximum number of reverse-geocode requests per second (<= 0 for unlimited)
+    **/
+    public void setMaximumRequestsPerSecond(double rate)
+    {
+        this.minIntervalMS = (rate > 0.0)? Math.round(1000.0 / rate) : 0L;
+    }
+
+    /**
+    *** Sets the size of the time window read per pass, in seconds
+    **/
+    public void setWindowSeconds(long sec)
+    {
+        this.windowSec = (sec > 0L)? sec : DEFAULT_WINDOW_SEC;
+    }
+
+    /**
+    *** Sets the maximum number of events updated by a single UPDATE statement
+    **/
+    public void setUpdateBatchSize(int size)
+    {
+        this.updateBatchSize = (size > 0)? size : DEFAULT_UPDATE_BATCH_SIZE;
+    }
+
+    /**
+    *** Sets the checkpoint file used to resume an interrupted backfill
+    **/
+    public void setCheckpointFile(File file)
+    {
+        this.checkpointFile = file;
+    }
+
+    /**
+    *** Gets the ReverseGeocodeCache used to deduplicate locations
+    **/
+    public ReverseGeocodeCache getReverseGeocodeCache()
+    {
+        return this.rgCache;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the device filter saved in the checkpoint file
+    **/
+    private String _getCheckpointDevice()
+    {
+        return (this.deviceID != null)? this.deviceID : CKPT_ALL_DEVICES;
+    }
+
+    /**
+    *** Reads the checkpoint file
+    *** @return The last completed event time, or -1 if not available
+    *** @throws DBException if the checkpoint was written for a different account/device
+    **/
+    protected long readCheckpoint()
+        throws DBException
+    {
+        if ((this.checkpointFile == null) || !this.checkpointFile.isFile()) {
+            return -1L;
+        }
+        byte b[] = FileTools.readFile(this.checkpointFile);
+        String s = (b != null)? StringTools.toStringValue(b).trim() : "";
+        if (s.equals("")) {
+            return -1L;
+        }
+        RTProperties ckpt = new RTProperties(s);
+        String acctID = ckpt.getString(CKPT_ACCOUNT, "");
+        String devID  = ckpt.getString(CKPT_DEVICE , "");
+        if (!acctID.equals(this.account.getAccountID()) || !devID.equals(this._getCheckpointDevice())) {
+            throw new DBException("Checkpoint file " + this.checkpointFile + " is for account=" + acctID + 
+                " device=" + devID + " (expected account=" + this.account.getAccountID() + 
+                " device=" + this._getCheckpointDevice() + ")");
+        }
+        return ckpt.getLong(CKPT_TIMESTAMP, -1L);
+    }
+
+    /**
+    *** Writes the checkpoint file
+    *** @param timestamp  The last completed event time
+    **/
+    protected void writeCheckpoint(long timestamp)
+    {
+        if (this.checkpointFile != null) {
+            RTProperties ckpt = new RTProperties();
+            ckpt.setString(CKPT_ACCOUNT  , this.account.getAccountID());
+            ckpt.setString(CKPT_DEVICE   , this._getCheckpointDevice());
+            ckpt.setLong(  CKPT_TIMESTAMP, timestamp);
+            try {
+                FileTools.writeFile(ckpt.toString().getBytes(), this.checkpointFile);
+            } catch (IOException ioe) {
+                Print.logError("Unable to write checkpoint file: " + this.checkpointFile + " [" + ioe + "]");
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Waits until the next reverse-geocode request is allowed by the rate limit
+    **/
+    private void _throttle()
+    {
+        if (this.minIntervalMS <= 0L) {
+            return;
+        }
+        long waitMS;
+        synchronized (this.rateLock) {
+            long nowMS  = System.currentTimeMillis();
+            long slotMS = Math.max(nowMS, this.nextRequestMS);
+            this.nextRequestMS = slotMS + this.minIntervalMS;
+            waitMS = slotMS - nowMS;
+        }
+        if (waitMS > 0L) {
+            try { Thread.sleep(waitMS); } catch (InterruptedException ie) {/*ignore*/}
+        }
+    }
+
+    /**
+    *** Reverse-geocodes the specified location (called from the worker threads)
+    **/
+    private ReverseGeocode _reverseGeocode(CellEvents cell)
+    {
+        ReverseGeocode rg = this.rgCache.getReverseGeocode(cell.geoPoint);
+        if (rg != null) {
+            return rg;
+        }
+        this._throttle();
+        try {
+            this.privLabel.pushRTProperties();
+            rg = ReverseGeocodeProviderAdapter.GetReverseGeocode(this.rgProvider,
+                cell.geoPoint, this.privLabel.getLocaleString(), cell.stopped);
+        } catch (Throwable th) {
+            Print.logException("Reverse-geocode failed: " + cell.geoPoint, th);
+            rg = null;
+        } finally {
+            this.privLabel.popRTProperties();
+        }
+        if (rg != null) {
+            this.rgCache.addReverseGeocode(cell.geoPoint, rg);
+        }
+        return rg;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the timestamp of the oldest event with a blank address
+    *** @param endTime  The end of the time range
+    *** @return The oldest event timestamp, or -1 if there are no such events
+    **/
+    private long _getFirstBlankAddressTime(long endTime)
+        throws DBException
+    {
+        DBWhere dwh = new DBWhere(EventData.getFactory());
+        String blankAddr = dwh.EQ(EventData.FLD_address, "");
+        EventData ev[] = EventData.getRangeEvents(
+            this.account.getAccountID(), this.deviceID,
+            -1L, endTime,
+            null/*statusCodes*/,
+            false/*validGPS*/,
+            EventData.LimitType.FIRST, 1L/*limit*/, true/*ascending*/,
+            blankAddr);
+        return !ListTools.isEmpty(ev)? ev[0].getTimestamp() : -1L;
+    }
+
+    /**
+    *** Reads the events with blank addresses in the specified time range, grouped by location.
+    *** Events without a valid GPS location fall back to their cell-tower location.
+    **/
+    private Map<Long,CellEvents> _readWindow(long startTime, long endTime)
+        throws DBException
+    {
+        final Map<Long,CellEvents> cells = new HashMap<Long,CellEvents>();
+        DBWhere dwh = new DBWhere(EventData.getFactory());
+        String blankAddr = dwh.EQ(EventData.FLD_address, "");
+        EventData.getRangeEvents(
+            this.account.getAccountID(), this.deviceID,
+            startTime, endTime,
+            null/*statusCodes*/,
+            false/*validGPS*/, // include cell-location events
+            EventData.LimitType.FIRST, -1L/*limit*/, true/*ascending*/,
+            blankAddr,
+            new DBRecordHandler<EventData>() {
+                public int handleDBRecord(EventData ev) throws DBException {
+                    GeoPoint gp = ev.getGeoPoint();
+                    if (!GeoPoint.isValid(gp)) {
+                        gp = ev.getCellGeoPoint();
+                    }
+                    if (GeoPoint.isValid(gp)) {
+                        Long key = new Long(ReverseGeocodeCache.EncodeGeoPoint(gp,ReverseGeocodeCache.GEOPOINT_DEC_LORES));
+                        CellEvents cell = cells.get(key);
+                        if (cell == null) {
+                            cell = new CellEvents(gp);
+                            cells.put(key, cell);
+                        }
+                        if (ev.getSpeedKPH() <= 0.0) {
+                            cell.stopped = true;
+                        }
+                        cell.events.add(new EventKey(ev));
+                        EventAddressBackfill.this.countEvents++;
+                    } // else no GPS or cell location, nothing to reverse-geocode
+                    return DBRH_SKIP;
+                }
+            });
+        return cells;
+    }
+
+    /**
+    *** Reverse-geocodes all locations, using up to "maxThreads" concurrent requests
+    **/
+    private void _resolveCells(Collection<CellEvents> cellList)
+    {
+        final java.util.List<CellEvents> queue = new Vector<CellEvents>(cellList);
+        int threadCount = Math.min(this.maxThreads, queue.size());
+        Thread threads[] = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread("AddressBackfill_" + t) {
+                public void run() {
+                    for (;;) {
+                        CellEvents cell;
+                        synchronized (queue) {
+                            if (queue.isEmpty()) { break; }
+                            cell = queue.remove(queue.size() - 1);
+                        }
+                        cell.rg = EventAddressBackfill.this._reverseGeocode(cell);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threadCount; t++) {
+            try { threads[t].join(); } catch (InterruptedException ie) {/*ignore*/}
+        }
+        this.countLookups += cellList.size();
+    }
+
+    /**
+    *** Writes the reverse-geocoded address to all events at the specified location
+    *** @param updDevIDs  The set to which the IDs of the updated devices are added
+    *** @return The number of events updated
+    **/
+    private long _updateCell(CellEvents cell, Set<String> updDevIDs)
+        throws DBException
+    {
+        ReverseGeocode rg = cell.rg;
+        if ((rg == null) || !rg.hasFullAddress()) {
+            return 0L;
+        }
+
+        /* "SET" clause */
+        DBFactory<EventData> edFact = EventData.getFactory();
+        DBProvider dbp = DBProvider.getProvider();
+        String values[] = new String[] {
+            rg.getFullAddress(),
+            rg.getStreetAddress(),
+            rg.getCity(),
+            rg.getStateProvince(),
+            rg.getPostalCode(),
+            rg.getCountryCode(),
+            rg.getSubdivision(),
+        };
+        StringBuffer set = new StringBuffer();
+        for (int i = 0; i < ADDRESS_FIELDS.length; i++) {
+            DBField fld = edFact.getField(ADDRESS_FIELDS[i]);
+            if ((fld == null) || ((i > 0) && StringTools.isBlank(values[i]))) {
+                continue; // field not present, or no value
+            }
+            String val = StringTools.trim(values[i]);
+            int maxLen = fld.getStringLength();
+            if ((maxLen > 0) && (val.length() >= maxLen)) {
+                val = val.substring(0, maxLen - 1).trim();
+            }
+            if (set.length() > 0) { set.append(", "); }
+            set.append(dbp.quoteColumnName(ADDRESS_FIELDS[i])).append("=").append(fld.getQValue(val));
+        }
+
+        /* update in batches */
+        long updCount = 0L;
+        String tableName = edFact.getTranslatedTableName();
+        for (int b = 0; b < cell.events.size(); b += this.updateBatchSize) {
+            int e = Math.min(b + this.updateBatchSize, cell.events.size());
+            DBWhere dwh = new DBWhere(edFact);
+            java.util.List<String> keys = new Vector<String>();
+            for (int i = b; i < e; i++) {
+                EventKey ek = cell.events.get(i);
+                keys.add(dwh.AND(
+                    dwh.EQ(EventData.FLD_deviceID  , ek.deviceID),
+                    dwh.EQ(EventData.FLD_timestamp , ek.timestamp),
+                    dwh.EQ(EventData.FLD_statusCode, ek.statusCode)));
+            }
+            dwh.append(dwh.EQ(EventData.FLD_accountID, this.account.getAccountID()));
+            dwh.append(dwh.AND_(dwh.OR(keys)));
+            dwh.append(dwh.AND_(dwh.EQ(EventData.FLD_address, "")));
+            String sql = "UPDATE " + tableName + " SET " + set + dwh.WHERE(dwh.toString());
+            DBConnection dbc  = null;
+            Statement    stmt = null;
+            try {
+                dbc  = DBConnection.getDBConnection_write();
+                stmt = dbc.createStatement();
+                int rows = stmt.executeUpdate(sql); // rows actually changed
+                if (rows > 0) {
+                    for (int i = b; i < e; i++) {
+                        updDevIDs.add(cell.events.get(i).deviceID);
+                    }
+                }
+                updCount += rows;
+            } catch (SQLException sqe) {
+                throw new DBException("Address update", sqe);
+            } finally {
+                if (stmt != null) { try { stmt.close(); } catch (Throwable t) {} }
+                DBConnection.release(dbc);
+            }
+        }
+        return updCount;
+
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Runs the backfill over the specified time range
+    *** @param startTime  The start of the time range (resumed from the checkpoint, if later).
+    ***                   If less than or equal to 0, the oldest event with a blank address is used.
+    *** @param endTime    The end of the time range
+    *** @return The number of events updated
+    **/
+    public long run(long startTime, long endTime)
+        throws DBException
+    {
+
+        /* reverse-geocoder */
+        if (this.rgProvider == null) {
+            throw new DBException("No ReverseGeocodeProvider for Account: " + this.account.getAccountID());
+        }
+
+        /* default start time */
+        if (startTime <= 0L) {
+            startTime = this._getFirstBlankAddressTime(endTime);
+            if (startTime < 0L) {
+                Print.logInfo("No events with blank addresses found");
+                return 0L;
+            }
+            Print.logInfo("Starting at oldest blank-address event: " + (new DateTime(startTime)));
+        }
+
+        /* resume from checkpoint */
+        long checkpoint = this.readCheckpoint();
+        if ((checkpoint >= startTime) && (checkpoint < endTime)) {
+            Print.logInfo("Resuming from checkpoint: " + (new DateTime(checkpoint)));
+            startTime = checkpoint + 1L;
+        }
+
+        /* process time windows */
+        for (long winStart = startTime; winStart <= endTime; winStart += this.windowSec) {
+            long winEnd = Math.min(winStart + this.windowSec - 1L, endTime);
+            long startMS = System.currentTimeMillis();
+            Map<Long,CellEvents> cells = this._readWindow(winStart, winEnd);
+            this._resolveCells(cells.values());
+            long updated = 0L;
+            Set<String> updDevIDs = new HashSet<String>();
+            for (CellEvents cell : cells.values()) {
+                updated += this._updateCell(cell, updDevIDs);
+            }
+            for (String devID : updDevIDs) {
+                // -- advance the device data version (ie. map-update "ETag")
+                Device.touchLastUpdateTime(this.account.getAccountID(), devID);
+            }
+            this.countUpdated += updated;
+            this.writeCheckpoint(winEnd);
+            long deltaMS = System.currentTimeMillis() - startMS;
+            Print.logInfo("Window " + (new DateTime(winStart)) + " : locations=" + cells.size() +
+                ", updated=" + updated + " [" + deltaMS + " ms]");
+        }
+
+        /* done */
+        Print.logInfo("Backfill complete: events=" + this.countEvents + ", locations=" +
+            this.countLookups + ", updated=" + this.countUpdated);
+        return this.countUpdated;
+
+    }
+
+    // ------------------------------------------------------------------------
+
+}
@@ -0,0 +1,314 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Incremental change-feed over EventData, based on the event insertion time
+//  ("creationMillis", see "startupInit.EventData.CreationTimeMillisecond=true").
+//  Returns the events inserted after an opaque cursor, for a list of devices
+//  (ie. an account or group), including events which arrive late/out of order.
+//  - The feed advances in creation-time "windows".  A window ends at the current
+//    time less 'settleMillis', so that events from insert transactions which have
+//    not yet committed (or from inserting hosts with slightly different clocks)
+//    are not skipped.
+//  - Within a window, devices are read in DeviceID order, and each device is read
+//    in (creationMillis,timestamp,statusCode) order on the "pushkey" alternate
+//    index (accountID,deviceID,creationMillis), so each page is an index range 
+//    read and the cursor identifies exactly the last event returned.
+//  - Only devices whose Device record was updated ("lastUpdateTime") since the
+//    window start (less 'settleMillis') are read, since the device record is
+//    updated after each received event.  The first window reads all devices.
+//  - When all devices in the window have been read, the returned cursor starts 
+//    the next window at the end of the completed window.
+// ----------------------------------------------------------------------------
+package org.opengts.db;
+
+import java.util.*;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+import org.opengts.db.tables.*;
+
+public class EventChangeFeed
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final long   DEFAULT_SETTLE_MS           = 5000L;
+
+    private static final String TOKEN_VERSION               = "1";
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if the EventData table supports the change-feed (ie. contains
+    *** the "creationMillis" column)
+    **/
+    public static boolean IsSupported()
+    {
+        return EventData.getFactory().hasField(EventData.FLD_creationMillis);
+    }
+
+    /**
+    *** Gets the configured settle time (milliseconds)
+    **/
+    public static long GetSettleMillis()
+    {
+        return Math.max(RTConfig.getLong(DBConfig.PROP_EventChangeFeed_settleMillis,DEFAULT_SETTLE_MS),0L);
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Change-feed cursor
+    **/
+    public static class Cursor
+    {
+        private long   windowStart = -1L;   // exclusive (-1 for all events)
+        private long   windowEnd   = 0L;    // inclusive (0 if the window has not been started)
+        private String deviceID    = null;  // last device read in window (null if none)
+        private long   createMS    = -1L;   // last event read (-1 if none)
+        private long   timestamp   = 0L;
+        private int    statusCode  = 0;
+        private Cursor(long windowStart, long windowEnd, String deviceID, long createMS, long timestamp, int statusCode) {
+            this.windowStart = windowStart;
+            this.windowEnd   = windowEnd;
+            this.deviceID    = StringTools.isBlank(deviceID)? null : deviceID;
+            this.createMS    = createMS;
+            this.timestamp   = timestamp;
+            this.statusCode  = statusCode;
+        }
+        /**
+        *** Constructor, for a feed of events inserted after the specified time
+        *** @param sinceMS  The creation time (milliseconds) after which events are returned
+        ***                 (-1 for all events)
+        **/
+        public Cursor(long sinceMS) {
+            this(Math.max(sinceMS,-1L), 0L, null, -1L, 0L, 0);
+        }
+        public long getWindowStart() {
+            return this.windowStart;
+        }
+        public long getWindowEnd() {
+            return this.windowEnd;
+        }
+        public boolean isWindowStarted() {
+            return (this.windowEnd > 0L);
+        }
+        public String getDeviceID() {
+            return this.deviceID;
+        }
+        public long getCreationMillis() {
+            return this.createMS;
+        }
+        public long getTimestamp() {
+            return this.timestamp;
+        }
+        public int getStatusCode() {
+            return this.statusCode;
+        }
+        /**
+        *** Returns the opaque token for this cursor
+        **/
+        public String toToken() {
+            StringBuffer sb = new StringBuffer();
+            sb.append(TOKEN_VERSION);
+            sb.append(",").append(this.windowStart);
+            sb.append(",").append(this.windowEnd);
+            sb.append(",").append(this.createMS);
+            sb.append(",").append(this.timestamp);
+            sb.append(",").append(this.statusCode);
+            sb.append(",").append(StringTools.trim(this.deviceID)); // last, may contain ','
+            return StringTools.toHexString(StringTools.getBytes(sb.toString()));
+        }
+        public String toString() {
+            return "(" + this.windowStart + ".." + this.windowEnd + "] " + 
+                StringTools.trim(this.deviceID) + "/" + this.createMS + "/" + 
+                this.timestamp + "/" + StatusCodes.GetHex(this.statusCode);
+        }
+        /**
+        *** Parses the specified cursor token
+        *** @return The Cursor, or null if the token is invalid
+        **/
+        public static Cursor parseToken(String token) {
+            if (StringTools.isBlank(token)) {
+                return null;
+            }
+            byte b[] = StringTools.parseHex(token.trim(), null);
+            if (ListTools.isEmpty(b)) {
+                return null;
+            }
+            String f[] = StringTools.toStringValue(b).split(",", 7);
+            if ((f.length != 7) || !f[0].equals(TOKEN_VERSION)) {
+                return null;
+            }
+            long ws = StringTools.parseLong(f[1], -2L);
+            long we = StringTools.parseLong(f[2], -1L);
+            long cm = StringTools.parseLong(f[3], -2L);
+            long ts = StringTools.parseLong(f[4], -1L);
+            int  sc = StringTools.parseInt( f[5], -1);
+            if ((ws < -1L) || (we < 0L) || (cm < -1L) || (ts < 0L) || (sc < 0)) {
+                return null;
+            }
+            return new Cursor(ws, we, f[6], cm, ts, sc);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Change-feed page
+    **/
+    public static class Page
+    {
+        private EventData events[] = null;
+        private Cursor    next     = null;
+        private boolean   hasMore  = false;
+        private Page(EventData events[], Cursor next, boolean hasMore) {
+            this.events  = events;
+            this.next    = next;
+            this.hasMore = hasMore;
+        }
+        /**
+        *** Gets the events in this page (grouped by device, does not return null)
+        **/
+        public EventData[] getEvents() {
+            return this.events;
+        }
+        /**
+        *** Gets the cursor from which the next page is to be read
+        **/
+        public Cursor getNextCursor() {
+            return this.next;
+        }
+        /**
+        *** Returns true if more events are immediately available (the page limit was reached).
+        *** If false, the feed is current, and the next page should be requested after a polling delay.
+        **/
+        public boolean hasMore() {
+            return this.hasMore;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the next page of events inserted after the specified cursor
+    *** @param accountID  The Account ID
+    *** @param deviceIDs  The Device IDs included in the feed (ie. account or group devices).
+    ***                   This should be the same set of devices for each page of the feed.
+    *** @param cursor     The cursor returned by the previous page (null for all events)
+    *** @param limit      The maximum number of events returned in this page
+    *** @return The page of events
+    **/
+    public static Page getChanges(String accountID, Collection<String> deviceIDs, Cursor cursor, long limit)
+        throws DBException
+    {
+
+        /* cursor */
+        if (cursor == null) {
+            cursor = new Cursor(-1L);
+        }
+
+        /* not supported? */
+        if (!EventChangeFeed.IsSupported()) {
+            Print.logError("EventData table does not contain field '"+EventData.FLD_creationMillis+"'");
+            return new Page(EventData.EMPTY_ARRAY, cursor, false);
+        }
+
+        /* start window */
+        long windowStart = cursor.getWindowStart();
+        long windowEnd   = cursor.getWindowEnd();
+        if (!cursor.isWindowStarted()) {
+            windowEnd = System.currentTimeMillis() - EventChangeFeed.GetSettleMillis();
+            if (windowEnd <= Math.max(windowStart,0L)) {
+                // -- nothing has settled since the previous window
+                return new Page(EventData.EMPTY_ARRAY, cursor, false);
+            }
+        }
+
+        /* devices, in DeviceID order */
+        // -- a device added to the set while a window is in progress is read from the window
+        // -  start, unless it is ordered before the cursor device (in which case its events
+        // -  in the current window are not returned).
+        Set<String> devIDSet = new TreeSet<String>();
+        if (deviceIDs != null) {
+            devIDSet.addAll(deviceIDs);
+        }
+
+        /* skip devices not updated since the window start */
+        // -- 'lastUpdateTime' only increases, so each page of a window reads the same 
+        // -  devices, plus any devices updated since the previous page.
+        if ((windowStart > 0L) && !devIDSet.isEmpty()) {
+            long sinceTS = (windowStart - EventChangeFeed.GetSettleMillis()) / 1000L;
+            Map<String,Long> updDevs = Device.getDeviceIDsUpdatedSince(accountID, sinceTS);
+            devIDSet.retainAll(updDevs.keySet());
+        }
+
+        /* read devices */
+        if (limit <= 0L) { limit = 1L; }
+        java.util.List<EventData> evList = new Vector<EventData>();
+        String resumeDevID = cursor.isWindowStarted()? cursor.getDeviceID() : null;
+        for (String devID : devIDSet) {
+
+            /* skip devices completed in this window */
+            long afterCM = -1L, afterTS = 0L;
+            int  afterSC = 0;
+            if (resumeDevID != null) {
+                int c = devID.compareTo(resumeDevID);
+                if (c < 0) {
+                    continue;
+                } else
+                if (c == 0) {
+                    afterCM = cursor.getCreationMillis();
+                    afterTS = cursor.getTimestamp();
+                    afterSC = cursor.getStatusCode();
+                }
+            }
+
+            /* read device events */
+            long remaining = limit - evList.size();
+            EventData ed[] = EventData.getEventsCreatedAfter(
+                accountID, devID,
+                windowStart, windowEnd,
+                afterCM, afterTS, afterSC,
+                remaining);
+            for (EventData ev : ed) {
+                evList.add(ev);
+            }
+
+            /* page limit reached? */
+            if (ed.length >= remaining) {
+                EventData last = ed[ed.length - 1];
+                Cursor next = new Cursor(windowStart, windowEnd, devID, 
+                    last.getCreationMillis(), last.getTimestamp(), last.getStatusCode());
+                return new Page(evList.toArray(new EventData[evList.size()]), next, true);
+            }
+
+        }
+
+        /* window complete, the next page starts a new window */
+        Cursor next = new Cursor(windowEnd);
+        return new Page(evList.toArray(new EventData[evList.size()]), next, false);
+
+    }
+
+    // ------------------------------------------------------------------------
+
+}
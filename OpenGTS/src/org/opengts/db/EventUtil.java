@@ -128,6 +128,7 @@ public class EventUtil
   //public  static final int     MAPDATA_DEFAULT            = 0; 
     public  static final int     MAPDATA_XML                = 1;
     public  static final int     MAPDATA_JSON               = 2;
+    public  static final int     MAPDATA_JSON_ENCODED       = 3; // JSON, with delta-encoded device tracks
 
   //private static       int     DefaultMapDataFormat       = EventUtil.MAPDATA_JSON;
 
@@ -351,14 +352,11 @@ public class EventUtil
     }
     */
 
-    private boolean writeEvents_CSV(PrintWriter pwout, 
-        Account account, Collection<Device> devList, 
-        boolean allTags, TimeZone dispTmz, 
-        char csvSep, boolean inclHeader, BasicPrivateLabel privLabel)
-        throws IOException
+    /**
+    *** Gets the EventData fields included in the CSV output format
+    **/
+    private String[] getFields_CSV(boolean allTags)
     {
-
-        /* fields to place in CSV format */
         String evFields[] = null;
         if (allTags) {
             evFields = new String[] {
@@ -408,6 +406,18 @@ public class EventUtil
                 EventData.FLD_address,
             };
         }
+        return evFields;
+    }
+
+    private boolean writeEvents_CSV(PrintWriter pwout, 
+        Account account, Collection<Device> devList, 
+        boolean allTags, TimeZone dispTmz, 
+        char csvSep, boolean inclHeader, BasicPrivateLabel privLabel)
+        throws IOException
+    {
+
+        /* fields to place in CSV format */
+        String evFields[] = this.getFields_CSV(allTags);
 
         /* write events */
         return this.writeEvents_CSV_fields(pwout, 
@@ -759,6 +769,18 @@ public class EventUtil
     public  static final String  JSON_routeColor                = "routeColor";
     public  static final String  JSON_textColor                 = "textColor";
     public  static final String  JSON_id                        = "id";
+    public  static final String  JSON_Clusters                  = "Clusters";
+    public  static final String  JSON_zoom                      = "zoom";
+    public  static final String  JSON_lat                       = "lat";
+    public  static final String  JSON_lon                       = "lon";
+    public  static final String  JSON_count                     = "count";
+    public  static final String  JSON_status                    = "status";
+    public  static final String  JSON_Encoded                   = "Encoded";
+    public  static final String  JSON_prec                      = "prec";
+    public  static final String  JSON_poly                      = "poly";
+    public  static final String  JSON_strs                      = "strs";
+    public  static final String  JSON_cols                      = "cols";
+    public  static final String  JSON_timeFmt                   = "timeFmt";
 
     public  static final String  ATTR_isFleet                   = "isFleet";
     public  static final String  ATTR_type                      = "type";
@@ -884,6 +906,48 @@ public class EventUtil
 
     // -------------------------------
 
+    /* EventData fields read by "formatMapEvent" */
+    private static final String MAP_EVENT_FIELDS[] = new String[] {
+        EventData.FLD_latitude,
+        EventData.FLD_longitude,
+        EventData.FLD_gpsAge,
+        EventData.FLD_creationTime,
+        EventData.FLD_horzAccuracy,
+        EventData.FLD_satelliteCount,
+        EventData.FLD_speedKPH,
+        EventData.FLD_heading,
+        EventData.FLD_altitude,
+        EventData.FLD_odometerKM,
+        EventData.FLD_odometerOffsetKM,
+        EventData.FLD_inputMask,
+        EventData.FLD_address,
+        EventData.FLD_geozoneID,
+        EventData.FLD_cellLatitude,
+        EventData.FLD_cellLongitude,
+        EventData.FLD_cellAccuracy,
+    };
+
+    /**
+    *** Returns the EventData fields to select for the events displayed on a map (see
+    *** "formatMapEvent"), or null if all fields should be selected (ie. when an
+    *** OptionalEventFields handler, or a RuleFactory pushpin selector, may be in effect).
+    *** @param privLabel  The PrivateLabel instance
+    *** @return The set of EventData fields to select, or null for all fields
+    **/
+    public static Set<String> getMapEventFields(BasicPrivateLabel privLabel)
+    {
+        if (EventUtil.getOptionalEventFieldHandler(privLabel) != null) {
+            // -- optional event fields may reference any field
+            return null;
+        } else
+        if (Device.getRuleFactory() != null) {
+            // -- pushpin rule selectors may reference any field
+            return null;
+        } else {
+            return EventData.getSelectFields(MAP_EVENT_FIELDS);
+        }
+    }
+
     /* encode a single map event record */
     public String formatMapEvent(
         BasicPrivateLabel privLabel,
@@ -1163,6 +1227,36 @@ public class EventUtil
         DateTime latestTime, double lastBattery, double lastSignal,
         double minProximityM)
         throws IOException
+    {
+        return this.writeMapEvents(
+            dataFmt, indentLevel, pwout, 
+            isSoapRequest, isTopLevelTag,
+            privLabel,
+            edp, includeShapes,
+            iconSelector, iconMap,
+            isFleet, fleetRoute, selID,
+            tmz,
+            acct, user,
+            latestTime, lastBattery, lastSignal,
+            minProximityM,
+            null/*clusters*/);
+    }
+
+    /* write encoded map event data (and fleet device clusters) to the specified PrintWriter */
+    // -- device clusters are currently only supported by the JSON format
+    public boolean writeMapEvents(
+        int dataFmt, int indentLevel, PrintWriter pwout, 
+        boolean isSoapRequest, boolean isTopLevelTag,
+        BasicPrivateLabel privLabel,
+        EventDataProvider edp[], boolean includeShapes,
+        String iconSelector, OrderedMap<String,PushpinIcon> iconMap, // OrderedSet<String> iconKeys, 
+        boolean isFleet, boolean fleetRoute, String selID,
+        TimeZone tmz, 
+        Account acct, User user,
+        DateTime latestTime, double lastBattery, double lastSignal,
+        double minProximityM,
+        FleetClusterGrid.Result clusters)
+        throws IOException
     {
         if (dataFmt == EventUtil.MAPDATA_XML) {
             Print.logInfo("Writing map events in XML format ...");
@@ -1191,7 +1285,9 @@ public class EventUtil
                 acct, user,
                 latestTime, lastBattery, lastSignal,
                 minProximityM,
-                CSV_SEPARATOR_CHAR);
+                CSV_SEPARATOR_CHAR,
+                (dataFmt == EventUtil.MAPDATA_JSON_ENCODED),
+                clusters);
         }
     }
 
@@ -1878,7 +1974,9 @@ public class EventUtil
             acct, user,
             latestTime, lastBattery, lastSignal,
             minProximityM,
-            CSV_SEPARATOR_CHAR);
+            CSV_SEPARATOR_CHAR,
+            false/*encoded*/,
+            null/*clusters*/);
     }
 
     /* write encoded map event data to the specified PrintWriter */
@@ -1894,7 +1992,8 @@ public class EventUtil
         Account acct, User user,
         DateTime latestTime, double lastBattery, double lastSignal,
         double minProximityM,
-        char csvSep)
+        char csvSep, boolean encoded,
+        FleetClusterGrid.Result clusters)
         throws IOException
     {
         JSON._Object JMapData = this.getJMapData_JSON(
@@ -1907,7 +2006,10 @@ public class EventUtil
             latestTime, lastBattery, lastSignal,
             minProximityM,
             null/*actions*/,
-            csvSep);
+            csvSep, encoded);
+        if (clusters != null) {
+            JMapData.addKeyValue(JSON_Clusters, this.getMapClusters_JSON(privLabel, clusters));
+        }
         JSON._Object jsonObj = new JSON._Object();
         jsonObj.addKeyValue(JSON_JMapData, JMapData);
         String jsonStr = jsonObj.toString(false);
@@ -1918,6 +2020,43 @@ public class EventUtil
         return true;
     }
 
+    /* Returns a JSON object containing the fleet device clusters to display on the map */
+    public JSON._Object getMapClusters_JSON(
+        BasicPrivateLabel privLabel,
+        FleetClusterGrid.Result clusters)
+    {
+        // "Clusters": {
+        //    "zoom": 6,
+        //    "Points": [
+        //       {
+        //          "lat": 39.1234,
+        //          "lon": -142.1234,
+        //          "count": 42,
+        //          "radius": 12000,
+        //          "status": "0xF020",
+        //          "desc": "Location"
+        //       },
+        //       ...
+        //    ]
+        // }
+        JSON._Object clusterObj = new JSON._Object();
+        clusterObj.addKeyValue(JSON_zoom, clusters.getZoom());
+        JSON._Array pointArray = new JSON._Array();
+        for (FleetClusterGrid.Cluster c : clusters.getClusters()) {
+            int sc = c.getStatusCode();
+            JSON._Object ptObj = new JSON._Object();
+            ptObj.addKeyValue(JSON_lat   , c.getLatitude());
+            ptObj.addKeyValue(JSON_lon   , c.getLongitude());
+            ptObj.addKeyValue(JSON_count , c.getCount());
+            ptObj.addKeyValue(JSON_radius, Math.round(c.getRadiusMeters()));
+            ptObj.addKeyValue(JSON_status, StatusCodes.GetHex(sc));
+            ptObj.addKeyValue(JSON_desc  , StatusCodes.GetDescription(sc, privLabel));
+            pointArray.addValue(ptObj);
+        }
+        clusterObj.addKeyValue(JSON_Points, pointArray);
+        return clusterObj;
+    }
+
     /* Returns a JSON object containing the shapes and events to display on the map */
     public JSON._Object getJMapData_JSON(
         BasicPrivateLabel privLabel,
@@ -1930,6 +2069,33 @@ public class EventUtil
         double minProximityM,
         Collection<String> actions,
         char csvSep)
+    {
+        return this.getJMapData_JSON(
+            privLabel,
+            edp, includeShapes,
+            iconSelector, iconMap,
+            isFleet, fleetRoute, selID,
+            tmz,
+            acct, user,
+            latestTime, lastBattery, lastSignal,
+            minProximityM,
+            actions,
+            csvSep, false/*encoded*/);
+    }
+
+    /* Returns a JSON object containing the shapes and events to display on the map */
+    // -- if 'encoded' is true, device tracks are written in the compact "Encoded" form (see EncodedPoints)
+    public JSON._Object getJMapData_JSON(
+        BasicPrivateLabel privLabel,
+        EventDataProvider edp[],  boolean includeShapes,
+        String iconSelector, OrderedMap<String,PushpinIcon> iconMap, // OrderedSet<String>iconKeys, 
+        boolean isFleet, boolean fleetRoute, String selID,
+        TimeZone tmz, 
+        Account acct, User user,
+        DateTime latestTime, double lastBattery, double lastSignal,
+        double minProximityM,
+        Collection<String> actions,
+        char csvSep, boolean encoded)
     {
         // {
         //   "JMapData" : {
@@ -2312,7 +2478,8 @@ public class EventUtil
                 isFleet, fleetRoute, selID,
                 tmz, dateFmt, timeFmt, 
                 csvSep,
-                minProximityM);
+                minProximityM,
+                encoded);
             // add key value
             jMapDataObj.addKeyValue(JSON_DataSets,dataSetArray);
         }
@@ -2418,7 +2585,8 @@ public class EventUtil
         TimeZone tmz, 
         String dateFmt, String timeFmt, 
         char csvSep,
-        double minProximityM)
+        double minProximityM,
+        boolean encoded)
     {
         // {
         //    "type": "device",
@@ -2442,8 +2610,12 @@ public class EventUtil
             privLabel.getBooleanProperty(BasicPrivateLabel.PROP_TrackMap_useRouteDisplayColor, true) :
             true;
 
+        /* encode device tracks? (not worthwhile for single-point fleet datasets) */
+        boolean encodeTracks = encoded && (!isFleet || fleetRoute);
+
         /* print events (JSON) */
         JSON._Array pointArray = null;
+        EncodedPoints encPoints = null;
         boolean  isDeviceData  = !isFleet;
         boolean  didStartSet   = false;
         GeoPoint lastGP        = null;
@@ -2463,6 +2635,10 @@ public class EventUtil
                 if (isFleet /*&& fleetRoute*/) {
                     if (didStartSet) {
                         // -- close previous dataset
+                        if (encPoints != null) {
+                            encPoints.finish();
+                            encPoints = null;
+                        }
                         didStartSet = false;
                     }
                     isDeviceData = true;
@@ -2592,8 +2768,13 @@ public class EventUtil
                 dataSetObj.addKeyValue(JSON_route     , isDeviceData);
                 dataSetObj.addKeyValue(JSON_routeColor, routeColor);
                 dataSetObj.addKeyValue(JSON_textColor , textColor);
-                pointArray = new JSON._Array();
-                dataSetObj.addKeyValue(JSON_Points    , pointArray);
+                if (encodeTracks) {
+                    encPoints  = new EncodedPoints(dataSetObj, tmz, timeFmt, csvSep);
+                    pointArray = null;
+                } else {
+                    pointArray = new JSON._Array();
+                    dataSetObj.addKeyValue(JSON_Points    , pointArray);
+                }
                 dataSetArray.addValue(dataSetObj);
                 didStartSet = true;
             }
@@ -2625,18 +2806,230 @@ public class EventUtil
                 iconSelector, iconMap, 
                 showFleetIcon, stoppedState,
                 tmz, dateFmt, timeFmt, csvSep);
-            pointArray.addValue(rcd);
+            if (encPoints != null) {
+                encPoints.add(rcd);
+            } else {
+                pointArray.addValue(rcd);
+            }
 
         } // looping through events
 
         /* Dataset footer */
         if (didStartSet) {
+            if (encPoints != null) {
+                encPoints.finish();
+                encPoints = null;
+            }
             didStartSet = false;
         }
 
         return true;
 
     }
+
+    // ------------------------------------------------------------------------
+
+    /* "Encoded" column types (indexed by map event record field, see "formatMapEvent") */
+    // -- S=string-table index, I=integer, D=decimal (1 place), T=time-of-day, Y/X=latitude/longitude (polyline)
+    private static final String  ENCODED_COLUMN_TYPES           = "SSISTSSIYXIIDIDDIDIIS";
+    private static final int     ENCODED_LATLON_PRECISION       = 6; // same as "formatMapEvent"
+
+    /**
+    *** Compact form of a device DataSet "Points" array.  The map event records (see
+    *** "formatMapEvent") are written column-wise: latitude/longitude as an encoded polyline,
+    *** numeric columns as delta-encoded value streams, the time column as a (local)
+    *** time-of-day stream, and all other columns as indexes into a table of distinct strings.
+    *** The records are reassembled by "jsmDecodePoints" (jsmap.js).  Any column which cannot
+    *** be reproduced exactly from its encoded form is written as a string column.
+    *** <pre>
+    ***   "Encoded": {
+    ***      "count": 2,
+    ***      "prec": 6,
+    ***      "poly": "...",
+    ***      "strs": [ "demo2", "New Device", ... ],
+    ***      "timeFmt": "HH:mm:ss",
+    ***      "cols": [ "S??", "SAA", "I...", ..., "Y", "X", ... ]
+    ***   }
+    *** </pre>
+    **/
+    private static class EncodedPoints
+    {
+        private JSON._Object            dataSetObj  = null;
+        private TimeZone                tmz         = null;
+        private String                  timeFmt     = null;
+        private String                  csvSep      = null;
+        private java.util.List<String>  records     = new Vector<String>();
+        public EncodedPoints(JSON._Object dataSetObj, TimeZone tmz, String timeFmt, char csvSep) {
+            this.dataSetObj = dataSetObj;
+            this.tmz        = (tmz != null)? tmz : DateTime.getDefaultTimeZone();
+            this.timeFmt    = timeFmt;
+            this.csvSep     = String.valueOf(csvSep);
+        }
+        public void add(String rcd) {
+            this.records.add(rcd);
+        }
+        public void finish() {
+            int n = this.records.size();
+            String fld[][] = new String[n][];
+            for (int r = 0; r < n; r++) {
+                fld[r] = this.records.get(r).split(java.util.regex.Pattern.quote(this.csvSep), -1);
+                if ((fld[r].length != fld[0].length) || (fld[r].length < ENCODED_COLUMN_TYPES.length())) {
+                    // -- inconsistent records, write as "Points"
+                    n = 0;
+                    break;
+                }
+            }
+            if (n <= 0) {
+                JSON._Array pointArray = new JSON._Array();
+                for (String rcd : this.records) {
+                    pointArray.addValue(rcd);
+                }
+                this.dataSetObj.addKeyValue(JSON_Points, pointArray);
+                return;
+            }
+            int colCount = fld[0].length;
+            OrderedMap<String,Integer> strs = new OrderedMap<String,Integer>();
+            JSON._Array cols = new JSON._Array();
+            boolean hasTime = false;
+            // -- latitude/longitude
+            double llScale = Math.pow(10.0, ENCODED_LATLON_PRECISION);
+            EncodedPolyline poly = new EncodedPolyline(ENCODED_LATLON_PRECISION);
+            long   latLon[][]    = EncodedPoints._parseColumns(fld, 8, 9, llScale);
+            if (latLon != null) {
+                for (int r = 0; r < n; r++) {
+                    poly.add((double)latLon[0][r] / llScale, (double)latLon[1][r] / llScale);
+                }
+            }
+            // -- columns
+            long epoch[] = EncodedPoints._parseColumn(fld, 2, 1.0);
+            for (int c = 0; c < colCount; c++) {
+                char type = (c < ENCODED_COLUMN_TYPES.length())? ENCODED_COLUMN_TYPES.charAt(c) : 'S';
+                EncodedPolyline.ValueStream vs = new EncodedPolyline.ValueStream();
+                if (((type == 'Y') || (type == 'X')) && (latLon != null)) {
+                    cols.addValue(String.valueOf(type));
+                    continue;
+                } else
+                if (type == 'I') {
+                    long v[] = EncodedPoints._parseColumn(fld, c, 1.0);
+                    if (v != null) {
+                        for (int r = 0; r < n; r++) { vs.add(v[r]); }
+                        cols.addValue("I" + vs.toString());
+                        continue;
+                    }
+                } else
+                if (type == 'D') {
+                    long v[] = EncodedPoints._parseColumn(fld, c, 10.0);
+                    if (v != null) {
+                        for (int r = 0; r < n; r++) { vs.add(v[r]); }
+                        cols.addValue("D" + vs.toString());
+                        continue;
+                    }
+                } else
+                if (type == 'T') {
+                    long tod[] = this._getTimeOfDay(fld, c, epoch);
+                    if (tod != null) {
+                        for (int r = 0; r < n; r++) { vs.add(tod[r]); }
+                        cols.addValue("T" + vs.toString());
+                        hasTime = true;
+                        continue;
+                    }
+                }
+                // -- string table
+                for (int r = 0; r < n; r++) {
+                    Integer ndx = strs.get(fld[r][c]);
+                    if (ndx == null) {
+                        ndx = new Integer(strs.size());
+                        strs.put(fld[r][c], ndx);
+                    }
+                    vs.add(ndx.longValue());
+                }
+                cols.addValue("S" + vs.toString());
+            }
+            // -- "Encoded" object
+            JSON._Object encObj = new JSON._Object();
+            encObj.addKeyValue(JSON_count, n);
+            if (latLon != null) {
+                encObj.addKeyValue(JSON_prec, ENCODED_LATLON_PRECISION);
+                encObj.addKeyValue(JSON_poly, poly.toString());
+            }
+            JSON._Array strArray = new JSON._Array();
+            for (String str : strs.keySet()) {
+                strArray.addValue(str);
+            }
+            encObj.addKeyValue(JSON_strs, strArray);
+            if (hasTime) {
+                encObj.addKeyValue(JSON_timeFmt, this.timeFmt);
+            }
+            encObj.addKeyValue(JSON_cols, cols);
+            this.dataSetObj.addKeyValue(JSON_Encoded, encObj);
+        }
+        /* returns the scaled column values, or null if any value is not reproduced exactly */
+        private static long[] _parseColumn(String fld[][], int c, double scale) {
+            long v[] = new long[fld.length];
+            for (int r = 0; r < fld.length; r++) {
+                String s = fld[r][c];
+                if (StringTools.isBlank(s) || !StringTools.isDouble(s,true)) {
+                    return null;
+                }
+                double d = StringTools.parseDouble(s, 0.0) * scale;
+                v[r] = Math.round(d);
+                if (Math.abs(d - (double)v[r]) > 1.0E-6) {
+                    return null; // more precision than can be encoded
+                }
+            }
+            return v;
+        }
+        private static long[][] _parseColumns(String fld[][], int c1, int c2, double scale) {
+            long v1[] = EncodedPoints._parseColumn(fld, c1, scale);
+            long v2[] = (v1 != null)? EncodedPoints._parseColumn(fld, c2, scale) : null;
+            return (v2 != null)? new long[][] { v1, v2 } : null;
+        }
+        /* returns the local time-of-day (seconds), or null if the formatted time cannot be reproduced */
+        private long[] _getTimeOfDay(String fld[][], int c, long epoch[]) {
+            if ((epoch == null) || StringTools.isBlank(this.timeFmt)) {
+                return null;
+            }
+            long tod[] = new long[fld.length];
+            for (int r = 0; r < fld.length; r++) {
+                if (epoch[r] <= 0L) {
+                    if (!fld[r][c].equals("")) { return null; }
+                    tod[r] = 0L;
+                } else {
+                    long local = epoch[r] + (this.tmz.getOffset(epoch[r] * 1000L) / 1000L);
+                    tod[r] = ((local % DateTime.DaySeconds(1)) + DateTime.DaySeconds(1)) % DateTime.DaySeconds(1);
+                    String t = EncodedPoints._formatTimeOfDay((int)tod[r], this.timeFmt);
+                    if ((t == null) || !t.equals(fld[r][c])) { return null; }
+                }
+            }
+            return tod;
+        }
+        /* formats the time-of-day (only 'H', 'h', 'm', 's', and 'a' are supported, see "jsmFormatTimeOfDay") */
+        private static String _formatTimeOfDay(int tod, String fmt) {
+            int H = tod / 3600, M = (tod / 60) % 60, S = tod % 60;
+            StringBuffer sb = new StringBuffer();
+            for (int i = 0; i < fmt.length();) {
+                char ch = fmt.charAt(i);
+                int  r  = 1;
+                while (((i + r) < fmt.length()) && (fmt.charAt(i + r) == ch)) { r++; }
+                int v;
+                switch (ch) {
+                    case 'H': v = H;                                break;
+                    case 'h': v = ((H % 12) == 0)? 12 : (H % 12);   break;
+                    case 'm': v = M;                                break;
+                    case 's': v = S;                                break;
+                    case 'a': if (r != 1) { return null; } sb.append((H < 12)? "AM" : "PM"); i += r; continue;
+                    default :
+                        if (Character.isLetter(ch) || (ch == '\'')) { return null; }
+                        sb.append(fmt, i, i + r); i += r; continue;
+                }
+                if (r > 2) { return null; }
+                if ((r == 2) && (v < 10)) { sb.append('0'); }
+                sb.append(v);
+                i += r;
+            }
+            return sb.toString();
+        }
+    }
     
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -3670,6 +4063,677 @@ public class EventUtil
         
     }
 
+    // ------------------------------------------------------------------------
+    // Streaming event output
+    // Events are read from the database in pages (keyset paging on the event
+    // timestamp/statusCode), and each page is formatted and flushed to the client
+    // before the next page is read, so the response size is not limited by the
+    // available memory.  A response may also be limited to a maximum number of
+    // events, in which case a continuation "cursor" token is included in the
+    // response trailer, which may be passed back to resume after the last
+    // event written.  If an error occurs after the response has been started,
+    // an error marker, and the cursor of the last event written, are included
+    // in the trailer.
+    // ------------------------------------------------------------------------
+
+    public  static final long    STREAM_PAGE_SIZE               = 500L;
+
+    public  static final String  JSON_Cursor                    = "Cursor";
+    public  static final String  TAG_Cursor                     = "Cursor";
+    public  static final String  CSV_Cursor                     = "#Cursor=";
+    public  static final String  TAG_StreamError                = "Error";
+    public  static final String  CSV_Error                      = "#Error=";
+
+    /**
+    *** Event stream continuation cursor.  Identifies the last event written to a
+    *** response (device, timestamp, status code).
+    **/
+    public static class StreamCursor
+    {
+        private String deviceID   = null;
+        private long   timestamp  = 0L;
+        private int    statusCode = 0;
+        public StreamCursor(String deviceID, long timestamp, int statusCode) {
+            this.deviceID   = StringTools.trim(deviceID);
+            this.timestamp  = timestamp;
+            this.statusCode = statusCode;
+        }
+        public String getDeviceID() {
+            return this.deviceID;
+        }
+        public long getTimestamp() {
+            return this.timestamp;
+        }
+        public int getStatusCode() {
+            return this.statusCode;
+        }
+        /**
+        *** Returns the opaque continuation token for this cursor
+        **/
+        public String toToken() {
+            String s = this.deviceID + "," + Long.toHexString(this.timestamp) + "," + Integer.toHexString(this.statusCode);
+            return StringTools.toHexString(StringTools.getBytes(s));
+        }
+        public String toString() {
+            return this.deviceID + "/" + this.timestamp + "/" + StatusCodes.GetHex(this.statusCode);
+        }
+        /**
+        *** Parses the specified continuation token
+        *** @return The StreamCursor, or null if the token is invalid
+        **/
+        public static StreamCursor parseToken(String token) {
+            if (StringTools.isBlank(token)) {
+                return null;
+            }
+            byte b[] = StringTools.parseHex(token.trim(), null);
+            if (ListTools.isEmpty(b)) {
+                return null;
+            }
+            // -- "deviceID,timestamp,statusCode" (deviceID may contain ',')
+            String s = StringTools.toStringValue(b);
+            int p2 = s.lastIndexOf(',');
+            int p1 = (p2 > 0)? s.lastIndexOf(',', p2 - 1) : -1;
+            if (p1 <= 0) {
+                return null;
+            }
+            long ts = StringTools.parseHexLong(s.substring(p1 + 1, p2), -1L);
+            int  sc = StringTools.parseHexInt(s.substring(p2 + 1), -1);
+            if ((ts < 0L) || (sc < 0)) {
+                return null;
+            }
+            return new StreamCursor(s.substring(0, p1), ts, sc);
+        }
+    }
+
+    /* EventData fields read by the XML/JSON streamed event formats */
+    private static final String STREAM_EVENT_FIELDS[] = new String[] {
+        EventData.FLD_latitude,
+        EventData.FLD_longitude,
+        EventData.FLD_gpsAge,
+        EventData.FLD_speedKPH,
+        EventData.FLD_heading,
+        EventData.FLD_altitude,
+        EventData.FLD_odometerKM,
+        EventData.FLD_odometerOffsetKM,
+        EventData.FLD_geozoneID,
+        EventData.FLD_geozoneIndex,
+        EventData.FLD_address,
+        EventData.FLD_city,
+        EventData.FLD_postalCode,
+        EventData.FLD_speedLimitKPH,
+        EventData.FLD_inputMask,
+        EventData.FLD_driverID,
+        EventData.FLD_driverMessage,
+        EventData.FLD_fuelTotal,
+        EventData.FLD_engineRpm,
+        EventData.FLD_engineHours,
+        EventData.FLD_vBatteryVolts,
+        EventData.FLD_coolantLevel,
+        EventData.FLD_coolantTemp,
+        EventData.FLD_cellLatitude,
+        EventData.FLD_cellLongitude,
+        EventData.FLD_cellAccuracy,
+        EventData.FLD_horzAccuracy,
+    };
+
+    /* EventData fields read by the KML streamed event format */
+    private static final String STREAM_KML_FIELDS[] = new String[] {
+        EventData.FLD_latitude,
+        EventData.FLD_longitude,
+        EventData.FLD_speedKPH,
+        EventData.FLD_heading,
+        EventData.FLD_altitude,
+        EventData.FLD_address,
+        EventData.FLD_odometerKM,
+        EventData.FLD_odometerOffsetKM,
+    };
+
+    /**
+    *** Streamed output format
+    **/
+    private abstract class StreamFormat
+    {
+        protected PrintWriter       pwout     = null;
+        protected Account           account   = null;
+        protected boolean           allTags   = false;
+        protected TimeZone          dispTmz   = null;
+        protected BasicPrivateLabel privLabel = null;
+        public StreamFormat(PrintWriter pwout, Account account, boolean allTags, TimeZone dispTmz, BasicPrivateLabel privLabel) {
+            this.pwout     = pwout;
+            this.account   = account;
+            this.allTags   = allTags;
+            this.dispTmz   = (dispTmz != null)? dispTmz : account.getTimeZone(null);
+            this.privLabel = privLabel;
+        }
+        protected String getTimeZoneString() {
+            String tzStr = this.account.getTimeZone();
+            return !StringTools.isBlank(tzStr)? tzStr : DateTime.GMT_TIMEZONE;
+        }
+        public abstract void writeHeader() throws IOException;
+        public abstract void startDevice(Device dev) throws IOException;
+        public abstract void writeEvent(Device dev, EventData ev, int index, boolean isLast) throws IOException;
+        public abstract void endDevice(Device dev, int count) throws IOException;
+        public abstract void writeTrailer(String cursor, String error) throws IOException;
+        public Set<String> getEventFields() {
+            return null; // -- all fields
+        }
+    }
+
+    /* CSV */
+    private class StreamFormat_CSV
+        extends StreamFormat
+    {
+        private String evFields[] = null;
+        private String dateFmt    = null;
+        private String timeFmt    = null;
+        public StreamFormat_CSV(PrintWriter pwout, Account account, boolean allTags, TimeZone dispTmz, BasicPrivateLabel privLabel) {
+            super(pwout, account, allTags, dispTmz, privLabel);
+            this.evFields = EventUtil.this.getFields_CSV(allTags);
+            this.dateFmt  = account.getDateFormat();
+            this.timeFmt  = account.getTimeFormat();
+        }
+        public void writeHeader() throws IOException {
+            EventUtil.this.write(this.pwout, EventUtil.this.formatHeader_CSV(this.evFields,',') + "\n");
+        }
+        public Set<String> getEventFields() {
+            return EventData.getSelectFields(this.evFields);
+        }
+        public void startDevice(Device dev) throws IOException {
+            // -- no device header
+        }
+        public void writeEvent(Device dev, EventData ev, int index, boolean isLast) throws IOException {
+            String rcd = EventUtil.this.formatEventData_CSV(ev, this.evFields, 
+                this.dispTmz, this.dateFmt, this.timeFmt, ',') + "\n";
+            EventUtil.this.write(this.pwout, rcd);
+        }
+        public void endDevice(Device dev, int count) throws IOException {
+            // -- no device footer
+        }
+        public void writeTrailer(String cursor, String error) throws IOException {
+            if (error != null) {
+                EventUtil.this.write(this.pwout, CSV_Error + error + "\n");
+            }
+            if (cursor != null) {
+                EventUtil.this.write(this.pwout, CSV_Cursor + cursor + "\n");
+            }
+        }
+    }
+
+    /* XML */
+    private class StreamFormat_XML
+        extends StreamFormat
+    {
+        private boolean oldFormat = false;
+        private boolean devOpen   = false;
+        public StreamFormat_XML(PrintWriter pwout, Account account, boolean allTags, TimeZone dispTmz, BasicPrivateLabel privLabel, boolean oldFormat) {
+            super(pwout, account, allTags, dispTmz, privLabel);
+            this.oldFormat = oldFormat;
+        }
+        public void writeHeader() throws IOException {
+            EventUtil.this.writeEvents_XML_TopTag(this.pwout, this.account, this.getTimeZoneString(), true/*startTag*/, this.oldFormat);
+        }
+        public Set<String> getEventFields() {
+            return EventData.getSelectFields(STREAM_EVENT_FIELDS);
+        }
+        public void startDevice(Device dev) throws IOException {
+            this.devOpen = false; // -- deferred until first event
+        }
+        public void writeEvent(Device dev, EventData ev, int index, boolean isLast) throws IOException {
+            if (!this.devOpen && !this.oldFormat) {
+                String PFX1 = XMLTools.PREFIX(false, 1);
+                String PFX2 = XMLTools.PREFIX(false, 2);
+                EventUtil.this.write(this.pwout, PFX1);
+                EventUtil.this.write(this.pwout, XMLTools.startTAG(false,TAG_Device,
+                    XMLTools.ATTR("id",dev.getDeviceID()),
+                    false/*endTag*/,true/*newLine*/));
+                EventUtil.this.write(this.pwout, PFX2);
+                EventUtil.this.write(this.pwout, XMLTools.startTAG(false,TAG_Description,
+                    null,
+                    false/*endTag*/,false/*newLine*/));
+                EventUtil.this.write(this.pwout, XMLTools.CDATA(false,dev.getDescription()));
+                EventUtil.this.write(this.pwout, XMLTools.endTAG(false,TAG_Description,true));
+            }
+            this.devOpen = true;
+            EventUtil.this.writeEvents_XML_Event(this.pwout, 
+                dev, ev,
+                2, this.allTags,
+                this.privLabel, this.oldFormat);
+        }
+        public void endDevice(Device dev, int count) throws IOException {
+            if (this.devOpen && !this.oldFormat) {
+                EventUtil.this.write(this.pwout, XMLTools.PREFIX(false, 1));
+                EventUtil.this.write(this.pwout, XMLTools.endTAG(false,TAG_Device,true));
+            }
+            this.devOpen = false;
+        }
+        public void writeTrailer(String cursor, String error) throws IOException {
+            if (error != null) {
+                EventUtil.this.write(this.pwout, XMLTools.PREFIX(false, 1));
+                EventUtil.this.write(this.pwout, XMLTools.startTAG(false,TAG_StreamError,
+                    null,
+                    false/*endTag*/,false/*newLine*/));
+                EventUtil.this.write(this.pwout, XMLTools.CDATA(false,error));
+                EventUtil.this.write(this.pwout, XMLTools.endTAG(false,TAG_StreamError,true));
+            }
+            if (cursor != null) {
+                EventUtil.this.write(this.pwout, XMLTools.PREFIX(false, 1));
+                EventUtil.this.write(this.pwout, XMLTools.startTAG(false,TAG_Cursor,
+                    null,
+                    false/*endTag*/,false/*newLine*/));
+                EventUtil.this.write(this.pwout, cursor);
+                EventUtil.this.write(this.pwout, XMLTools.endTAG(false,TAG_Cursor,true));
+            }
+            EventUtil.this.writeEvents_XML_TopTag(this.pwout, null, null, false/*startTag*/, this.oldFormat);
+        }
+    }
+
+    /* JSON */
+    private class StreamFormat_JSON
+        extends StreamFormat
+    {
+        private String  PFX0     = "";
+        private String  PFX1     = StringTools.replicateString(JSON_INDENT,1);
+        private String  PFX2     = StringTools.replicateString(JSON_INDENT,2);
+        private String  PFX3     = StringTools.replicateString(JSON_INDENT,3);
+        private int     devCount = 0;
+        public StreamFormat_JSON(PrintWriter pwout, Account account, boolean allTags, TimeZone dispTmz, BasicPrivateLabel privLabel) {
+            super(pwout, account, allTags, dispTmz, privLabel);
+        }
+        public void writeHeader() throws IOException {
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX0,"{"           , null, true);
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX1,"Account"     , this.account.getAccountID(), false);
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX1,"Account_desc", this.account.getDescription(), false);
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX1,"TimeZone"    , this.getTimeZoneString(), false);
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX1,"DeviceList"  , "[", true);
+        }
+        public Set<String> getEventFields() {
+            return EventData.getSelectFields(STREAM_EVENT_FIELDS);
+        }
+        public void startDevice(Device dev) throws IOException {
+            // -- the device separator is written when the next device is started
+            if (this.devCount++ > 0) {
+                EventUtil.this.write(this.pwout, ",\n");
+            }
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX2,"{", null, true);
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX3,"Device", dev.getDeviceID(), false);
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX3,"Device_desc", dev.getDescription(), false);
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX3,"EventData", "[", true);
+        }
+        public void writeEvent(Device dev, EventData ev, int index, boolean isLast) throws IOException {
+            EventUtil.this.writeEvents_JSON_Event(this.pwout, index, ev, isLast, 4, this.allTags, this.privLabel);
+        }
+        public void endDevice(Device dev, int count) throws IOException {
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX3,"]", null, true);
+            EventUtil.this.write(this.pwout, PFX2 + "}");
+        }
+        public void writeTrailer(String cursor, String error) throws IOException {
+            if (this.devCount > 0) {
+                EventUtil.this.write(this.pwout, "\n");
+            }
+            if (error != null) {
+                EventUtil.this.write(this.pwout, PFX1 + "],\n");
+                EventUtil.this.writeKeyValue_JSON(this.pwout,PFX1,JSON_Error, error, (cursor == null));
+                if (cursor != null) {
+                    EventUtil.this.writeKeyValue_JSON(this.pwout,PFX1,JSON_Cursor, cursor, true);
+                }
+            } else
+            if (cursor != null) {
+                EventUtil.this.write(this.pwout, PFX1 + "],\n");
+                EventUtil.this.writeKeyValue_JSON(this.pwout,PFX1,JSON_Cursor, cursor, true);
+            } else {
+                EventUtil.this.writeKeyValue_JSON(this.pwout,PFX1,"]", null, true);
+            }
+            EventUtil.this.writeKeyValue_JSON(this.pwout,PFX0,"}", null, true);
+        }
+    }
+
+    /* KML */
+    private class StreamFormat_KML
+        extends StreamFormat
+    {
+        private boolean                useLastPP = false;
+        private java.util.List<String> routeList = new Vector<String>();
+        public StreamFormat_KML(PrintWriter pwout, Account account, boolean allTags, TimeZone dispTmz, BasicPrivateLabel privLabel) {
+            super(pwout, account, allTags, dispTmz, privLabel);
+        }
+        public void writeHeader() throws IOException {
+            this.useLastPP = GoogleKML.getInstance().writeHeader(this.pwout, this.privLabel);
+        }
+        public Set<String> getEventFields() {
+            return EventData.getSelectFields(STREAM_KML_FIELDS);
+        }
+        public void startDevice(Device dev) throws IOException {
+            this.routeList.clear();
+        }
+        public void writeEvent(Device dev, EventData ev, int index, boolean isLast) throws IOException {
+            String pc = GoogleKML.getInstance().writePlacemark(this.pwout, this.privLabel, ev, isLast, this.useLastPP);
+            this.routeList.add(pc);
+        }
+        public void endDevice(Device dev, int count) throws IOException {
+            GoogleKML.getInstance().writeRoute(this.pwout, this.privLabel, dev.getDeviceID(), this.routeList);
+            this.routeList.clear();
+        }
+        public void writeTrailer(String cursor, String error) throws IOException {
+            if ((cursor != null) || (error != null)) {
+                EventUtil.this.write(this.pwout, "<ExtendedData>\n");
+                if (error != null) {
+                    EventUtil.this.write(this.pwout, "  <Data name=\"" + TAG_StreamError + "\"><value>" + StringTools.htmlFilterText(error) + "</value></Data>\n");
+                }
+                if (cursor != null) {
+                    EventUtil.this.write(this.pwout, "  <Data name=\"" + TAG_Cursor + "\"><value>" + cursor + "</value></Data>\n");
+                }
+                EventUtil.this.write(this.pwout, "</ExtendedData>\n");
+            }
+            GoogleKML.getInstance().writeFooter(this.pwout);
+        }
+    }
+
+    /**
+    *** Returns true if the specified output format supports streamed output
+    *** (see "writeEventStream")
+    **/
+    public static boolean isStreamFormat(int formatEnum)
+    {
+        switch (formatEnum) {
+            case EventUtil.FORMAT_TXT:
+            case EventUtil.FORMAT_CSV:
+            case EventUtil.FORMAT_KML:
+            case EventUtil.FORMAT_XML:
+            case EventUtil.FORMAT_XMLOLD:
+            case EventUtil.FORMAT_JSON:
+            case EventUtil.FORMAT_JSONX:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private StreamFormat getStreamFormat(PrintWriter pwout, 
+        Account account, int formatEnum, boolean allTags, TimeZone dispTmz, 
+        BasicPrivateLabel privLabel)
+    {
+        switch (formatEnum) {
+            case EventUtil.FORMAT_TXT:
+            case EventUtil.FORMAT_CSV:
+                return new StreamFormat_CSV(pwout, account, allTags, dispTmz, privLabel);
+            case EventUtil.FORMAT_KML:
+                return new StreamFormat_KML(pwout, account, allTags, dispTmz, privLabel);
+            case EventUtil.FORMAT_XML:
+            case EventUtil.FORMAT_XMLOLD:
+                return new StreamFormat_XML(pwout, account, allTags, dispTmz, privLabel, (formatEnum == EventUtil.FORMAT_XMLOLD));
+            case EventUtil.FORMAT_JSON:
+            case EventUtil.FORMAT_JSONX:
+                return new StreamFormat_JSON(pwout, account, allTags, dispTmz, privLabel);
+            default:
+                return null;
+        }
+    }
+
+    /**
+    *** Writes the events for the specified devices as they are read from the database.
+    *** Events are read in ascending timestamp order, in pages of STREAM_PAGE_SIZE events,
+    *** and the output is flushed after each page.
+    *** @param pwout       The output PrintWriter
+    *** @param account     The Account
+    *** @param devList     The list of Devices (in output order)
+    *** @param startTime   The range start time (-1 for no start time)
+    *** @param endTime     The range end time (-1 for no end time)
+    *** @param validGPS    True to include only events with a valid GPS location
+    *** @param limit       The maximum number of events written to this response (&lt;=0 for no limit)
+    *** @param cursor      The continuation cursor returned by a previous response (null to start 
+    ***                    at the first device)
+    *** @param formatEnum  The output format (see "isStreamFormat")
+    *** @param allTags     True to include all event fields
+    *** @param dispTmz     The display TimeZone (null for the Account TimeZone)
+    *** @param privLabel   The BasicPrivateLabel
+    *** @return The continuation cursor if the 'limit' was reached, or null if all events 
+    ***         have been written
+    *** @throws DBException if an error occurred reading the events.  The error marker, and
+    ***         the cursor of the last event written, have been written to the trailer.
+    *** @throws IOException if an error occurred writing the events.  An attempt is made to
+    ***         write the error marker, and the cursor of the last event written, to the trailer.
+    **/
+    public StreamCursor writeEventStream(PrintWriter pwout, 
+        Account account, Collection<Device> devList,
+        long startTime, long endTime, boolean validGPS,
+        long limit, StreamCursor cursor,
+        int formatEnum, boolean allTags, TimeZone dispTmz, 
+        BasicPrivateLabel privLabel)
+        throws IOException, DBException
+    {
+
+        /* account required */
+        if (account == null) {
+            return null;
+        }
+        String accountID = account.getAccountID();
+
+        /* format */
+        StreamFormat fmt = this.getStreamFormat(pwout, account, formatEnum, allTags, dispTmz, privLabel);
+        if (fmt == null) {
+            Print.logError("Streaming not supported for data format: " + formatEnum);
+            return null;
+        }
+
+        /* header */
+        fmt.writeHeader();
+
+        /* devices */
+        StreamCursor next = null;
+        DBException  readError  = null;
+        IOException  writeError = null;
+        if (!ListTools.isEmpty(devList)) {
+            String resumeDevID = (cursor != null)? cursor.getDeviceID() : null;
+            long   count       = 0L;
+            for (Device dev : devList) {
+                String deviceID = dev.getDeviceID();
+
+                /* check account ID */
+                if (!dev.getAccountID().equals(accountID)) {
+                    // -- mismatched AccountID
+                    continue;
+                }
+
+                /* resume after cursor */
+                long afterTS = -1L;
+                int  afterSC = 0;
+                if (resumeDevID != null) {
+                    if (!resumeDevID.equals(deviceID)) {
+                        // -- device already written by a previous response
+                        continue;
+                    }
+                    resumeDevID = null;
+                    afterTS = cursor.getTimestamp();
+                    afterSC = cursor.getStatusCode();
+                }
+
+                /* device events */
+                // -- each event is written when the next is read, so that the last event is known
+                long      lastTS   = Math.max(afterTS, 0L); // last event written (cursor on error)
+                int       lastSC   = afterSC;
+                EventData pending  = null;
+                int       devCount = 0;
+                boolean   limitReached = false;
+                try {
+                    fmt.startDevice(dev);
+                    try {
+                        for (;;) {
+                            long pageSize = STREAM_PAGE_SIZE;
+                            if (limit > 0L) {
+                                pageSize = Math.min(pageSize, limit - count);
+                            }
+                            EventData page[] = EventData.getEventsAfter(
+                                accountID, deviceID,
+                                afterTS, afterSC,
+                                startTime, endTime,
+                                validGPS,
+                                pageSize,
+                                fmt.getEventFields());
+                            for (EventData ev : page) {
+                                ev.setAccount(account);
+                                ev.setDevice(dev);
+                                if (pending != null) {
+                                    fmt.writeEvent(dev, pending, devCount++, false);
+                                    lastTS = pending.getTimestamp();
+                                    lastSC = pending.getStatusCode();
+                                }
+                                pending = ev;
+                                afterTS = ev.getTimestamp();
+                                afterSC = ev.getStatusCode();
+                                count++;
+                            }
+                            this.flush(pwout);
+                            if ((limit > 0L) && (count >= limit)) {
+                                limitReached = true;
+                                break;
+                            } else
+                            if (page.length < pageSize) {
+                                // -- no more events for this device
+                                break;
+                            }
+                        }
+                    } catch (DBException dbe) {
+                        // -- write the events read so far, then stop
+                        readError = dbe;
+                    }
+                    if (pending != null) {
+                        fmt.writeEvent(dev, pending, devCount++, true);
+                        lastTS = pending.getTimestamp();
+                        lastSC = pending.getStatusCode();
+                    }
+                    fmt.endDevice(dev, devCount);
+                } catch (IOException ioe) {
+                    writeError = ioe;
+                }
+
+                /* error? */
+                if ((readError != null) || (writeError != null)) {
+                    // -- resume after the last event written
+                    next = new StreamCursor(deviceID, lastTS, lastSC);
+                    break;
+                }
+
+                /* limit reached? */
+                if (limitReached) {
+                    next = new StreamCursor(deviceID, afterTS, afterSC);
+                    break;
+                }
+
+            }
+            if (resumeDevID != null) {
+                Print.logWarn("Stream cursor device not found: " + cursor);
+            }
+        }
+
+        /* trailer */
+        String nextTok = (next != null)? next.toToken() : null;
+        if (readError != null) {
+            fmt.writeTrailer(nextTok, "Error reading events");
+            this.flush(pwout);
+            throw readError;
+        } else
+        if (writeError != null) {
+            try {
+                fmt.writeTrailer(nextTok, "Error writing events");
+                this.flush(pwout);
+            } catch (IOException ioe) {
+                // -- ignore (the response is likely closed)
+            }
+            throw writeError;
+        }
+        fmt.writeTrailer(nextTok, null);
+        this.flush(pwout);
+        return next;
+
+    }
+
+    /**
+    *** Writes the specified list of events, grouped by device in the order in which the
+    *** events are listed, followed by the specified continuation cursor token.
+    *** @param pwout       The output PrintWriter
+    *** @param account     The Account
+    *** @param devList     The Devices to which the events belong (events for other devices are skipped)
+    *** @param evList      The events to write (consecutive events for the same device are grouped)
+    *** @param cursor      The cursor token written to the trailer (may be null)
+    *** @param formatEnum  The output format (see "isStreamFormat")
+    *** @param allTags     True to include all event fields
+    *** @param dispTmz     The display TimeZone (null for the Account TimeZone)
+    *** @param privLabel   The BasicPrivateLabel
+    *** @return True if the events were written
+    **/
+    public boolean writeEventList(PrintWriter pwout, 
+        Account account, Collection<Device> devList,
+        EventData evList[], String cursor,
+        int formatEnum, boolean allTags, TimeZone dispTmz, 
+        BasicPrivateLabel privLabel)
+        throws IOException
+    {
+
+        /* account required */
+        if (account == null) {
+            return false;
+        }
+        String accountID = account.getAccountID();
+
+        /* format */
+        StreamFormat fmt = this.getStreamFormat(pwout, account, formatEnum, allTags, dispTmz, privLabel);
+        if (fmt == null) {
+            Print.logError("Unsupported data format: " + formatEnum);
+            return false;
+        }
+
+        /* devices */
+        Map<String,Device> devMap = new HashMap<String,Device>();
+        if (devList != null) {
+            for (Device dev : devList) {
+                if (dev.getAccountID().equals(accountID)) {
+                    devMap.put(dev.getDeviceID(), dev);
+                }
+            }
+        }
+
+        /* events */
+        fmt.writeHeader();
+        if (evList != null) {
+            Device dev = null;
+            int devCount = 0;
+            for (int e = 0; e < evList.length; e++) {
+                EventData ev = evList[e];
+
+                /* device */
+                if ((dev == null) || !dev.getDeviceID().equals(ev.getDeviceID())) {
+                    if (dev != null) {
+                        fmt.endDevice(dev, devCount);
+                    }
+                    dev = devMap.get(ev.getDeviceID());
+                    devCount = 0;
+                    if (dev == null) {
+                        // -- device not in list
+                        continue;
+                    }
+                    fmt.startDevice(dev);
+                }
+
+                /* event */
+                EventData nextEv = ((e + 1) < evList.length)? evList[e + 1] : null;
+                boolean isLast = (nextEv == null) || !nextEv.getDeviceID().equals(ev.getDeviceID());
+                ev.setAccount(account);
+                ev.setDevice(dev);
+                fmt.writeEvent(dev, ev, devCount++, isLast);
+
+            }
+            if (dev != null) {
+                fmt.endDevice(dev, devCount);
+            }
+        }
+
+        /* trailer */
+        fmt.writeTrailer(cursor, null);
+        this.flush(pwout);
+        return true;
+
+    }
+
     // ------------------------------------------------------------------------
 
     public boolean writeEvents(OutputStream out, 
@@ -0,0 +1,519 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Incrementally maintained multi-level grid of device positions, used to
+//  cluster fleet map pushpins on the server.
+//  - Each level corresponds to a map zoom level, and divides the Web-Mercator
+//    world into cells of 64x64 pixels (a quarter of a 256 pixel map tile).
+//  - Each cell maintains the count, coordinate sums (for the centroid), and
+//    status-code counts of the devices it contains, so that a cluster query only
+//    visits the occupied cells within the map viewport, regardless of the number
+//    of devices in the fleet.
+//  - Moving a device updates one cell per level.
+// ----------------------------------------------------------------------------
+package org.opengts.db;
+
+import java.util.*;
+
+import org.opengts.util.*;
+
+public class FleetClusterGrid
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final int    CELL_ZOOM_OFFSET        = 2;    // 64 pixel cells (256 >> 2)
+    public  static final int    MAX_CLUSTER_ZOOM        = 18;   // devices are not clustered above this zoom
+    private static final int    MAX_LEVEL               = MAX_CLUSTER_ZOOM + CELL_ZOOM_OFFSET;
+
+    public  static final int    MIN_CLUSTER_SIZE        = 2;
+
+    public  static final int    DEFAULT_FRAME_WIDTH     = 1280; // assumed map size when no viewport is specified
+    public  static final int    DEFAULT_FRAME_HEIGHT    = 1024;
+
+    private static final double MAX_MERCATOR_LATITUDE   = 85.05112878;
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns the cell X index of the specified longitude at the specified level
+    **/
+    private static int _cellX(double lon, int level)
+    {
+        int n = 1 << level;
+        int x = (int)Math.floor(((lon + 180.0) / 360.0) * n);
+        return (x < 0)? 0 : (x >= n)? (n - 1) : x;
+    }
+
+    /**
+    *** Returns the cell Y index of the specified latitude at the specified level
+    **/
+    private static int _cellY(double lat, int level)
+    {
+        int n = 1 << level;
+        if (lat >  MAX_MERCATOR_LATITUDE) { lat =  MAX_MERCATOR_LATITUDE; }
+        if (lat < -MAX_MERCATOR_LATITUDE) { lat = -MAX_MERCATOR_LATITUDE; }
+        double latR = lat * GeoPoint.RADIANS;
+        double merc = Math.log(Math.tan(latR) + (1.0 / Math.cos(latR)));
+        int y = (int)Math.floor(((1.0 - (merc / Math.PI)) / 2.0) * n);
+        return (y < 0)? 0 : (y >= n)? (n - 1) : y;
+    }
+
+    /**
+    *** Returns the cell key for the specified cell indices
+    **/
+    private static long _cellKey(int x, int y)
+    {
+        return ((long)x << 32) | ((long)y & 0xFFFFFFFFL);
+    }
+
+    /**
+    *** Returns true if the specified bounds is a valid map viewport.  Unlike
+    *** "GeoBounds.isValid", the minimum longitude may be greater than the maximum
+    *** longitude (ie. the viewport crosses the anti-meridian).
+    **/
+    public static boolean IsValidViewport(GeoBounds vp)
+    {
+        if (vp == null) {
+            return false;
+        }
+        double minLat = vp.getMinLatitude(), maxLat = vp.getMaxLatitude();
+        double minLon = vp.getMinLongitude(), maxLon = vp.getMaxLongitude();
+        return (minLat >=  -90.0) && (maxLat <=  90.0) && (minLat < maxLat) &&
+               (minLon >= -180.0) && (maxLon <= 180.0) && (minLon != maxLon);
+    }
+
+    /**
+    *** Returns the width (meters) of a cell at the specified zoom level and latitude
+    **/
+    public static double GetCellMeters(int zoom, double lat)
+    {
+        return TrackSimplifier.GetMetersPerPixel(zoom, lat) * (256 >> CELL_ZOOM_OFFSET);
+    }
+
+    /**
+    *** Returns the largest zoom level at which the specified bounds fit within a map
+    *** of the specified size
+    *** @param bounds    The bounds to fit
+    *** @param widthPx   The map width (pixels)
+    *** @param heightPx  The map height (pixels)
+    *** @return The zoom level
+    **/
+    public static int GetZoomToFit(GeoBounds bounds, int widthPx, int heightPx)
+    {
+        if ((bounds == null) || !bounds.isValid()) {
+            return 0;
+        }
+        for (int zoom = MAX_CLUSTER_ZOOM; zoom > 0; zoom--) {
+            int level = zoom + 8; // pixel level (256 pixel tiles)
+            int spanX = _cellX(bounds.getMaxLongitude(),level) - _cellX(bounds.getMinLongitude(),level);
+            int spanY = _cellY(bounds.getMinLatitude() ,level) - _cellY(bounds.getMaxLatitude() ,level);
+            if ((spanX <= widthPx) && (spanY <= heightPx)) {
+                return zoom;
+            }
+        }
+        return 0;
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Cluster of devices
+    **/
+    public static class Cluster
+    {
+        private double latitude   = 0.0;
+        private double longitude  = 0.0;
+        private int    count      = 0;
+        private int    statusCode = StatusCodes.STATUS_NONE;
+        private double radiusM    = 0.0;
+        public Cluster(double lat, double lon, int count, int statusCode, double radiusM) {
+            this.latitude   = lat;
+            this.longitude  = lon;
+            this.count      = count;
+            this.statusCode = statusCode;
+            this.radiusM    = radiusM;
+        }
+        public double getLatitude() {
+            return this.latitude;
+        }
+        public double getLongitude() {
+            return this.longitude;
+        }
+        /* number of devices in this cluster */
+        public int getCount() {
+            return this.count;
+        }
+        /* most frequent last status-code of the devices in this cluster */
+        public int getStatusCode() {
+            return this.statusCode;
+        }
+        /* suggested display radius (meters) */
+        public double getRadiusMeters() {
+            return this.radiusM;
+        }
+    }
+
+    /**
+    *** Cluster query result
+    **/
+    public static class Result
+    {
+        private int                         zoom        = 0;
+        private java.util.List<Cluster>     clusters    = new Vector<Cluster>();
+        private java.util.List<String>      deviceIDs   = new Vector<String>();
+        public Result(int zoom) {
+            this.zoom = zoom;
+        }
+        /* zoom level at which the clusters were computed */
+        public int getZoom() {
+            return this.zoom;
+        }
+        /* device clusters */
+        public java.util.List<Cluster> getClusters() {
+            return this.clusters;
+        }
+        /* devices displayed individually (inside the viewport only) */
+        public java.util.List<String> getDeviceIDs() {
+            return this.deviceIDs;
+        }
+        /* total number of devices in clusters */
+        public int getClusteredCount() {
+            int count = 0;
+            for (Cluster c : this.clusters) {
+                count += c.getCount();
+            }
+            return count;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Device position
+    **/
+    private static class Position
+    {
+        private String deviceID   = null;
+        private double latitude   = 0.0;
+        private double longitude  = 0.0;
+        private long   timestamp  = 0L;
+        private int    statusCode = StatusCodes.STATUS_NONE;
+        public Position(String devID, double lat, double lon, long ts, int code) {
+            this.deviceID   = devID;
+            this.latitude   = lat;
+            this.longitude  = lon;
+            this.timestamp  = ts;
+            this.statusCode = code;
+        }
+    }
+
+    /**
+    *** Grid cell
+    **/
+    private static class Cell
+    {
+        private int                     count       = 0;
+        private double                  sumLat      = 0.0;
+        private double                  sumLon      = 0.0;
+        private Map<Integer,int[]>      statusCount = new HashMap<Integer,int[]>();
+        private Set<String>             deviceIDs   = new HashSet<String>();
+        public void add(Position p) {
+            if (this.deviceIDs.add(p.deviceID)) {
+                this.count++;
+                this.sumLat += p.latitude;
+                this.sumLon += p.longitude;
+                Integer sc = new Integer(p.statusCode);
+                int cnt[] = this.statusCount.get(sc);
+                if (cnt == null) {
+                    cnt = new int[1];
+                    this.statusCount.put(sc, cnt);
+                }
+                cnt[0]++;
+            }
+        }
+        public void remove(Position p) {
+            if (this.deviceIDs.remove(p.deviceID)) {
+                this.count--;
+                this.sumLat -= p.latitude;
+                this.sumLon -= p.longitude;
+                Integer sc = new Integer(p.statusCode);
+                int cnt[] = this.statusCount.get(sc);
+                if ((cnt != null) && (--cnt[0] <= 0)) {
+                    this.statusCount.remove(sc);
+                }
+            }
+        }
+        public boolean isEmpty() {
+            return (this.count <= 0);
+        }
+        public int getDominantStatusCode() {
+            int code = StatusCodes.STATUS_NONE, max = 0;
+            for (Map.Entry<Integer,int[]> e : this.statusCount.entrySet()) {
+                if (e.getValue()[0] > max) {
+                    max  = e.getValue()[0];
+                    code = e.getKey().intValue();
+                }
+            }
+            return code;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private Map<String,Position>    positions   = new HashMap<String,Position>();
+    private Map<Long,Cell>          levels[]    = null;
+
+    /**
+    *** Constructor
+    **/
+    @SuppressWarnings("unchecked")
+    public FleetClusterGrid()
+    {
+        super();
+        this.levels = new Map[MAX_LEVEL + 1];
+        for (int L = 0; L < this.levels.length; L++) {
+            this.levels[L] = new HashMap<Long,Cell>();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the number of devices in this grid
+    **/
+    public synchronized int size()
+    {
+        return this.positions.size();
+    }
+
+    /**
+    *** Sets the position of the specified device
+    *** @param ev  The device last event
+    **/
+    public void putEvent(EventDataProvider ev)
+    {
+        if ((ev != null) && GeoPoint.isValid(ev.getLatitude(),ev.getLongitude())) {
+            this.put(ev.getDeviceID(), ev.getLatitude(), ev.getLongitude(), ev.getTimestamp(), ev.getStatusCode());
+        }
+    }
+
+    /**
+    *** Sets the position of the specified device
+    *** @param devID  The device ID
+    *** @param lat    The latitude
+    *** @param lon    The longitude
+    *** @param ts     The event timestamp
+    *** @param code   The event status code
+    **/
+    public synchronized void put(String devID, double lat, double lon, long ts, int code)
+    {
+        if (StringTools.isBlank(devID)) {
+            return;
+        }
+        Position oldPos = this.positions.get(devID);
+        Position newPos = new Position(devID, lat, lon, ts, code);
+        for (int L = 0; L <= MAX_LEVEL; L++) {
+            Map<Long,Cell> level = this.levels[L];
+            if (oldPos != null) {
+                Long oldKey = new Long(_cellKey(_cellX(oldPos.longitude,L),_cellY(oldPos.latitude,L)));
+                Cell cell = level.get(oldKey);
+                if (cell != null) {
+                    cell.remove(oldPos);
+                    if (cell.isEmpty()) {
+                        level.remove(oldKey);
+                    }
+                }
+            }
+            Long newKey = new Long(_cellKey(_cellX(lon,L),_cellY(lat,L)));
+            Cell cell = level.get(newKey);
+            if (cell == null) {
+                cell = new Cell();
+                level.put(newKey, cell);
+            }
+            cell.add(newPos);
+        }
+        this.positions.put(devID, newPos);
+    }
+
+    /**
+    *** Removes the specified device from this grid
+    *** @param devID  The device ID
+    **/
+    public synchronized void remove(String devID)
+    {
+        Position oldPos = this.positions.remove(devID);
+        if (oldPos != null) {
+            for (int L = 0; L <= MAX_LEVEL; L++) {
+                Long oldKey = new Long(_cellKey(_cellX(oldPos.longitude,L),_cellY(oldPos.latitude,L)));
+                Cell cell = this.levels[L].get(oldKey);
+                if (cell != null) {
+                    cell.remove(oldPos);
+                    if (cell.isEmpty()) {
+                        this.levels[L].remove(oldKey);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+    *** Gets the bounds of the specified devices (or all devices if 'devIDs' is null)
+    *** @param devIDs  The devices to include (null for all devices)
+    *** @return The bounds, or null if there are no matching devices
+    **/
+    public synchronized GeoBounds getBounds(Set<String> devIDs)
+    {
+        GeoBounds bounds = null;
+        for (Position p : this.positions.values()) {
+            if ((devIDs == null) || devIDs.contains(p.deviceID)) {
+                GeoPoint gp = new GeoPoint(p.latitude, p.longitude);
+                if (bounds == null) {
+                    bounds = new GeoBounds(gp);
+                } else {
+                    bounds.extendByPoint(gp);
+                }
+            }
+        }
+        return bounds;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns the device clusters within the specified viewport.  Cells which contain
+    *** fewer than MIN_CLUSTER_SIZE devices are returned as individual device IDs, and
+    *** only if the device is within the viewport.
+    *** @param bounds   The map viewport (null for the entire world).  The viewport
+    ***                 crosses the anti-meridian if the minimum longitude is greater than
+    ***                 the maximum longitude.
+    *** @param zoom     The map zoom level.  Devices are not clustered above MAX_CLUSTER_ZOOM.
+    *** @param devIDs   The devices to include (null for all devices)
+    *** @param minTS    The minimum device event timestamp (0 for all devices)
+    *** @return The clusters and individual devices
+    **/
+    public synchronized Result getClusters(GeoBounds bounds, int zoom, Set<String> devIDs, long minTS)
+    {
+        boolean cluster = (zoom <= MAX_CLUSTER_ZOOM);
+        int     level   = cluster? (Math.max(zoom,0) + CELL_ZOOM_OFFSET) : MAX_LEVEL;
+        Result  result  = new Result(zoom);
+
+        /* devices filter (not required if all devices are included) */
+        if ((devIDs != null) && (devIDs.size() >= this.positions.size()) && devIDs.containsAll(this.positions.keySet())) {
+            devIDs = null;
+        }
+        boolean filter = (devIDs != null) || (minTS > 0L);
+
+        /* viewport cell range */
+        boolean hasBounds = FleetClusterGrid.IsValidViewport(bounds);
+        double minLat = hasBounds? bounds.getMinLatitude()  :  -90.0;
+        double maxLat = hasBounds? bounds.getMaxLatitude()  :   90.0;
+        double minLon = hasBounds? bounds.getMinLongitude() : -180.0;
+        double maxLon = hasBounds? bounds.getMaxLongitude() :  180.0;
+        int x0 = _cellX(minLon,level), x1 = _cellX(maxLon,level);
+        int y0 = _cellY(maxLat,level), y1 = _cellY(minLat,level);
+        boolean wrapX = (minLon > maxLon);
+
+        /* occupied cells within viewport */
+        Map<Long,Cell> cellMap = this.levels[level];
+        long spanX = wrapX? ((long)(1 << level) - x0 + x1 + 1) : ((long)x1 - x0 + 1);
+        long spanY = (long)y1 - y0 + 1;
+        java.util.List<Cell> cells = new Vector<Cell>();
+        if ((spanX * spanY) <= cellMap.size()) {
+            // -- small viewport: look up each cell
+            int n = 1 << level;
+            for (long ix = 0; ix < spanX; ix++) {
+                int x = (int)((x0 + ix) % n);
+                for (int y = y0; y <= y1; y++) {
+                    Cell cell = cellMap.get(new Long(_cellKey(x,y)));
+                    if (cell != null) {
+                        cells.add(cell);
+                    }
+                }
+            }
+        } else {
+            // -- large viewport: scan the occupied cells
+            for (Map.Entry<Long,Cell> e : cellMap.entrySet()) {
+                long key = e.getKey().longValue();
+                int  x   = (int)(key >>> 32);
+                int  y   = (int)(key & 0xFFFFFFFFL);
+                boolean inX = wrapX? ((x >= x0) || (x <= x1)) : ((x >= x0) && (x <= x1));
+                if (inX && (y >= y0) && (y <= y1)) {
+                    cells.add(e.getValue());
+                }
+            }
+        }
+
+        /* clusters/devices */
+        for (Cell cell : cells) {
+            int    count;
+            double sumLat, sumLon;
+            int    statusCode;
+            if (!filter) {
+                // -- cell totals
+                count      = cell.count;
+                sumLat     = cell.sumLat;
+                sumLon     = cell.sumLon;
+                statusCode = cell.getDominantStatusCode();
+            } else {
+                // -- matching devices only
+                Cell match = new Cell();
+                for (String devID : cell.deviceIDs) {
+                    Position p = this.positions.get(devID);
+                    if ((p != null) && ((devIDs == null) || devIDs.contains(devID)) && (p.timestamp >= minTS)) {
+                        match.add(p);
+                    }
+                }
+                count      = match.count;
+                sumLat     = match.sumLat;
+                sumLon     = match.sumLon;
+                statusCode = match.getDominantStatusCode();
+            }
+            if (count <= 0) {
+                continue;
+            } else
+            if (cluster && (count >= MIN_CLUSTER_SIZE)) {
+                double lat = sumLat / count;
+                double lon = sumLon / count;
+                double cellM = GetCellMeters(zoom, lat);
+                double radM  = cellM * Math.min(0.20 + (0.05 * (Math.log(count) / Math.log(2.0))), 0.50);
+                result.getClusters().add(new Cluster(lat, lon, count, statusCode, radM));
+            } else {
+                for (String devID : cell.deviceIDs) {
+                    Position p = this.positions.get(devID);
+                    if ((p == null) || ((devIDs != null) && !devIDs.contains(devID)) || (p.timestamp < minTS)) {
+                        continue;
+                    }
+                    boolean inLon = wrapX? ((p.longitude >= minLon) || (p.longitude <= maxLon)) : ((p.longitude >= minLon) && (p.longitude <= maxLon));
+                    if (inLon && (p.latitude >= minLat) && (p.latitude <= maxLat)) {
+                        result.getDeviceIDs().add(devID);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+
+}
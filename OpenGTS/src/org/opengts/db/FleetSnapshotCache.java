@@ -0,0 +1,462 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Per-account in-memory snapshot of the last valid-GPS event for each device.
+//  - The snapshot for an account is built with a single "last event per device"
+//    query the first time it is requested (and again after 'maxAgeSec').  Builds
+//    are serialized per account, so a build does not block other accounts.
+//  - Events inserted within this JVM update the snapshot at insertion time.  The
+//    snapshot retains an immutable copy of the event position/status/address values
+//    taken when the listener is called, rather than the (mutable) EventData instance.
+//  - Events inserted by other processes are found by periodically checking the
+//    Device records updated (Device "lastUpdateTime") since the previous check, and
+//    only the devices whose "lastEventTimestamp" is newer than the snapshot event are
+//    re-read (late events with older timestamps are therefore not missed).  Updated
+//    devices whose snapshot event has no address are also re-read, to pick up a 
+//    deferred reverse-geocode.
+//  - Snapshots of accounts which have not been requested within 'maxIdleSec' are
+//    discarded.
+//  Returned EventData records are new instances containing the snapshot values
+//  (location, speed, heading, altitude, status code, address), and may be modified
+//  by the caller.
+//  When clustering is enabled, each snapshot also maintains a FleetClusterGrid of
+//  the device positions, which is updated as the snapshot is updated.
+// ----------------------------------------------------------------------------
+package org.opengts.db;
+
+import java.util.*;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+import org.opengts.db.tables.*;
+
+public class FleetSnapshotCache
+    implements EventDataInsertionListener
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final long   DEFAULT_MAX_AGE_SEC         = 3600L;
+    public  static final long   DEFAULT_SYNC_INTERVAL_SEC   = 10L;
+    public  static final int    DEFAULT_CLUSTER_MIN_DEVICES = 500;
+    public  static final long   DEFAULT_MAX_IDLE_SEC        = 1800L;
+
+    /* minimum interval between checks for idle account snapshots */
+    private static final long   EVICT_INTERVAL_MS           = 60000L;
+
+    /* allowance for clock differences between the processes updating the Device table */
+    private static final long   SYNC_CLOCK_SKEW_SEC         = 5L;
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Immutable copy of the values of a device last event
+    **/
+    private static class LastEvent
+    {
+        private final String    deviceID;
+        private final long      timestamp;
+        private final int       statusCode;
+        private final double    latitude;
+        private final double    longitude;
+        private final double    speedKPH;
+        private final double    heading;
+        private final double    altitude;
+        private final String    address;
+        public LastEvent(EventData ev) {
+            this.deviceID   = ev.getDeviceID();
+            this.timestamp  = ev.getTimestamp();
+            this.statusCode = ev.getStatusCode();
+            this.latitude   = ev.getLatitude();
+            this.longitude  = ev.getLongitude();
+            this.speedKPH   = ev.getSpeedKPH();
+            this.heading    = ev.getHeading();
+            this.altitude   = ev.getAltitude();
+            this.address    = StringTools.trim(ev.getAddress());
+        }
+        public String getDeviceID() {
+            return this.deviceID;
+        }
+        public long getTimestamp() {
+            return this.timestamp;
+        }
+        public boolean hasAddress() {
+            return !this.address.equals("");
+        }
+        public EventData toEventData(Account account) {
+            EventData.Key key = new EventData.Key(account.getAccountID(), this.deviceID, this.timestamp, this.statusCode);
+            EventData ev = new EventData(key);
+            ev.setAccount(account);
+            ev.setLatitude(this.latitude);
+            ev.setLongitude(this.longitude);
+            ev.setSpeedKPH(this.speedKPH);
+            ev.setHeading(this.heading);
+            ev.setAltitude(this.altitude);
+            ev.setAddress(this.address);
+            return ev;
+        }
+    }
+
+    /**
+    *** Per-account snapshot
+    **/
+    private static class AccountSnapshot
+    {
+        private String                  accountID   = null;
+        private Map<String,LastEvent>   lastEvents  = new HashMap<String,LastEvent>();
+        private long                    buildMS     = 0L;
+        private long                    syncMS      = 0L;
+        private long                    syncUpdTS   = 0L;   // Device "lastUpdateTime" watermark
+        private volatile long           accessMS    = 0L;
+        private FleetClusterGrid        grid        = null;
+        public AccountSnapshot(String acctID, Map<String,EventData> lastEvents, long buildTS, boolean cluster) {
+            this.accountID   = acctID;
+            this.buildMS     = System.currentTimeMillis();
+            this.syncMS      = this.buildMS;
+            this.accessMS    = this.buildMS;
+            this.syncUpdTS   = buildTS;
+            this.grid        = cluster? new FleetClusterGrid() : null;
+            for (EventData ev : lastEvents.values()) {
+                this.putEvent(ev);
+            }
+        }
+        public String getAccountID() {
+            return this.accountID;
+        }
+        public void putEvent(EventData ev) {
+            this.putEvent(new LastEvent(ev)); // values copied in the calling thread
+        }
+        public synchronized void putEvent(LastEvent le) {
+            LastEvent last = this.lastEvents.get(le.getDeviceID());
+            if ((last == null) || (le.getTimestamp() >= last.getTimestamp())) {
+                this.lastEvents.put(le.getDeviceID(), le);
+                if (this.grid != null) {
+                    this.grid.put(le.getDeviceID(), le.latitude, le.longitude, le.timestamp, le.statusCode);
+                }
+            }
+        }
+        public FleetClusterGrid getGrid() {
+            return this.grid; // may be null
+        }
+        public synchronized LastEvent getEvent(String devID) {
+            return this.lastEvents.get(devID);
+        }
+        public synchronized int size() {
+            return this.lastEvents.size();
+        }
+        public void setAccessed() {
+            this.accessMS = System.currentTimeMillis();
+        }
+        public long getIdleMS(long nowMS) {
+            return nowMS - this.accessMS;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private static FleetSnapshotCache   cacheInstance = null;
+
+    /**
+    *** Gets the FleetSnapshotCache singleton instance.  The instance is registered
+    *** as an EventDataInsertionListener when first requested.
+    **/
+    public static FleetSnapshotCache getInstance()
+    {
+        if (FleetSnapshotCache.cacheInstance == null) {
+            synchronized (FleetSnapshotCache.class) {
+                if (FleetSnapshotCache.cacheInstance == null) { // retest
+                    FleetSnapshotCache fsc = new FleetSnapshotCache();
+                    Device.addEventDataInsertionListener(fsc);
+                    Print.logDebug("Installed FleetSnapshotCache");
+                    FleetSnapshotCache.cacheInstance = fsc;
+                }
+            }
+        }
+        return FleetSnapshotCache.cacheInstance;
+    }
+
+    /**
+    *** Returns true if the fleet snapshot cache is enabled
+    **/
+    public static boolean IsEnabled()
+    {
+        return RTConfig.getBoolean(DBConfig.PROP_FleetSnapshotCache_enable, false);
+    }
+
+    /**
+    *** Returns true if server-side clustering of fleet map devices is enabled
+    **/
+    public static boolean IsClusteringEnabled()
+    {
+        return FleetSnapshotCache.IsEnabled() && RTConfig.getBoolean(DBConfig.PROP_FleetSnapshotCache_clusters, false);
+    }
+
+    /**
+    *** Gets the minimum number of devices in a fleet map for which clustering is applied
+    **/
+    public static int GetClusterMinDevices()
+    {
+        return RTConfig.getInt(DBConfig.PROP_FleetSnapshotCache_clusterMinDevices, DEFAULT_CLUSTER_MIN_DEVICES);
+    }
+
+    // ------------------------------------------------------------------------
+
+    private Map<String,AccountSnapshot> snapshots       = new HashMap<String,AccountSnapshot>();
+    private Map<String,Object>          buildLocks      = new HashMap<String,Object>();
+    private long                        maxAgeMS        = 0L;
+    private long                        syncIntervalMS  = 0L;
+    private long                        maxIdleMS       = 0L;
+    private long                        evictMS         = 0L;
+
+    /**
+    *** Constructor
+    **/
+    private FleetSnapshotCache()
+    {
+        super();
+        this.maxAgeMS       = RTConfig.getLong(DBConfig.PROP_FleetSnapshotCache_maxAgeSec      , DEFAULT_MAX_AGE_SEC      ) * 1000L;
+        this.syncIntervalMS = RTConfig.getLong(DBConfig.PROP_FleetSnapshotCache_syncIntervalSec, DEFAULT_SYNC_INTERVAL_SEC) * 1000L;
+        this.maxIdleMS      = RTConfig.getLong(DBConfig.PROP_FleetSnapshotCache_maxIdleSec     , DEFAULT_MAX_IDLE_SEC     ) * 1000L;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** EventDataInsertionListener: EventData will be inserted (ignored)
+    **/
+    public void eventWillInsert(EventData evdb)
+    {
+        // -- ignore
+    }
+
+    /**
+    *** EventDataInsertionListener: EventData has been inserted
+    **/
+    public void eventDidInsert(EventData evdb)
+    {
+        if ((evdb == null) || !evdb.isValidGeoPoint()) {
+            return;
+        }
+        AccountSnapshot snap;
+        synchronized (this.snapshots) {
+            snap = this.snapshots.get(evdb.getAccountID());
+        }
+        if (snap != null) {
+            // -- only update accounts which have been requested
+            snap.putEvent(evdb);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if the specified snapshot must be (re)built
+    **/
+    private boolean _isBuildRequired(AccountSnapshot snap)
+    {
+        if (snap == null) {
+            return true;
+        } else
+        if ((this.maxAgeMS > 0L) && ((System.currentTimeMillis() - snap.buildMS) > this.maxAgeMS)) {
+            return true;
+        } else
+        if (FleetSnapshotCache.IsClusteringEnabled() && (snap.getGrid() == null)) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+    *** Discards the snapshots of accounts which have not been requested within 'maxIdleSec'.
+    *** Must be called while synchronized on "snapshots".
+    **/
+    private void _evictIdleSnapshots(long nowMS)
+    {
+        if ((this.maxIdleMS <= 0L) || ((nowMS - this.evictMS) < EVICT_INTERVAL_MS)) {
+            return;
+        }
+        this.evictMS = nowMS;
+        for (Iterator<AccountSnapshot> i = this.snapshots.values().iterator(); i.hasNext();) {
+            AccountSnapshot snap = i.next();
+            if (snap.getIdleMS(nowMS) > this.maxIdleMS) {
+                Print.logInfo("Discarding idle fleet snapshot ["+snap.getAccountID()+"]");
+                i.remove();
+                this.buildLocks.remove(snap.getAccountID());
+            }
+        }
+    }
+
+    /**
+    *** Gets the snapshot for the specified account, building it if necessary.
+    *** Concurrent requests for the same account wait for a single build, while
+    *** requests for other accounts are not blocked.
+    **/
+    private AccountSnapshot _getSnapshot(String acctID)
+        throws DBException
+    {
+
+        /* current snapshot, or per-account build lock */
+        Object buildLock;
+        synchronized (this.snapshots) {
+            this._evictIdleSnapshots(System.currentTimeMillis());
+            AccountSnapshot snap = this.snapshots.get(acctID);
+            if (!this._isBuildRequired(snap)) {
+                snap.setAccessed();
+                return snap;
+            }
+            buildLock = this.buildLocks.get(acctID);
+            if (buildLock == null) {
+                buildLock = new Object();
+                this.buildLocks.put(acctID, buildLock);
+            }
+        }
+
+        /* build (only the snapshot map lookup/update is globally synchronized) */
+        synchronized (buildLock) {
+            synchronized (this.snapshots) {
+                AccountSnapshot snap = this.snapshots.get(acctID);
+                if (!this._isBuildRequired(snap)) {
+                    snap.setAccessed();
+                    return snap; // built by another thread
+                }
+            }
+            long nowMS = System.currentTimeMillis();
+            boolean cluster = FleetSnapshotCache.IsClusteringEnabled();
+            long buildTS = DateTime.getCurrentTimeSec(); // events inserted during the build are found by the next sync
+            Map<String,EventData> lastEv = EventData.getLastEventsByDevice(acctID, null, true/*validGPS*/);
+            AccountSnapshot snap = new AccountSnapshot(acctID, lastEv, buildTS, cluster);
+            synchronized (this.snapshots) {
+                this.snapshots.put(acctID, snap);
+            }
+            Print.logInfo("Built fleet snapshot ["+acctID+"]: devices=" + snap.size() + " [" + (System.currentTimeMillis() - nowMS) + " ms]");
+            return snap;
+        }
+
+    }
+
+    /**
+    *** Re-reads the last event for devices which have received events from other processes
+    **/
+    private void _syncSnapshot(AccountSnapshot snap)
+        throws DBException
+    {
+        long sinceTS;
+        long nowTS = DateTime.getCurrentTimeSec();
+        synchronized (snap) {
+            long nowMS = System.currentTimeMillis();
+            if ((this.syncIntervalMS <= 0L) || ((nowMS - snap.syncMS) < this.syncIntervalMS)) {
+                return;
+            }
+            snap.syncMS = nowMS;
+            sinceTS     = snap.syncUpdTS;
+        }
+        Map<String,Long> updated = Device.getDeviceIDsUpdatedSince(snap.getAccountID(), sinceTS - SYNC_CLOCK_SKEW_SEC);
+        Set<String> stale = new HashSet<String>();
+        for (String devID : updated.keySet()) {
+            long ts = updated.get(devID).longValue();
+            LastEvent le = snap.getEvent(devID);
+            if (ts <= 0L) {
+                // -- no events
+            } else
+            if ((le == null) || (le.getTimestamp() < ts)) {
+                stale.add(devID); // newer event
+            } else
+            if (!le.hasAddress()) {
+                stale.add(devID); // address may have been updated since
+            }
+        }
+        if (!stale.isEmpty()) {
+            Map<String,EventData> lastEv = EventData.getLastEventsByDevice(snap.getAccountID(), stale, true/*validGPS*/);
+            for (EventData ev : lastEv.values()) {
+                snap.putEvent(ev);
+            }
+        }
+        synchronized (snap) {
+            snap.syncUpdTS = Math.max(snap.syncUpdTS, nowTS);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets a copy of the last valid-GPS event for each of the specified devices
+    *** @param account  The Account
+    *** @param devIDs   The Device IDs
+    *** @return A map of Device ID to last EventData record.  Devices without a
+    ***         valid-GPS event are omitted.
+    **/
+    public Map<String,EventData> getLastEvents(Account account, Collection<String> devIDs)
+        throws DBException
+    {
+        Map<String,EventData> evMap = new HashMap<String,EventData>();
+        if ((account == null) || ListTools.isEmpty(devIDs)) {
+            return evMap;
+        }
+        AccountSnapshot snap = this._getSnapshot(account.getAccountID());
+        this._syncSnapshot(snap);
+        for (String devID : devIDs) {
+            LastEvent le = snap.getEvent(devID);
+            if (le != null) {
+                evMap.put(devID, le.toEventData(account));
+            }
+        }
+        return evMap;
+    }
+
+    /**
+    *** Gets the clustered positions of the specified devices within the specified map
+    *** viewport (see FleetClusterGrid).  If no viewport is specified, the clusters are
+    *** computed at the zoom level which fits all of the specified devices.
+    *** @param account  The Account
+    *** @param devIDs   The Device IDs
+    *** @param bounds   The map viewport (may be null)
+    *** @param zoom     The map zoom level (less than 0 if unknown)
+    *** @param minTS    The minimum last event timestamp (0 for all devices)
+    *** @return The clusters, and the IDs of the individual devices within the viewport,
+    ***         or null if clustering is not enabled
+    **/
+    public FleetClusterGrid.Result getClusters(Account account, Collection<String> devIDs,
+        GeoBounds bounds, int zoom, long minTS)
+        throws DBException
+    {
+        if ((account == null) || !FleetSnapshotCache.IsClusteringEnabled()) {
+            return null;
+        }
+        AccountSnapshot snap = this._getSnapshot(account.getAccountID());
+        this._syncSnapshot(snap);
+        FleetClusterGrid grid = snap.getGrid();
+        if (grid == null) {
+            return null;
+        }
+        Set<String> devSet = (devIDs != null)? new HashSet<String>(devIDs) : null;
+        if (!FleetClusterGrid.IsValidViewport(bounds) || (zoom < 0)) {
+            // -- map is zoomed to fit the devices
+            bounds = grid.getBounds(devSet);
+            zoom   = FleetClusterGrid.GetZoomToFit(bounds, FleetClusterGrid.DEFAULT_FRAME_WIDTH, FleetClusterGrid.DEFAULT_FRAME_HEIGHT);
+            bounds = null; // entire world
+        }
+        return grid.getClusters(bounds, zoom, devSet, minTS);
+    }
+
+    // ------------------------------------------------------------------------
+
+}
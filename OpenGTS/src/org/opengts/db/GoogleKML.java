@@ -483,22 +483,25 @@ public class GoogleKML
     *** @param privLabel The PrivateLabel instance
     *** @return True if successful
     **/
-    public boolean writeEvents(PrintWriter out, 
-        Account account, Collection<Device> devList, 
+    /**
+    *** Gets the GoogleKML I18N instance for the specified PrivateLabel
+    **/
+    private static I18N _getI18N(BasicPrivateLabel privLabel)
+    {
+        return (privLabel != null)? privLabel.getI18N(GoogleKML.class) : I18N.getI18N(GoogleKML.class,null);
+    }
+
+    /**
+    *** Writes the KML document header and placemark styles
+    *** @param out        The PrintWriter
+    *** @param privLabel  The BasicPrivateLabel
+    *** @return True if the "last" pushpin style was defined (the 'useLastPP' argument
+    ***         to "writePlacemark")
+    **/
+    public boolean writeHeader(PrintWriter out, 
         BasicPrivateLabel privLabel)
         throws IOException
     {
-        // This does assume that all events belong to the same "Account"
-
-        /* account required */
-        if (account == null) {
-            return false;
-        }
-        String accountID = account.getAccountID();
-        TimeZone tz = account.getTimeZone(null);
-
-        /* Localization */
-        I18N i18n = (privLabel != null)? privLabel.getI18N(GoogleKML.class) : I18N.getI18N(GoogleKML.class,null);
 
         /* header */
         out.write(XML_Header);
@@ -522,6 +525,71 @@ public class GoogleKML
             out.write(_createStyle(STYLE_LAST, getGooglePushpin(lastPP)));
             useLastPP = true;
         }
+        return useLastPP;
+
+    }
+
+    /**
+    *** Writes a placemark for the specified EventData record
+    *** @param out        The PrintWriter
+    *** @param privLabel  The BasicPrivateLabel
+    *** @param ev         The EventData record (Account must be set)
+    *** @param isLast     True if this is the last event for the device
+    *** @param useLastPP  The value returned by "writeHeader"
+    *** @return The placemark coordinate String (for inclusion in the device route)
+    **/
+    public String writePlacemark(PrintWriter out, 
+        BasicPrivateLabel privLabel, EventData ev,
+        boolean isLast, boolean useLastPP)
+        throws IOException
+    {
+        return this._writePlacemark(out, _getI18N(privLabel), privLabel, ev, isLast, useLastPP, 4);
+    }
+
+    /**
+    *** Writes the route for a device (if the route contains more than one point)
+    *** @param out        The PrintWriter
+    *** @param privLabel  The BasicPrivateLabel
+    *** @param deviceID   The device ID
+    *** @param route      The list of placemark coordinates returned by "writePlacemark"
+    **/
+    public void writeRoute(PrintWriter out, 
+        BasicPrivateLabel privLabel, String deviceID, 
+        java.util.List<String> route)
+        throws IOException
+    {
+        if ((route != null) && (route.size() > 1)) {
+            this._writeRoute(out, _getI18N(privLabel), privLabel, deviceID, route, 4);
+        }
+    }
+
+    /**
+    *** Writes the KML document footer
+    *** @param out  The PrintWriter
+    **/
+    public void writeFooter(PrintWriter out)
+        throws IOException
+    {
+        out.write(XML_Footer);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public boolean writeEvents(PrintWriter out, 
+        Account account, Collection<Device> devList, 
+        BasicPrivateLabel privLabel)
+        throws IOException
+    {
+        // This does assume that all events belong to the same "Account"
+
+        /* account required */
+        if (account == null) {
+            return false;
+        }
+        String accountID = account.getAccountID();
+
+        /* header */
+        boolean useLastPP = this.writeHeader(out, privLabel);
 
         /* placemarks */
         if (!ListTools.isEmpty(devList)) {
@@ -551,22 +619,20 @@ public class GoogleKML
                         ev.setAccount(account); // redundant
         
                         /* write marker */
-                        String pc = this._writePlacemark(out, i18n, privLabel, ev, isLast, useLastPP, 4);
+                        String pc = this.writePlacemark(out, privLabel, ev, isLast, useLastPP);
                         routeList.add(pc);
         
                     }
                 }
     
                 /* draw device route */
-                if (routeList.size() > 1) {
-                    this._writeRoute(out, i18n, privLabel, deviceID, routeList, 4);
-                }
+                this.writeRoute(out, privLabel, deviceID, routeList);
     
             }
         }
 
         /* trailer */
-        out.write(XML_Footer);
+        this.writeFooter(out);
 
         /* flush (output may not occur until the PrintWriter is flushed) */
         out.flush();
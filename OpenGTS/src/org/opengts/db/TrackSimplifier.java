@@ -0,0 +1,279 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Douglas-Peucker simplification of device tracks (lists of map events), so
+//  that the number of points sent to the map is bounded by the map resolution,
+//  rather than by the number of events in the selected date range.
+//  - Events are never removed if they are significant: the first/last event of
+//    each device, events with a non-discardable status code (see
+//    "StatusCodes.IsDiscardable", ie. stops, alarms, geozone arrive/depart,
+//    digital inputs, etc), events where the vehicle changes between stopped and
+//    moving, and events without a valid GPS location.
+//  - The remaining events between each pair of significant events are simplified
+//    to within the specified tolerance (meters).
+//  - The tolerance is typically derived from the map resolution (meters-per-pixel),
+//    either from the map zoom level, or from the track bounding-box and the map
+//    size (since the map is zoomed to fit the track).
+// ----------------------------------------------------------------------------
+package org.opengts.db;
+
+import java.util.*;
+
+import org.opengts.util.*;
+
+public class TrackSimplifier
+{
+
+    // ------------------------------------------------------------------------
+
+    /* Web-Mercator ground resolution at zoom level 0 (256 pixel tiles) */
+    private static final double METERS_PER_PIXEL_ZOOM_0     = 156543.03392;
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns the ground resolution (meters per pixel) of a Web-Mercator map at the
+    *** specified zoom level and latitude
+    *** @param zoom  The map zoom level (0 shows the entire world in 256 pixels)
+    *** @param lat   The latitude
+    *** @return The meters per pixel
+    **/
+    public static double GetMetersPerPixel(double zoom, double lat)
+    {
+        return METERS_PER_PIXEL_ZOOM_0 * Math.cos(lat * GeoPoint.RADIANS) / Math.pow(2.0, zoom);
+    }
+
+    /**
+    *** Returns the ground resolution (meters per pixel) of a map with the specified size,
+    *** zoomed to fit the valid locations in the specified event list
+    *** @param evList    The list of events
+    *** @param widthPx   The map width (pixels)
+    *** @param heightPx  The map height (pixels)
+    *** @return The meters per pixel (0 if the list contains fewer than 2 valid locations)
+    **/
+    public static double GetMetersPerPixel(EventDataProvider evList[], int widthPx, int heightPx)
+    {
+        if (ListTools.size(evList) < 2) {
+            return 0.0;
+        }
+        double minLat =  90.0, maxLat =  -90.0;
+        double minLon = 180.0, maxLon = -180.0;
+        int count = 0;
+        for (EventDataProvider ev : evList) {
+            double lat = ev.getLatitude();
+            double lon = ev.getLongitude();
+            if (GeoPoint.isValid(lat,lon)) {
+                if (lat < minLat) { minLat = lat; }
+                if (lat > maxLat) { maxLat = lat; }
+                if (lon < minLon) { minLon = lon; }
+                if (lon > maxLon) { maxLon = lon; }
+                count++;
+            }
+        }
+        if (count < 2) {
+            return 0.0;
+        }
+        double cosLat = Math.cos(((minLat + maxLat) / 2.0) * GeoPoint.RADIANS);
+        double spanX  = (maxLon - minLon) * GeoPoint.RADIANS * GeoPoint.EARTH_MEAN_RADIUS_METERS * cosLat;
+        double spanY  = (maxLat - minLat) * GeoPoint.RADIANS * GeoPoint.EARTH_MEAN_RADIUS_METERS;
+        return Math.max(spanX / Math.max(widthPx,1), spanY / Math.max(heightPx,1));
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if the specified event must be retained by the simplification,
+    *** based on its status code
+    **/
+    public static boolean IsSignificantStatusCode(int code)
+    {
+        return !StatusCodes.IsDiscardable(code);
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Simplifies the tracks in the specified event list.  Events for the same device
+    *** are expected to be contiguous and in ascending time order.
+    *** @param evList      The list of events
+    *** @param toleranceM  The maximum distance (meters) between the simplified track
+    ***                    and a removed event
+    *** @return The simplified list of events (the original list if no events were removed)
+    **/
+    public static EventDataProvider[] simplify(EventDataProvider evList[], double toleranceM)
+    {
+        int len = ListTools.size(evList);
+        if ((toleranceM <= 0.0) || (len < 3)) {
+            return evList;
+        }
+
+        /* simplify each device track */
+        boolean keep[] = new boolean[len];
+        int s = 0;
+        while (s < len) {
+            String devID = evList[s].getDeviceID();
+            int e = s + 1;
+            while ((e < len) && StringTools.trim(evList[e].getDeviceID()).equals(StringTools.trim(devID))) {
+                e++;
+            }
+            TrackSimplifier._simplifyTrack(evList, s, e, toleranceM, keep);
+            s = e;
+        }
+
+        /* retained events */
+        int keepCount = 0;
+        for (int i = 0; i < len; i++) {
+            if (keep[i]) { keepCount++; }
+        }
+        if (keepCount == len) {
+            return evList;
+        }
+        EventDataProvider list[] = new EventDataProvider[keepCount];
+        for (int i = 0, k = 0; i < len; i++) {
+            if (keep[i]) {
+                list[k++] = evList[i];
+            }
+        }
+        return list;
+
+    }
+
+    /**
+    *** Simplifies a single device track (evList[start..end-1])
+    **/
+    private static void _simplifyTrack(EventDataProvider evList[], int start, int end, double toleranceM, boolean keep[])
+    {
+
+        /* valid locations (invalid locations are always retained) */
+        int valid[] = new int[end - start];
+        int validLen = 0;
+        double sumLat = 0.0;
+        for (int i = start; i < end; i++) {
+            EventDataProvider ev = evList[i];
+            if ((ev.getTimestamp() > 0L) && GeoPoint.isValid(ev.getLatitude(),ev.getLongitude())) {
+                valid[validLen++] = i;
+                sumLat += ev.getLatitude();
+            } else {
+                keep[i] = true;
+            }
+        }
+        if (validLen <= 2) {
+            for (int v = 0; v < validLen; v++) {
+                keep[valid[v]] = true;
+            }
+            return;
+        }
+
+        /* project to planar meters (equirectangular at the mean latitude) */
+        double cosLat = Math.cos((sumLat / validLen) * GeoPoint.RADIANS);
+        double mPerDeg = GeoPoint.RADIANS * GeoPoint.EARTH_MEAN_RADIUS_METERS;
+        double x[] = new double[validLen];
+        double y[] = new double[validLen];
+        for (int v = 0; v < validLen; v++) {
+            EventDataProvider ev = evList[valid[v]];
+            x[v] = ev.getLongitude() * mPerDeg * cosLat;
+            y[v] = ev.getLatitude()  * mPerDeg;
+        }
+
+        /* significant events */
+        boolean anchor[] = new boolean[validLen];
+        anchor[0] = true;
+        anchor[validLen - 1] = true;
+        boolean lastStopped = (evList[valid[0]].getSpeedKPH() <= 0.0);
+        for (int v = 1; v < (validLen - 1); v++) {
+            EventDataProvider ev = evList[valid[v]];
+            boolean stopped = (ev.getSpeedKPH() <= 0.0);
+            if (TrackSimplifier.IsSignificantStatusCode(ev.getStatusCode()) || (stopped != lastStopped)) {
+                anchor[v] = true;
+            }
+            lastStopped = stopped;
+        }
+
+        /* Douglas-Peucker between consecutive significant events */
+        boolean keepV[] = new boolean[validLen];
+        int a = 0;
+        for (int b = 1; b < validLen; b++) {
+            if (anchor[b]) {
+                TrackSimplifier._douglasPeucker(x, y, a, b, toleranceM, keepV);
+                a = b;
+            }
+        }
+        for (int v = 0; v < validLen; v++) {
+            if (anchor[v] || keepV[v]) {
+                keep[valid[v]] = true;
+            }
+        }
+
+    }
+
+    /**
+    *** Douglas-Peucker simplification of points (x[first..last]).  The end points are
+    *** retained.  Iterative, to avoid deep recursion on long tracks.
+    **/
+    private static void _douglasPeucker(double x[], double y[], int first, int last, double tolM, boolean keep[])
+    {
+        keep[first] = true;
+        keep[last]  = true;
+        if ((last - first) < 2) {
+            return;
+        }
+        double tolSq = tolM * tolM;
+        int stack[] = new int[Math.max(2 * (last - first), 2)];
+        int sp = 0;
+        stack[sp++] = first;
+        stack[sp++] = last;
+        while (sp > 0) {
+            int b = stack[--sp];
+            int a = stack[--sp];
+            double maxDistSq = -1.0;
+            int maxNdx = -1;
+            for (int i = a + 1; i < b; i++) {
+                double d = TrackSimplifier._segmentDistanceSq(x[i], y[i], x[a], y[a], x[b], y[b]);
+                if (d > maxDistSq) {
+                    maxDistSq = d;
+                    maxNdx    = i;
+                }
+            }
+            if ((maxNdx >= 0) && (maxDistSq > tolSq)) {
+                keep[maxNdx] = true;
+                if ((maxNdx - a) >= 2) { stack[sp++] = a;      stack[sp++] = maxNdx; }
+                if ((b - maxNdx) >= 2) { stack[sp++] = maxNdx; stack[sp++] = b;      }
+            }
+        }
+    }
+
+    /**
+    *** Returns the square of the distance from point P to the segment AB
+    **/
+    private static double _segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by)
+    {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lenSq = (dx * dx) + (dy * dy);
+        double t = (lenSq > 0.0)? (((px - ax) * dx) + ((py - ay) * dy)) / lenSq : 0.0;
+        if (t < 0.0) { t = 0.0; } else if (t > 1.0) { t = 1.0; }
+        double cx = ax + (t * dx) - px;
+        double cy = ay + (t * dy) - py;
+        return (cx * cx) + (cy * cy);
+    }
+
+    // ------------------------------------------------------------------------
+
+}
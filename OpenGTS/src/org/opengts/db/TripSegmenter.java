@@ -0,0 +1,524 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Per-device trip segmentation state machine.  Events are added in ascending
+//  time order, and trip segments (start, stop, stopped-time until the next start,
+//  idle time, and maximum speed) are reported to a SegmentListener as the trip
+//  delimiters are detected.
+//  - The trip delimiters follow the MotionReport trip types (speed, ignition,
+//    engine start/stop, motion start/stop), using the non-legacy idle definition
+//    (0-speed elapsed time with the ignition on while in a trip).
+//  - A segmenter may be restarted at the start time of any previous segment, and
+//    will reproduce the same segments from that point.
+// ----------------------------------------------------------------------------
+package org.opengts.db;
+
+import java.util.*;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+import org.opengts.db.tables.*;
+
+public class TripSegmenter
+{
+
+    // ------------------------------------------------------------------------
+
+    public static final int     TRIP_ON_SPEED               = 0; // idle time if ignition present
+    public static final int     TRIP_ON_IGNITION            = 1; // no idle time
+    public static final int     TRIP_ON_ENGINE              = 2; // no idle time
+    public static final int     TRIP_ON_START               = 3; // idle time if ignition present
+
+    private static final String MOTION_DEFAULT[]            = new String[] { "default"  };
+    private static final String MOTION_SPEED[]              = new String[] { "speed"    , "motion" };
+    private static final String MOTION_IGNITION[]           = new String[] { "ignition" };
+    private static final String MOTION_ENGINE[]             = new String[] { "engine"   };
+    private static final String MOTION_STARTSTOP[]          = new String[] { "start"    , "startstop" };
+
+    private static final int    STATE_UNKNOWN               = 0;
+    private static final int    STATE_START                 = 1;
+    private static final int    STATE_STOP                  = 2;
+
+    /**
+    *** Returns the trip type name
+    **/
+    public static String GetTripTypeName(int type)
+    {
+        switch (type) {
+            case TRIP_ON_SPEED      : return "Speed";
+            case TRIP_ON_IGNITION   : return "Ignition";
+            case TRIP_ON_ENGINE     : return "Engine";
+            case TRIP_ON_START      : return "Start/Stop";
+        }
+        return "Unknown";
+    }
+
+    /**
+    *** Returns the trip type for the specified Device and trip type name
+    *** ("default", "speed", "ignition", "engine", "start").
+    *** The "default" trip type is "start" if the Device DCS supports start/stop
+    *** events, "ignition" if the Device has ignition status codes, else "speed".
+    **/
+    public static int GetTripType(Device device, String name)
+    {
+        String tt = StringTools.trim(name).toLowerCase();
+        if (ListTools.contains(MOTION_STARTSTOP,tt)) {
+            return TRIP_ON_START;
+        } else
+        if (ListTools.contains(MOTION_IGNITION,tt)) {
+            return TRIP_ON_IGNITION;
+        } else
+        if (ListTools.contains(MOTION_ENGINE,tt)) {
+            return TRIP_ON_ENGINE;
+        } else
+        if (ListTools.contains(MOTION_SPEED,tt)) {
+            return TRIP_ON_SPEED;
+        } else
+        if (device != null) {
+            // -- "default"
+            boolean hasIgnition = (device.getIgnitionStatusCodes() != null);
+            String devCode = device.getDeviceCode();
+            DCServerConfig dcs = DCServerFactory.getServerConfig(devCode);
+            if ((dcs == null) && StringTools.isBlank(devCode) && Account.IsDemoAccount(device.getAccountID())) {
+                // -- special case for "demo" account when 'deviceCode' is blank
+                dcs = DCServerFactory.getServerConfig(DCServerFactory.OPENDMTP_NAME);
+            }
+            if ((dcs != null) && dcs.getStartStopSupported(false)) {
+                return TRIP_ON_START;
+            } else
+            if (hasIgnition) {
+                return TRIP_ON_IGNITION;
+            } else {
+                return TRIP_ON_SPEED;
+            }
+        } else {
+            return TRIP_ON_SPEED;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Trip start/stop point
+    **/
+    public static class TripPoint
+    {
+        public long     time        = 0L;
+        public double   latitude    = 0.0;
+        public double   longitude   = 0.0;
+        public String   address     = "";
+        public double   odometerKM  = 0.0;
+        public double   odomOfsKM   = 0.0;
+        public double   fuelUsed    = 0.0;
+        public TripPoint(EventData ev, double lastValidOdomKM, double lastValidOdomOfsKM) {
+            this.time       = ev.getTimestamp();
+            this.latitude   = ev.getLatitude();
+            this.longitude  = ev.getLongitude();
+            this.address    = StringTools.trim(ev.getAddress());
+            this.odometerKM = ev.getOdometerKM();
+            this.odomOfsKM  = ev.getOdometerOffsetKM(null);
+            if (this.odometerKM <= 0.0) {
+                this.odometerKM = ev.getDistanceKM();
+                if (this.odometerKM <= 0.0) {
+                    // -- we do not have a valid odometer, use last valid odometer
+                    this.odometerKM = lastValidOdomKM;
+                    this.odomOfsKM  = lastValidOdomOfsKM;
+                }
+            }
+            this.fuelUsed   = ev.getFieldValue(EventData.FLD_fuelTotal, 0.0);
+        }
+        public GeoPoint getGeoPoint() {
+            return new GeoPoint(this.latitude, this.longitude);
+        }
+    }
+
+    /**
+    *** Trip segment: start ==> stop ==> next start
+    **/
+    public static class Segment
+    {
+        public int       tripType       = TRIP_ON_SPEED;
+        public TripPoint start          = null;
+        public TripPoint stop           = null;     // null if the trip has not stopped
+        public long      nextStartTime  = 0L;       // 0 if the next trip has not started
+        public long      idleSec        = -1L;      // -1 if unavailable (no ignition codes)
+        public double    maxSpeedKPH    = 0.0;
+        public long      lastEventTime  = 0L;       // last event added when this segment was changed
+        public Segment(int tripType, TripPoint start) {
+            this.tripType = tripType;
+            this.start    = start;
+        }
+        public long getStartTime() {
+            return (this.start != null)? this.start.time : 0L;
+        }
+        public long getStopTime() {
+            return (this.stop != null)? this.stop.time : 0L;
+        }
+    }
+
+    /**
+    *** Listener notified when a segment is started, or modified
+    **/
+    public interface SegmentListener
+    {
+        public void segmentChanged(Segment seg) throws DBException;
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private int             tripType            = TRIP_ON_SPEED;
+    private int             ignitionCodes[]     = null;
+    private double          minSpeedKPH         = 0.0;
+    private long            minStoppedTimeSec   = 0L;
+    private boolean         stopOnIgnitionOff   = false;
+    private boolean         validGPSRequired    = false;
+    private SegmentListener listener            = null;
+
+    private boolean         haveIgnitionEvent   = false;
+    private boolean         isIgnitionOn        = false;
+    private boolean         isInMotion          = false;
+    private TripPoint       pendingStop         = null;     // [TRIP_ON_SPEED only]
+    private long            idleStartTime       = -1L;
+    private long            idleAccumulator     = 0L;
+    private double          maxAchievedSpeedK   = 0.0;
+    private double          lastValidOdomKM     = 0.0;
+    private double          lastValidOdomOfsKM  = 0.0;
+    private int             lastStateChange     = STATE_UNKNOWN;
+    private Segment         current             = null;
+    private long            lastEventTime       = 0L;
+
+    /**
+    *** Constructor
+    *** @param device             The Device (provides the ignition status codes)
+    *** @param tripType           The trip type
+    *** @param minSpeedKPH        [TRIP_ON_SPEED only] The minimum moving speed
+    *** @param minStoppedTimeSec  [TRIP_ON_SPEED only] The minimum stopped time
+    *** @param stopOnIgnitionOff  True to stop the trip when the ignition is turned off
+    *** @param listener           The segment listener
+    **/
+    public TripSegmenter(Device device, int tripType,
+        double minSpeedKPH, long minStoppedTimeSec, boolean stopOnIgnitionOff,
+        SegmentListener listener)
+    {
+        this.tripType           = tripType;
+        this.ignitionCodes      = (device != null)? device.getIgnitionStatusCodes() : null;
+        this.minSpeedKPH        = minSpeedKPH;
+        this.minStoppedTimeSec  = minStoppedTimeSec;
+        this.stopOnIgnitionOff  = stopOnIgnitionOff;
+        this.listener           = listener;
+        if ((tripType == TRIP_ON_IGNITION) && (this.ignitionCodes == null)) {
+            this.ignitionCodes  = new int[] { StatusCodes.STATUS_IGNITION_OFF, StatusCodes.STATUS_IGNITION_ON };
+        }
+        // -- TRIP_ON_SPEED reads only valid GPS events if there are no ignition codes
+        this.validGPSRequired   = ((tripType == TRIP_ON_SPEED) && (this.ignitionCodes == null));
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the trip type
+    **/
+    public int getTripType()
+    {
+        return this.tripType;
+    }
+
+    /**
+    *** Returns true if events without a valid GPS location are ignored
+    **/
+    public boolean getValidGPSRequired()
+    {
+        return this.validGPSRequired;
+    }
+
+    /**
+    *** Gets the time of the last added event
+    **/
+    public long getLastEventTime()
+    {
+        return this.lastEventTime;
+    }
+
+    /**
+    *** Gets the segment listener
+    **/
+    public SegmentListener getSegmentListener()
+    {
+        return this.listener;
+    }
+
+    /**
+    *** Gets the current (last started) segment, or null if no trip has started
+    **/
+    public Segment getCurrentSegment()
+    {
+        return this.current;
+    }
+
+    // ------------------------------------------------------------------------
+
+    private boolean isIgnitionOn(int sc)
+    {
+        return (this.ignitionCodes != null) && (sc == this.ignitionCodes[1]);
+    }
+
+    private boolean isIgnitionOff(int sc)
+    {
+        return (this.ignitionCodes != null) && (sc == this.ignitionCodes[0]);
+    }
+
+    private boolean isMoving(double speedKPH)
+    {
+        return (speedKPH > 0.0) && (speedKPH >= this.minSpeedKPH);
+    }
+
+    private void _notify(Segment seg)
+        throws DBException
+    {
+        if ((seg != null) && (this.listener != null)) {
+            seg.lastEventTime = this.lastEventTime;
+            this.listener.segmentChanged(seg);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Adds the next event (in ascending time order)
+    *** @param ev  The EventData record
+    **/
+    public void addEvent(EventData ev)
+        throws DBException
+    {
+        if (ev == null) {
+            return;
+        }
+        this.lastEventTime = ev.getTimestamp();
+        if (this.validGPSRequired && !ev.isValidGeoPoint()) {
+            return;
+        }
+        int     sc       = ev.getStatusCode();
+        double  speedKPH = ev.getSpeedKPH();
+        boolean moving   = this.isMoving(speedKPH);
+
+        /* ignition state change for non-ignition trips */
+        boolean ignitionChange = false;
+        if ((this.tripType != TRIP_ON_IGNITION) && (this.ignitionCodes != null)) {
+            if (this.isIgnitionOff(sc)) {
+                if (!this.haveIgnitionEvent || this.isIgnitionOn) {
+                    ignitionChange = true;
+                    this._setIgnition(false, ev);
+                }
+            } else
+            if (this.isIgnitionOn(sc)) {
+                if (!this.haveIgnitionEvent || !this.isIgnitionOn) {
+                    ignitionChange = true;
+                    this._setIgnition(true, ev);
+                }
+            }
+        }
+
+        /* trip delimiter */
+        boolean   isMotionStart = false;
+        boolean   isMotionStop  = false;
+        TripPoint motionPoint   = null;
+        switch (this.tripType) {
+            case TRIP_ON_IGNITION:
+                if (this.isIgnitionOn(sc)) {
+                    if (!this.haveIgnitionEvent || !this.isIgnitionOn) {
+                        this._setIgnition(true, ev);
+                        isMotionStart = true;
+                    }
+                } else
+                if (this.isIgnitionOff(sc)) {
+                    if (!this.haveIgnitionEvent || this.isIgnitionOn) {
+                        this._setIgnition(false, ev);
+                        isMotionStop = true;
+                    }
+                }
+                break;
+            case TRIP_ON_ENGINE:
+            case TRIP_ON_START:
+                int startCode = (this.tripType == TRIP_ON_ENGINE)? StatusCodes.STATUS_ENGINE_START : StatusCodes.STATUS_MOTION_START;
+                int stopCode  = (this.tripType == TRIP_ON_ENGINE)? StatusCodes.STATUS_ENGINE_STOP  : StatusCodes.STATUS_MOTION_STOP;
+                if (sc == startCode) {
+                    if (!this.isInMotion) {
+                        isMotionStart = true;
+                        if (!this.isIgnitionOn) {
+                            this._setIgnition(true, ev); // force ignition ON when moving
+                        }
+                    }
+                } else
+                if (sc == stopCode) {
+                    if (this.isInMotion) {
+                        isMotionStop = true;
+                        if (this.isIgnitionOn && (this.ignitionCodes == null)) {
+                            this._setIgnition(false, ev);
+                        }
+                    }
+                } else
+                if (this.isIgnitionOff(sc) && this.stopOnIgnitionOff) {
+                    if (this.isInMotion) {
+                        isMotionStop = true; // a "Stop" event was likely not received
+                    }
+                }
+                break;
+            default: // TRIP_ON_SPEED
+                if (moving) {
+                    this.pendingStop = null;
+                    if (!this.isInMotion) {
+                        isMotionStart = true;
+                        if (!this.isIgnitionOn) {
+                            this._setIgnition(true, ev); // force ignition ON when moving
+                        }
+                    }
+                } else
+                if (this.isInMotion) {
+                    if (this.minStoppedTimeSec <= 0L) {
+                        isMotionStop = true;
+                        this.pendingStop = null;
+                    } else
+                    if (ignitionChange && !this.isIgnitionOn && this.stopOnIgnitionOff) {
+                        isMotionStop = true;
+                        motionPoint = this.pendingStop; // may be null
+                        this.pendingStop = null;
+                    } else
+                    if (this.pendingStop == null) {
+                        // -- start the stopped-time clock
+                        this.pendingStop = new TripPoint(ev, this.lastValidOdomKM, this.lastValidOdomOfsKM);
+                    } else
+                    if ((ev.getTimestamp() - this.pendingStop.time) >= this.minStoppedTimeSec) {
+                        // -- minimum stopped time elapsed, stopped at the pending stop
+                        isMotionStop = true;
+                        motionPoint = this.pendingStop;
+                        this.pendingStop = null;
+                    }
+                }
+                break;
+        }
+        if (isMotionStart) {
+            this.isInMotion = true;
+        } else
+        if (isMotionStop) {
+            this.isInMotion = false;
+        }
+        if ((isMotionStart || isMotionStop) && (motionPoint == null)) {
+            motionPoint = new TripPoint(ev, this.lastValidOdomKM, this.lastValidOdomOfsKM);
+        }
+
+        /* idle: 0-speed elapsed time (ignition on) while in a trip */
+        boolean isIdleStart = false;
+        boolean isIdleStop  = false;
+        if (isMotionStart) {
+            if (!ev.isValidGeoPoint() || !moving) {
+                isIdleStart = true;
+            } else
+            if (this.idleStartTime >= 0L) {
+                isIdleStop = true;
+            }
+        } else
+        if (this.isInMotion) {
+            if (this.isIgnitionOn && ev.isValidGeoPoint()) {
+                if (moving) {
+                    if (this.idleStartTime >= 0L) { isIdleStop = true; }
+                } else {
+                    if (this.idleStartTime < 0L) { isIdleStart = true; }
+                }
+            }
+        } else
+        if (isMotionStop) {
+            if (this.idleStartTime >= 0L) { isIdleStop = true; }
+        }
+        if (isIdleStart) {
+            this.idleStartTime = ev.getTimestamp();
+        } else
+        if (isIdleStop) {
+            if ((this.ignitionCodes != null) && (this.idleStartTime >= 0L)) {
+                this.idleAccumulator += ev.getTimestamp() - this.idleStartTime;
+            }
+            this.idleStartTime = -1L;
+        }
+
+        /* maximum achieved speed */
+        if (speedKPH > this.maxAchievedSpeedK) {
+            this.maxAchievedSpeedK = speedKPH;
+        }
+
+        /* segments */
+        if (isMotionStart) {
+            Segment prev = this.current;
+            if (prev != null) {
+                if (this.lastStateChange == STATE_START) {
+                    // -- start ==> start: missing 'stop', this start is also the previous stop
+                    prev.stop    = motionPoint;
+                    prev.idleSec = (this.ignitionCodes != null)? 0L : -1L;
+                } else
+                if (prev.stop != null) {
+                    // -- start ==> stop ==> start
+                    prev.idleSec = ((this.ignitionCodes != null) && (this.idleAccumulator > 0L))? this.idleAccumulator : -1L;
+                }
+                prev.nextStartTime = motionPoint.time;
+                prev.maxSpeedKPH   = this.maxAchievedSpeedK;
+                this._notify(prev);
+            }
+            this.current         = new Segment(this.tripType, motionPoint);
+            this.lastStateChange = STATE_START;
+            this.idleAccumulator = 0L;
+            this.maxAchievedSpeedK = 0.0;
+            this._notify(this.current);
+        } else
+        if (isMotionStop) {
+            if (this.current != null) {
+                // -- (a stop ==> stop replaces the previous stop)
+                this.current.stop        = motionPoint;
+                this.current.idleSec     = ((this.ignitionCodes != null) && (this.idleAccumulator > 0L))? this.idleAccumulator : -1L;
+                this.current.maxSpeedKPH = this.maxAchievedSpeedK;
+                this._notify(this.current);
+            } else {
+                // -- stop before the first start (no segment)
+            }
+            this.lastStateChange = STATE_STOP;
+        }
+
+        /* cache previous valid odometer */
+        double odomKM = ev.getOdometerKM();
+        if (odomKM <= 0.0) {
+            odomKM = ev.getDistanceKM();
+        }
+        if (odomKM > 0.0) {
+            this.lastValidOdomKM    = odomKM;
+            this.lastValidOdomOfsKM = ev.getOdometerOffsetKM(null);
+        }
+
+    }
+
+    /**
+    *** Sets the ignition state
+    **/
+    private void _setIgnition(boolean on, EventData ev)
+    {
+        this.isIgnitionOn      = on;
+        this.haveIgnitionEvent = true;
+    }
+
+    // ------------------------------------------------------------------------
+
+}
@@ -370,7 +370,7 @@ public class Device // Asset
             try {
                 Class<?> edilClass = (Class<EventDataInsertionListener>)Class.forName(elidClassName);
                 EventDataInsertionListener edil = (EventDataInsertionListener)edilClass.newInstance();
-                Device.setEventDataInsertionListener(edil);
+                Device.addEventDataInsertionListener(edil);
                 Print.logDebug("Installed EventDataInsertionListener: ["+StringTools.className(edil)+"]");
             } catch (ClassNotFoundException cnfe) {
                 // -- EventDataInsertionListener class not found (quietly ignore?)
@@ -383,6 +383,14 @@ public class Device // Asset
                 Print.logError("Unexpected EventDataInsertionListener error: " + th);
             }
         }
+        if (RTConfig.getBoolean(DBConfig.PROP_EventDailyRollup_enable,false)) {
+            Device.addEventDataInsertionListener(new EventDailyRollup.InsertionListener());
+            Print.logDebug("Installed EventDailyRollup.InsertionListener");
+        }
+        if (RTConfig.getBoolean(DBConfig.PROP_TripSegment_enable,false)) {
+            Device.addEventDataInsertionListener(new TripSegment.InsertionListener());
+            Print.logDebug("Installed TripSegment.InsertionListener");
+        }
     }
 
     /**
@@ -393,6 +401,63 @@ public class Device // Asset
         Device._EventDataInsertionListener = edil;
     }
 
+    /**
+    *** Adds an EventDataInsertionListener.<br>
+    *** If an EventDataInsertionListener has already been defined, both listeners will
+    *** be called, in the order in which they were added.
+    **/
+    public static synchronized void addEventDataInsertionListener(EventDataInsertionListener edil)
+    {
+        EventDataInsertionListener curr = Device._EventDataInsertionListener;
+        if (edil == null) {
+            // -- ignore
+        } else
+        if (curr == null) {
+            Device._EventDataInsertionListener = edil;
+        } else
+        if (curr instanceof EventDataInsertionListenerList) {
+            ((EventDataInsertionListenerList)curr).add(edil);
+        } else {
+            EventDataInsertionListenerList list = new EventDataInsertionListenerList();
+            list.add(curr);
+            list.add(edil);
+            Device._EventDataInsertionListener = list;
+        }
+    }
+
+    /**
+    *** Dispatches EventData insertion callbacks to multiple listeners
+    **/
+    private static class EventDataInsertionListenerList
+        implements EventDataInsertionListener
+    {
+        private EventDataInsertionListener list[] = new EventDataInsertionListener[0];
+        public synchronized void add(EventDataInsertionListener edil) {
+            EventDataInsertionListener L[] = new EventDataInsertionListener[this.list.length + 1];
+            System.arraycopy(this.list, 0, L, 0, this.list.length);
+            L[this.list.length] = edil;
+            this.list = L; // copy-on-write
+        }
+        public void eventWillInsert(EventData evdb) {
+            for (EventDataInsertionListener edil : this.list) {
+                try {
+                    edil.eventWillInsert(evdb);
+                } catch (Throwable th) {
+                    Print.logError("Unexpected Exception: " + th);
+                }
+            }
+        }
+        public void eventDidInsert(EventData evdb) {
+            for (EventDataInsertionListener edil : this.list) {
+                try {
+                    edil.eventDidInsert(evdb);
+                } catch (Throwable th) {
+                    Print.logError("Unexpected Exception: " + th);
+                }
+            }
+        }
+    }
+
     /** 
     *** Returns true if an EventDataInsertionListener has been defined
     *** @return True if an EventDataInsertionListener has been defined
@@ -6924,14 +6989,21 @@ public class Device // Asset
 
     // ------------------------------------------------------------------------
 
+    private String lastSubdivision = null;
+
     /**
     *** Gets the last valid subdivision/state
     *** @return The last valid subdivision/state
     **/
     public String getLastSubdivision()
     {
-        String v = (String)this.getFieldValue(FLD_lastSubdivision);
-        return StringTools.trim(v);
+        if (this.hasField(FLD_lastSubdivision)) {
+            String v = (String)this.getFieldValue(FLD_lastSubdivision);
+            return StringTools.trim(v);
+        } else {
+            // -- column not defined, last subdivision held by this Device instance only
+            return StringTools.trim(this.lastSubdivision);
+        }
     }
 
     /**
@@ -6940,7 +7012,11 @@ public class Device // Asset
     **/
     public void setLastSubdivision(String v)
     {
-        this.setFieldValue(FLD_lastSubdivision, StringTools.trim(v));
+        if (this.hasField(FLD_lastSubdivision)) {
+            this.setFieldValue(FLD_lastSubdivision, StringTools.trim(v));
+        } else {
+            this.lastSubdivision = StringTools.trim(v);
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -12986,6 +13062,9 @@ public class Device // Asset
                 Print.logInfo("EventData address: [%s/%s] %s: %s",
                     this.getAccountID(), this.getDeviceID(),
                     evdb.getGeoPoint().toString(), evdb.getAddress());
+                // -- the Device record has already been saved, advance its data version
+                // -  (ie. map-update "ETag") so that clients read the updated address.
+                Device.touchLastUpdateTime(this.getAccountID(), this.getDeviceID());
             } catch (DBException dbe) {
                 Print.logError("EventData update error: " + dbe);
             }
@@ -14465,6 +14544,33 @@ public class Device // Asset
         EventData.LimitType limitType, long limit)
         throws DBException
     {
+        return this.getRangeEvents(
+            timeStart, timeEnd,
+            statusCodes, validGPS,
+            limitType, limit,
+            null/*selFields*/);
+    }
+
+    /**
+    *** Gets an array of events for the specified range and attributes
+    *** @param timeStart  The event start time
+    *** @param timeEnd    The event end time
+    *** @param statusCodes  The list of status-codes
+    *** @param validGPS    True to read only events with valid GPS locations
+    *** @param limitType   The limit type (FIRST, LAST)
+    *** @param limit       The maximum number of events to return
+    *** @param selFields   The EventData fields to select (null to select all fields)
+    *** @return The array of EventData records
+    *** @throws DBException
+    **/
+    public EventData[] getRangeEvents(
+        long timeStart, long timeEnd,
+        int statusCodes[],
+        boolean validGPS,
+        EventData.LimitType limitType, long limit,
+        Set<String> selFields)
+        throws DBException
+    {
 
         /* get data */
         EventData ev[] = EventData.getRangeEvents(
@@ -14473,7 +14579,9 @@ public class Device // Asset
             statusCodes,
             validGPS,
             limitType, limit, true/*ascending*/,
-            null/*additionalSelect*/);
+            null/*addtnlSelect_1*/, null/*addtnlSelect_2*/,
+            selFields,
+            null/*rcdHandler*/);
 
         /* apply current Device to all EventData records */
         if (ev != null) {
@@ -15211,6 +15319,95 @@ public class Device // Asset
 
     // ------------------------------------------------------------------------
 
+    private static final int    UPD_MAX_DEVICES     = 200;
+
+    /**
+    *** Returns a summary of the "lastUpdateTime" of the specified devices (which is updated
+    *** with each event received from the device), read in one query per group of devices.
+    *** This provides a data version for the device events which is much less expensive to
+    *** read than the events themselves.
+    *** @param acctId  The Account ID
+    *** @param devIDs  The list of Device IDs
+    *** @return A 3 element array containing the number of devices found, the sum of the
+    ***         device "lastUpdateTime" values, and the latest "lastUpdateTime"
+    *** @throws DBExeption
+    **/
+    public static long[] getLastUpdateTimeSummary(String acctId, Collection<String> devIDs)
+        throws DBException
+    {
+        long summary[] = new long[] { 0L, 0L, 0L };
+        if (StringTools.isBlank(acctId) || ListTools.isEmpty(devIDs)) {
+            return summary;
+        }
+        java.util.List<String> devList = new Vector<String>(devIDs);
+        for (int d = 0; d < devList.size(); d += UPD_MAX_DEVICES) {
+            java.util.List<String> devGroup = devList.subList(d, Math.min(d + UPD_MAX_DEVICES, devList.size()));
+            // -- SELECT COUNT(*),SUM(lastUpdateTime),MAX(lastUpdateTime) FROM Device WHERE ...
+            DBSelect<Device> dsel = new DBSelect<Device>(Device.getFactory());
+            DBWhere dwh = dsel.createDBWhere();
+            dsel.setWhere(dwh.WHERE_(
+                dwh.AND(
+                    dwh.EQ(FLD_accountID, acctId),
+                    dwh.INLIST(FLD_deviceID, devGroup)
+                )
+            ));
+            dsel.addCountAggregate("deviceCount");
+            dsel.addAggregate(DBSelect.AggregateType.SUM, FLD_lastUpdateTime, "sumUpdateTime");
+            dsel.addAggregate(DBSelect.AggregateType.MAX, FLD_lastUpdateTime, "maxUpdateTime");
+            for (DBSelect.AggregateRow row : DBRecord.selectAggregates(dsel)) {
+                summary[0] += row.getLong("deviceCount"  , 0L);
+                summary[1] += row.getLong("sumUpdateTime", 0L);
+                summary[2]  = Math.max(summary[2], row.getLong("maxUpdateTime", 0L));
+            }
+        }
+        return summary;
+    }
+
+    /**
+    *** Advances the "lastUpdateTime" of the specified device, without reading or saving the
+    *** Device record.  Called when device events are changed after the Device record has been
+    *** saved (ie. a deferred address update), so that the device data version (see
+    *** "getLastUpdateTimeSummary") changes.  The time is advanced by at least one second, in
+    *** case the Device record was saved within the current second.
+    *** @param acctId  The Account ID
+    *** @param devId   The Device ID
+    *** @throws DBExeption
+    **/
+    public static void touchLastUpdateTime(String acctId, String devId)
+        throws DBException
+    {
+        if (StringTools.isBlank(acctId) || StringTools.isBlank(devId)) {
+            return;
+        }
+        // -- UPDATE Device SET lastUpdateTime=(CASE WHEN lastUpdateTime<now THEN now ELSE lastUpdateTime+1 END)
+        // -    WHERE (accountID='acct') AND (deviceID='dev')
+        DBProvider dbp = DBProvider.getProvider();
+        String updFld  = dbp.quoteColumnName(FLD_lastUpdateTime);
+        long   nowSec  = DateTime.getCurrentTimeSec();
+        DBWhere dwh = new DBWhere(Device.getFactory());
+        StringBuffer sql = new StringBuffer();
+        sql.append("UPDATE ").append(Device.getFactory().getTranslatedTableName());
+        sql.append(" SET ").append(updFld).append("=(CASE WHEN ").append(updFld).append("<").append(nowSec);
+        sql.append(" THEN ").append(nowSec).append(" ELSE ").append(updFld).append("+1 END)");
+        sql.append(dwh.WHERE_(
+            dwh.AND(
+                dwh.EQ(FLD_accountID, acctId),
+                dwh.EQ(FLD_deviceID , devId)
+            )
+        ));
+        DBConnection dbc = null;
+        try {
+            dbc = DBConnection.getDBConnection_write();
+            dbc.executeUpdate(sql.toString());
+        } catch (SQLException sqe) {
+            throw new DBException("Updating Device lastUpdateTime", sqe);
+        } finally {
+            DBConnection.release(dbc);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
     /**
     *** Gets a set of Device IDs for the specified Account (oes not return null)
     *** @param acctId  The Account ID
@@ -15299,6 +15496,160 @@ public class Device // Asset
 
     }
 
+    /**
+    *** Reads the specified Devices for the specified Account, with a single query
+    *** @param account  The Account
+    *** @param devIds   The Device IDs (null for all account devices)
+    *** @return A map of Device ID to Device record (does not return null)
+    *** @throws DBExeption
+    **/
+    public static Map<String,Device> getDevicesForAccount(Account account, Collection<String> devIds)
+        throws DBException
+    {
+        Map<String,Device> devMap = new HashMap<String,Device>();
+        if ((account == null) || ((devIds != null) && devIds.isEmpty())) {
+            return devMap;
+        }
+
+        /* select */
+        // DBSelect: SELECT * FROM Device WHERE (accountID='acct') AND ((deviceID='d1') OR ...)
+        DBSelect<Device> dsel = new DBSelect<Device>(Device.getFactory());
+        DBWhere dwh = dsel.createDBWhere();
+        if (devIds == null) {
+            dsel.setWhere(dwh.WHERE(
+                dwh.EQ(Device.FLD_accountID,account.getAccountID())
+            ));
+        } else {
+            java.util.List<String> devOr = new Vector<String>();
+            for (String devId : devIds) {
+                devOr.add(dwh.EQ(Device.FLD_deviceID,devId));
+            }
+            dsel.setWhere(dwh.WHERE_(
+                dwh.AND(
+                    dwh.EQ(Device.FLD_accountID,account.getAccountID()),
+                    dwh.OR(devOr)
+                )
+            ));
+        }
+
+        /* get records */
+        Device devs[] = DBRecord.select(dsel, null);
+        if (devs != null) {
+            for (Device dev : devs) {
+                dev.setAccount(account);
+                devMap.put(dev.getDeviceID(), dev);
+            }
+        }
+        return devMap;
+
+    }
+
+    /**
+    *** Gets the last event timestamp of the specified Devices, from the Device 
+    *** "lastGPSTimestamp" (if 'validGPS' is true) or "lastEventTimestamp" fields.
+    *** @param acctId    The Account ID
+    *** @param devIds    The Device IDs (null for all account devices)
+    *** @param validGPS  True to return the timestamp of the last valid GPS location
+    *** @return A map of Device ID to last event timestamp (does not return null)
+    *** @throws DBExeption
+    **/
+    public static Map<String,Long> getLastEventTimestamps(String acctId, Collection<String> devIds, boolean validGPS)
+        throws DBException
+    {
+        Map<String,Long> devMap = new HashMap<String,Long>();
+        if (StringTools.isBlank(acctId) || ((devIds != null) && devIds.isEmpty())) {
+            return devMap;
+        }
+        String tsFld = validGPS? Device.FLD_lastGPSTimestamp : Device.FLD_lastEventTimestamp;
+        DBConnection dbc = null;
+        Statement   stmt = null;
+        ResultSet     rs = null;
+        try {
+
+            /* select */
+            // DBSelect: SELECT deviceID,lastGPSTimestamp FROM Device WHERE (accountID='acct') [AND (deviceID IN ...)]
+            DBSelect<Device> dsel = new DBSelect<Device>(Device.getFactory());
+            dsel.setSelectedFields(Device.FLD_deviceID, tsFld);
+            DBWhere dwh = dsel.createDBWhere();
+            dwh.append(dwh.EQ(Device.FLD_accountID,acctId));
+            if (devIds != null) {
+                java.util.List<String> devOr = new Vector<String>();
+                for (String devId : devIds) {
+                    devOr.add(dwh.EQ(Device.FLD_deviceID, devId));
+                }
+                dwh.append(dwh.AND_(dwh.OR(devOr)));
+            }
+            dsel.setWhere(dwh.WHERE(dwh.toString()));
+
+            /* get records */
+            dbc  = DBConnection.getDBConnection_read();
+            stmt = dbc.execute(dsel.toString());
+            rs   = stmt.getResultSet();
+            while (rs.next()) {
+                devMap.put(rs.getString(Device.FLD_deviceID), new Long(rs.getLong(tsFld)));
+            }
+
+        } catch (SQLException sqe) {
+            throw new DBException("Getting Device last event timestamps", sqe);
+        } finally {
+            if (rs   != null) { try { rs.close();   } catch (Throwable t) {} }
+            if (stmt != null) { try { stmt.close(); } catch (Throwable t) {} }
+            DBConnection.release(dbc);
+        }
+        return devMap;
+
+    }
+
+    /**
+    *** Gets the Devices, for the specified Account, which have been updated (ie. have received
+    *** an event) at or after the specified time.  The "lastUpdateTime" is used, rather than
+    *** the "lastEventTimestamp", so that events which arrive late (with older timestamps)
+    *** are also found.
+    *** @param acctId   The Account ID
+    *** @param sinceTS  The Device "lastUpdateTime" (inclusive)
+    *** @return A map of Device ID to last event timestamp (does not return null)
+    *** @throws DBExeption
+    **/
+    public static Map<String,Long> getDeviceIDsUpdatedSince(String acctId, long sinceTS)
+        throws DBException
+    {
+        Map<String,Long> devMap = new HashMap<String,Long>();
+        DBConnection dbc = null;
+        Statement   stmt = null;
+        ResultSet     rs = null;
+        try {
+
+            /* select */
+            // DBSelect: SELECT deviceID,lastEventTimestamp FROM Device WHERE (accountID='acct') AND (lastUpdateTime>=123456789)
+            DBSelect<Device> dsel = new DBSelect<Device>(Device.getFactory());
+            dsel.setSelectedFields(Device.FLD_deviceID, Device.FLD_lastEventTimestamp);
+            DBWhere dwh = dsel.createDBWhere();
+            dsel.setWhere(dwh.WHERE_(
+                dwh.AND(
+                    dwh.EQ(Device.FLD_accountID,acctId),
+                    dwh.GE(Device.FLD_lastUpdateTime,sinceTS)
+                )
+            ));
+
+            /* get records */
+            dbc  = DBConnection.getDBConnection_read();
+            stmt = dbc.execute(dsel.toString());
+            rs   = stmt.getResultSet();
+            while (rs.next()) {
+                devMap.put(rs.getString(Device.FLD_deviceID), new Long(rs.getLong(Device.FLD_lastEventTimestamp)));
+            }
+
+        } catch (SQLException sqe) {
+            throw new DBException("Getting updated Account Devices", sqe);
+        } finally {
+            if (rs   != null) { try { rs.close();   } catch (Throwable t) {} }
+            if (stmt != null) { try { stmt.close(); } catch (Throwable t) {} }
+            DBConnection.release(dbc);
+        }
+        return devMap;
+
+    }
+
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
     // This section supports a method for obtaining human readable information from
@@ -0,0 +1,1479 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Daily per-device rollup of EventData records (event counts per status code,
+//  GPS distance, odometer/engine-hour/idle-hour deltas, maximum speed).
+//  - A rollup record covers a single day in the Account TimeZone, and records the
+//    day start/end times for which it was computed.
+//  - Rollups are updated incrementally as events are inserted (see
+//    "InsertionListener"), and may be rebuilt from the EventData table for a range
+//    of days with the command-line "-rebuild" option.  The first event of a day, an
+//    out-of-order event, or a changed Account TimeZone causes the day to be rebuilt
+//    in a background thread (requests for the same day are coalesced).
+//  - Range aggregates ("getEventCount", "getStatusCodeCounts", "getRangeTotals",
+//    "getGPSDistanceTraveledKM") use the rollup records for the days which lie
+//    entirely within the requested range, and read the EventData table only for
+//    the remaining partial days (or days for which no rollup record exists).
+//  - Rollups are only maintained for events inserted by a process in which
+//    "EventDailyRollup.enable" is true.  Unless "EventDailyRollup.verifyCounts" is
+//    false, the event counts of the rollups are verified against the EventData table
+//    before they are used, and stale rollups are read from the EventData table and
+//    queued for rebuild.  Deleting old/future events updates the affected rollups.
+// ----------------------------------------------------------------------------
+package org.opengts.db.tables;
+
+import java.lang.*;
+import java.util.*;
+import java.math.*;
+import java.io.*;
+import java.sql.*;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+
+import org.opengts.db.*;
+import org.opengts.db.tables.*;
+
+public class EventDailyRollup
+    extends DeviceRecord<EventDailyRollup>
+{
+
+    // ------------------------------------------------------------------------
+
+    /* days rebuilt by "-rebuild" if no "-from" date is specified */
+    private static final int    DEFAULT_REBUILD_DAYS        = 30;
+
+    /* maximum number of cached current-day rollups */
+    private static final int    MAX_CACHED_ROLLUPS          = 5000;
+
+    /* interval between checks for the existence of the rollup table */
+    private static final long   TABLE_CHECK_INTERVAL_MS     = DateTime.MinuteSeconds(5) * 1000L;
+
+    /* per-device update locks (striped) */
+    private static final Object RollupLock[]                = new Object[32];
+    static {
+        for (int i = 0; i < RollupLock.length; i++) {
+            RollupLock[i] = new Object();
+        }
+    }
+
+    /**
+    *** Gets the update lock for the specified Account/Device
+    **/
+    private static Object GetRollupLock(String acctID, String devID)
+    {
+        int h = (acctID + "/" + devID).hashCode();
+        return RollupLock[(h & 0x7FFFFFFF) % RollupLock.length];
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static Boolean tableAvailable   = null;
+    private static long    tableCheckTimeMS = 0L;
+
+    /**
+    *** Returns true if daily rollups are enabled, and the rollup table exists
+    *** (the existence of the table is rechecked every few minutes)
+    **/
+    public static boolean IsEnabled()
+    {
+        if (!RTConfig.getBoolean(DBConfig.PROP_EventDailyRollup_enable,false)) {
+            return false;
+        }
+        long nowMS = System.currentTimeMillis();
+        if ((EventDailyRollup.tableAvailable == null) || 
+            ((nowMS - EventDailyRollup.tableCheckTimeMS) >= TABLE_CHECK_INTERVAL_MS)) {
+            boolean exists = false;
+            try {
+                exists = EventDailyRollup.getFactory().tableExists();
+            } catch (DBException dbe) {
+                Print.logException("Unable to determine if EventDailyRollup table exists", dbe);
+            }
+            if (!exists) {
+                Print.logWarn("EventDailyRollup enabled, but table does not exist");
+            }
+            EventDailyRollup.tableAvailable   = new Boolean(exists);
+            EventDailyRollup.tableCheckTimeMS = nowMS;
+        }
+        return EventDailyRollup.tableAvailable.booleanValue();
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+    // SQL table definition below
+
+    /* table name */
+    public static final String _TABLE_NAME              = "EventDailyRollup";
+    public static String TABLE_NAME() { return DBProvider._preTranslateTableName(_TABLE_NAME); }
+
+    /* field definition */
+    public static final String FLD_dayNumber            = "dayNumber";          // days since epoch (Account TimeZone)
+    public static final String FLD_dayStartTime         = "dayStartTime";       // day start (inclusive)
+    public static final String FLD_dayEndTime           = "dayEndTime";         // day end (inclusive)
+    public static final String FLD_eventCount           = "eventCount";
+    public static final String FLD_validGPSCount        = "validGPSCount";
+    public static final String FLD_statusCodeCounts     = "statusCodeCounts";   // "F020=12,F010=3"
+    public static final String FLD_firstEventTime       = "firstEventTime";
+    public static final String FLD_lastEventTime        = "lastEventTime";
+    public static final String FLD_firstLatitude        = "firstLatitude";      // first valid GPS location
+    public static final String FLD_firstLongitude       = "firstLongitude";
+    public static final String FLD_lastLatitude         = "lastLatitude";       // last valid GPS location
+    public static final String FLD_lastLongitude        = "lastLongitude";
+    public static final String FLD_gpsDistanceKM        = "gpsDistanceKM";
+    public static final String FLD_maxSpeedKPH          = "maxSpeedKPH";
+    public static final String FLD_startOdometerKM      = "startOdometerKM";
+    public static final String FLD_endOdometerKM        = "endOdometerKM";
+    public static final String FLD_startEngineHours     = "startEngineHours";
+    public static final String FLD_endEngineHours       = "endEngineHours";
+    public static final String FLD_startIdleHours       = "startIdleHours";
+    public static final String FLD_endIdleHours         = "endIdleHours";
+    private static DBField FieldInfo[] = {
+        // EventDailyRollup fields
+        newField_accountID(true),
+        newField_deviceID(true),
+        new DBField(FLD_dayNumber       , Long.TYPE     , DBField.TYPE_UINT32   , "Day Number"             , "key=true"),
+        new DBField(FLD_dayStartTime    , Long.TYPE     , DBField.TYPE_UINT32   , "Day Start Time"         , "format=time"),
+        new DBField(FLD_dayEndTime      , Long.TYPE     , DBField.TYPE_UINT32   , "Day End Time"           , "format=time"),
+        new DBField(FLD_eventCount      , Long.TYPE     , DBField.TYPE_UINT32   , "Event Count"            , ""),
+        new DBField(FLD_validGPSCount   , Long.TYPE     , DBField.TYPE_UINT32   , "Valid GPS Event Count"  , ""),
+        new DBField(FLD_statusCodeCounts, String.class  , DBField.TYPE_TEXT     , "Status Code Counts"     , ""),
+        new DBField(FLD_firstEventTime  , Long.TYPE     , DBField.TYPE_UINT32   , "First Event Time"       , "format=time"),
+        new DBField(FLD_lastEventTime   , Long.TYPE     , DBField.TYPE_UINT32   , "Last Event Time"        , "format=time"),
+        new DBField(FLD_firstLatitude   , Double.TYPE   , DBField.TYPE_DOUBLE   , "First Latitude"         , "format=#0.00000"),
+        new DBField(FLD_firstLongitude  , Double.TYPE   , DBField.TYPE_DOUBLE   , "First Longitude"        , "format=#0.00000"),
+        new DBField(FLD_lastLatitude    , Double.TYPE   , DBField.TYPE_DOUBLE   , "Last Latitude"          , "format=#0.00000"),
+        new DBField(FLD_lastLongitude   , Double.TYPE   , DBField.TYPE_DOUBLE   , "Last Longitude"         , "format=#0.00000"),
+        new DBField(FLD_gpsDistanceKM   , Double.TYPE   , DBField.TYPE_DOUBLE   , "GPS Distance"           , "format=#0.0 units=distance"),
+        new DBField(FLD_maxSpeedKPH     , Double.TYPE   , DBField.TYPE_DOUBLE   , "Maximum Speed"          , "format=#0.0 units=speed"),
+        new DBField(FLD_startOdometerKM , Double.TYPE   , DBField.TYPE_DOUBLE   , "Start Odometer"         , "format=#0.0 units=distance"),
+        new DBField(FLD_endOdometerKM   , Double.TYPE   , DBField.TYPE_DOUBLE   , "End Odometer"           , "format=#0.0 units=distance"),
+        new DBField(FLD_startEngineHours, Double.TYPE   , DBField.TYPE_DOUBLE   , "Start Engine Hours"     , "format=#0.0"),
+        new DBField(FLD_endEngineHours  , Double.TYPE   , DBField.TYPE_DOUBLE   , "End Engine Hours"       , "format=#0.0"),
+        new DBField(FLD_startIdleHours  , Double.TYPE   , DBField.TYPE_DOUBLE   , "Start Idle Hours"       , "format=#0.0"),
+        new DBField(FLD_endIdleHours    , Double.TYPE   , DBField.TYPE_DOUBLE   , "End Idle Hours"         , "format=#0.0"),
+        // Common fields
+        newField_lastUpdateTime(),
+        newField_creationTime(),
+    };
+
+    /* key class */
+    public static class Key
+        extends DeviceKey<EventDailyRollup>
+    {
+        public Key() {
+            super();
+        }
+        public Key(String accountId, String deviceId, long dayNumber) {
+            super.setKeyValue(FLD_accountID , ((accountId != null)? accountId.toLowerCase() : ""));
+            super.setKeyValue(FLD_deviceID  , ((deviceId  != null)? deviceId .toLowerCase() : ""));
+            super.setKeyValue(FLD_dayNumber , dayNumber);
+        }
+        public DBFactory<EventDailyRollup> getFactory() {
+            return EventDailyRollup.getFactory();
+        }
+    }
+
+    /* factory constructor */
+    private static DBFactory<EventDailyRollup> factory = null;
+    public static DBFactory<EventDailyRollup> getFactory()
+    {
+        if (factory == null) {
+            factory = DBFactory.createDBFactory(
+                EventDailyRollup.TABLE_NAME(),
+                EventDailyRollup.FieldInfo,
+                DBFactory.KeyType.PRIMARY,
+                EventDailyRollup.class,
+                EventDailyRollup.Key.class,
+                false/*editable*/, false/*viewable*/);
+            factory.addParentTable(Account.TABLE_NAME());
+            factory.addParentTable(Device.TABLE_NAME());
+        }
+        return factory;
+    }
+
+    /* Bean instance */
+    public EventDailyRollup()
+    {
+        super();
+    }
+
+    /* database record */
+    public EventDailyRollup(EventDailyRollup.Key key)
+    {
+        super(key);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* table description */
+    public static String getTableDescription(Locale loc)
+    {
+        I18N i18n = I18N.getI18N(EventDailyRollup.class, loc);
+        return i18n.getString("EventDailyRollup.description",
+            "This table contains " +
+            "daily per-device summaries of the EventData table."
+            );
+    }
+
+    // SQL table definition above
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+    // Bean access fields below
+
+    public long getDayNumber()
+    {
+        Long v = (Long)this.getFieldValue(FLD_dayNumber);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    private void setDayNumber(long v)
+    {
+        this.setFieldValue(FLD_dayNumber, v);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public long getDayStartTime()
+    {
+        Long v = (Long)this.getFieldValue(FLD_dayStartTime);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    public void setDayStartTime(long v)
+    {
+        this.setFieldValue(FLD_dayStartTime, v);
+    }
+
+    public long getDayEndTime()
+    {
+        Long v = (Long)this.getFieldValue(FLD_dayEndTime);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    public void setDayEndTime(long v)
+    {
+        this.setFieldValue(FLD_dayEndTime, v);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public long getEventCount()
+    {
+        Long v = (Long)this.getFieldValue(FLD_eventCount);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    public void setEventCount(long v)
+    {
+        this.setFieldValue(FLD_eventCount, v);
+    }
+
+    public long getValidGPSCount()
+    {
+        Long v = (Long)this.getFieldValue(FLD_validGPSCount);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    public void setValidGPSCount(long v)
+    {
+        this.setFieldValue(FLD_validGPSCount, v);
+    }
+
+    // ------------------------------------------------------------------------
+
+    private Map<Integer,Long> statusCodeCountMap = null;
+
+    /* return the encoded status code counts */
+    public String getStatusCodeCounts()
+    {
+        if (this.statusCodeCountMap != null) {
+            this.setFieldValue(FLD_statusCodeCounts, EventDailyRollup.EncodeStatusCodeCounts(this.statusCodeCountMap));
+        }
+        String v = (String)this.getFieldValue(FLD_statusCodeCounts);
+        return StringTools.trim(v);
+    }
+
+    /* set the encoded status code counts */
+    public void setStatusCodeCounts(String v)
+    {
+        this.setFieldValue(FLD_statusCodeCounts, StringTools.trim(v));
+        this.statusCodeCountMap = null; // reparse
+    }
+
+    /**
+    *** Gets the (modifiable) map of status code counts
+    **/
+    public Map<Integer,Long> getStatusCodeCountMap()
+    {
+        if (this.statusCodeCountMap == null) {
+            String v = (String)this.getFieldValue(FLD_statusCodeCounts);
+            this.statusCodeCountMap = EventDailyRollup.DecodeStatusCodeCounts(v);
+        }
+        return this.statusCodeCountMap;
+    }
+
+    /**
+    *** Gets the number of events with the specified status code
+    **/
+    public long getStatusCodeCount(int code)
+    {
+        Long count = this.getStatusCodeCountMap().get(new Integer(code));
+        return (count != null)? count.longValue() : 0L;
+    }
+
+    /**
+    *** Encodes the status code counts ("F020=12,F010=3")
+    **/
+    public static String EncodeStatusCodeCounts(Map<Integer,Long> map)
+    {
+        StringBuffer sb = new StringBuffer();
+        if (map != null) {
+            for (Integer code : new TreeSet<Integer>(map.keySet())) {
+                Long count = map.get(code);
+                if ((count == null) || (count.longValue() <= 0L)) { continue; }
+                if (sb.length() > 0) { sb.append(","); }
+                sb.append(StringTools.toHexString(code.intValue(),16));
+                sb.append("=").append(count.longValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+    *** Decodes the status code counts (does not return null)
+    **/
+    public static Map<Integer,Long> DecodeStatusCodeCounts(String v)
+    {
+        Map<Integer,Long> map = new HashMap<Integer,Long>();
+        if (!StringTools.isBlank(v)) {
+            for (String sc : StringTools.split(v,',')) {
+                int p = sc.indexOf("=");
+                if (p <= 0) { continue; }
+                int  code  = StringTools.parseHexInt(sc.substring(0,p).trim(),-1);
+                long count = StringTools.parseLong(sc.substring(p+1).trim(),0L);
+                if ((code >= 0) && (count > 0L)) {
+                    map.put(new Integer(code), new Long(count));
+                }
+            }
+        }
+        return map;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public long getFirstEventTime()
+    {
+        Long v = (Long)this.getFieldValue(FLD_firstEventTime);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    public void setFirstEventTime(long v)
+    {
+        this.setFieldValue(FLD_firstEventTime, v);
+    }
+
+    public long getLastEventTime()
+    {
+        Long v = (Long)this.getFieldValue(FLD_lastEventTime);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    public void setLastEventTime(long v)
+    {
+        this.setFieldValue(FLD_lastEventTime, v);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* first valid GPS location (null if no valid GPS events) */
+    public GeoPoint getFirstGeoPoint()
+    {
+        if (this.getValidGPSCount() <= 0L) {
+            return null;
+        }
+        return new GeoPoint(this.getFieldValue(FLD_firstLatitude,0.0), this.getFieldValue(FLD_firstLongitude,0.0));
+    }
+
+    public void setFirstGeoPoint(double lat, double lon)
+    {
+        this.setFieldValue(FLD_firstLatitude , lat);
+        this.setFieldValue(FLD_firstLongitude, lon);
+    }
+
+    /* last valid GPS location (null if no valid GPS events) */
+    public GeoPoint getLastGeoPoint()
+    {
+        if (this.getValidGPSCount() <= 0L) {
+            return null;
+        }
+        return new GeoPoint(this.getFieldValue(FLD_lastLatitude,0.0), this.getFieldValue(FLD_lastLongitude,0.0));
+    }
+
+    public void setLastGeoPoint(double lat, double lon)
+    {
+        this.setFieldValue(FLD_lastLatitude , lat);
+        this.setFieldValue(FLD_lastLongitude, lon);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public double getGpsDistanceKM()
+    {
+        return this.getFieldValue(FLD_gpsDistanceKM, 0.0);
+    }
+
+    public void setGpsDistanceKM(double v)
+    {
+        this.setFieldValue(FLD_gpsDistanceKM, v);
+    }
+
+    public double getMaxSpeedKPH()
+    {
+        return this.getFieldValue(FLD_maxSpeedKPH, 0.0);
+    }
+
+    public void setMaxSpeedKPH(double v)
+    {
+        this.setFieldValue(FLD_maxSpeedKPH, v);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public double getStartOdometerKM()
+    {
+        return this.getFieldValue(FLD_startOdometerKM, 0.0);
+    }
+
+    public void setStartOdometerKM(double v)
+    {
+        this.setFieldValue(FLD_startOdometerKM, v);
+    }
+
+    public double getEndOdometerKM()
+    {
+        return this.getFieldValue(FLD_endOdometerKM, 0.0);
+    }
+
+    public void setEndOdometerKM(double v)
+    {
+        this.setFieldValue(FLD_endOdometerKM, v);
+    }
+
+    /* reported odometer delta (0 if no odometer values were reported) */
+    public double getOdometerDeltaKM()
+    {
+        double start = this.getStartOdometerKM();
+        double end   = this.getEndOdometerKM();
+        return ((start > 0.0) && (end > start))? (end - start) : 0.0;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public double getStartEngineHours()
+    {
+        return this.getFieldValue(FLD_startEngineHours, 0.0);
+    }
+
+    public void setStartEngineHours(double v)
+    {
+        this.setFieldValue(FLD_startEngineHours, v);
+    }
+
+    public double getEndEngineHours()
+    {
+        return this.getFieldValue(FLD_endEngineHours, 0.0);
+    }
+
+    public void setEndEngineHours(double v)
+    {
+        this.setFieldValue(FLD_endEngineHours, v);
+    }
+
+    /* reported engine-hours delta */
+    public double getEngineHoursDelta()
+    {
+        double start = this.getStartEngineHours();
+        double end   = this.getEndEngineHours();
+        return ((start > 0.0) && (end > start))? (end - start) : 0.0;
+    }
+
+    // ------------------------------------------------------------------------
+
+    public double getStartIdleHours()
+    {
+        return this.getFieldValue(FLD_startIdleHours, 0.0);
+    }
+
+    public void setStartIdleHours(double v)
+    {
+        this.setFieldValue(FLD_startIdleHours, v);
+    }
+
+    public double getEndIdleHours()
+    {
+        return this.getFieldValue(FLD_endIdleHours, 0.0);
+    }
+
+    public void setEndIdleHours(double v)
+    {
+        this.setFieldValue(FLD_endIdleHours, v);
+    }
+
+    /* reported idle-hours delta */
+    public double getIdleHoursDelta()
+    {
+        double start = this.getStartIdleHours();
+        double end   = this.getEndIdleHours();
+        return ((start > 0.0) && (end > start))? (end - start) : 0.0;
+    }
+
+    // Bean access fields above
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    public String toString()
+    {
+        return this.getAccountID() + "/" + this.getDeviceID() + "/" + this.getDayNumber();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* overridden to set default values */
+    public void setCreationDefaultValues()
+    {
+        //super.setRuntimeDefaultValues();
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if the specified event would be selected by an EventData range
+    *** selection with 'validGPS' true (see "EventData.getWhereClause")
+    **/
+    private static boolean IsRangeValidGPS(EventData ev)
+    {
+        if ((ev.getLatitude() != 0.0) || (ev.getLongitude() != 0.0)) {
+            return true;
+        } else
+        if (EventData.getFactory().hasField(EventData.FLD_cellLatitude)) {
+            return (ev.getCellLatitude() != 0.0) || (ev.getCellLongitude() != 0.0);
+        } else {
+            return false;
+        }
+    }
+
+    /**
+    *** Clears the accumulated values of this rollup
+    **/
+    public void clearRollup()
+    {
+        this.setEventCount(0L);
+        this.setValidGPSCount(0L);
+        this.setStatusCodeCounts("");
+        this.statusCodeCountMap = new HashMap<Integer,Long>();
+        this.setFirstEventTime(0L);
+        this.setLastEventTime(0L);
+        this.setFirstGeoPoint(0.0, 0.0);
+        this.setLastGeoPoint(0.0, 0.0);
+        this.setGpsDistanceKM(0.0);
+        this.setMaxSpeedKPH(0.0);
+        this.setStartOdometerKM(0.0);
+        this.setEndOdometerKM(0.0);
+        this.setStartEngineHours(0.0);
+        this.setEndEngineHours(0.0);
+        this.setStartIdleHours(0.0);
+        this.setEndIdleHours(0.0);
+    }
+
+    /**
+    *** Adds the specified event to this rollup.  Events must be added in ascending
+    *** timestamp order.
+    **/
+    public void addEvent(EventData ev)
+    {
+        long ts = ev.getTimestamp();
+
+        /* counts */
+        this.setEventCount(this.getEventCount() + 1L);
+        Map<Integer,Long> scMap = this.getStatusCodeCountMap();
+        Integer sc = new Integer(ev.getStatusCode());
+        Long scCount = scMap.get(sc);
+        scMap.put(sc, new Long((scCount != null)? (scCount.longValue() + 1L) : 1L));
+
+        /* event times */
+        if (this.getFirstEventTime() <= 0L) {
+            this.setFirstEventTime(ts);
+        }
+        if (ts > this.getLastEventTime()) {
+            this.setLastEventTime(ts);
+        }
+
+        /* maximum speed */
+        if (ev.getSpeedKPH() > this.getMaxSpeedKPH()) {
+            this.setMaxSpeedKPH(ev.getSpeedKPH());
+        }
+
+        /* reported odometer/engine-hours/idle-hours */
+        double odomKM = ev.getOdometerKM();
+        if (odomKM > 0.0) {
+            if (this.getStartOdometerKM() <= 0.0) { this.setStartOdometerKM(odomKM); }
+            this.setEndOdometerKM(odomKM);
+        }
+        double engHours = ev.getEngineHours();
+        if (engHours > 0.0) {
+            if (this.getStartEngineHours() <= 0.0) { this.setStartEngineHours(engHours); }
+            this.setEndEngineHours(engHours);
+        }
+        double idleHours = ev.getIdleHours();
+        if (idleHours > 0.0) {
+            if (this.getStartIdleHours() <= 0.0) { this.setStartIdleHours(idleHours); }
+            this.setEndIdleHours(idleHours);
+        }
+
+        /* GPS distance (same as "EventData.getGPSDistanceTraveledKM") */
+        if (EventDailyRollup.IsRangeValidGPS(ev)) {
+            double lat = ev.getLatitude();
+            double lon = ev.getLongitude();
+            GeoPoint lastGP = this.getLastGeoPoint();
+            if (lastGP != null) {
+                this.setGpsDistanceKM(this.getGpsDistanceKM() + lastGP.kilometersToPoint(new GeoPoint(lat,lon)));
+            } else {
+                this.setFirstGeoPoint(lat, lon);
+            }
+            this.setLastGeoPoint(lat, lon);
+            this.setValidGPSCount(this.getValidGPSCount() + 1L);
+        }
+
+    }
+
+    /**
+    *** Appends the specified rollup, which must follow this rollup in time
+    **/
+    public void appendRollup(EventDailyRollup next)
+    {
+        if (next == null) {
+            return;
+        }
+
+        /* counts */
+        this.setEventCount(this.getEventCount() + next.getEventCount());
+        Map<Integer,Long> scMap = this.getStatusCodeCountMap();
+        for (Map.Entry<Integer,Long> e : next.getStatusCodeCountMap().entrySet()) {
+            Long count = scMap.get(e.getKey());
+            scMap.put(e.getKey(), new Long(((count != null)? count.longValue() : 0L) + e.getValue().longValue()));
+        }
+
+        /* event times */
+        if ((this.getFirstEventTime() <= 0L) && (next.getFirstEventTime() > 0L)) {
+            this.setFirstEventTime(next.getFirstEventTime());
+        }
+        if (next.getLastEventTime() > this.getLastEventTime()) {
+            this.setLastEventTime(next.getLastEventTime());
+        }
+
+        /* maximum speed */
+        if (next.getMaxSpeedKPH() > this.getMaxSpeedKPH()) {
+            this.setMaxSpeedKPH(next.getMaxSpeedKPH());
+        }
+
+        /* reported odometer/engine-hours/idle-hours */
+        if (next.getEndOdometerKM() > 0.0) {
+            if (this.getStartOdometerKM() <= 0.0) { this.setStartOdometerKM(next.getStartOdometerKM()); }
+            this.setEndOdometerKM(next.getEndOdometerKM());
+        }
+        if (next.getEndEngineHours() > 0.0) {
+            if (this.getStartEngineHours() <= 0.0) { this.setStartEngineHours(next.getStartEngineHours()); }
+            this.setEndEngineHours(next.getEndEngineHours());
+        }
+        if (next.getEndIdleHours() > 0.0) {
+            if (this.getStartIdleHours() <= 0.0) { this.setStartIdleHours(next.getStartIdleHours()); }
+            this.setEndIdleHours(next.getEndIdleHours());
+        }
+
+        /* GPS distance (including the distance between the adjoining locations) */
+        GeoPoint nextFirstGP = next.getFirstGeoPoint();
+        if (nextFirstGP != null) {
+            GeoPoint lastGP = this.getLastGeoPoint();
+            double distKM = this.getGpsDistanceKM() + next.getGpsDistanceKM();
+            if (lastGP != null) {
+                distKM += lastGP.kilometersToPoint(nextFirstGP);
+            } else {
+                this.setFirstGeoPoint(nextFirstGP.getLatitude(), nextFirstGP.getLongitude());
+            }
+            this.setGpsDistanceKM(distKM);
+            GeoPoint nextLastGP = next.getLastGeoPoint();
+            this.setLastGeoPoint(nextLastGP.getLatitude(), nextLastGP.getLongitude());
+            this.setValidGPSCount(this.getValidGPSCount() + next.getValidGPSCount());
+        }
+
+    }
+
+    /**
+    *** Saves this rollup
+    **/
+    public void saveRollup()
+        throws DBException
+    {
+        this.getStatusCodeCounts(); // sync encoded counts
+        this.save();
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Record handler which adds each event to a rollup
+    **/
+    private static class RollupAccumulator
+        implements DBRecordHandler<EventData>
+    {
+        private EventDailyRollup rollup = null;
+        public RollupAccumulator(EventDailyRollup rollup) {
+            this.rollup = rollup;
+        }
+        public int handleDBRecord(EventData rcd) throws DBException {
+            this.rollup.addEvent(rcd);
+            return DBRH_SKIP;
+        }
+    }
+
+    /**
+    *** Creates a (transient) rollup of the EventData records within the specified range
+    *** @param validGPS  True to read only events with a valid GPS location (only the GPS
+    ***                  distance/locations of the returned rollup are then meaningful)
+    **/
+    private static EventDailyRollup _createRangeRollup(
+        String acctID, String devID,
+        long timeStart, long timeEnd,
+        boolean validGPS)
+        throws DBException
+    {
+        EventDailyRollup rollup = new EventDailyRollup.Key(acctID, devID, 0L).getDBRecord();
+        rollup.clearRollup();
+        rollup.setDayStartTime(timeStart);
+        rollup.setDayEndTime(timeEnd);
+        EventData.getRangeEvents(
+            acctID, devID,
+            timeStart, timeEnd,
+            null/*statusCodes*/,
+            validGPS,
+            EventData.LimitType.FIRST, -1L/*limit*/, true/*ascending*/,
+            null/*addtnlSelect*/,
+            new RollupAccumulator(rollup));
+        return rollup;
+    }
+
+    /**
+    *** Rebuilds (and saves) the rollup for the specified day from the EventData table
+    **/
+    private static EventDailyRollup _rebuildRollup(
+        String acctID, String devID,
+        long dayNumber, long dayStart, long dayEnd)
+        throws DBException
+    {
+        EventDailyRollup rollup = new EventDailyRollup.Key(acctID, devID, dayNumber).getDBRecord();
+        rollup.clearRollup();
+        rollup.setDayStartTime(dayStart);
+        rollup.setDayEndTime(dayEnd);
+        EventData.getRangeEvents(
+            acctID, devID,
+            dayStart, dayEnd,
+            null/*statusCodes*/,
+            false/*validGPS*/,
+            EventData.LimitType.FIRST, -1L/*limit*/, true/*ascending*/,
+            null/*addtnlSelect*/,
+            new RollupAccumulator(rollup));
+        rollup.saveRollup();
+        return rollup;
+    }
+
+    /**
+    *** Gets the rollup record for the specified day (null if not found)
+    **/
+    private static EventDailyRollup _getRollup(String acctID, String devID, long dayNumber)
+        throws DBException
+    {
+        DBWhere dwh = new DBWhere(EventDailyRollup.getFactory());
+        dwh.append(dwh.EQ(EventDailyRollup.FLD_accountID, acctID));
+        dwh.append(dwh.AND_(dwh.EQ(EventDailyRollup.FLD_deviceID , devID)));
+        dwh.append(dwh.AND_(dwh.EQ(EventDailyRollup.FLD_dayNumber, dayNumber)));
+        DBSelect<EventDailyRollup> dsel = new DBSelect<EventDailyRollup>(EventDailyRollup.getFactory());
+        dsel.setWhere(dwh.WHERE(dwh.toString()));
+        EventDailyRollup r[] = DBRecord.select(dsel);
+        return !ListTools.isEmpty(r)? r[0] : null;
+    }
+
+    /**
+    *** Gets the rollup records for the days which lie entirely within the specified range,
+    *** in ascending time order (does not return null)
+    **/
+    public static EventDailyRollup[] getRollups(
+        String acctID, String devID,
+        long timeStart, long timeEnd)
+        throws DBException
+    {
+        if (StringTools.isBlank(acctID) || StringTools.isBlank(devID)) {
+            return new EventDailyRollup[0];
+        }
+        DBWhere dwh = new DBWhere(EventDailyRollup.getFactory());
+        dwh.append(dwh.EQ(EventDailyRollup.FLD_accountID, acctID));
+        dwh.append(dwh.AND_(dwh.EQ(EventDailyRollup.FLD_deviceID, devID)));
+        if (timeStart > 0L) {
+            dwh.append(dwh.AND_(dwh.GE(EventDailyRollup.FLD_dayStartTime, timeStart)));
+        }
+        if (timeEnd > 0L) {
+            dwh.append(dwh.AND_(dwh.LE(EventDailyRollup.FLD_dayEndTime, timeEnd)));
+        }
+        DBSelect<EventDailyRollup> dsel = new DBSelect<EventDailyRollup>(EventDailyRollup.getFactory());
+        dsel.setWhere(dwh.WHERE(dwh.toString()));
+        dsel.setOrderByFields(EventDailyRollup.FLD_dayStartTime);
+        dsel.setOrderAscending(true);
+        EventDailyRollup r[] = DBRecord.select(dsel);
+        return (r != null)? r : new EventDailyRollup[0];
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Range segment covered either by a rollup record, or by the EventData table
+    **/
+    private static class RangeSegment
+    {
+        public long             timeStart   = 0L;
+        public long             timeEnd     = 0L;
+        public EventDailyRollup rollup      = null; // null if not covered by a rollup
+        public RangeSegment(long ts, long te, EventDailyRollup rollup) {
+            this.timeStart = ts;
+            this.timeEnd   = te;
+            this.rollup    = rollup;
+        }
+    }
+
+    /**
+    *** Splits the specified range into segments covered by rollup records, and the
+    *** remaining segments which must be read from the EventData table.  Rollups for
+    *** which a rebuild is pending (in this process) are not used.  If enabled, the
+    *** event count of each contiguous run of rollup days is verified against the
+    *** EventData table, and the days of a run which does not match are read from the
+    *** EventData table (and queued for rebuild).
+    **/
+    private static java.util.List<RangeSegment> _getRangeSegments(
+        String acctID, String devID,
+        long timeStart, long timeEnd)
+        throws DBException
+    {
+        long ts = Math.max(timeStart, 0L);
+        long te = (timeEnd > 0L)? timeEnd : Long.MAX_VALUE;
+        java.util.List<RangeSegment> segList = new Vector<RangeSegment>();
+        java.util.List<RangeSegment> runList = new Vector<RangeSegment>(); // contiguous rollups
+        long cursor = ts;
+        for (EventDailyRollup r : EventDailyRollup.getRollups(acctID, devID, ts, timeEnd)) {
+            long ds = r.getDayStartTime();
+            long de = r.getDayEndTime();
+            if ((ds < cursor) || (de < ds)) {
+                // -- overlapping (ie. the Account TimeZone has changed), ignore
+                continue;
+            } else
+            if (EventDailyRollup._isRebuildPending(acctID, devID, r.getDayNumber(), false)) {
+                // -- rebuild pending, read from EventData
+                continue;
+            }
+            if (ds > cursor) {
+                EventDailyRollup._verifyRollups(acctID, devID, runList);
+                segList.add(new RangeSegment(cursor, ds - 1L, null));
+            }
+            RangeSegment seg = new RangeSegment(ds, de, r);
+            segList.add(seg);
+            runList.add(seg);
+            cursor = de + 1L;
+        }
+        EventDailyRollup._verifyRollups(acctID, devID, runList);
+        if (cursor <= te) {
+            segList.add(new RangeSegment(cursor, ((te < Long.MAX_VALUE)? te : -1L), null));
+        }
+        return segList;
+    }
+
+    /**
+    *** Returns true if the rollup event counts are to be verified against the EventData
+    *** table before the rollups are used (requires "COUNT(*)" on the EventData table)
+    **/
+    private static boolean _verifyCounts()
+    {
+        if (!RTConfig.getBoolean(DBConfig.PROP_EventDailyRollup_verifyCounts,true)) {
+            return false;
+        }
+        DBFactory<EventData> evFact = EventData.getFactory();
+        if (evFact.isMySQLInnoDB() && !evFact.getAllowInnoDBCOUNT()) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+    *** Verifies the total event count of the specified contiguous run of rollup segments
+    *** against the EventData table.  If the counts differ (ie. events inserted without
+    *** updating the rollups, or deleted), the segments are changed to be read from the
+    *** EventData table, and the rollups are queued for rebuild.  The run list is cleared.
+    **/
+    private static void _verifyRollups(String acctID, String devID, java.util.List<RangeSegment> runList)
+        throws DBException
+    {
+        if (runList.isEmpty()) {
+            return;
+        } else
+        if (!EventDailyRollup._verifyCounts()) {
+            runList.clear();
+            return;
+        }
+        long runStart = runList.get(0).timeStart;
+        long runEnd   = runList.get(runList.size() - 1).timeEnd;
+        long rollupCount = 0L;
+        for (RangeSegment seg : runList) {
+            rollupCount += seg.rollup.getEventCount();
+        }
+        long eventCount = EventData.getRecordCount(acctID, devID, runStart, runEnd);
+        if ((eventCount >= 0L) && (eventCount != rollupCount)) {
+            Print.logWarn("Stale EventDailyRollups ("+rollupCount+" != "+eventCount+" events), rebuilding: " + 
+                acctID + "/" + devID + " " + runStart + ".." + runEnd);
+            for (RangeSegment seg : runList) {
+                EventDailyRollup r = seg.rollup;
+                EventDailyRollup._queueRebuild(acctID, devID, r.getDayNumber(), r.getDayStartTime(), r.getDayEndTime());
+                seg.rollup = null; // read from EventData
+            }
+        }
+        runList.clear();
+    }
+
+    /**
+    *** Gets the number of EventData records within the specified range
+    *** (see "EventData.countRangeEvents")
+    *** @return The number of events, or -1 if the count could not be determined
+    **/
+    public static long getEventCount(
+        String acctID, String devID,
+        long timeStart, long timeEnd,
+        int statCode[],
+        boolean validGPS)
+        throws DBException
+    {
+        boolean hasCodes = !ListTools.isEmpty(statCode);
+        if ((hasCodes && validGPS) || (!hasCodes && !validGPS && EventDailyRollup._verifyCounts())) {
+            // -- rollups do not count valid GPS events per status code
+            // -  (or verifying the rollups would require counting all events anyway)
+            return EventData.countRangeEvents(
+                acctID, devID, timeStart, timeEnd, statCode, validGPS,
+                EventData.LimitType.FIRST, -1L, null);
+        }
+        long count = 0L;
+        for (RangeSegment seg : EventDailyRollup._getRangeSegments(acctID, devID, timeStart, timeEnd)) {
+            if (seg.rollup != null) {
+                if (hasCodes) {
+                    for (int sc : statCode) {
+                        count += seg.rollup.getStatusCodeCount(sc);
+                    }
+                } else
+                if (validGPS) {
+                    count += seg.rollup.getValidGPSCount();
+                } else {
+                    count += seg.rollup.getEventCount();
+                }
+            } else {
+                long segCount = EventData.countRangeEvents(
+                    acctID, devID, seg.timeStart, seg.timeEnd, statCode, validGPS,
+                    EventData.LimitType.FIRST, -1L, null);
+                if (segCount < 0L) {
+                    return segCount; // InnoDB "COUNT(*)" disallowed
+                }
+                count += segCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+    *** Returns a map containing the occurance-count of each specified status code
+    *** within the specified range (see "EventData.getStatusCodeCounts")
+    **/
+    public static Map<Integer,Long> getStatusCodeCounts(
+        String acctID, String devID,
+        long timeStart, long timeEnd,
+        int... statCode)
+        throws DBException
+    {
+        Map<Integer,Long> map = new HashMap<Integer,Long>();
+        if (ListTools.isEmpty(statCode)) {
+            return map;
+        }
+        for (RangeSegment seg : EventDailyRollup._getRangeSegments(acctID, devID, timeStart, timeEnd)) {
+            Map<Integer,Long> segMap = (seg.rollup != null)?
+                seg.rollup.getStatusCodeCountMap() :
+                EventData._getStatusCodeCounts(acctID, devID, seg.timeStart, seg.timeEnd, statCode);
+            for (int sc : statCode) {
+                Integer code = new Integer(sc);
+                Long segCount = segMap.get(code);
+                if ((segCount != null) && (segCount.longValue() > 0L)) {
+                    Long count = map.get(code);
+                    map.put(code, new Long(((count != null)? count.longValue() : 0L) + segCount.longValue()));
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+    *** Gets the combined rollup of all events within the specified range.  The returned
+    *** rollup is not saved, and its day start/end times are set to the specified range.
+    **/
+    public static EventDailyRollup getRangeTotals(
+        String acctID, String devID,
+        long timeStart, long timeEnd)
+        throws DBException
+    {
+        return EventDailyRollup._getRangeTotals(acctID, devID, timeStart, timeEnd, false);
+    }
+
+    /**
+    *** Gets the combined rollup of all events within the specified range
+    **/
+    private static EventDailyRollup _getRangeTotals(
+        String acctID, String devID,
+        long timeStart, long timeEnd,
+        boolean validGPS)
+        throws DBException
+    {
+        EventDailyRollup totals = new EventDailyRollup.Key(acctID, devID, 0L).getDBRecord();
+        totals.clearRollup();
+        totals.setDayStartTime(timeStart);
+        totals.setDayEndTime(timeEnd);
+        for (RangeSegment seg : EventDailyRollup._getRangeSegments(acctID, devID, timeStart, timeEnd)) {
+            if (seg.rollup != null) {
+                totals.appendRollup(seg.rollup);
+            } else {
+                totals.appendRollup(EventDailyRollup._createRangeRollup(
+                    acctID, devID, seg.timeStart, seg.timeEnd, validGPS));
+            }
+        }
+        return totals;
+    }
+
+    /**
+    *** Gets the GPS distance traveled within the specified range
+    *** (see "EventData.getGPSDistanceTraveledKM")
+    **/
+    public static double getGPSDistanceTraveledKM(
+        String acctID, String devID,
+        long timeStart, long timeEnd,
+        GeoPoint startingGP, double startingOdomKM)
+        throws DBException
+    {
+        EventDailyRollup totals = EventDailyRollup._getRangeTotals(acctID, devID, timeStart, timeEnd, true);
+        double accumKM = startingOdomKM + totals.getGpsDistanceKM();
+        GeoPoint firstGP = totals.getFirstGeoPoint();
+        if ((startingGP != null) && (firstGP != null)) {
+            accumKM += startingGP.kilometersToPoint(firstGP);
+        }
+        return accumKM;
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /* cached current-day rollups (keyed by "account/device") */
+    private static Map<String,EventDailyRollup> rollupCache = new LinkedHashMap<String,EventDailyRollup>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String,EventDailyRollup> eldest) {
+            return (this.size() > MAX_CACHED_ROLLUPS);
+        }
+    };
+
+    /**
+    *** Updates the daily rollup for the specified (inserted) event.  In-order events are
+    *** added to the cached rollup for the day (a single update).  Otherwise (first event
+    *** of the day, out-of-order event, or changed Account TimeZone) the day is rebuilt in
+    *** a background thread (see "_queueRebuild").
+    **/
+    public static void updateRollup(EventData ev)
+        throws DBException
+    {
+        if (ev == null) {
+            return;
+        }
+        String  acctID = ev.getAccountID();
+        String  devID  = ev.getDeviceID();
+        String  key    = acctID + "/" + devID;
+        long    ts     = ev.getTimestamp();
+        Account acct   = ev.getAccount();
+        TimeZone tz    = (acct != null)? acct.getTimeZone(null) : DateTime.getGMTTimeZone();
+        DateTime dt    = new DateTime(ts, tz);
+        long dayNumber = dt.getDayNumber(tz);
+        long dayStart  = dt.getDayStart(tz);
+        long dayEnd    = dt.getDayEnd(tz);
+
+        /* rebuild already pending? */
+        if (EventDailyRollup._isRebuildPending(acctID, devID, dayNumber, true)) {
+            return;
+        }
+
+        /* in-order event */
+        synchronized (EventDailyRollup.GetRollupLock(acctID,devID)) {
+            EventDailyRollup rollup;
+            synchronized (EventDailyRollup.rollupCache) {
+                rollup = EventDailyRollup.rollupCache.get(key);
+            }
+            if ((rollup == null) || (rollup.getDayNumber() != dayNumber)) {
+                rollup = EventDailyRollup._getRollup(acctID, devID, dayNumber);
+            }
+            if ((rollup != null)                      && // -- not first event for the day
+                (rollup.getDayStartTime() == dayStart) && // -- Account TimeZone unchanged
+                (rollup.getDayEndTime()   == dayEnd  ) &&
+                (ts >= rollup.getLastEventTime())     ) { // -- in-order event
+                rollup.addEvent(ev);
+                rollup.getStatusCodeCounts(); // sync encoded counts
+                rollup.update(); // record exists
+                synchronized (EventDailyRollup.rollupCache) {
+                    EventDailyRollup.rollupCache.put(key, rollup);
+                }
+                return;
+            }
+            synchronized (EventDailyRollup.rollupCache) {
+                EventDailyRollup.rollupCache.remove(key);
+            }
+        }
+
+        /* rebuild the day from the EventData table (includes this event) */
+        EventDailyRollup._queueRebuild(acctID, devID, dayNumber, dayStart, dayEnd);
+
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* EventDailyRollup rebuild ThreadPool */
+    // EventDailyRollup.ThreadPool.maximumPoolSize=1
+    private static ThreadPool ThreadPool_EventDailyRollup = new ThreadPool("EventDailyRollup", 1);
+
+    /**
+    *** Pending (queued, or running) rebuild of a rollup day
+    **/
+    private static class PendingRebuild
+    {
+        private String  acctID    = null;
+        private String  devID     = null;
+        private long    dayNumber = 0L;
+        private long    dayStart  = 0L;
+        private long    dayEnd    = 0L;
+        private boolean running   = false;
+        private boolean rerun     = false;  // event received while running
+        public PendingRebuild(String acctID, String devID, long dayNumber, long dayStart, long dayEnd) {
+            this.acctID    = acctID;
+            this.devID     = devID;
+            this.dayNumber = dayNumber;
+            this.dayStart  = dayStart;
+            this.dayEnd    = dayEnd;
+        }
+    }
+
+    /* pending day rebuilds (keyed by "account/device/dayNumber") */
+    private static Map<String,PendingRebuild> pendingRebuilds = new HashMap<String,PendingRebuild>();
+
+    /**
+    *** Returns true if a rebuild of the specified day is pending in this process
+    *** @param eventReceived  True if an event for the day has been received (the day is
+    ***                       rebuilt again if its rebuild is already running)
+    **/
+    private static boolean _isRebuildPending(String acctID, String devID, long dayNumber, boolean eventReceived)
+    {
+        synchronized (EventDailyRollup.pendingRebuilds) {
+            PendingRebuild pr = EventDailyRollup.pendingRebuilds.get(acctID + "/" + devID + "/" + dayNumber);
+            if (pr == null) {
+                return false;
+            }
+            if (eventReceived && pr.running) {
+                pr.rerun = true;
+            }
+            return true;
+        }
+    }
+
+    /**
+    *** Queues a rebuild of the specified day.  Multiple requests for the same day are
+    *** coalesced into a single rebuild.
+    **/
+    private static void _queueRebuild(String acctID, String devID, long dayNumber, long dayStart, long dayEnd)
+    {
+        final String key = acctID + "/" + devID + "/" + dayNumber;
+        synchronized (EventDailyRollup.pendingRebuilds) {
+            PendingRebuild pr = EventDailyRollup.pendingRebuilds.get(key);
+            if (pr != null) {
+                if (pr.running) {
+                    pr.rerun = true;
+                }
+                return;
+            }
+            EventDailyRollup.pendingRebuilds.put(key, new PendingRebuild(acctID, devID, dayNumber, dayStart, dayEnd));
+        }
+        ThreadPool_EventDailyRollup.run(new Runnable() {
+            public void run() {
+                EventDailyRollup._runRebuild(key);
+            }
+        });
+    }
+
+    /**
+    *** Runs the pending rebuild of the specified day (background thread)
+    **/
+    private static void _runRebuild(String key)
+    {
+        for (;;) {
+
+            /* start */
+            PendingRebuild pr;
+            synchronized (EventDailyRollup.pendingRebuilds) {
+                pr = EventDailyRollup.pendingRebuilds.get(key);
+                if (pr == null) {
+                    return; // unlikely
+                }
+                pr.running = true;
+                pr.rerun   = false;
+            }
+
+            /* rebuild */
+            boolean ok = false;
+            try {
+                Print.logDebug("Rebuilding EventDailyRollup: " + key);
+                EventDailyRollup._rebuildRollup(pr.acctID, pr.devID, pr.dayNumber, pr.dayStart, pr.dayEnd);
+                ok = true;
+            } catch (Throwable th) {
+                Print.logException("Unable to rebuild EventDailyRollup: " + key, th);
+            }
+
+            /* done, or rerun for events received while running */
+            synchronized (EventDailyRollup.pendingRebuilds) {
+                if (ok && pr.rerun) {
+                    continue;
+                }
+                EventDailyRollup.pendingRebuilds.remove(key);
+                return;
+            }
+
+        }
+    }
+
+    /**
+    *** EventDataInsertionListener which updates the daily rollups as events are inserted
+    **/
+    public static class InsertionListener
+        implements EventDataInsertionListener
+    {
+        public InsertionListener() {
+            super();
+        }
+        public void eventWillInsert(EventData evdb) {
+            // -- ignore
+        }
+        public void eventDidInsert(EventData evdb) {
+            if (!EventDailyRollup.IsEnabled()) {
+                return; // rollup table does not exist
+            }
+            try {
+                EventDailyRollup.updateRollup(evdb);
+            } catch (DBException dbe) {
+                Print.logException("Unable to update EventDailyRollup: " + evdb, dbe);
+            }
+        }
+    }
+
+    /**
+    *** Rebuilds the rollups for the specified Device over the specified range of days
+    *** (in the Account TimeZone)
+    *** @return The number of days rebuilt
+    **/
+    public static int rebuildRollups(Device dev, long timeStart, long timeEnd)
+        throws DBException
+    {
+        if (dev == null) {
+            return 0;
+        }
+        String   acctID = dev.getAccountID();
+        String   devID  = dev.getDeviceID();
+        Account  acct   = dev.getAccount();
+        TimeZone tz     = (acct != null)? acct.getTimeZone(null) : DateTime.getGMTTimeZone();
+        long     now    = DateTime.getCurrentTimeSec();
+        int      days   = 0;
+        for (long ts = timeStart; (ts <= timeEnd) && (ts <= now);) {
+            DateTime dt    = new DateTime(ts, tz);
+            long dayNumber = dt.getDayNumber(tz);
+            long dayStart  = dt.getDayStart(tz);
+            long dayEnd    = dt.getDayEnd(tz);
+            synchronized (EventDailyRollup.GetRollupLock(acctID,devID)) {
+                EventDailyRollup._rebuildRollup(acctID, devID, dayNumber, dayStart, dayEnd);
+            }
+            days++;
+            ts = dayEnd + 1L; // next day
+        }
+        return days;
+    }
+
+    /**
+    *** Updates the daily rollups of the specified device after EventData records have
+    *** been deleted.  The rollups of the days which were entirely deleted are deleted,
+    *** and the day which was partially deleted is rebuilt.
+    *** @param timeStart  The start time of the deleted events (-1 for old events)
+    *** @param timeEnd    The end time (exclusive) of the deleted old events (-1 for
+    ***                   events at/after the start time)
+    **/
+    public static void eventsDeleted(String acctID, String devID, long timeStart, long timeEnd)
+    {
+        if (!EventDailyRollup.IsEnabled()) {
+            return;
+        }
+        try {
+            Account  acct      = Account.getAccount(acctID);
+            TimeZone tz        = (acct != null)? acct.getTimeZone(null) : DateTime.getGMTTimeZone();
+            DateTime dt        = new DateTime(((timeStart >= 0L)? timeStart : timeEnd), tz);
+            long     dayNumber = dt.getDayNumber(tz);
+            long     dayStart  = dt.getDayStart(tz);
+            long     dayEnd    = dt.getDayEnd(tz);
+            // -- [DELETE FROM EventDailyRollup WHERE accountID='account' AND deviceID='device' AND dayStartTime<123456789]
+            DBDelete ddel = new DBDelete(EventDailyRollup.getFactory());
+            DBWhere dwh = ddel.createDBWhere();
+            ddel.setWhere(dwh.WHERE_(
+                dwh.AND(
+                    dwh.EQ(EventDailyRollup.FLD_accountID,acctID),
+                    dwh.EQ(EventDailyRollup.FLD_deviceID ,devID),
+                    (timeStart >= 0L)?
+                        dwh.GT(EventDailyRollup.FLD_dayStartTime,dayStart) : // days after
+                        dwh.LT(EventDailyRollup.FLD_dayStartTime,dayStart)   // days before
+                )
+            ));
+            synchronized (EventDailyRollup.GetRollupLock(acctID,devID)) {
+                DBConnection dbc = null;
+                try {
+                    dbc = DBConnection.getDBConnection_delete();
+                    dbc.executeUpdate(ddel.toString());
+                } catch (SQLException sqe) {
+                    throw new DBException("Deleting EventDailyRollups", sqe);
+                } finally {
+                    DBConnection.release(dbc);
+                }
+                synchronized (EventDailyRollup.rollupCache) {
+                    EventDailyRollup.rollupCache.remove(acctID + "/" + devID);
+                }
+                EventDailyRollup._rebuildRollup(acctID, devID, dayNumber, dayStart, dayEnd);
+            }
+        } catch (DBException dbe) {
+            Print.logException("Unable to update EventDailyRollups after deleting events: " + acctID + "/" + devID, dbe);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private static final String ARG_ACCOUNT[]   = new String[] { "account", "acct", "a" };
+    private static final String ARG_DEVICE[]    = new String[] { "device" , "dev" , "d" };
+    private static final String ARG_REBUILD[]   = new String[] { "rebuild"              };
+    private static final String ARG_FROM[]      = new String[] { "from"   , "start"     };
+    private static final String ARG_TO[]        = new String[] { "to"     , "end"       };
+    private static final String ARG_DAYS[]      = new String[] { "days"                 };
+
+    private static void usage()
+    {
+        Print.sysPrintln("Usage:");
+        Print.sysPrintln("  java ... " + EventDailyRollup.class.getName() + " {options}");
+        Print.sysPrintln("Options:");
+        Print.sysPrintln("  -account=<id>       Account ID");
+        Print.sysPrintln("  -device=<id>        Device ID (all Account devices if not specified)");
+        Print.sysPrintln("  -rebuild            Rebuild the daily rollups from the EventData table");
+        Print.sysPrintln("  -from=<yyyy/mm/dd>  First day to rebuild");
+        Print.sysPrintln("  -to=<yyyy/mm/dd>    Last day to rebuild (default today)");
+        Print.sysPrintln("  -days=<days>        Number of days to rebuild, if '-from' is not specified [" + DEFAULT_REBUILD_DAYS + "]");
+        System.exit(1);
+    }
+
+    public static void main(String argv[])
+    {
+        DBConfig.cmdLineInit(argv,true);  // main
+        String acctID = RTConfig.getString(ARG_ACCOUNT, "");
+        String devID  = RTConfig.getString(ARG_DEVICE , "");
+
+        /* account */
+        if (StringTools.isBlank(acctID)) {
+            Print.logError("Account-ID not specified.");
+            usage();
+        }
+        Account acct = null;
+        try {
+            acct = Account.getAccount(acctID); // may throw DBException
+            if (acct == null) {
+                Print.logError("Account-ID does not exist: " + acctID);
+                usage();
+            }
+        } catch (DBException dbe) {
+            Print.logException("Error loading Account: " + acctID, dbe);
+            System.exit(99);
+        }
+        TimeZone tz = acct.getTimeZone(null);
+
+        /* rebuild */
+        if (RTConfig.getBoolean(ARG_REBUILD,false)) {
+            DateTime toDT = null;
+            DateTime frDT = null;
+            try {
+                toDT = RTConfig.hasProperty(ARG_TO)?
+                    DateTime.parseArgumentDate(RTConfig.getString(ARG_TO,""),tz,true) :
+                    new DateTime(tz);
+                frDT = RTConfig.hasProperty(ARG_FROM)?
+                    DateTime.parseArgumentDate(RTConfig.getString(ARG_FROM,""),tz,false) :
+                    new DateTime(toDT.getDayStart(tz) - ((long)(RTConfig.getInt(ARG_DAYS,DEFAULT_REBUILD_DAYS) - 1) * DateTime.DaySeconds(1)), tz);
+            } catch (DateTime.DateParseException dpe) {
+                Print.logError("Invalid '-from'/'-to' date: " + dpe.getMessage());
+                usage();
+            }
+            if ((toDT == null) || (frDT == null)) {
+                Print.logError("Invalid '-from'/'-to' date");
+                usage();
+            }
+            long timeStart = frDT.getDayStart(tz);
+            long timeEnd   = toDT.getDayEnd(tz);
+            try {
+                Collection<String> devIDs = !StringTools.isBlank(devID)?
+                    ListTools.toList(new String[] { devID }) :
+                    Device.getDeviceIDsForAccount(acctID, null, true/*inclInactv*/);
+                for (String id : devIDs) {
+                    Device dev = Device.getDevice(acct, id, false);
+                    if (dev == null) {
+                        Print.logError("Device-ID does not exist: " + acctID + "/" + id);
+                        continue;
+                    }
+                    int days = EventDailyRollup.rebuildRollups(dev, timeStart, timeEnd);
+                    Print.sysPrintln("Rebuilt " + days + " day(s): " + acctID + "/" + id);
+                }
+            } catch (DBException dbe) {
+                Print.logException("Error rebuilding EventDailyRollup", dbe);
+                System.exit(99);
+            }
+            System.exit(0);
+        }
+
+        /* no options */
+        usage();
+
+    }
+
+}
@@ -699,6 +699,80 @@ public class EventData
         // -- "DBProvider.isTableLockingEnabled()" will override LOCK_TABLE_ON_READ
     }
 
+    // ------------------------------------------------------------------------
+
+    /* fields always included in a projected selection (used to chain/filter selected events) */
+    private static final String PROJECTION_FIELDS[] = {
+        "latitude",         // FLD_latitude
+        "longitude",        // FLD_longitude
+        "cellLatitude",     // FLD_cellLatitude
+        "cellLongitude",    // FLD_cellLongitude
+    };
+
+    /**
+    *** Returns the EventData fields to select for the specified list of fields required by
+    *** a report layout, map, or output format.  The returned Set also includes the primary
+    *** key fields.  Fields not selected are loaded, all at once, the first time any one of
+    *** them is accessed (see "DBFieldValues.setDeferredFields").
+    *** @param fldNames  The required field names (null if all fields are required)
+    *** @return The field names to select, or null to select all fields
+    **/
+    public static Set<String> getSelectFields(Collection<String> fldNames)
+    {
+
+        /* select all? */
+        if (fldNames == null) {
+            return null;
+        } else
+        if (!RTConfig.getBoolean(DBConfig.PROP_EventData_selectProjection,true)) {
+            return null;
+        }
+
+        /* existing columns (select all if unknown) */
+        DBFactory<EventData> fact = EventData.getFactory();
+        Map<String,DBField> colMap = null;
+        try {
+            colMap = fact.getExistingColumnMap(false);
+        } catch (DBException dbe) {
+            Print.logWarn("Unable to read existing EventData columns: " + dbe);
+        }
+        if (colMap == null) {
+            return null;
+        }
+
+        /* keys, projection fields, required fields */
+        Set<String> selFields = new LinkedHashSet<String>();
+        for (DBField kf : fact.getKeyFields()) {
+            selFields.add(kf.getName());
+        }
+        for (String fn : PROJECTION_FIELDS) {
+            if (colMap.containsKey(fact.getMappedFieldName(fn))) {
+                selFields.add(fn);
+            }
+        }
+        for (String fn : fldNames) {
+            if (!fact.hasField(fn)) {
+                // -- pseudo field, or field not defined
+            } else
+            if (colMap.containsKey(fact.getMappedFieldName(fn))) {
+                selFields.add(fn);
+            }
+        }
+        return selFields;
+
+    }
+
+    /**
+    *** Returns the EventData fields to select for the specified list of fields required by
+    *** a report layout, map, or output format (see "getSelectFields(Collection)")
+    *** @param fldNames  The required field names (null if all fields are required)
+    *** @return The field names to select, or null to select all fields
+    **/
+    public static Set<String> getSelectFields(String fldNames[])
+    {
+        return (fldNames != null)? EventData.getSelectFields(ListTools.toList(fldNames)) : null;
+    }
+
     /* table name */
     public static final String _TABLE_NAME              = "EventData";
     public static String TABLE_NAME() { return DBProvider._preTranslateTableName(_TABLE_NAME); }
@@ -3254,12 +3328,29 @@ public class EventData
             // -- currently "cache" is expected to be true when the vehicle is "stopped"
             // -  the reverse-geocoding process may be dependent on this behavior.
             boolean cache = (this.getSpeedKPH() <= 0.0)? true : false; // cache if not moving
-            rg = rgp.getReverseGeocode(addrGP, localeStr, cache/*stopped*/); // get the reverse-geocode
+            rg = ReverseGeocodeProviderAdapter.GetReverseGeocode(rgp, addrGP, localeStr, cache/*stopped*/); // get the reverse-geocode
         } catch (Throwable th) {
             // -- ignore
         } finally {
             privLabel.popRTProperties();    // remove from stack
         }
+
+        /* subdivision, if not provided by the ReverseGeocodeProvider */
+        String subdiv = null;
+        if ((rg == null) || !rg.hasSubdivision()) {
+            subdiv = EventData._getSubdivision(privLabel, addrGP, dev.getLastSubdivision(), fastOnly);
+        }
+
+        /* save the vehicle subdivision (used as the hint for the next lookup) */
+        String newSubdiv = ((rg != null) && rg.hasSubdivision())? rg.getSubdivision() : subdiv;
+        if (!StringTools.isBlank(newSubdiv) && !newSubdiv.equals(dev.getLastSubdivision())) {
+            dev.setLastSubdivision(newSubdiv);
+            if (dev.hasField(Device.FLD_lastSubdivision)) {
+                dev.addOtherChangedFieldNames(Device.FLD_lastSubdivision);
+            }
+        }
+
+        /* update fields */
         if (rg != null) {
             Set<String> updFields = new HashSet<String>();
             if (rg.hasFullAddress()) {
@@ -3289,6 +3380,10 @@ public class EventData
             if (rg.hasSubdivision()) {
                 this.setSubdivision(rg.getSubdivision());               // FLD_subdivision
                 updFields.add(EventData.FLD_subdivision);
+            } else
+            if (subdiv != null) {
+                this.setSubdivision(subdiv);                            // FLD_subdivision
+                updFields.add(EventData.FLD_subdivision);
             }
             if (rg.hasSpeedLimitKPH()) {
                 this.setSpeedLimitKPH(rg.getSpeedLimitKPH());           // FLD_speedLimitKPH
@@ -3303,9 +3398,43 @@ public class EventData
 
         /* still no address after all of this */
         Print.logInfo("No RG Address found ["+rgp.getName()+"]: " + addrGP);
+        if (subdiv != null) {
+            this.setSubdivision(subdiv);                                // FLD_subdivision
+            Set<String> updFields = new HashSet<String>();
+            updFields.add(EventData.FLD_subdivision);
+            return updFields;
+        }
         return null;
         
     }
+
+    /**
+    *** Returns the subdivision (ie. "US/CA") of the specified GeoPoint from the 
+    *** SubdivisionProvider defined for the specified PrivateLabel
+    *** @param hint  The last known subdivision of the vehicle (may be null)
+    *** @return The subdivision, or null if not available
+    **/
+    private static String _getSubdivision(BasicPrivateLabel privLabel, GeoPoint gp, String hint, boolean fastOnly)
+    {
+        SubdivisionProvider sdp = privLabel.getSubdivisionProvider();
+        if (sdp == null) {
+            return null;
+        } else
+        if (fastOnly && !sdp.isFastOperation()) {
+            // -- subdivision lookup is slow, skip
+            return null;
+        }
+        try {
+            privLabel.pushRTProperties();
+            String subdiv = sdp.getSubdivision(gp, hint);
+            return !StringTools.isBlank(subdiv)? subdiv : null;
+        } catch (Throwable th) { // SubdivisionException
+            Print.logWarn("Unable to obtain subdivision: " + th);
+            return null;
+        } finally {
+            privLabel.popRTProperties();
+        }
+    }
     
     // ------------------------------------------------------------------------
 
@@ -3388,7 +3517,7 @@ public class EventData
             // -- currently "cache" is expected to be true when the vehicle is "stopped"
             // -  the reverse-geocoding process may be dependent on this behavior.
             boolean cache = (this.getSpeedKPH() <= 0.0)? true : false; // cache if not moving
-            rg = rgp.getReverseGeocode(addrGP, localeStr, cache/*stopped*/); // get the reverse-geocode
+            rg = ReverseGeocodeProviderAdapter.GetReverseGeocode(rgp, addrGP, localeStr, cache/*stopped*/); // get the reverse-geocode
         } catch (Throwable th) {
             // -- ignore
         } finally {
@@ -9291,6 +9420,231 @@ public class EventData
 
     // ------------------------------------------------------------------------
 
+    private static final int    LAST_EVENT_KEY_BATCH_SIZE   = 100;
+    private static final String AGG_lastTimestamp           = "lastTimestamp";
+
+    /**
+    *** Returns the last event for each of the specified devices.<br>
+    *** The last event timestamp of each device is obtained from the Device record
+    *** ("lastGPSTimestamp"/"lastEventTimestamp"), and the events are then read by
+    *** primary key, in batches:<br>
+    *** [DB]WHERE (accountID='acct') AND (((deviceID='d1') AND (timestamp=T1)) OR ...)<br>
+    *** Devices for which the Device record does not identify an event fall back to a
+    *** per-device "MAX(timestamp) ... GROUP BY deviceID" aggregate.
+    *** @param acctId    The Account ID
+    *** @param devIds    The Device IDs (null for all account devices)
+    *** @param validGPS  True to return the last event with a valid GPS location
+    *** @return A map of Device ID to last EventData record (does not return null)
+    **/
+    public static Map<String,EventData> getLastEventsByDevice(String acctId, Collection<String> devIds, boolean validGPS)
+        throws DBException
+    {
+        Map<String,EventData> evMap = new HashMap<String,EventData>();
+
+        /* nothing to read? */
+        if (StringTools.isBlank(acctId) || ((devIds != null) && devIds.isEmpty())) {
+            return evMap;
+        }
+
+        /* last event timestamps from the Device records */
+        Map<String,Long> lastTS = Device.getLastEventTimestamps(acctId, devIds, validGPS);
+        Set<String> missing = new HashSet<String>();
+        for (Iterator<String> i = lastTS.keySet().iterator(); i.hasNext();) {
+            String devId = i.next();
+            if (lastTS.get(devId).longValue() <= 0L) {
+                missing.add(devId);
+                i.remove();
+            }
+        }
+
+        /* read events by key */
+        EventData._readEventsByKey(acctId, lastTS, validGPS, evMap);
+        for (String devId : lastTS.keySet()) {
+            if (!evMap.containsKey(devId)) {
+                missing.add(devId); // Device record does not match the events
+            }
+        }
+
+        /* fallback: aggregate last timestamps for the remaining devices */
+        if (!missing.isEmpty()) {
+            DBFactory<EventData> dbFact = EventData.getFactory();
+            DBSelect<EventData> dsel = new DBSelect<EventData>(dbFact);
+            DBWhere dwh = dsel.createDBWhere();
+            dwh.append(dwh.EQ(EventData.FLD_accountID, acctId));
+            java.util.List<String> devOr = new Vector<String>();
+            for (String devId : missing) {
+                devOr.add(dwh.EQ(EventData.FLD_deviceID, devId));
+            }
+            dwh.append(dwh.AND_(dwh.OR(devOr)));
+            if (validGPS) {
+                dwh.append(dwh.AND_(
+                    dwh.OR(
+                        dwh.NE(EventData.FLD_latitude ,0L),
+                        dwh.NE(EventData.FLD_longitude,0L)
+                    )
+                ));
+            }
+            dsel.setWhere(dwh.WHERE(dwh.toString()));
+            // -- SELECT deviceID,MAX(timestamp) AS lastTimestamp FROM EventData WHERE ... GROUP BY deviceID
+            dsel.setGroupByFields(EventData.FLD_deviceID);
+            dsel.addAggregate(DBSelect.AggregateType.MAX, EventData.FLD_timestamp, AGG_lastTimestamp);
+            Map<String,Long> aggTS = new HashMap<String,Long>();
+            for (DBSelect.AggregateRow row : DBRecord.selectAggregates(dsel)) {
+                String devId = row.getString(EventData.FLD_deviceID);
+                long   ts    = row.getLong(AGG_lastTimestamp, 0L);
+                if (!StringTools.isBlank(devId) && (ts > 0L)) {
+                    aggTS.put(devId, new Long(ts));
+                }
+            }
+            EventData._readEventsByKey(acctId, aggTS, validGPS, evMap);
+        }
+
+        return evMap;
+
+    }
+
+    /**
+    *** Reads the events at the specified device timestamps, by primary key
+    *** (the last status code is returned for duplicate timestamps)
+    **/
+    private static void _readEventsByKey(String acctId, Map<String,Long> devTS, boolean validGPS, 
+        Map<String,EventData> evMap)
+        throws DBException
+    {
+        DBFactory<EventData> dbFact = EventData.getFactory();
+        java.util.List<String> devList = new Vector<String>(devTS.keySet());
+        for (int b = 0; b < devList.size(); b += LAST_EVENT_KEY_BATCH_SIZE) {
+            int e = Math.min(b + LAST_EVENT_KEY_BATCH_SIZE, devList.size());
+            DBWhere dwh = new DBWhere(dbFact);
+            java.util.List<String> keys = new Vector<String>();
+            for (int i = b; i < e; i++) {
+                String devId = devList.get(i);
+                keys.add(dwh.AND(
+                    dwh.EQ(EventData.FLD_deviceID , devId),
+                    dwh.EQ(EventData.FLD_timestamp, devTS.get(devId).longValue())));
+            }
+            dwh.append(dwh.EQ(EventData.FLD_accountID, acctId));
+            dwh.append(dwh.AND_(dwh.OR(keys)));
+            if (validGPS) {
+                dwh.append(dwh.AND_(
+                    dwh.OR(
+                        dwh.NE(EventData.FLD_latitude ,0L),
+                        dwh.NE(EventData.FLD_longitude,0L)
+                    )
+                ));
+            }
+            DBSelect<EventData> dsel = new DBSelect<EventData>(dbFact);
+            dsel.setWhere(dwh.WHERE(dwh.toString()));
+            dsel.setOrderByFields(EventData.FLD_deviceID, EventData.FLD_timestamp, EventData.FLD_statusCode);
+            EventData ed[] = EventData.getSelectedEvents(dsel, null); // may return null
+            if (ed != null) {
+                for (EventData ev : ed) {
+                    // -- last status code for duplicate timestamps
+                    evMap.put(ev.getDeviceID(), ev);
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns the next page of events for the specified device which follow the specified
+    *** event key, in ascending timestamp/statusCode order.  Used to read a large range of
+    *** events incrementally (keyset paging), without holding a cursor open between pages.<br>
+    *** [DB]WHERE ... AND ((timestamp&gt;T) OR ((timestamp=T) AND (statusCode&gt;S)))
+    ***   ORDER BY timestamp,statusCode LIMIT N
+    *** @param acctId     The Account ID
+    *** @param devId      The Device ID
+    *** @param afterTS    The timestamp of the last event previously read (-1 to start at 'timeStart')
+    *** @param afterSC    The status code of the last event previously read
+    *** @param timeStart  The range start time (-1 for no start time)
+    *** @param timeEnd    The range end time (-1 for no end time)
+    *** @param validGPS   True to return only events with a valid GPS location
+    *** @param limit      The maximum number of events to return
+    *** @return The next page of events (does not return null)
+    **/
+    public static EventData[] getEventsAfter(
+        String acctId, String devId,
+        long afterTS, int afterSC,
+        long timeStart, long timeEnd,
+        boolean validGPS,
+        long limit)
+        throws DBException
+    {
+        return EventData.getEventsAfter(
+            acctId, devId,
+            afterTS, afterSC,
+            timeStart, timeEnd,
+            validGPS,
+            limit,
+            null/*selFields*/);
+    }
+
+    /**
+    *** Returns the next page of events for the specified device which follow the specified
+    *** event key, in ascending timestamp/statusCode order (see above).
+    *** @param acctId     The Account ID
+    *** @param devId      The Device ID
+    *** @param afterTS    The timestamp of the last event previously read (-1 to start at 'timeStart')
+    *** @param afterSC    The status code of the last event previously read
+    *** @param timeStart  The range start time (-1 for no start time)
+    *** @param timeEnd    The range end time (-1 for no end time)
+    *** @param validGPS   True to return only events with a valid GPS location
+    *** @param limit      The maximum number of events to return
+    *** @param selFields  The fields to select (see "getSelectFields"), null for all fields
+    *** @return The next page of events (does not return null)
+    **/
+    public static EventData[] getEventsAfter(
+        String acctId, String devId,
+        long afterTS, int afterSC,
+        long timeStart, long timeEnd,
+        boolean validGPS,
+        long limit,
+        Set<String> selFields)
+        throws DBException
+    {
+
+        /* account/device required */
+        if (StringTools.isBlank(acctId) || StringTools.isBlank(devId)) {
+            return EMPTY_ARRAY;
+        }
+
+        /* continue after last event */
+        String afterSel = null;
+        if (afterTS >= 0L) {
+            DBWhere dwh = new DBWhere(EventData.getFactory());
+            afterSel = dwh.OR(
+                dwh.GT(EventData.FLD_timestamp, afterTS),
+                dwh.AND(
+                    dwh.EQ(EventData.FLD_timestamp , afterTS),
+                    dwh.GT(EventData.FLD_statusCode, afterSC)
+                )
+            );
+        }
+
+        /* select */
+        // -- resolved with the (accountID,deviceID,timestamp,statusCode) primary key
+        DBSelect<EventData> dsel = new DBSelect<EventData>(EventData.getFactory());
+        dsel.setWhere(EventData.getWhereClause(
+            acctId, devId,
+            timeStart, timeEnd,
+            null/*statCode*/,
+            validGPS,
+            afterSel));
+        dsel.setOrderByFields(EventData.FLD_timestamp, EventData.FLD_statusCode);
+        dsel.setOrderAscending(true);
+        dsel.setLimit(limit);
+        if (!ListTools.isEmpty(selFields)) {
+            dsel.setSelectedFields(selFields);
+        }
+        EventData ed[] = EventData.getSelectedEvents(dsel, null); // may return null
+        return (ed != null)? ed : EMPTY_ARRAY;
+
+    }
+
+    // ------------------------------------------------------------------------
+
     /* create range event selector */
     private static DBSelect<EventData> _createRangeEventSelector(
         String acctId, String devId,
@@ -9428,6 +9782,31 @@ public class EventData
         DBRecordHandler<EventData> rcdHandler)
         throws DBException
     {
+        return EventData.getRangeEvents(
+            acctId, devId, 
+            timeStart, timeEnd,
+            statCode,
+            validGPS, 
+            limitType, limit, ascending,
+            addtnlSelect_1, addtnlSelect_2,
+            null/*selFields*/,
+            rcdHandler);
+    }
+
+    /* get range of EventData records (does not return null) */
+    // -- 'selFields' is the list of fields to select (see "getSelectFields"), null for all fields
+    public static EventData[] getRangeEvents(
+        String acctId, 
+        String devId,
+        long timeStart, long timeEnd,
+        int statCode[],
+        boolean validGPS,
+        EventData.LimitType limitType, long limit, boolean ascending,
+        String addtnlSelect_1, String addtnlSelect_2,
+        Set<String> selFields,
+        DBRecordHandler<EventData> rcdHandler)
+        throws DBException
+    {
 
         /* get record selector */
         DBSelect<EventData> dsel = EventData._createRangeEventSelector(
@@ -9443,6 +9822,11 @@ public class EventData
             return EMPTY_ARRAY;
         }
 
+        /* selected fields (other fields are loaded on first access) */
+        if (!ListTools.isEmpty(selFields)) {
+            dsel.setSelectedFields(selFields);
+        }
+
         /* debug: compare SQL selections */
         //if (DBConnection.getShowExecutedSQL()) {
         //    Print.logInfo("SQL Select comparison:");
@@ -9563,6 +9947,29 @@ public class EventData
         throws DBException
     {
 
+        /* daily rollups */
+        if (EventDailyRollup.IsEnabled() && 
+            !StringTools.isBlank(acctID) && !StringTools.isBlank(devID)) {
+            return EventDailyRollup.getStatusCodeCounts(acctID, devID, timeStart, timeEnd, statCode);
+        }
+
+        /* count EventData records */
+        return EventData._getStatusCodeCounts(acctID, devID, timeStart, timeEnd, statCode);
+
+    }
+
+    /**
+    *** Returns a map containing the occurance-count of each specified status code, 
+    *** counted from the EventData table.
+    *** Does not return null (returned map may be empty if statusCodes are not found)
+    **/
+    static Map<Integer,Long> _getStatusCodeCounts(
+        String acctID, String devID,
+        long timeStart, long timeEnd,
+        int... statCode) // statCode[]
+        throws DBException
+    {
+
         /* returned StatusCode/Count map */
         Map<Integer,Long> map = new HashMap<Integer,Long>();
 
@@ -9598,38 +10005,18 @@ public class EventData
         }
 
         /* group by statusCode */
-        dsel.setSelectedFields(
-            DBProvider.FLD_COUNT(),  // must be first column
-            EventData.FLD_statusCode,
-            EventData.FLD_accountID, // not used
-            EventData.FLD_deviceID   // not used
-            );
+        // -- SELECT statusCode,COUNT(*) AS eventCount FROM EventData WHERE ... GROUP BY statusCode
         dsel.setGroupByFields(EventData.FLD_statusCode);
+        dsel.addCountAggregate(AGG_eventCount);
         dsel.setOrderByFields((String[])null);
+        dsel.setLimit(0L);
 
-        /* get result set */
-        DBConnection dbc  = null;
-        Statement   stmt  = null;
-        ResultSet   rs    = null;
-        try {
-            dbc  = DBConnection.getDBConnection_read();
-            stmt = dbc.execute(dsel.toString());
-            rs   = stmt.getResultSet();
-            if (rs.next()) {
-                long   count  = rs.getLong(1); // first column: indices start at '1'
-                int    sc     = rs.getInt(EventData.FLD_statusCode);
-              //String acctID = rs.getString(EventData.FLD_accountID);
-              //String devID  = rs.getString(EventData.FLD_deviceID);
-                map.put(new Integer(sc), new Long(count));
-            }
-        } catch (SQLException sqe) {
-            // -- Apache Derby may complain that column DBProvider.FLD_COUNT() doesn't exist
-            //this.setLastCaughtSQLException(sqe); // getRecordCount(...)
-            throw new DBException("StatusCode Count", sqe);
-        } finally {
-            if (rs   != null) { try { rs.close();   } catch (Throwable t) {} }
-            if (stmt != null) { try { stmt.close(); } catch (Throwable t) {} }
-            DBConnection.release(dbc);
+        /* one aggregate row per statusCode */
+        java.util.List<DBSelect.AggregateRow> rows = DBRecord.selectAggregates(dsel);
+        for (DBSelect.AggregateRow row : rows) {
+            int  sc    = (int)row.getLong(EventData.FLD_statusCode, StatusCodes.STATUS_NONE);
+            long count = row.getLong(AGG_eventCount, 0L);
+            map.put(new Integer(sc), new Long(count));
         }
 
         /* return map of statusCode counts */
@@ -9639,6 +10026,222 @@ public class EventData
 
     // ------------------------------------------------------------------------
 
+    /* aggregate column names */
+    private static final String AGG_eventCount          = "eventCount";
+    private static final String AGG_timeBucket          = "timeBucket";
+    private static final String AGG_lastCreated         = "lastCreated";
+
+    /* maximum number of devices included in a single aggregate select */
+    private static final int    AGG_MAX_DEVICES         = 200;
+
+    /**
+    *** Returns the EventData record counts for each of the specified devices, counted
+    *** by the database (one aggregate row per device/bucket is returned, rather than
+    *** the matching EventData records).<br>
+    *** If a bucket size is specified, the counts are grouped by the time bucket number
+    *** "floor((timestamp + bucketOfs) / bucketSec)", otherwise the bucket number is '0'.
+    *** Devices with no matching events are not included in the returned map.
+    *** @param acctID       The account ID
+    *** @param devID        The list of device IDs
+    *** @param timeStart    The start time (inclusive)
+    *** @param timeEnd      The end time (inclusive)
+    *** @param statCode     The status codes to count (null for all)
+    *** @param validGPS     True to count only events with a valid GPS location
+    *** @param addtnlSelect Additional where selection (may be null)
+    *** @param bucketSec    The time bucket size (seconds), 0 for no time bucket
+    *** @param bucketOfs    The time bucket offset (seconds), ie. the TimeZone offset
+    *** @return A map of DeviceID to a map of bucket number to count (does not return null)
+    **/
+    public static Map<String,Map<Long,Long>> getDeviceEventCounts(
+        String acctID, java.util.List<String> devID,
+        long timeStart, long timeEnd,
+        int statCode[],
+        boolean validGPS,
+        String addtnlSelect,
+        long bucketSec, long bucketOfs)
+        throws DBException
+    {
+        Map<String,Map<Long,Long>> devMap = new HashMap<String,Map<Long,Long>>();
+
+        /* account/devices required */
+        if (StringTools.isBlank(acctID) || ListTools.isEmpty(devID)) {
+            return devMap;
+        }
+
+        /* invalid time range */
+        if ((timeStart > 0L) && (timeEnd > 0L) && (timeStart > timeEnd)) {
+            return devMap;
+        }
+
+        /* count in groups of devices */
+        for (int d = 0; d < devID.size(); d += AGG_MAX_DEVICES) {
+            java.util.List<String> devGroup = devID.subList(d, Math.min(d + AGG_MAX_DEVICES, devID.size()));
+
+            /* select */
+            // -- SELECT deviceID,[(timestamp+ofs)/size AS timeBucket,]COUNT(*) AS eventCount 
+            // -    FROM EventData WHERE ... GROUP BY deviceID[,(timestamp+ofs)/size]
+            DBWhere dwh = new DBWhere(EventData.getFactory());
+            DBSelect<EventData> dsel = new DBSelect<EventData>(EventData.getFactory());
+            dsel.setWhere(EventData.getWhereClause(
+                acctID, null/*devID*/,
+                timeStart, timeEnd,
+                statCode,
+                validGPS,
+                dwh.INLIST(EventData.FLD_deviceID, devGroup), addtnlSelect));
+            dsel.setGroupByFields(EventData.FLD_deviceID);
+            if (bucketSec > 0L) {
+                dsel.setTimeBucket(EventData.FLD_timestamp, bucketSec, bucketOfs, AGG_timeBucket);
+            }
+            dsel.addCountAggregate(AGG_eventCount);
+
+            /* aggregate */
+            java.util.List<DBSelect.AggregateRow> rows = null;
+            try {
+                if (EventData.LockTableOnRead()) {
+                    DBProvider.lockTables(new String[] { EventData.TABLE_NAME() }, null);
+                }
+                rows = DBRecord.selectAggregates(dsel);
+            } finally {
+                if (EventData.LockTableOnRead()) {
+                    DBProvider.unlockTables();
+                }
+            }
+
+            /* accumulate */
+            for (DBSelect.AggregateRow row : rows) {
+                String dev    = StringTools.trim(row.getString(EventData.FLD_deviceID));
+                long   bucket = (bucketSec > 0L)? row.getLong(AGG_timeBucket, 0L) : 0L;
+                long   count  = row.getLong(AGG_eventCount, 0L);
+                Map<Long,Long> bucketMap = devMap.get(dev);
+                if (bucketMap == null) {
+                    bucketMap = new HashMap<Long,Long>();
+                    devMap.put(dev, bucketMap);
+                }
+                Long accum = bucketMap.get(new Long(bucket));
+                bucketMap.put(new Long(bucket), new Long(((accum != null)? accum.longValue() : 0L) + count));
+            }
+
+        }
+
+        /* return device counts */
+        return devMap;
+
+    }
+
+    /**
+    *** Returns a signature of the EventData records within the specified time range for
+    *** each of the specified devices, consisting of the number of records, the latest
+    *** record creation time, and the number of records with a blank address.  The signature
+    *** changes when records are inserted into, or deleted from, the time range, or when
+    *** blank addresses are filled in (ie. deferred reverse-geocoding, or address backfill),
+    *** by any process.
+    *** Devices with no events in the range are not included in the returned map.
+    *** Returns null if "COUNT(*)" is not allowed for the EventData table (see
+    *** "EventData.allowInnoDBCountWithWhere").
+    *** @param acctID       The account ID
+    *** @param devID        The list of device IDs
+    *** @param timeStart    The start time (inclusive)
+    *** @param timeEnd      The end time (inclusive)
+    *** @return A map of DeviceID to signature, or null if signatures are not available
+    **/
+    public static Map<String,String> getDeviceRangeSignatures(
+        String acctID, java.util.List<String> devID,
+        long timeStart, long timeEnd)
+        throws DBException
+    {
+        Map<String,String> sigMap = new HashMap<String,String>();
+
+        /* account/devices required */
+        if (StringTools.isBlank(acctID) || ListTools.isEmpty(devID)) {
+            return sigMap;
+        }
+
+        /* "COUNT(*)" with "WHERE" allowed? */
+        DBFactory<EventData> fact = EventData.getFactory();
+        if (fact.isMySQLInnoDB() && !fact.getAllowInnoDBCOUNT()) {
+            Print.logDebug("'COUNT(*)' not allowed, EventData signatures not available");
+            return null;
+        }
+
+        /* creation time field */
+        String createFld = EventData.getFactory().hasField(EventData.FLD_creationMillis)?
+            EventData.FLD_creationMillis : EventData.FLD_creationTime;
+
+        /* select in groups of devices */
+        for (int d = 0; d < devID.size(); d += AGG_MAX_DEVICES) {
+            java.util.List<String> devGroup = devID.subList(d, Math.min(d + AGG_MAX_DEVICES, devID.size()));
+
+            /* select */
+            // -- SELECT deviceID,COUNT(*) AS eventCount,MAX(creationMillis) AS lastCreated
+            // -    FROM EventData WHERE ... GROUP BY deviceID
+            java.util.List<DBSelect.AggregateRow> rows = EventData._getRangeSignatureRows(
+                acctID, devGroup, timeStart, timeEnd, createFld, false);
+
+            /* blank addresses */
+            // -- SELECT deviceID,COUNT(*) AS eventCount FROM EventData WHERE ... AND (address='') GROUP BY deviceID
+            Map<String,Long> blankMap = new HashMap<String,Long>();
+            for (DBSelect.AggregateRow row : EventData._getRangeSignatureRows(
+                acctID, devGroup, timeStart, timeEnd, null, true)) {
+                String dev   = StringTools.trim(row.getString(EventData.FLD_deviceID));
+                blankMap.put(dev, new Long(row.getLong(AGG_eventCount, 0L)));
+            }
+
+            /* signatures */
+            for (DBSelect.AggregateRow row : rows) {
+                String dev     = StringTools.trim(row.getString(EventData.FLD_deviceID));
+                long   count   = row.getLong(AGG_eventCount , 0L);
+                long   created = row.getLong(AGG_lastCreated, 0L);
+                Long   blank   = blankMap.get(dev);
+                sigMap.put(dev, count + ":" + created + ":" + ((blank != null)? blank.longValue() : 0L));
+            }
+
+        }
+
+        /* return device signatures */
+        return sigMap;
+
+    }
+
+    /**
+    *** Returns the per-device event count (and optionally the latest creation time) within 
+    *** the specified time range, used by "getDeviceRangeSignatures"
+    *** @param createFld     The creation time field (null to omit)
+    *** @param blankAddress  True to count only events with a blank address
+    **/
+    private static java.util.List<DBSelect.AggregateRow> _getRangeSignatureRows(
+        String acctID, java.util.List<String> devGroup,
+        long timeStart, long timeEnd,
+        String createFld, boolean blankAddress)
+        throws DBException
+    {
+        DBWhere dwh = new DBWhere(EventData.getFactory());
+        DBSelect<EventData> dsel = new DBSelect<EventData>(EventData.getFactory());
+        dsel.setWhere(EventData.getWhereClause(
+            acctID, null/*devID*/,
+            timeStart, timeEnd,
+            null/*statCode*/,
+            false/*validGPS*/,
+            dwh.INLIST(EventData.FLD_deviceID, devGroup),
+            (blankAddress? dwh.EQ(EventData.FLD_address,"") : null)));
+        dsel.setGroupByFields(EventData.FLD_deviceID);
+        dsel.addCountAggregate(AGG_eventCount);
+        if (createFld != null) {
+            dsel.addAggregate(DBSelect.AggregateType.MAX, createFld, AGG_lastCreated);
+        }
+        try {
+            if (EventData.LockTableOnRead()) {
+                DBProvider.lockTables(new String[] { EventData.TABLE_NAME() }, null);
+            }
+            return DBRecord.selectAggregates(dsel);
+        } finally {
+            if (EventData.LockTableOnRead()) {
+                DBProvider.unlockTables();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
     /* get EventData records by "creationMillis" (does not return null) */
     public static EventData[] getEventsByCreationMillis(
         String acctId, 
@@ -9710,6 +10313,79 @@ public class EventData
 
     }
 
+    /**
+    *** Returns the next page of EventData records for the specified device, which were created
+    *** (inserted) within the specified "creationMillis" window, in ascending creationMillis/timestamp/statusCode 
+    *** order (keyset paging on the "pushkey" alternate index).<br>
+    *** [DB]WHERE (accountID='acct') AND (deviceID='dev') AND (creationMillis&gt;S) AND (creationMillis&lt;=E)
+    ***   [AND (creationMillis,timestamp,statusCode) follows (C,T,S)] 
+    ***   ORDER BY creationMillis,timestamp,statusCode LIMIT N
+    *** @param acctId         The Account ID
+    *** @param devId          The Device ID
+    *** @param createAfterMS  The window start creation time (exclusive, -1 for all events)
+    *** @param createEndMS    The window end creation time (inclusive)
+    *** @param afterCM        The creationMillis of the last event previously read (-1 to start at the window start)
+    *** @param afterTS        The timestamp of the last event previously read
+    *** @param afterSC        The status code of the last event previously read
+    *** @param limit          The maximum number of events to return
+    *** @return The next page of events (does not return null)
+    **/
+    public static EventData[] getEventsCreatedAfter(
+        String acctId, String devId,
+        long createAfterMS, long createEndMS,
+        long afterCM, long afterTS, int afterSC,
+        long limit)
+        throws DBException
+    {
+        DBFactory<EventData> dbFact = EventData.getFactory();
+
+        /* invalid account/device */
+        if (StringTools.isBlank(acctId) || StringTools.isBlank(devId)) {
+            return EMPTY_ARRAY;
+        }
+
+        /* does "creationMillis" exist? */
+        if (!dbFact.hasField(EventData.FLD_creationMillis)) {
+            Print.logError("EventData table does not contain field '"+EventData.FLD_creationMillis+"'");
+            return EMPTY_ARRAY;
+        }
+
+        /* where */
+        DBWhere dwh = new DBWhere(dbFact);
+        dwh.append(dwh.EQ(EventData.FLD_accountID, acctId));
+        dwh.append(dwh.AND_(dwh.EQ(EventData.FLD_deviceID, devId)));
+        dwh.append(dwh.AND_(dwh.GT(EventData.FLD_creationMillis, createAfterMS)));
+        dwh.append(dwh.AND_(dwh.LE(EventData.FLD_creationMillis, createEndMS)));
+        if (afterCM >= 0L) {
+            // -- AND ((creationMillis>C) OR ((creationMillis=C) AND ((timestamp>T) OR ((timestamp=T) AND (statusCode>S)))))
+            dwh.append(dwh.AND_(
+                dwh.OR(
+                    dwh.GT(EventData.FLD_creationMillis, afterCM),
+                    dwh.AND(
+                        dwh.EQ(EventData.FLD_creationMillis, afterCM),
+                        dwh.OR(
+                            dwh.GT(EventData.FLD_timestamp, afterTS),
+                            dwh.AND(
+                                dwh.EQ(EventData.FLD_timestamp , afterTS),
+                                dwh.GT(EventData.FLD_statusCode, afterSC)
+                            )
+                        )
+                    )
+                )
+            ));
+        }
+
+        /* select */
+        DBSelect<EventData> dsel = new DBSelect<EventData>(dbFact);
+        dsel.setWhere(dwh.WHERE(dwh.toString()));
+        dsel.setOrderByFields(FLD_creationMillis,FLD_timestamp,FLD_statusCode);
+        dsel.setOrderAscending(true);
+        dsel.setLimit(limit);
+        EventData ed[] = EventData.getSelectedEvents(dsel, null); // may return null
+        return (ed != null)? ed : EMPTY_ARRAY;
+
+    }
+
     // ------------------------------------------------------------------------
 
     /**
@@ -9821,6 +10497,8 @@ public class EventData
         } finally {
             DBConnection.release(dbc);
         }
+        TripSegment.eventsDeleted(acctID, devID, delFromTime, -1L);
+        EventDailyRollup.eventsDeleted(acctID, devID, delFromTime, -1L);
 
         /* return count */
         return count;
@@ -9945,6 +10623,8 @@ public class EventData
         } finally {
             DBConnection.release(dbc);
         }
+        TripSegment.eventsDeleted(acctID, devID, -1L, oldTimeSec);
+        EventDailyRollup.eventsDeleted(acctID, devID, -1L, oldTimeSec);
 
         /* return count */
         return count; // -1 for InnoDB
@@ -9996,6 +10676,20 @@ public class EventData
         GeoPoint startingGP, double startingOdomKM)
     {
 
+        /* daily rollups */
+        if (EventDailyRollup.IsEnabled() && 
+            !StringTools.isBlank(acctId) && !StringTools.isBlank(devId)) {
+            try {
+                return EventDailyRollup.getGPSDistanceTraveledKM(
+                    acctId, devId,
+                    timeStart, timeEnd,
+                    startingGP, startingOdomKM);
+            } catch (DBException dbe) {
+                Print.logException("Calculating GPS distance traveled (rollup)", dbe);
+                // -- continue below
+            }
+        }
+
         /* record handler */
         GPSDistanceAccumulator rcdHandler = new GPSDistanceAccumulator(startingGP, startingOdomKM);
 
@@ -11991,6 +12685,13 @@ public class EventData
     private static final String ARG_ADDR_LEN[]          = new String[] { "addressLen"                   };
     private static final String ARG_QUERY_ALL[]         = new String[] { "queryAll"                     };
   //private static final String ARG_UPDATE_ADDRESS[]    = new String[] { "updateAddress"                };
+    private static final String ARG_BACKFILL_ADDRESS[]  = new String[] { "backfillAddress"              };
+    private static final String ARG_START[]             = new String[] { "start"            , "from"    };
+    private static final String ARG_END[]               = new String[] { "end"              , "to"      };
+    private static final String ARG_THREADS[]           = new String[] { "threads"                      };
+    private static final String ARG_RATE[]              = new String[] { "rate"             , "maxPerSecond" };
+    private static final String ARG_CHECKPOINT[]        = new String[] { "checkpoint"                   };
+    private static final String ARG_CACHE_FILE[]        = new String[] { "cacheFile"                    };
 
     private static final String ARG_MAKE_INNODB[]       = new String[] { "makeInnoDB"                   };
     private static final String ARG_CONFIRM_INNODB[]    = new String[] { "confirmInnoDB"                };
@@ -12001,6 +12702,12 @@ public class EventData
         Print.sysPrintln("  java ... " + EventData.class.getName() + " {options}");
         Print.sysPrintln("Common Options:");
         Print.sysPrintln("  -eps=<HOURS>   Display event-per-second over the last specified HOURS");
+        Print.sysPrintln("  -backfillAddress -account=<id> [-device=<id>] [-start=<time>] [-end=<time>]");
+        Print.sysPrintln("                 Reverse-geocode events with blank addresses in the specified range");
+        Print.sysPrintln("    -threads=<N>        Concurrent reverse-geocode requests [" + EventAddressBackfill.DEFAULT_THREADS + "]");
+        Print.sysPrintln("    -rate=<N>           Maximum reverse-geocode requests per second [" + EventAddressBackfill.DEFAULT_MAX_PER_SECOND + "]");
+        Print.sysPrintln("    -checkpoint=<file>  Checkpoint file used to resume an interrupted backfill");
+        Print.sysPrintln("    -cacheFile=<file>   Persistent ReverseGeocodeCache file");
         System.exit(1);
     }
 
@@ -12051,6 +12758,53 @@ public class EventData
             System.exit(0);
         }
 
+        /* backfill blank addresses */
+        if (RTConfig.getBoolean(ARG_BACKFILL_ADDRESS,false)) {
+            // -- bin/admin.pl EventData -backfillAddress -account=<id> [-start=<time>] [-end=<time>] [-checkpoint=<file>]
+            // -  (if "-start" is omitted, the backfill starts at the oldest event with a blank address)
+            Account account = null;
+            try {
+                account = !StringTools.isBlank(accountID)? Account.getAccount(accountID) : null;
+            } catch (DBException dbe) {
+                Print.logException("Error loading Account: " + accountID, dbe);
+                System.exit(99);
+            }
+            if (account == null) {
+                Print.sysPrintln("ERROR: Account not specified, or does not exist: " + accountID);
+                usage();
+            }
+            TimeZone acctTMZ = account.getTimeZone(null);
+            long startTime = -1L;
+            long endTime   = -1L;
+            try {
+                String startStr = RTConfig.getString(ARG_START,"");
+                String endStr   = RTConfig.getString(ARG_END  ,"");
+                startTime = !StringTools.isBlank(startStr)? DateTime.parseArgumentDate(startStr,acctTMZ,false).getTimeSec() : -1L;
+                endTime   = !StringTools.isBlank(endStr  )? DateTime.parseArgumentDate(endStr  ,acctTMZ,true ).getTimeSec() : DateTime.getCurrentTimeSec();
+            } catch (DateTime.DateParseException dpe) {
+                Print.sysPrintln("ERROR: Invalid start/end time: " + dpe.getMessage());
+                usage();
+            }
+            EventAddressBackfill backfill = new EventAddressBackfill(account, deviceID);
+            backfill.setMaximumThreads(RTConfig.getInt(ARG_THREADS, EventAddressBackfill.DEFAULT_THREADS));
+            backfill.setMaximumRequestsPerSecond(RTConfig.getDouble(ARG_RATE, EventAddressBackfill.DEFAULT_MAX_PER_SECOND));
+            backfill.setCheckpointFile(RTConfig.getFile(ARG_CHECKPOINT, null));
+            File cacheFile = RTConfig.getFile(ARG_CACHE_FILE, null);
+            if (cacheFile != null) {
+                backfill.getReverseGeocodeCache().setPersistentCache(cacheFile, 
+                    ReverseGeocodeFileCache.DEFAULT_MAX_SIZE, ReverseGeocodeFileCache.DEFAULT_MAX_AGE_MS);
+            }
+            int exitCode = 0;
+            try {
+                backfill.run(startTime, endTime);
+            } catch (DBException dbe) {
+                Print.logException("Address backfill failed", dbe);
+                exitCode = 99;
+            }
+            backfill.getReverseGeocodeCache().stopAutoTrimThread();
+            System.exit(exitCode);
+        }
+
         /* EventData query */
         if (RTConfig.getBoolean(ARG_QUERY_ALL,false)) {
             DBSelect<EventData> dsel = EventData._createRangeEventSelector(
@@ -0,0 +1,1147 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Precomputed per-device trip segments (start, stop, distance, stopped time,
+//  idle time, maximum speed), maintained as events are inserted.
+//  - Each device has a TripSegmenter state machine (see "TripSegmenter"), which
+//    is cached in memory.  A segment record is written when a trip starts, stops,
+//    or when the next trip starts (which completes the stopped/idle time).
+//  - If the segmenter for a device is not cached (ie. after a restart), or if an
+//    event arrives out of order, the affected window is recomputed in a background
+//    thread: the segments starting at (or after) the segment preceding the event are
+//    deleted, and the EventData records from the start of that segment are replayed.
+//    Events received for a device while its recompute is pending are coalesced into
+//    that recompute (a backfill results in a single replay from the earliest event).
+//  - Each segment records the time of the last event applied to it, which is also
+//    refreshed (at most every "TripSegment.lastEventInterval" seconds) while the
+//    segment is unchanged.  Reports only use the segments when this time covers the
+//    last event within the report range (see "hasSegmentCoverage").
+//  - Segments are only maintained for events inserted by a process in which
+//    "TripSegment.enable" is true.  Events inserted by other processes require the
+//    affected range to be rebuilt with the command-line "-rebuild" option.
+// ----------------------------------------------------------------------------
+package org.opengts.db.tables;
+
+import java.lang.*;
+import java.util.*;
+import java.math.*;
+import java.io.*;
+import java.sql.*;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+
+import org.opengts.db.*;
+import org.opengts.db.tables.*;
+
+public class TripSegment
+    extends DeviceRecord<TripSegment>
+{
+
+    // ------------------------------------------------------------------------
+
+    /* days rebuilt by "-rebuild" if no "-from" date is specified */
+    private static final int    DEFAULT_REBUILD_DAYS        = 30;
+
+    /* maximum number of cached device segmenters */
+    private static final int    MAX_CACHED_SEGMENTERS       = 5000;
+
+    /* default interval between "lastEventTime" updates of an unchanged segment */
+    private static final long   DEFAULT_LAST_EVENT_INTERVAL = 60L;
+
+    /* interval between checks for the existence of the segment table */
+    private static final long   TABLE_CHECK_INTERVAL_MS     = DateTime.MinuteSeconds(5) * 1000L;
+
+    /* default TRIP_ON_SPEED parameters (same as MotionReport) */
+    public  static final double DEFAULT_MIN_SPEED_KPH       = 0.0;
+    public  static final long   DEFAULT_MIN_STOPPED_SEC     = DateTime.MinuteSeconds(5);
+
+    /* per-device update locks (striped) */
+    private static final Object SegmentLock[]               = new Object[32];
+    static {
+        for (int i = 0; i < SegmentLock.length; i++) {
+            SegmentLock[i] = new Object();
+        }
+    }
+
+    /**
+    *** Gets the update lock for the specified Account/Device
+    **/
+    private static Object GetSegmentLock(String acctID, String devID)
+    {
+        int h = (acctID + "/" + devID).hashCode();
+        return SegmentLock[(h & 0x7FFFFFFF) % SegmentLock.length];
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static Boolean tableAvailable   = null;
+    private static long    tableCheckTimeMS = 0L;
+
+    /**
+    *** Returns true if trip segments are enabled, and the segment table exists
+    *** (the existence of the table is rechecked every few minutes)
+    **/
+    public static boolean IsEnabled()
+    {
+        if (!RTConfig.getBoolean(DBConfig.PROP_TripSegment_enable,false)) {
+            return false;
+        }
+        long nowMS = System.currentTimeMillis();
+        if ((TripSegment.tableAvailable == null) || 
+            ((nowMS - TripSegment.tableCheckTimeMS) >= TABLE_CHECK_INTERVAL_MS)) {
+            boolean exists = false;
+            try {
+                exists = TripSegment.getFactory().tableExists();
+            } catch (DBException dbe) {
+                Print.logException("Unable to determine if TripSegment table exists", dbe);
+            }
+            if (!exists) {
+                Print.logWarn("TripSegment enabled, but table does not exist");
+            }
+            TripSegment.tableAvailable   = new Boolean(exists);
+            TripSegment.tableCheckTimeMS = nowMS;
+        }
+        return TripSegment.tableAvailable.booleanValue();
+    }
+
+    /**
+    *** Gets the configured minimum interval between "lastEventTime" updates of an
+    *** unchanged segment
+    **/
+    public static long GetLastEventInterval()
+    {
+        return RTConfig.getLong(DBConfig.PROP_TripSegment_lastEventInterval, DEFAULT_LAST_EVENT_INTERVAL);
+    }
+
+    /**
+    *** Gets the configured trip type for the specified Device
+    **/
+    public static int GetTripType(Device device)
+    {
+        return TripSegmenter.GetTripType(device, RTConfig.getString(DBConfig.PROP_TripSegment_tripStartType,"default"));
+    }
+
+    /**
+    *** Gets the configured [TRIP_ON_SPEED] minimum moving speed
+    **/
+    public static double GetMinimumSpeedKPH()
+    {
+        return RTConfig.getDouble(DBConfig.PROP_TripSegment_minimumSpeedKPH, DEFAULT_MIN_SPEED_KPH);
+    }
+
+    /**
+    *** Gets the configured [TRIP_ON_SPEED] minimum stopped time
+    **/
+    public static long GetMinimumStoppedTimeSec()
+    {
+        return RTConfig.getLong(DBConfig.PROP_TripSegment_minimumStoppedTime, DEFAULT_MIN_STOPPED_SEC);
+    }
+
+    /**
+    *** Gets the configured "stop on ignition-off" state
+    **/
+    public static boolean GetStopOnIgnitionOff()
+    {
+        return RTConfig.getBoolean(DBConfig.PROP_TripSegment_stopOnIgnitionOff, false);
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+    // SQL table definition below
+
+    /* table name */
+    public static final String _TABLE_NAME              = "TripSegment";
+    public static String TABLE_NAME() { return DBProvider._preTranslateTableName(_TABLE_NAME); }
+
+    /* field definition */
+    public static final String FLD_startTime            = "startTime";          // trip start
+    public static final String FLD_tripType             = "tripType";           // TripSegmenter.TRIP_ON_xxx
+    public static final String FLD_startLatitude        = "startLatitude";
+    public static final String FLD_startLongitude       = "startLongitude";
+    public static final String FLD_startAddress         = "startAddress";
+    public static final String FLD_startOdometerKM      = "startOdometerKM";
+    public static final String FLD_startOdomOffsetKM    = "startOdomOffsetKM";
+    public static final String FLD_startFuelUsed        = "startFuelUsed";
+    public static final String FLD_stopTime             = "stopTime";           // trip stop (0 if moving)
+    public static final String FLD_stopLatitude         = "stopLatitude";
+    public static final String FLD_stopLongitude        = "stopLongitude";
+    public static final String FLD_stopAddress          = "stopAddress";
+    public static final String FLD_stopOdometerKM       = "stopOdometerKM";
+    public static final String FLD_stopOdomOffsetKM     = "stopOdomOffsetKM";
+    public static final String FLD_stopFuelUsed         = "stopFuelUsed";
+    public static final String FLD_nextStartTime        = "nextStartTime";      // next trip start (0 if stopped)
+    public static final String FLD_idleSeconds          = "idleSeconds";        // -1 if unavailable
+    public static final String FLD_maxSpeedKPH          = "maxSpeedKPH";
+    public static final String FLD_lastEventTime        = "lastEventTime";      // last event applied to this segment
+    private static DBField FieldInfo[] = {
+        // TripSegment fields
+        newField_accountID(true),
+        newField_deviceID(true),
+        new DBField(FLD_startTime        , Long.TYPE     , DBField.TYPE_UINT32   , "Trip Start Time"        , "key=true format=time"),
+        new DBField(FLD_tripType         , Integer.TYPE  , DBField.TYPE_UINT16   , "Trip Type"              , ""),
+        new DBField(FLD_startLatitude    , Double.TYPE   , DBField.TYPE_DOUBLE   , "Start Latitude"         , "format=#0.00000"),
+        new DBField(FLD_startLongitude   , Double.TYPE   , DBField.TYPE_DOUBLE   , "Start Longitude"        , "format=#0.00000"),
+        new DBField(FLD_startAddress     , String.class  , DBField.TYPE_ADDRESS(), "Start Address"          , "utf8=true"),
+        new DBField(FLD_startOdometerKM  , Double.TYPE   , DBField.TYPE_DOUBLE   , "Start Odometer"         , "format=#0.0 units=distance"),
+        new DBField(FLD_startOdomOffsetKM, Double.TYPE   , DBField.TYPE_DOUBLE   , "Start Odometer Offset"  , "format=#0.0 units=distance"),
+        new DBField(FLD_startFuelUsed    , Double.TYPE   , DBField.TYPE_DOUBLE   , "Start Fuel Used"        , "format=#0.0 units=volume"),
+        new DBField(FLD_stopTime         , Long.TYPE     , DBField.TYPE_UINT32   , "Trip Stop Time"         , "format=time"),
+        new DBField(FLD_stopLatitude     , Double.TYPE   , DBField.TYPE_DOUBLE   , "Stop Latitude"          , "format=#0.00000"),
+        new DBField(FLD_stopLongitude    , Double.TYPE   , DBField.TYPE_DOUBLE   , "Stop Longitude"         , "format=#0.00000"),
+        new DBField(FLD_stopAddress      , String.class  , DBField.TYPE_ADDRESS(), "Stop Address"           , "utf8=true"),
+        new DBField(FLD_stopOdometerKM   , Double.TYPE   , DBField.TYPE_DOUBLE   , "Stop Odometer"          , "format=#0.0 units=distance"),
+        new DBField(FLD_stopOdomOffsetKM , Double.TYPE   , DBField.TYPE_DOUBLE   , "Stop Odometer Offset"   , "format=#0.0 units=distance"),
+        new DBField(FLD_stopFuelUsed     , Double.TYPE   , DBField.TYPE_DOUBLE   , "Stop Fuel Used"         , "format=#0.0 units=volume"),
+        new DBField(FLD_nextStartTime    , Long.TYPE     , DBField.TYPE_UINT32   , "Next Trip Start Time"   , "format=time"),
+        new DBField(FLD_idleSeconds      , Long.TYPE     , DBField.TYPE_INT32    , "Idle Time"              , ""),
+        new DBField(FLD_maxSpeedKPH      , Double.TYPE   , DBField.TYPE_DOUBLE   , "Maximum Speed"          , "format=#0.0 units=speed"),
+        new DBField(FLD_lastEventTime    , Long.TYPE     , DBField.TYPE_UINT32   , "Last Event Time"        , "format=time"),
+        // Common fields
+        newField_lastUpdateTime(),
+        newField_creationTime(),
+    };
+
+    /* key class */
+    public static class Key
+        extends DeviceKey<TripSegment>
+    {
+        public Key() {
+            super();
+        }
+        public Key(String accountId, String deviceId, long startTime) {
+            super.setKeyValue(FLD_accountID , ((accountId != null)? accountId.toLowerCase() : ""));
+            super.setKeyValue(FLD_deviceID  , ((deviceId  != null)? deviceId .toLowerCase() : ""));
+            super.setKeyValue(FLD_startTime , startTime);
+        }
+        public DBFactory<TripSegment> getFactory() {
+            return TripSegment.getFactory();
+        }
+    }
+
+    /* factory constructor */
+    private static DBFactory<TripSegment> factory = null;
+    public static DBFactory<TripSegment> getFactory()
+    {
+        if (factory == null) {
+            factory = DBFactory.createDBFactory(
+                TripSegment.TABLE_NAME(),
+                TripSegment.FieldInfo,
+                DBFactory.KeyType.PRIMARY,
+                TripSegment.class,
+                TripSegment.Key.class,
+                false/*editable*/, false/*viewable*/);
+            factory.addParentTable(Account.TABLE_NAME());
+            factory.addParentTable(Device.TABLE_NAME());
+        }
+        return factory;
+    }
+
+    /* Bean instance */
+    public TripSegment()
+    {
+        super();
+    }
+
+    /* database record */
+    public TripSegment(TripSegment.Key key)
+    {
+        super(key);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* table description */
+    public static String getTableDescription(Locale loc)
+    {
+        I18N i18n = I18N.getI18N(TripSegment.class, loc);
+        return i18n.getString("TripSegment.description",
+            "This table contains " +
+            "precomputed per-device trip segments."
+            );
+    }
+
+    // SQL table definition above
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+    // Bean access fields below
+
+    public long getStartTime()
+    {
+        Long v = (Long)this.getFieldValue(FLD_startTime);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    private void setStartTime(long v)
+    {
+        this.setFieldValue(FLD_startTime, v);
+    }
+
+    public int getTripType()
+    {
+        Integer v = (Integer)this.getFieldValue(FLD_tripType);
+        return (v != null)? v.intValue() : TripSegmenter.TRIP_ON_SPEED;
+    }
+
+    public void setTripType(int v)
+    {
+        this.setFieldValue(FLD_tripType, v);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public double getStartLatitude()
+    {
+        Double v = (Double)this.getFieldValue(FLD_startLatitude);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setStartLatitude(double v)
+    {
+        this.setFieldValue(FLD_startLatitude, v);
+    }
+
+    public double getStartLongitude()
+    {
+        Double v = (Double)this.getFieldValue(FLD_startLongitude);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setStartLongitude(double v)
+    {
+        this.setFieldValue(FLD_startLongitude, v);
+    }
+
+    public GeoPoint getStartGeoPoint()
+    {
+        return new GeoPoint(this.getStartLatitude(), this.getStartLongitude());
+    }
+
+    public String getStartAddress()
+    {
+        String v = (String)this.getFieldValue(FLD_startAddress);
+        return StringTools.trim(v);
+    }
+
+    public void setStartAddress(String v)
+    {
+        this.setFieldValue(FLD_startAddress, StringTools.trim(v));
+    }
+
+    public double getStartOdometerKM()
+    {
+        Double v = (Double)this.getFieldValue(FLD_startOdometerKM);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setStartOdometerKM(double v)
+    {
+        this.setFieldValue(FLD_startOdometerKM, v);
+    }
+
+    public double getStartOdomOffsetKM()
+    {
+        Double v = (Double)this.getFieldValue(FLD_startOdomOffsetKM);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setStartOdomOffsetKM(double v)
+    {
+        this.setFieldValue(FLD_startOdomOffsetKM, v);
+    }
+
+    public double getStartFuelUsed()
+    {
+        Double v = (Double)this.getFieldValue(FLD_startFuelUsed);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setStartFuelUsed(double v)
+    {
+        this.setFieldValue(FLD_startFuelUsed, v);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public long getStopTime()
+    {
+        Long v = (Long)this.getFieldValue(FLD_stopTime);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    public void setStopTime(long v)
+    {
+        this.setFieldValue(FLD_stopTime, v);
+    }
+
+    public boolean hasStopped()
+    {
+        return (this.getStopTime() > 0L);
+    }
+
+    public double getStopLatitude()
+    {
+        Double v = (Double)this.getFieldValue(FLD_stopLatitude);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setStopLatitude(double v)
+    {
+        this.setFieldValue(FLD_stopLatitude, v);
+    }
+
+    public double getStopLongitude()
+    {
+        Double v = (Double)this.getFieldValue(FLD_stopLongitude);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setStopLongitude(double v)
+    {
+        this.setFieldValue(FLD_stopLongitude, v);
+    }
+
+    public GeoPoint getStopGeoPoint()
+    {
+        return new GeoPoint(this.getStopLatitude(), this.getStopLongitude());
+    }
+
+    public String getStopAddress()
+    {
+        String v = (String)this.getFieldValue(FLD_stopAddress);
+        return StringTools.trim(v);
+    }
+
+    public void setStopAddress(String v)
+    {
+        this.setFieldValue(FLD_stopAddress, StringTools.trim(v));
+    }
+
+    public double getStopOdometerKM()
+    {
+        Double v = (Double)this.getFieldValue(FLD_stopOdometerKM);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setStopOdometerKM(double v)
+    {
+        this.setFieldValue(FLD_stopOdometerKM, v);
+    }
+
+    public double getStopOdomOffsetKM()
+    {
+        Double v = (Double)this.getFieldValue(FLD_stopOdomOffsetKM);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setStopOdomOffsetKM(double v)
+    {
+        this.setFieldValue(FLD_stopOdomOffsetKM, v);
+    }
+
+    public double getStopFuelUsed()
+    {
+        Double v = (Double)this.getFieldValue(FLD_stopFuelUsed);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setStopFuelUsed(double v)
+    {
+        this.setFieldValue(FLD_stopFuelUsed, v);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public long getNextStartTime()
+    {
+        Long v = (Long)this.getFieldValue(FLD_nextStartTime);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    public void setNextStartTime(long v)
+    {
+        this.setFieldValue(FLD_nextStartTime, v);
+    }
+
+    public long getIdleSeconds()
+    {
+        Long v = (Long)this.getFieldValue(FLD_idleSeconds);
+        return (v != null)? v.longValue() : -1L;
+    }
+
+    public void setIdleSeconds(long v)
+    {
+        this.setFieldValue(FLD_idleSeconds, v);
+    }
+
+    public double getMaxSpeedKPH()
+    {
+        Double v = (Double)this.getFieldValue(FLD_maxSpeedKPH);
+        return (v != null)? v.doubleValue() : 0.0;
+    }
+
+    public void setMaxSpeedKPH(double v)
+    {
+        this.setFieldValue(FLD_maxSpeedKPH, v);
+    }
+
+    public long getLastEventTime()
+    {
+        Long v = (Long)this.getFieldValue(FLD_lastEventTime);
+        return (v != null)? v.longValue() : 0L;
+    }
+
+    public void setLastEventTime(long v)
+    {
+        this.setFieldValue(FLD_lastEventTime, v);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the driving time (seconds), or -1 if the trip has not stopped
+    **/
+    public long getDriveSeconds()
+    {
+        return this.hasStopped()? (this.getStopTime() - this.getStartTime()) : -1L;
+    }
+
+    /**
+    *** Gets the driving distance (kilometers), or -1 if the trip has not stopped
+    **/
+    public double getDriveDistanceKM()
+    {
+        return this.hasStopped()? (this.getStopOdometerKM() - this.getStartOdometerKM()) : -1.0;
+    }
+
+    /**
+    *** Gets the stopped time (seconds) until the next trip start, or -1 if the
+    *** next trip has not started
+    **/
+    public long getStopSeconds()
+    {
+        return (this.hasStopped() && (this.getNextStartTime() > 0L))?
+            (this.getNextStartTime() - this.getStopTime()) : -1L;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sets the fields of this record from the specified segment
+    **/
+    private void setSegment(TripSegmenter.Segment seg)
+    {
+        this.setTripType(seg.tripType);
+        TripSegmenter.TripPoint start = seg.start;
+        this.setStartLatitude(start.latitude);
+        this.setStartLongitude(start.longitude);
+        this.setStartAddress(start.address);
+        this.setStartOdometerKM(start.odometerKM);
+        this.setStartOdomOffsetKM(start.odomOfsKM);
+        this.setStartFuelUsed(start.fuelUsed);
+        TripSegmenter.TripPoint stop = seg.stop;
+        this.setStopTime(        (stop != null)? stop.time       : 0L );
+        this.setStopLatitude(    (stop != null)? stop.latitude   : 0.0);
+        this.setStopLongitude(   (stop != null)? stop.longitude  : 0.0);
+        this.setStopAddress(     (stop != null)? stop.address    : "" );
+        this.setStopOdometerKM(  (stop != null)? stop.odometerKM : 0.0);
+        this.setStopOdomOffsetKM((stop != null)? stop.odomOfsKM  : 0.0);
+        this.setStopFuelUsed(    (stop != null)? stop.fuelUsed   : 0.0);
+        this.setNextStartTime(seg.nextStartTime);
+        this.setIdleSeconds(seg.idleSec);
+        this.setMaxSpeedKPH(seg.maxSpeedKPH);
+        this.setLastEventTime(seg.lastEventTime);
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the trip segments which start within the specified range, in ascending
+    *** time order (does not return null)
+    **/
+    public static TripSegment[] getTripSegments(
+        String acctID, String devID,
+        long timeStart, long timeEnd)
+        throws DBException
+    {
+        if (StringTools.isBlank(acctID) || StringTools.isBlank(devID)) {
+            return new TripSegment[0];
+        }
+        DBWhere dwh = new DBWhere(TripSegment.getFactory());
+        dwh.append(dwh.EQ(TripSegment.FLD_accountID, acctID));
+        dwh.append(dwh.AND_(dwh.EQ(TripSegment.FLD_deviceID, devID)));
+        if (timeStart > 0L) {
+            dwh.append(dwh.AND_(dwh.GE(TripSegment.FLD_startTime, timeStart)));
+        }
+        if (timeEnd > 0L) {
+            dwh.append(dwh.AND_(dwh.LE(TripSegment.FLD_startTime, timeEnd)));
+        }
+        DBSelect<TripSegment> dsel = new DBSelect<TripSegment>(TripSegment.getFactory());
+        dsel.setWhere(dwh.WHERE(dwh.toString()));
+        dsel.setOrderByFields(TripSegment.FLD_startTime);
+        dsel.setOrderAscending(true);
+        TripSegment r[] = DBRecord.select(dsel);
+        return (r != null)? r : new TripSegment[0];
+    }
+
+    /**
+    *** Gets the start time of the trip segment preceding the trip segment which
+    *** contains the specified time (ie. the last two segments starting at or before
+    *** the specified time), or -1 if there is no segment starting at or before the
+    *** specified time.
+    **/
+    private static long _getResumeTime(String acctID, String devID, long time)
+        throws DBException
+    {
+        DBWhere dwh = new DBWhere(TripSegment.getFactory());
+        dwh.append(dwh.EQ(TripSegment.FLD_accountID, acctID));
+        dwh.append(dwh.AND_(dwh.EQ(TripSegment.FLD_deviceID, devID)));
+        dwh.append(dwh.AND_(dwh.LE(TripSegment.FLD_startTime, time)));
+        DBSelect<TripSegment> dsel = new DBSelect<TripSegment>(TripSegment.getFactory());
+        dsel.setWhere(dwh.WHERE(dwh.toString()));
+        dsel.setOrderByFields(TripSegment.FLD_startTime);
+        dsel.setOrderAscending(false);
+        dsel.setLimit(2L);
+        TripSegment r[] = DBRecord.select(dsel);
+        if (ListTools.isEmpty(r)) {
+            return -1L;
+        } else {
+            return r[r.length - 1].getStartTime(); // Derby ignores the limit, but not the order
+        }
+    }
+
+    /**
+    *** Deletes the trip segments starting at or after the specified time
+    **/
+    private static void _deleteTripSegments(String acctID, String devID, long startTime)
+        throws DBException
+    {
+        // -- [DELETE FROM TripSegment WHERE accountID='account' AND deviceID='device' AND startTime>=123456789]
+        DBWhere dwh = new DBWhere(TripSegment.getFactory());
+        dwh.append(dwh.EQ(TripSegment.FLD_accountID, acctID));
+        dwh.append(dwh.AND_(dwh.EQ(TripSegment.FLD_deviceID, devID)));
+        dwh.append(dwh.AND_(dwh.GE(TripSegment.FLD_startTime, startTime)));
+        DBDelete ddel = new DBDelete(TripSegment.getFactory());
+        ddel.setWhere(dwh.WHERE(dwh.toString()));
+        DBConnection dbc = null;
+        try {
+            dbc = DBConnection.getDBConnection_delete();
+            dbc.executeUpdate(ddel.toString());
+        } catch (SQLException sqe) {
+            throw new DBException("Deleting TripSegments", sqe);
+        } finally {
+            DBConnection.release(dbc);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** SegmentListener which saves the segments to the TripSegment table
+    **/
+    private static class SegmentWriter
+        implements TripSegmenter.SegmentListener
+    {
+        private String acctID         = null;
+        private String devID          = null;
+        private long   savedEventTime = 0L;
+        public SegmentWriter(String acctID, String devID) {
+            this.acctID = acctID;
+            this.devID  = devID;
+        }
+        public void segmentChanged(TripSegmenter.Segment seg) throws DBException {
+            TripSegment ts = new TripSegment.Key(this.acctID, this.devID, seg.getStartTime()).getDBRecord();
+            ts.setSegment(seg);
+            ts.save();
+            this.savedEventTime = seg.lastEventTime;
+        }
+        public void updateLastEventTime(TripSegmenter.Segment seg, long lastEventTime, boolean force) throws DBException {
+            long minInterval = force? 1L : TripSegment.GetLastEventInterval();
+            if ((seg != null) && ((lastEventTime - this.savedEventTime) >= minInterval)) {
+                // -- [UPDATE TripSegment SET lastEventTime=123456789 WHERE ...]
+                TripSegment ts = new TripSegment.Key(this.acctID, this.devID, seg.getStartTime()).getDBRecord();
+                ts.setLastEventTime(lastEventTime);
+                ts.update(FLD_lastEventTime);
+                seg.lastEventTime   = lastEventTime;
+                this.savedEventTime = lastEventTime;
+            }
+        }
+    }
+
+    /**
+    *** Record handler which adds each event to a segmenter
+    **/
+    private static class SegmentAccumulator
+        implements DBRecordHandler<EventData>
+    {
+        private TripSegmenter segmenter = null;
+        public SegmentAccumulator(TripSegmenter segmenter) {
+            this.segmenter = segmenter;
+        }
+        public int handleDBRecord(EventData rcd) throws DBException {
+            this.segmenter.addEvent(rcd);
+            return DBRH_SKIP;
+        }
+    }
+
+    /* cached device segmenters */
+    private static Map<String,TripSegmenter> segmenterCache = new LinkedHashMap<String,TripSegmenter>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String,TripSegmenter> eldest) {
+            return (this.size() > MAX_CACHED_SEGMENTERS);
+        }
+    };
+
+    /**
+    *** Replays the EventData records from the specified time into a new segmenter,
+    *** after deleting the segments starting at or after the specified time
+    **/
+    private static TripSegmenter _replaySegments(Device device, long fromTime)
+        throws DBException
+    {
+        String acctID = device.getAccountID();
+        String devID  = device.getDeviceID();
+        SegmentWriter writer = new SegmentWriter(acctID, devID);
+        TripSegmenter segmenter = new TripSegmenter(device,
+            TripSegment.GetTripType(device),
+            TripSegment.GetMinimumSpeedKPH(), TripSegment.GetMinimumStoppedTimeSec(),
+            TripSegment.GetStopOnIgnitionOff(),
+            writer);
+        TripSegment._deleteTripSegments(acctID, devID, fromTime);
+        EventData.getRangeEvents(
+            acctID, devID,
+            fromTime, -1L,
+            null/*statusCodes*/,
+            false/*validGPS*/, // segmenter skips invalid GPS events if required
+            EventData.LimitType.FIRST, -1L/*limit*/, true/*ascending*/,
+            null/*addtnlSelect*/,
+            new SegmentAccumulator(segmenter));
+        writer.updateLastEventTime(segmenter.getCurrentSegment(), segmenter.getLastEventTime(), true);
+        return segmenter;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* TripSegment replay ThreadPool */
+    // TripSegment.ThreadPool.maximumPoolSize=1
+    private static ThreadPool ThreadPool_TripSegment = new ThreadPool("TripSegment", 1);
+
+    /**
+    *** Pending (queued, or running) recompute of the segments of a device
+    **/
+    private static class PendingReplay
+    {
+        private Device  device    = null;
+        private long    fromTime  = 0L;     // earliest event time to recompute
+        private long    rerunTime = -1L;    // earliest event time received while running
+        private boolean running   = false;
+        public PendingReplay(Device device, long fromTime) {
+            this.device   = device;
+            this.fromTime = fromTime;
+        }
+        public void addEventTime(long time) {
+            if (this.running) {
+                // -- may not have been read by the running replay
+                this.rerunTime = (this.rerunTime < 0L)? time : Math.min(this.rerunTime, time);
+            } else {
+                this.fromTime  = Math.min(this.fromTime, time);
+            }
+        }
+    }
+
+    /* pending device recomputes (keyed by "account/device") */
+    private static Map<String,PendingReplay> pendingReplays = new HashMap<String,PendingReplay>();
+
+    /**
+    *** Queues a recompute of the segments of the specified device, from the segment
+    *** preceding the specified time.  If a recompute is already pending for the device,
+    *** the specified time is merged into that recompute.
+    **/
+    private static void _queueReplay(final String key, Device device, long time)
+    {
+        synchronized (TripSegment.pendingReplays) {
+            PendingReplay pr = TripSegment.pendingReplays.get(key);
+            if (pr != null) {
+                pr.addEventTime(time);
+                return;
+            }
+            TripSegment.pendingReplays.put(key, new PendingReplay(device, time));
+        }
+        ThreadPool_TripSegment.run(new Runnable() {
+            public void run() {
+                TripSegment._runReplay(key);
+            }
+        });
+    }
+
+    /**
+    *** Runs the pending recompute of the segments of the specified device (background thread)
+    **/
+    private static void _runReplay(String key)
+    {
+        for (;;) {
+
+            /* start */
+            PendingReplay pr;
+            long fromTime;
+            synchronized (TripSegment.pendingReplays) {
+                pr = TripSegment.pendingReplays.get(key);
+                if (pr == null) {
+                    return; // unlikely
+                }
+                pr.running = true;
+                fromTime   = pr.fromTime;
+            }
+
+            /* replay */
+            TripSegmenter segmenter = null;
+            String acctID = pr.device.getAccountID();
+            String devID  = pr.device.getDeviceID();
+            try {
+                long resumeTime = TripSegment._getResumeTime(acctID, devID, fromTime);
+                if ((resumeTime < 0L) || (resumeTime > fromTime)) {
+                    resumeTime = fromTime; // no prior segments
+                }
+                Print.logDebug("Recomputing TripSegments from " + resumeTime + ": " + key);
+                segmenter = TripSegment._replaySegments(pr.device, resumeTime);
+            } catch (Throwable th) {
+                Print.logException("Unable to recompute TripSegments: " + key, th);
+            }
+
+            /* done, or rerun for events received while running */
+            synchronized (TripSegment.pendingReplays) {
+                if ((segmenter != null) && (pr.rerunTime >= 0L)) {
+                    pr.fromTime  = pr.rerunTime;
+                    pr.rerunTime = -1L;
+                    pr.running   = false;
+                    continue;
+                }
+                TripSegment.pendingReplays.remove(key);
+                if (segmenter != null) {
+                    synchronized (TripSegment.segmenterCache) {
+                        TripSegment.segmenterCache.put(key, segmenter);
+                    }
+                }
+                return;
+            }
+
+        }
+    }
+
+    /**
+    *** Returns true if a recompute of the segments of the specified device is pending
+    *** in this process
+    **/
+    private static boolean _isReplayPending(String key)
+    {
+        synchronized (TripSegment.pendingReplays) {
+            return TripSegment.pendingReplays.containsKey(key);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Updates the trip segments for the specified (inserted) event.  In-order events
+    *** are applied to the cached segmenter.  Otherwise the segments are recomputed in
+    *** a background thread (see "_queueReplay").
+    **/
+    public static void updateTripSegments(EventData ev)
+        throws DBException
+    {
+        if (ev == null) {
+            return;
+        }
+        Device device = ev.getDevice();
+        if (device == null) {
+            return;
+        }
+        String acctID = ev.getAccountID();
+        String devID  = ev.getDeviceID();
+        String key    = acctID + "/" + devID;
+        long   ts     = ev.getTimestamp();
+
+        /* recompute already pending? */
+        synchronized (TripSegment.pendingReplays) {
+            PendingReplay pr = TripSegment.pendingReplays.get(key);
+            if (pr != null) {
+                pr.addEventTime(ts);
+                return;
+            }
+        }
+
+        /* in-order event */
+        synchronized (TripSegment.GetSegmentLock(acctID,devID)) {
+            TripSegmenter segmenter;
+            synchronized (TripSegment.segmenterCache) {
+                segmenter = TripSegment.segmenterCache.get(key);
+            }
+            if ((segmenter != null) && (ts >= segmenter.getLastEventTime())) {
+                segmenter.addEvent(ev);
+                TripSegmenter.SegmentListener sl = segmenter.getSegmentListener();
+                if (sl instanceof SegmentWriter) {
+                    ((SegmentWriter)sl).updateLastEventTime(segmenter.getCurrentSegment(), segmenter.getLastEventTime(), false);
+                }
+                return;
+            }
+            synchronized (TripSegment.segmenterCache) {
+                TripSegment.segmenterCache.remove(key);
+            }
+        }
+
+        /* not cached, or out-of-order event: recompute from the preceding segment */
+        TripSegment._queueReplay(key, device, ts);
+
+    }
+
+    /**
+    *** Returns true if the trip segments of the specified device are known to include
+    *** the events within the specified range.  This requires that no recompute is pending
+    *** for the device (in this process), and that the "lastEventTime" of the segment
+    *** containing the last event in the range is at/after that event.
+    *** Returns false if there are no events within the range.
+    **/
+    public static boolean hasSegmentCoverage(String acctID, String devID, long timeStart, long timeEnd)
+        throws DBException
+    {
+        if (StringTools.isBlank(acctID) || StringTools.isBlank(devID)) {
+            return false;
+        }
+        if (TripSegment._isReplayPending(acctID + "/" + devID)) {
+            return false;
+        }
+
+        /* last event in range */
+        EventData ev[] = EventData.getRangeEvents(
+            acctID, devID,
+            timeStart, timeEnd,
+            null/*statusCodes*/,
+            false/*validGPS*/,
+            EventData.LimitType.LAST, 1L/*limit*/, true/*ascending*/,
+            null/*addtnlSelect*/);
+        if (ListTools.isEmpty(ev)) {
+            return false;
+        }
+        long lastTime = ev[ev.length - 1].getTimestamp();
+
+        /* segment containing the last event */
+        DBWhere dwh = new DBWhere(TripSegment.getFactory());
+        dwh.append(dwh.EQ(TripSegment.FLD_accountID, acctID));
+        dwh.append(dwh.AND_(dwh.EQ(TripSegment.FLD_deviceID, devID)));
+        dwh.append(dwh.AND_(dwh.LE(TripSegment.FLD_startTime, lastTime)));
+        DBSelect<TripSegment> dsel = new DBSelect<TripSegment>(TripSegment.getFactory());
+        dsel.setWhere(dwh.WHERE(dwh.toString()));
+        dsel.setOrderByFields(TripSegment.FLD_startTime);
+        dsel.setOrderAscending(false);
+        dsel.setLimit(1L);
+        TripSegment r[] = DBRecord.select(dsel);
+        if (ListTools.isEmpty(r)) {
+            return false;
+        }
+        return (r[0].getLastEventTime() >= lastTime);
+
+    }
+
+    /**
+    *** Updates the trip segments of the specified device after EventData records have
+    *** been deleted.  Old events: the segments starting before the specified end time
+    *** are deleted.  Events at/after the specified start time: the segments are rebuilt
+    *** from the segment preceding the start time.
+    *** @param timeStart  The start time of the deleted events (-1 for old events)
+    *** @param timeEnd    The end time (exclusive) of the deleted old events (-1 for
+    ***                   events at/after the start time)
+    **/
+    public static void eventsDeleted(String acctID, String devID, long timeStart, long timeEnd)
+    {
+        if (!TripSegment.IsEnabled()) {
+            return;
+        }
+        try {
+            if (timeStart < 0L) {
+                // -- [DELETE FROM TripSegment WHERE accountID='account' AND deviceID='device' AND startTime<123456789]
+                DBDelete ddel = new DBDelete(TripSegment.getFactory());
+                DBWhere dwh = ddel.createDBWhere();
+                ddel.setWhere(dwh.WHERE_(
+                    dwh.AND(
+                        dwh.EQ(TripSegment.FLD_accountID,acctID),
+                        dwh.EQ(TripSegment.FLD_deviceID ,devID),
+                        dwh.LT(TripSegment.FLD_startTime,timeEnd)
+                    )
+                ));
+                DBConnection dbc = null;
+                try {
+                    dbc = DBConnection.getDBConnection_delete();
+                    dbc.executeUpdate(ddel.toString());
+                } catch (SQLException sqe) {
+                    throw new DBException("Deleting old TripSegments", sqe);
+                } finally {
+                    DBConnection.release(dbc);
+                }
+            } else {
+                Account account = Account.getAccount(acctID);
+                Device  device  = (account != null)? Device.getDevice(account, devID) : null;
+                if (device != null) {
+                    TripSegment.rebuildTripSegments(device, timeStart);
+                }
+            }
+        } catch (DBException dbe) {
+            Print.logException("Unable to update TripSegments after deleting events: " + acctID + "/" + devID, dbe);
+        }
+    }
+
+    /**
+    *** EventDataInsertionListener which updates the trip segments as events are inserted
+    **/
+    public static class InsertionListener
+        implements EventDataInsertionListener
+    {
+        public InsertionListener() {
+            super();
+        }
+        public void eventWillInsert(EventData evdb) {
+            // -- ignore
+        }
+        public void eventDidInsert(EventData evdb) {
+            if (!TripSegment.IsEnabled()) {
+                return; // segment table does not exist
+            }
+            try {
+                TripSegment.updateTripSegments(evdb);
+            } catch (DBException dbe) {
+                Print.logException("Unable to update TripSegment: " + evdb, dbe);
+            }
+        }
+    }
+
+    /**
+    *** Rebuilds the trip segments for the specified Device, starting at the segment
+    *** preceding the specified time, through the last event
+    *** @return The number of segments starting at or after the rebuild time
+    **/
+    public static int rebuildTripSegments(Device dev, long timeStart)
+        throws DBException
+    {
+        if (dev == null) {
+            return 0;
+        }
+        String acctID = dev.getAccountID();
+        String devID  = dev.getDeviceID();
+        String key    = acctID + "/" + devID;
+        synchronized (TripSegment.GetSegmentLock(acctID,devID)) {
+            long resumeTime = TripSegment._getResumeTime(acctID, devID, timeStart);
+            if ((resumeTime < 0L) || (resumeTime > timeStart)) {
+                resumeTime = timeStart;
+            }
+            TripSegmenter segmenter = TripSegment._replaySegments(dev, resumeTime);
+            synchronized (TripSegment.segmenterCache) {
+                TripSegment.segmenterCache.put(key, segmenter);
+            }
+            return TripSegment.getTripSegments(acctID, devID, resumeTime, -1L).length;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private static final String ARG_ACCOUNT[]   = new String[] { "account", "acct", "a" };
+    private static final String ARG_DEVICE[]    = new String[] { "device" , "dev" , "d" };
+    private static final String ARG_REBUILD[]   = new String[] { "rebuild"              };
+    private static final String ARG_FROM[]      = new String[] { "from"   , "start"     };
+    private static final String ARG_DAYS[]      = new String[] { "days"                 };
+
+    private static void usage()
+    {
+        Print.sysPrintln("Usage:");
+        Print.sysPrintln("  java ... " + TripSegment.class.getName() + " {options}");
+        Print.sysPrintln("Options:");
+        Print.sysPrintln("  -account=<id>       Account ID");
+        Print.sysPrintln("  -device=<id>        Device ID (all Account devices if not specified)");
+        Print.sysPrintln("  -rebuild            Rebuild the trip segments from the EventData table");
+        Print.sysPrintln("  -from=<yyyy/mm/dd>  First day to rebuild (through the last event)");
+        Print.sysPrintln("  -days=<days>        Number of days to rebuild, if '-from' is not specified [" + DEFAULT_REBUILD_DAYS + "]");
+        System.exit(1);
+    }
+
+    public static void main(String argv[])
+    {
+        DBConfig.cmdLineInit(argv,true);  // main
+        String acctID = RTConfig.getString(ARG_ACCOUNT, "");
+        String devID  = RTConfig.getString(ARG_DEVICE , "");
+
+        /* account */
+        if (StringTools.isBlank(acctID)) {
+            Print.logError("Account-ID not specified.");
+            usage();
+        }
+        Account acct = null;
+        try {
+            acct = Account.getAccount(acctID); // may throw DBException
+            if (acct == null) {
+                Print.logError("Account-ID does not exist: " + acctID);
+                usage();
+            }
+        } catch (DBException dbe) {
+            Print.logException("Error loading Account: " + acctID, dbe);
+            System.exit(99);
+        }
+        TimeZone tz = acct.getTimeZone(null);
+
+        /* rebuild */
+        if (RTConfig.getBoolean(ARG_REBUILD,false)) {
+            DateTime frDT = null;
+            try {
+                frDT = RTConfig.hasProperty(ARG_FROM)?
+                    DateTime.parseArgumentDate(RTConfig.getString(ARG_FROM,""),tz,false) :
+                    new DateTime((new DateTime(tz)).getDayStart(tz) - ((long)(RTConfig.getInt(ARG_DAYS,DEFAULT_REBUILD_DAYS) - 1) * DateTime.DaySeconds(1)), tz);
+            } catch (DateTime.DateParseException dpe) {
+                Print.logError("Invalid '-from' date: " + dpe.getMessage());
+                usage();
+            }
+            if (frDT == null) {
+                Print.logError("Invalid '-from' date");
+                usage();
+            }
+            long timeStart = frDT.getDayStart(tz);
+            try {
+                Collection<String> devIDs = !StringTools.isBlank(devID)?
+                    ListTools.toList(new String[] { devID }) :
+                    Device.getDeviceIDsForAccount(acctID, null, true/*inclInactv*/);
+                for (String id : devIDs) {
+                    Device dev = Device.getDevice(acct, id, false);
+                    if (dev == null) {
+                        Print.logError("Device-ID does not exist: " + acctID + "/" + id);
+                        continue;
+                    }
+                    int count = TripSegment.rebuildTripSegments(dev, timeStart);
+                    Print.sysPrintln("Rebuilt " + count + " trip segment(s): " + acctID + "/" + id);
+                }
+            } catch (DBException dbe) {
+                Print.logException("Error rebuilding TripSegment", dbe);
+                System.exit(99);
+            }
+            System.exit(0);
+        }
+
+        /* no options */
+        usage();
+
+    }
+
+}
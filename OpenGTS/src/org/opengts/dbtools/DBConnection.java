@@ -155,6 +155,17 @@ public class DBConnection
 
     private static String       LastSQLExecuted         = null;
 
+    private static java.util.concurrent.atomic.AtomicLong ExecutedSQLCount = new java.util.concurrent.atomic.AtomicLong(0L);
+
+    /**
+    *** Returns the number of SQL statements executed by this process (all connections)
+    *** @return The number of SQL statements executed
+    **/
+    public static long getExecutedSQLCount()
+    {
+        return ExecutedSQLCount.get();
+    }
+
     // ------------------------------------------------------------------------
 
     private static DataSource   DBDataSource            = null;
@@ -1046,6 +1057,7 @@ public class DBConnection
         Statement stmt = null;
         try {
             LastSQLExecuted = sql;
+            ExecutedSQLCount.incrementAndGet();
             stmt = this.createStatement(rowByRow); // may throw SQLException
             stmt.execute(sql); // eg. "SELECT * FROM <table>"
             return stmt;
@@ -1098,6 +1110,7 @@ public class DBConnection
         ResultSet rs   = null;
         try {
             LastSQLExecuted = sql;
+            ExecutedSQLCount.incrementAndGet();
             stmt = this.createStatement(); // may throw SQLException
             rs = stmt.executeQuery(sql);
             return rs; // TODO: close 'stmt'?
@@ -1185,6 +1198,7 @@ public class DBConnection
         ResultSet rs = null;
         try {
             LastSQLExecuted = sql;
+            ExecutedSQLCount.incrementAndGet();
             stmt = this.createStatement(); // may throw SQLException
             if (rtnAutoIncrVal) {
                 stmt.executeUpdate(sql, Statement.RETURN_GENERATED_KEYS);
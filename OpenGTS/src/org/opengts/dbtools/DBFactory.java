@@ -401,6 +401,9 @@ public class DBFactory<gDBR extends DBRecord<gDBR>>
 
     private boolean                                 allowInnoDBCOUNT    = true; // allow "COUNT(*)" for InnoDB
 
+    private Set<String>                             deferredLoadFields  = new HashSet<String>();
+    private long                                    deferredLoadCount   = 0L;
+
     // ------------------------------------------------------------------------
 
     /**
@@ -1165,6 +1168,100 @@ public class DBFactory<gDBR extends DBRecord<gDBR>>
         }
     }
 
+    /**
+    *** Returns the names of the existing non-key table columns which are not included
+    *** in the specified list of selected fields.  These are the fields which remain to
+    *** be loaded ("deferred") for a record selected with only the specified fields.
+    *** @param selFields  The selected field names
+    *** @return The deferred field names, or null if the selected fields are not all
+    ***         defined by this DBFactory, or do not include all key fields
+    **/
+    public Set<String> getDeferredFields(String... selFields)
+    {
+
+        /* selected fields must be defined, and include the primary keys */
+        if (ListTools.isEmpty(selFields)) {
+            return null;
+        }
+        Set<String> selSet = ListTools.toSet(selFields,null);
+        for (String f : selSet) {
+            if (!this.hasField(f)) {
+                return null; // ie. "COUNT(*)"
+            }
+        }
+        for (DBField kf : this.getKeyFields()) {
+            if (!selSet.contains(kf.getName())) {
+                return null;
+            }
+        }
+
+        /* existing columns (null if unavailable) */
+        Map<String,DBField> colMap = null;
+        try {
+            colMap = this.getExistingColumnMap(false);
+        } catch (DBException dbe) {
+            Print.logWarn("Unable to read existing columns: " + this.getUntranslatedTableName());
+        }
+
+        /* fields not selected */
+        Set<String> deferred = new HashSet<String>();
+        for (DBField dbf : this.getFields()) {
+            String n = dbf.getName();
+            if (dbf.isPrimaryKey() || selSet.contains(n)) {
+                // -- already selected
+            } else
+            if ((colMap != null) && !colMap.containsKey(this.getMappedFieldName(n))) {
+                // -- column does not exist in the table
+            } else {
+                deferred.add(n);
+            }
+        }
+        return deferred;
+
+    }
+
+    /**
+    *** Records that a deferred field (not included in the selection which loaded a record)
+    *** has been accessed, causing the deferred fields of the record to be reloaded.  The
+    *** first access of each field is logged, and the field is included in subsequent
+    *** selections of only specific fields (see "getDeferredLoadFields").
+    *** @param fldName  The name of the accessed deferred field
+    **/
+    public void addDeferredLoad(String fldName)
+    {
+        boolean first;
+        synchronized (this.deferredLoadFields) {
+            this.deferredLoadCount++;
+            first = (fldName != null) && this.deferredLoadFields.add(fldName);
+        }
+        if (first) {
+            Print.logWarn("Deferred field accessed (will be selected from now on): " + 
+                this.getUntranslatedTableName() + "." + fldName);
+        }
+    }
+
+    /**
+    *** Gets the number of deferred field reloads (see "addDeferredLoad")
+    *** @return The number of deferred field reloads
+    **/
+    public long getDeferredLoadCount()
+    {
+        synchronized (this.deferredLoadFields) {
+            return this.deferredLoadCount;
+        }
+    }
+
+    /**
+    *** Gets the deferred fields which have been accessed (see "addDeferredLoad")
+    *** @return The set of accessed deferred field names (does not return null)
+    **/
+    public Set<String> getDeferredLoadFields()
+    {
+        synchronized (this.deferredLoadFields) {
+            return new HashSet<String>(this.deferredLoadFields);
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     /**
@@ -89,6 +89,8 @@ public class DBFieldValues
 
     private boolean                             mustExist       = true;
 
+    private Set<String>                         deferredFields  = null;
+
     /**
     *** Constructor
     **/
@@ -176,6 +178,97 @@ public class DBFieldValues
     
     // ------------------------------------------------------------------------
 
+    /**
+    *** Sets the list of fields which were not included in the selection which loaded 
+    *** this instance.  The values of these fields are loaded from the DB (all at once) 
+    *** the first time any one of them is accessed.  The specified Set may be shared
+    *** by many records, and is not modified by this instance.
+    *** @param fldNames  The deferred field names (null/empty if all fields are loaded)
+    **/
+    public void setDeferredFields(Set<String> fldNames)
+    {
+        this.deferredFields = !ListTools.isEmpty(fldNames)? fldNames : null;
+    }
+
+    /**
+    *** Returns true if this instance has deferred fields which have not yet been loaded
+    *** @return True if this instance has deferred fields
+    **/
+    public boolean hasDeferredFields()
+    {
+        return !ListTools.isEmpty(this.deferredFields);
+    }
+
+    /**
+    *** Returns true if the specified field is deferred, and has not yet been loaded
+    *** @param fldName  The field name
+    *** @return True if the specified field is deferred
+    **/
+    public boolean isDeferredField(String fldName)
+    {
+        return (this.deferredFields != null) && (fldName != null) && this.deferredFields.contains(fldName);
+    }
+
+    /**
+    *** Gets the deferred field names which have not yet been loaded
+    *** @return The deferred field names, or null if there are no deferred fields
+    **/
+    public Set<String> getDeferredFields()
+    {
+        return this.hasDeferredFields()? new HashSet<String>(this.deferredFields) : null;
+    }
+
+    /**
+    *** Loads the values of all deferred fields from the DB, as a result of accessing
+    *** the specified deferred field (the access is recorded in the DBFactory)
+    *** @param fldName  The accessed deferred field name
+    *** @return True if the deferred field values were loaded
+    **/
+    protected boolean loadDeferredFields(String fldName)
+    {
+        if (this.hasDeferredFields() && (this.recordKey != null)) {
+            this.recordKey.getFactory().addDeferredLoad(fldName);
+        }
+        return this.loadDeferredFields();
+    }
+
+    /**
+    *** Loads the values of all deferred fields from the DB
+    *** @return True if the deferred field values were loaded
+    **/
+    public boolean loadDeferredFields()
+    {
+
+        /* nothing deferred? */
+        if (!this.hasDeferredFields()) {
+            this.deferredFields = null;
+            return true;
+        }
+
+        /* clear before reloading (prevents recursion) */
+        String fldNames[] = this.deferredFields.toArray(new String[this.deferredFields.size()]);
+        this.deferredFields = null;
+
+        /* reload deferred fields (retain the current 'changed' state) */
+        DBRecord<?> rcd = (this.recordKey != null)? this.recordKey._getDBRecord() : null;
+        if (rcd == null) {
+            Print.logWarn("Deferred fields not loaded, no DBRecord: " + this.getUntranslatedTableName());
+            return false;
+        }
+        boolean changed = rcd.hasChanged();
+        boolean loaded  = (rcd.reload(fldNames) != null);
+        if (!changed) {
+            rcd.clearChanged();
+        }
+        if (!loaded) {
+            Print.logWarn("Unable to load deferred fields: " + this.getUntranslatedTableName() + " " + this.recordKey);
+        }
+        return loaded;
+
+    }
+
+    // ------------------------------------------------------------------------
+
     /**
     *** Gets the table name for this DBFieldValue instance
     *** @return The table name
@@ -344,6 +437,12 @@ public class DBFieldValues
 
         /* store value */
         String fldName = fld.getName();
+        if (this.isDeferredField(fldName)) {
+            // -- explicitly set, no longer deferred (the deferred Set may be shared)
+            Set<String> df = new HashSet<String>(this.deferredFields);
+            df.remove(fldName);
+            this.deferredFields = !df.isEmpty()? df : null;
+        }
         Object oldVal = this._getFieldValue(fldName, true);
         this.valueMap.put(fldName, newVal);
 
@@ -731,6 +830,10 @@ public class DBFieldValues
             DBField fld[] = this.recordKey.getFields();
             for (int i = 0; i < fld.length; i++) {
                 String  name  = fld[i].getName();
+                if (fldVals.isDeferredField(name)) {
+                    // -- not yet loaded in the source, remains deferred here
+                    continue;
+                }
                 Object  val   = fldVals.getOptionalFieldValue(name);
                 if (fld[i].isPrimaryKey()) {
                     if (setPrimaryKey) {
@@ -752,6 +855,10 @@ public class DBFieldValues
                     }
                 }
             }
+            if (fldVals.hasDeferredFields()) {
+                // -- deferred Sets are never modified in place, and may be shared
+                this.setDeferredFields(fldVals.deferredFields);
+            }
         } else {
             Print.logStackTrace("DBRecordKey has not been set!");
         }
@@ -801,7 +908,11 @@ public class DBFieldValues
         if (fldName == null) {
             // no field name, no field value
             return false;
-        } else
+        }
+        if (this.isDeferredField(fldName)) {
+            // load deferred field values
+            this.loadDeferredFields(fldName);
+        }
         if (this.valueMap.containsKey(fldName)) {
             // found in this value map
             return true;
@@ -831,6 +942,11 @@ public class DBFieldValues
             return null;
         }
 
+        /* load deferred field values */
+        if (this.isDeferredField(fldName)) {
+            this.loadDeferredFields(fldName);
+        }
+
         /* get value, return if found */
         Object val = this.valueMap.get(fldName);
         if (val != null) {
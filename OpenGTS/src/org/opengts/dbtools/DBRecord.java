@@ -323,6 +323,63 @@ public abstract class DBRecord<gDBR extends DBRecord<gDBR>>
 
     }
 
+    /**
+    *** Executes the specified aggregate DBSelect (see "DBSelect.addAggregate" and 
+    *** "DBSelect.setTimeBucket"), and returns the aggregate rows.  The aggregation 
+    *** is performed by the database, so the number of returned rows is a function of
+    *** the group-by fields, rather than the number of matching records.
+    *** @param dsel The DBSelect instance.
+    *** @return The list of aggregate rows (does not return null)
+    *** @throws DBException If a general DB error occurs
+    **/
+    public static <T extends DBRecord<T>> java.util.List<DBSelect.AggregateRow> selectAggregates(DBSelect<T> dsel)
+        throws DBException
+    {
+        java.util.List<DBSelect.AggregateRow> rows = new Vector<DBSelect.AggregateRow>();
+
+        /* valid select? */
+        if ((dsel == null) || (dsel.getFactory() == null)) {
+            return rows;
+        } else
+        if (!dsel.hasAggregates()) {
+            Print.logError("DBSelect does not specify any aggregates");
+            return rows;
+        }
+
+        /* get result set */
+        DBConnection dbc  = null;
+        Statement   stmt  = null;
+        ResultSet   rs    = null;
+        try {
+            dbc  = DBConnection.getDBConnection_read();
+            stmt = dbc.execute(dsel.toString());
+            rs   = stmt.getResultSet();
+            ResultSetMetaData rsmd = rs.getMetaData();
+            int colCount = rsmd.getColumnCount();
+            String colName[] = new String[colCount];
+            for (int c = 0; c < colCount; c++) {
+                colName[c] = StringTools.trim(rsmd.getColumnLabel(c + 1)); // indexes start at '1'
+            }
+            while (rs.next()) {
+                Object colVal[] = new Object[colCount];
+                for (int c = 0; c < colCount; c++) {
+                    colVal[c] = rs.getObject(c + 1);
+                }
+                rows.add(new DBSelect.AggregateRow(colName, colVal));
+            }
+        } catch (SQLException sqe) {
+            throw new DBException("Aggregate Select", sqe);
+        } finally {
+            if (rs   != null) { try { rs.close();   } catch (Throwable t) {} }
+            if (stmt != null) { try { stmt.close(); } catch (Throwable t) {} }
+            DBConnection.release(dbc);
+        }
+
+        /* return rows */
+        return rows;
+
+    }
+
     // ------------------------------------------------------------------------
 
     private static String currentAccount = "";
@@ -762,6 +819,25 @@ public abstract class DBRecord<gDBR extends DBRecord<gDBR>>
         java.util.List<T> rcdList = new Vector<T>();
         DBFactory<T> fact = dsel.getFactory();
 
+        /* selected fields (remaining fields are loaded on first access) */
+        String      selFields[] = dsel.getSelectedFields(); // null for "SELECT *"
+        Set<String> defFields   = (selFields != null)? fact.getDeferredFields(selFields) : null;
+        if (defFields != null) {
+            // -- also select deferred fields which have previously been accessed
+            Set<String> accessed = fact.getDeferredLoadFields();
+            accessed.retainAll(defFields);
+            if (!accessed.isEmpty()) {
+                Set<String> selSet = ListTools.toSet(selFields, new LinkedHashSet<String>());
+                selSet.addAll(accessed);
+                selFields = selSet.toArray(new String[selSet.size()]);
+                dsel.setSelectedFields(selFields);
+                defFields.removeAll(accessed);
+            }
+        }
+        if (defFields != null) {
+            defFields = Collections.unmodifiableSet(defFields); // shared by all selected records
+        }
+
         try {
             dbc  = DBConnection.getDBConnection_read();
             stmt = dbc.execute(dsel.toString());
@@ -774,8 +850,12 @@ public abstract class DBRecord<gDBR extends DBRecord<gDBR>>
                 DBRecordKey<T> rcdKey = fact.createKey(rs); // may throw DBException
                 if (rcdKey != null) {
                     T rcd = rcdKey.getDBRecord();
-                    rcd.setAllFieldValues(rs); // TODO: possible bug
-                    //rcd.setAllFieldValues(rs, dsel.getSelectedFields());
+                    if (defFields != null) {
+                        rcd.setAllFieldValues(rs, selFields);
+                        rcd.getRecordKey().getFieldValues().setDeferredFields(defFields);
+                    } else {
+                        rcd.setAllFieldValues(rs);
+                    }
                     if (rcdHandler != null) {
                         int rcdStatus = rcdHandler.handleDBRecord(rcd);
                         if (rcdStatus == DBRecordHandler.DBRH_SKIP) {
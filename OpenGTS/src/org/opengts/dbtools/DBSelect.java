@@ -60,6 +60,11 @@ public class DBSelect<gDBR extends DBRecord<gDBR>>
     private String          utableName      = null;
     private String          where           = null;
     private String          groupByFields[] = null;
+    private java.util.List<Aggregate> aggregates = null;
+    private String          bucketField     = null;
+    private long            bucketSizeSec   = 0L;
+    private long            bucketOffsetSec = 0L;
+    private String          bucketAlias     = null;
     private String          orderByFields[] = null;
     private boolean         ascending       = true; // default ascending
     private long            limit           = 0L;   // no limit
@@ -336,6 +341,274 @@ public class DBSelect<gDBR extends DBRecord<gDBR>>
         return ((this.groupByFields != null) && (this.groupByFields.length > 0))? this.groupByFields : null;
     }
 
+    // ------------------------------------------------------------------------
+    // Aggregates
+
+    /**
+    *** Aggregate function type
+    **/
+    public enum AggregateType {
+        COUNT,
+        SUM,
+        MIN,
+        MAX
+    };
+
+    /**
+    *** Aggregate column (ie. "SUM(field) AS alias")
+    **/
+    public static class Aggregate
+    {
+        private AggregateType type  = AggregateType.COUNT;
+        private String        field = null;
+        private String        alias = null;
+        public Aggregate(AggregateType type, String field, String alias) {
+            this.type  = (type != null)? type : AggregateType.COUNT;
+            this.field = StringTools.trim(field);
+            this.alias = StringTools.trim(alias);
+        }
+        public AggregateType getType() {
+            return this.type;
+        }
+        public String getField() {
+            return this.field;
+        }
+        public String getAlias() {
+            return this.alias;
+        }
+        public String toString(DBProvider dbp) {
+            StringBuffer sb = new StringBuffer();
+            sb.append(this.type.toString()).append("(");
+            if (StringTools.isBlank(this.field)) {
+                sb.append("*"); // COUNT(*)
+            } else {
+                sb.append(dbp.quoteColumnName(this.field));
+            }
+            sb.append(")");
+            if (!StringTools.isBlank(this.alias)) {
+                sb.append(" AS ").append(this.alias);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+    *** A single row returned by an aggregate select (see "DBRecord.selectAggregates")
+    **/
+    public static class AggregateRow
+    {
+        private String colName[] = null;
+        private Object colVal[]  = null;
+        public AggregateRow(String colName[], Object colVal[]) {
+            this.colName = (colName != null)? colName : new String[0];
+            this.colVal  = (colVal  != null)? colVal  : new Object[0];
+        }
+        public int getColumnCount() {
+            return this.colVal.length;
+        }
+        private int _indexOf(String col) {
+            for (int i = 0; i < this.colName.length; i++) {
+                if (this.colName[i].equalsIgnoreCase(col)) { // PostgreSQL lowercases aliases
+                    return i;
+                }
+            }
+            return -1;
+        }
+        public boolean hasColumn(String col) {
+            return (this._indexOf(col) >= 0);
+        }
+        public Object getValue(int ndx) {
+            return ((ndx >= 0) && (ndx < this.colVal.length))? this.colVal[ndx] : null;
+        }
+        public Object getValue(String col) {
+            return this.getValue(this._indexOf(col));
+        }
+        public String getString(String col) {
+            Object v = this.getValue(col);
+            return (v != null)? v.toString() : null;
+        }
+        public long getLong(String col, long dft) {
+            Object v = this.getValue(col);
+            if (v instanceof Number) {
+                return ((Number)v).longValue();
+            } else {
+                return StringTools.parseLong(v, dft);
+            }
+        }
+        public double getDouble(String col, double dft) {
+            Object v = this.getValue(col);
+            if (v instanceof Number) {
+                return ((Number)v).doubleValue();
+            } else {
+                return StringTools.parseDouble(v, dft);
+            }
+        }
+        public String toString() {
+            StringBuffer sb = new StringBuffer();
+            for (int i = 0; i < this.colVal.length; i++) {
+                if (i > 0) { sb.append(", "); }
+                sb.append(this.colName[i]).append("=").append(this.colVal[i]);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+    *** Adds an aggregate column to this select.  When aggregates are defined, the 
+    *** selected columns are the group-by fields, followed by the time bucket (if any),
+    *** followed by the aggregate columns (in the order added), and any previously 
+    *** selected fields are ignored.
+    *** @param type   The aggregate function
+    *** @param field  The aggregated field (may be null for "COUNT(*)")
+    *** @param alias  The returned column name
+    **/
+    public void addAggregate(AggregateType type, String field, String alias)
+    {
+        DBFactory<gDBR> fact = this.getFactory();
+        if (!StringTools.isBlank(field) && (fact != null) && !fact.hasField(field)) {
+            Print.logError("DBFactory field does not exist: %s.%s", fact.getUntranslatedTableName(), field);
+        } else
+        if (StringTools.isBlank(field) && !AggregateType.COUNT.equals(type)) {
+            Print.logError("Aggregate field required: %s", type);
+            return;
+        }
+        if (this.aggregates == null) {
+            this.aggregates = new Vector<Aggregate>();
+        }
+        this.aggregates.add(new Aggregate(type, field, alias));
+    }
+
+    /**
+    *** Adds a "COUNT(*)" aggregate column to this select
+    *** @param alias  The returned column name
+    **/
+    public void addCountAggregate(String alias)
+    {
+        this.addAggregate(AggregateType.COUNT, null, alias);
+    }
+
+    /**
+    *** Returns true if this DBSelect has aggregate columns defined
+    *** @return True if this DBSelect has aggregate columns defined
+    **/
+    public boolean hasAggregates()
+    {
+        return !ListTools.isEmpty(this.aggregates);
+    }
+
+    /**
+    *** Gets the aggregate columns
+    *** @return The aggregate columns, or null if no aggregates have been defined
+    **/
+    public Aggregate[] getAggregates()
+    {
+        return this.hasAggregates()? this.aggregates.toArray(new Aggregate[this.aggregates.size()]) : null;
+    }
+
+    /**
+    *** Clears all aggregate columns and the time bucket
+    **/
+    public void clearAggregates()
+    {
+        this.aggregates      = null;
+        this.bucketField     = null;
+        this.bucketSizeSec   = 0L;
+        this.bucketOffsetSec = 0L;
+        this.bucketAlias     = null;
+    }
+
+    // ------------------------------------------------------------------------
+    // Time bucket
+
+    /**
+    *** Sets the time bucket for this select.  The time bucket is selected and grouped
+    *** (following the group-by fields), and is returned as the bucket number:<br>
+    *** &nbsp; bucket = floor((timeField + offsetSec) / sizeSec)<br>
+    *** The start time of the bucket is "(bucket * sizeSec) - offsetSec".  The offset 
+    *** allows buckets to be aligned to local days (ie. the TimeZone offset), however 
+    *** it is fixed for the entire select, so a range crossing a DST change must be
+    *** split into separate selects.
+    *** @param timeField  The time field (seconds since the epoch)
+    *** @param sizeSec    The bucket size (seconds)
+    *** @param offsetSec  The offset added to the time field before bucketing (seconds)
+    *** @param alias      The returned column name
+    **/
+    public void setTimeBucket(String timeField, long sizeSec, long offsetSec, String alias)
+    {
+        if (StringTools.isBlank(timeField) || (sizeSec <= 0L)) {
+            this.bucketField     = null;
+            this.bucketSizeSec   = 0L;
+            this.bucketOffsetSec = 0L;
+            this.bucketAlias     = null;
+        } else {
+            DBFactory<gDBR> fact = this.getFactory();
+            if ((fact != null) && !fact.hasField(timeField)) {
+                Print.logError("DBFactory field does not exist: %s.%s", fact.getUntranslatedTableName(), timeField);
+            }
+            this.bucketField     = timeField;
+            this.bucketSizeSec   = sizeSec;
+            this.bucketOffsetSec = offsetSec;
+            this.bucketAlias     = StringTools.trim(alias);
+        }
+    }
+
+    /**
+    *** Returns true if this DBSelect has a time bucket defined
+    *** @return True if this DBSelect has a time bucket defined
+    **/
+    public boolean hasTimeBucket()
+    {
+        return (this.bucketField != null);
+    }
+
+    /**
+    *** Gets the time bucket size (seconds)
+    *** @return The time bucket size, or 0 if no time bucket has been defined
+    **/
+    public long getTimeBucketSize()
+    {
+        return this.bucketSizeSec;
+    }
+
+    /**
+    *** Gets the time bucket offset (seconds)
+    *** @return The time bucket offset
+    **/
+    public long getTimeBucketOffset()
+    {
+        return this.bucketOffsetSec;
+    }
+
+    /**
+    *** Returns the time bucket expression for the specified DBProvider.<br>
+    *** The event time fields are unsigned integer seconds, so integer division is
+    *** equivalent to "FLOOR", except on MySQL where "/" returns a decimal value.
+    **/
+    private String _getTimeBucketExpression(DBProvider dbp)
+    {
+        StringBuffer sb = new StringBuffer();
+        String col = dbp.quoteColumnName(this.bucketField);
+        String num = (this.bucketOffsetSec != 0L)? 
+            ("(" + col + (this.bucketOffsetSec > 0L? "+" : "-") + Math.abs(this.bucketOffsetSec) + ")") : 
+            col;
+        switch (dbp.getID()) {
+            case DBProvider.DB_MYSQL:
+                // MySQL:      FLOOR((timestamp+offset)/size)
+                sb.append("FLOOR(").append(num).append("/").append(this.bucketSizeSec).append(")");
+                break;
+            case DBProvider.DB_POSTGRESQL:
+                // PostgreSQL: ("timestamp"+offset)/size  [bigint division]
+            case DBProvider.DB_SQLSERVER:
+                // SQLServer:  (timestamp+offset)/size    [integer division]
+            case DBProvider.DB_DERBY:
+                // Derby:      (timestamp+offset)/size    [integer division]
+            default:
+                sb.append("(").append(num).append("/").append(this.bucketSizeSec).append(")");
+                break;
+        }
+        return sb.toString();
+    }
+
     // ------------------------------------------------------------------------
     // ORDER BY
 
@@ -569,6 +842,31 @@ public class DBSelect<gDBR extends DBRecord<gDBR>>
             }
 
             /* selected fields */
+            if (this.hasAggregates() || this.hasTimeBucket()) {
+                // -- group-by fields, time bucket, aggregates
+                int c = 0;
+                String gbf[] = this.getGroupByFields();
+                if (gbf != null) {
+                    for (int i = 0; i < gbf.length; i++) {
+                        if (c++ > 0) { sb.append(","); }
+                        sb.append(dbp.quoteColumnName(gbf[i]));
+                    }
+                }
+                if (this.hasTimeBucket()) {
+                    if (c++ > 0) { sb.append(","); }
+                    sb.append(this._getTimeBucketExpression(dbp));
+                    if (!StringTools.isBlank(this.bucketAlias)) {
+                        sb.append(" AS ").append(this.bucketAlias);
+                    }
+                }
+                Aggregate agg[] = this.getAggregates();
+                if (agg != null) {
+                    for (int i = 0; i < agg.length; i++) {
+                        if (c++ > 0) { sb.append(","); }
+                        sb.append(agg[i].toString(dbp));
+                    }
+                }
+            } else
             if (this.hasSelectedFields()) {
                 String fld[] = this.getSelectedFields();
                 for (int i = 0; i < fld.length; i++) {
@@ -599,17 +897,27 @@ public class DBSelect<gDBR extends DBRecord<gDBR>>
         }
 
         /* GROUP BY */
-        if (this.hasGroupByFields()) {
+        if (this.hasGroupByFields() || this.hasTimeBucket()) {
             sb.append(" GROUP BY ");
             String fld[] = this.getGroupByFields();
-            for (int i = 0; i < fld.length; i++) {
-                if (i > 0) {
+            int c = 0;
+            if (fld != null) {
+                for (int i = 0; i < fld.length; i++) {
+                    if (c++ > 0) {
+                        sb.append(",");
+                    }
+                    //sb.append(dbp.getStartColumnChar());
+                    //sb.append(fld[i]);
+                    //sb.append(dbp.getEndColumnChar());
+                    sb.append(dbp.quoteColumnName(fld[i]));
+                }
+            }
+            if (this.hasTimeBucket()) {
+                // -- SQLServer/Derby do not allow a column alias in "GROUP BY"
+                if (c++ > 0) {
                     sb.append(",");
                 }
-                //sb.append(dbp.getStartColumnChar());
-                //sb.append(fld[i]);
-                //sb.append(dbp.getEndColumnChar());
-                sb.append(dbp.quoteColumnName(fld[i]));
+                sb.append(this._getTimeBucketExpression(dbp));
             }
         }
 
@@ -0,0 +1,41 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+// 
+// http://www.apache.org/licenses/LICENSE-2.0
+// 
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Optional interface for ReverseGeocodeProviders whose service accepts multiple
+//  points in a single request.  Used by ReverseGeocodeCoalescer to group pending
+//  lookups (see the "batchSize"/"batchWaitMS" provider properties).
+// ----------------------------------------------------------------------------
+package org.opengts.geocoder;
+
+import org.opengts.util.*;
+
+public interface ReverseGeocodeBatchProvider
+{
+
+    /**
+    *** Returns the best address for each of the specified GeoPoints in a single request
+    *** @param gp        The array of GeoPoints
+    *** @param localeStr The locale
+    *** @param cache     True if the addresses may be cached
+    *** @return An array of reverse-geocoded addresses, the same length as the
+    ***         GeoPoint array (elements may be null), or null if the request failed
+    **/
+    public ReverseGeocode[] getReverseGeocodes(GeoPoint gp[], String localeStr, boolean cache);
+
+}
@@ -25,6 +25,7 @@
 package org.opengts.geocoder;
 
 import java.util.*;
+import java.io.File;
 
 import org.opengts.util.*;
 
@@ -41,8 +42,8 @@ public class ReverseGeocodeCache
     private static final long   MIN_TRIM_INTERVAL_MS        = DateTime.MinuteSeconds(10) * 1000L;
     private static final long   DEFAULT_TRIM_INTERVAL_MS    = 0L;
 
-    private static final int    GEOPOINT_DEC_HIRES          = 5; // 1.5 meters
-    private static final int    GEOPOINT_DEC_LORES          = 4; // 15 meters
+    public  static final int    GEOPOINT_DEC_HIRES          = 5; // 1.5 meters
+    public  static final int    GEOPOINT_DEC_LORES          = 4; // 15 meters
 
     private static final int    Store_As_FullAddress        = 0;
     private static final int    Store_As_StringJSON         = 1;
@@ -57,7 +58,7 @@ public class ReverseGeocodeCache
     *** @param dec  The the number of decimal points to retain (must be either 4 or 5)
     *** @return The encoded Long GeoPoint
     **/
-    private static long EncodeGeoPoint(GeoPoint gp, int dec)
+    public static long EncodeGeoPoint(GeoPoint gp, int dec)
     {
         if (GeoPoint.isValid(gp)) {
             double gpLat = gp.getLatitude();
@@ -199,6 +200,8 @@ public class ReverseGeocodeCache
     private String                  rgCacheName         = null;
     private MemCache<Long,Object>   rgCacheMap          = null;
     private int                     rgStoreType         = Store_As_StringJSON;
+
+    private ReverseGeocodeFileCache rgFileCache         = null; // persistent second tier
     
     private boolean                 highResolution      = false; // false=4dec, true=5dec
 
@@ -255,6 +258,38 @@ public class ReverseGeocodeCache
 
     // ------------------------------------------------------------------------
 
+    /**
+    *** Sets the persistent (disk-backed) second tier of this cache.  Entries not
+    *** found in memory are looked up in the specified file, and promoted into the
+    *** memory cache when found.  New entries are written to both tiers.
+    *** @param file      The cache file (null to disable the persistent tier)
+    *** @param maxSize   The maximum number of entries retained in the file
+    *** @param maxAgeMS  The maximum age of a file entry, in milliseconds
+    **/
+    public void setPersistentCache(File file, int maxSize, long maxAgeMS)
+    {
+        ReverseGeocodeFileCache oldCache = this.rgFileCache;
+        if (file != null) {
+            this.rgFileCache = new ReverseGeocodeFileCache(file, maxSize, maxAgeMS);
+            Print.logInfo("ReverseGeocodeCache '"+this.getName()+"' persistent tier: " + file);
+        } else {
+            this.rgFileCache = null;
+        }
+        if (oldCache != null) {
+            oldCache.close();
+        }
+    }
+
+    /**
+    *** Returns true if this cache has a persistent (disk-backed) second tier
+    **/
+    public boolean hasPersistentCache()
+    {
+        return (this.rgFileCache != null);
+    }
+
+    // ------------------------------------------------------------------------
+
     /**
     *** Sets the maximum cache size 
     **/
@@ -424,6 +459,18 @@ public class ReverseGeocodeCache
             // -- get ReverseGeocode entry
             Long   rgKey = this.encodeGeoPoint(gp);
             Object rgVal = this.rgCacheMap.getValue(rgKey);
+            // -- not found? check persistent tier
+            if ((rgVal == null) && (this.rgFileCache != null)) {
+                String rgValS = this.rgFileCache.getValue(rgKey.longValue());
+                if (rgValS != null) {
+                    // -- promote into memory tier
+                    ReverseGeocode rg = this._parseCacheValue(rgValS);
+                    if (rg != null) {
+                        this.rgCacheMap.addValue(rgKey, this._createCacheValue(rg));
+                    }
+                    return rg;
+                }
+            }
             // -- not found?
             if (rgVal == null) {
                 // -- key does not exist
@@ -440,31 +487,57 @@ public class ReverseGeocodeCache
                 return null;
             }
             // -- parse String
-            String rgValS = rgVal.toString();
-            if (rgValS.startsWith("{")) {
-                // -- contains JSON
-                try {
-                    return new ReverseGeocode(new JSON(rgValS));
-                } catch (JSON.JSONParsingException jpe) {
-                    // -- unable to parse JSON
-                    Print.logWarn("Invalid JSON found in ReverseGeocode Cachs: " + rgValS);
-                    return null;
-                }
-            } else {
-                // -- assume full address
-                ReverseGeocode rg = new ReverseGeocode();
-                rg.setFullAddress(rgValS);
-                return rg;
-            }
+            return this._parseCacheValue(rgVal.toString());
         } else {
             // -- invalid GeoPoint, to ReverseGeocode instance
             return null;
         }
     }
 
+    /**
+    *** Parses the cached String value into a ReverseGeocode instance
+    **/
+    private ReverseGeocode _parseCacheValue(String rgValS)
+    {
+        if (rgValS.startsWith("{")) {
+            // -- contains JSON
+            try {
+                return new ReverseGeocode(new JSON(rgValS));
+            } catch (JSON.JSONParsingException jpe) {
+                // -- unable to parse JSON
+                Print.logWarn("Invalid JSON found in ReverseGeocode Cachs: " + rgValS);
+                return null;
+            }
+        } else {
+            // -- assume full address
+            ReverseGeocode rg = new ReverseGeocode();
+            rg.setFullAddress(rgValS);
+            return rg;
+        }
+    }
+
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /**
+    *** Creates the memory cache value for the specified ReverseGeocode
+    **/
+    private Object _createCacheValue(ReverseGeocode rg)
+    {
+        switch (this.rgStoreType) {
+            case Store_As_FullAddress: {
+                String rgVal = rg.getFullAddress();
+                while (rgVal.startsWith("{")) { rgVal = rgVal.substring(1); }
+                return rgVal; }
+            case Store_As_StringJSON:
+                return rg.toJSON().toString(false);
+            case Store_As_ReverseGeocode:
+                return rg;
+            default:
+                return rg.toJSON().toString(false);
+        }
+    }
+
     /**
     *** Adds the specified ReverseGeocode to the cache for the specified GeoPoint.
     **/
@@ -478,26 +551,17 @@ public class ReverseGeocodeCache
 
         /* create GeoPoint key/value */
         Long   rgKey = this.encodeGeoPoint(gp);
-        Object rgVal;
-        switch (this.rgStoreType) {
-            case Store_As_FullAddress:
-                rgVal = rg.getFullAddress();
-                while (((String)rgVal).startsWith("{")) { rgVal = ((String)rgVal).substring(1); }
-                break;
-            case Store_As_StringJSON:
-                rgVal = rg.toJSON().toString(false);
-                break;
-            case Store_As_ReverseGeocode:
-                rgVal = rg;
-                break;
-            default:
-                rgVal = rg.toJSON().toString(false);
-                break;
-        }
+        Object rgVal = this._createCacheValue(rg);
 
         /* add to cache */
         this.rgCacheMap.addValue(rgKey, rgVal);
 
+        /* add to persistent tier */
+        if (this.rgFileCache != null) {
+            String rgValS = (rgVal instanceof String)? (String)rgVal : rg.toJSON().toString(false);
+            this.rgFileCache.addValue(rgKey.longValue(), rgValS);
+        }
+
         /* start auto-trim thread? */
         if (!this.autoTrimChecked) {
             this._startAutoTrimThread();
@@ -0,0 +1,389 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Coalesces concurrent reverse-geocode requests for the same location.
+//  Requests are keyed by the ReverseGeocodeCache encoded GeoPoint and the locale,
+//  so that concurrent lookups within the same cell wait on a single in-flight
+//  request to the ReverseGeocodeProvider.  Provider requests are run on a
+//  ThreadPool, which limits the number of concurrent requests to the provider
+//  and allows the request timeout to bound the provider call itself.  For
+//  providers implementing ReverseGeocodeBatchProvider, pending lookups are
+//  grouped into a single multi-point request.
+// ----------------------------------------------------------------------------
+package org.opengts.geocoder;
+
+import java.util.*;
+
+import org.opengts.util.*;
+
+public class ReverseGeocodeCoalescer
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final long   DEFAULT_TIMEOUT_MS          = 10000L;
+    public  static final int    DEFAULT_MAX_CONCURRENT      = 20;
+    public  static final int    THREAD_MAX_IDLE_SEC         = 60;
+    public  static final long   DEFAULT_BATCH_WAIT_MS       = 50L;
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** A pending (in-flight) reverse-geocode request
+    **/
+    private static class Pending
+    {
+        private String          key     = null;
+        private GeoPoint        geoPt   = null;
+        private String          locale  = null;
+        private boolean         cache   = false;
+        private long            startMS = 0L;
+        private ReverseGeocode  result  = null;
+        private boolean         done    = false;
+        public Pending(String key, GeoPoint gp, String localeStr, boolean cache) {
+            this.key     = key;
+            this.geoPt   = gp;
+            this.locale  = StringTools.trim(localeStr);
+            this.cache   = cache;
+            this.startMS = System.currentTimeMillis();
+        }
+        public String getKey() {
+            return this.key;
+        }
+        public GeoPoint getGeoPoint() {
+            return this.geoPt;
+        }
+        public String getLocale() {
+            return this.locale;
+        }
+        public boolean getCache() {
+            return this.cache;
+        }
+        public boolean isBatchCompatible(Pending p) {
+            return this.locale.equals(p.locale) && (this.cache == p.cache);
+        }
+        public long getAgeMS() {
+            return System.currentTimeMillis() - this.startMS;
+        }
+        public synchronized boolean isDone() {
+            return this.done;
+        }
+        public synchronized void complete(ReverseGeocode rg) {
+            this.result = rg;
+            this.done   = true;
+            this.notifyAll();
+        }
+        public synchronized ReverseGeocode waitFor(long timeoutMS) {
+            long endMS = System.currentTimeMillis() + timeoutMS;
+            while (!this.done) {
+                long waitMS = endMS - System.currentTimeMillis();
+                if (waitMS <= 0L) {
+                    return null; // timeout
+                }
+                try {
+                    this.wait(waitMS);
+                } catch (InterruptedException ie) {
+                    return null;
+                }
+            }
+            return this.result;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private ReverseGeocodeProvider  rgProvider      = null;
+
+    private Map<String,Pending>     inFlight        = new HashMap<String,Pending>();
+
+    private int                     maxConcurrent   = DEFAULT_MAX_CONCURRENT;
+    private ThreadPool              requestPool     = null;
+    private long                    timeoutMS       = DEFAULT_TIMEOUT_MS;
+
+    private int                     batchSize       = 0; // <= 1 for no batching
+    private long                    batchWaitMS     = DEFAULT_BATCH_WAIT_MS;
+    private List<Pending> batchQueue      = new Vector<Pending>();
+    private boolean                 batchScheduled  = false;
+
+    /**
+    *** Constructor
+    *** @param rgp  The ReverseGeocodeProvider to which requests are delegated
+    **/
+    public ReverseGeocodeCoalescer(ReverseGeocodeProvider rgp)
+    {
+        super();
+        this.rgProvider  = rgp;
+        this.requestPool = new ThreadPool(
+            "ReverseGeocode_" + rgp.getName(),
+            DEFAULT_MAX_CONCURRENT, 
+            THREAD_MAX_IDLE_SEC, 
+            0/*unlimited queue*/);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sets the maximum number of concurrent requests made to the provider
+    *** @param max  The maximum number of concurrent requests (<= 0 for the default)
+    **/
+    public void setMaximumConcurrentRequests(int max)
+    {
+        this.maxConcurrent = (max > 0)? max : DEFAULT_MAX_CONCURRENT;
+        this.requestPool.setMaxPoolSize(this.maxConcurrent);
+    }
+
+    /**
+    *** Gets the maximum number of concurrent requests made to the provider
+    **/
+    public int getMaximumConcurrentRequests()
+    {
+        return this.maxConcurrent;
+    }
+
+    /**
+    *** Sets the maximum time a caller will wait for an address, including the 
+    *** time waiting for a provider thread and the provider request itself.
+    **/
+    public void setTimeoutMS(long timeoutMS)
+    {
+        this.timeoutMS = (timeoutMS > 0L)? timeoutMS : DEFAULT_TIMEOUT_MS;
+    }
+
+    /**
+    *** Gets the request timeout, in milliseconds
+    **/
+    public long getTimeoutMS()
+    {
+        return this.timeoutMS;
+    }
+
+    /**
+    *** Sets the batch size and the time to wait for additional pending requests.
+    *** Batching is only performed if the provider implements ReverseGeocodeBatchProvider.
+    *** @param size    The maximum number of locations per batch request (<= 1 to disable)
+    *** @param waitMS  The time to wait for additional requests to join a batch
+    **/
+    public void setBatch(int size, long waitMS)
+    {
+        this.batchSize   = size;
+        this.batchWaitMS = (waitMS >= 0L)? waitMS : DEFAULT_BATCH_WAIT_MS;
+    }
+
+    /**
+    *** Returns true if batching is enabled
+    **/
+    public boolean isBatchEnabled()
+    {
+        return (this.batchSize > 1) && (this.rgProvider instanceof ReverseGeocodeBatchProvider);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Queues a provider request for the specified pending request.  The pending
+    *** request is completed (and removed from the in-flight table, if present)
+    *** when the provider returns, even if all callers have since timed out.
+    **/
+    private boolean _request(final Pending p)
+    {
+        final ReverseGeocodeCoalescer rgc = this;
+        return this.requestPool.run(new Runnable() {
+            public void run() {
+                ReverseGeocode rg = null;
+                try {
+                    if (p.getAgeMS() > rgc.timeoutMS) {
+                        // -- all callers have given up, skip the request
+                    } else {
+                        rg = rgc.rgProvider.getReverseGeocode(p.getGeoPoint(), p.getLocale(), p.getCache());
+                    }
+                } catch (Throwable th) {
+                    Print.logException("["+rgc.rgProvider.getName()+"] ReverseGeocode request failed", th);
+                } finally {
+                    rgc._complete(p, rg);
+                }
+            }
+        });
+    }
+
+    /**
+    *** Completes the specified pending request and removes it from the in-flight table
+    **/
+    private void _complete(Pending p, ReverseGeocode rg)
+    {
+        synchronized (this.inFlight) {
+            if (this.inFlight.get(p.getKey()) == p) {
+                this.inFlight.remove(p.getKey());
+            }
+        }
+        p.complete(rg);
+    }
+
+    /**
+    *** Queues the specified pending request for a batch request.  The first request
+    *** queued schedules a batch job, which waits "batchWaitMS" for additional requests
+    *** to join, then sends the queued requests (grouped by locale, up to the batch size
+    *** per provider request) until the queue is empty.
+    **/
+    private boolean _batchRequest(Pending p)
+    {
+        boolean schedule;
+        synchronized (this.batchQueue) {
+            this.batchQueue.add(p);
+            schedule = !this.batchScheduled;
+            this.batchScheduled = true;
+        }
+        if (!schedule) {
+            return true; // will be sent by the scheduled batch job
+        }
+        final ReverseGeocodeCoalescer rgc = this;
+        boolean queued = this.requestPool.run(new Runnable() {
+            public void run() {
+                rgc._sendBatches();
+            }
+        });
+        if (!queued) {
+            synchronized (this.batchQueue) {
+                this.batchScheduled = false;
+            }
+        }
+        return queued;
+    }
+
+    /**
+    *** Sends the queued batch requests (called from the request ThreadPool)
+    **/
+    private void _sendBatches()
+    {
+        if (this.batchWaitMS > 0L) {
+            try { Thread.sleep(this.batchWaitMS); } catch (InterruptedException ie) {/*ignore*/}
+        }
+        ReverseGeocodeBatchProvider rgbp = (ReverseGeocodeBatchProvider)this.rgProvider;
+        for (;;) {
+
+            /* next batch (same locale/cache as the oldest queued request) */
+            List<Pending> batch = new Vector<Pending>();
+            synchronized (this.batchQueue) {
+                if (this.batchQueue.isEmpty()) {
+                    this.batchScheduled = false;
+                    return;
+                }
+                Pending first = this.batchQueue.get(0);
+                for (Iterator<Pending> i = this.batchQueue.iterator(); i.hasNext() && (batch.size() < this.batchSize);) {
+                    Pending p = i.next();
+                    if (first.isBatchCompatible(p)) {
+                        batch.add(p);
+                        i.remove();
+                    }
+                }
+            }
+
+            /* skip requests for which all callers have given up */
+            for (Iterator<Pending> i = batch.iterator(); i.hasNext();) {
+                Pending p = i.next();
+                if (p.getAgeMS() > this.timeoutMS) {
+                    this._complete(p, null);
+                    i.remove();
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            /* send batch */
+            GeoPoint gpa[] = new GeoPoint[batch.size()];
+            for (int i = 0; i < gpa.length; i++) {
+                gpa[i] = batch.get(i).getGeoPoint();
+            }
+            ReverseGeocode rga[] = null;
+            try {
+                Pending first = batch.get(0);
+                rga = rgbp.getReverseGeocodes(gpa, first.getLocale(), first.getCache());
+            } catch (Throwable th) {
+                Print.logException("["+this.rgProvider.getName()+"] Batch ReverseGeocode request failed", th);
+            } finally {
+                for (int i = 0; i < gpa.length; i++) {
+                    ReverseGeocode rg = ((rga != null) && (i < rga.length))? rga[i] : null;
+                    this._complete(batch.get(i), rg);
+                }
+            }
+
+        }
+    }
+
+    /**
+    *** Returns the best address for the specified GeoPoint.  Concurrent requests
+    *** for the same location and locale share a single provider request.
+    *** @param gp         The GeoPoint
+    *** @param localeStr  The locale
+    *** @param cache      True if the vehicle is stopped (see EventData.updateAddress)
+    *** @return The reverse-geocoded address, or null if not available within the timeout
+    **/
+    public ReverseGeocode getReverseGeocode(GeoPoint gp, String localeStr, boolean cache)
+    {
+
+        /* invalid GeoPoint? */
+        if (!GeoPoint.isValid(gp)) {
+            return null;
+        }
+
+        /* join in-flight request, or start a new one */
+        String  key = ReverseGeocodeCache.EncodeGeoPoint(gp,ReverseGeocodeCache.GEOPOINT_DEC_LORES) + 
+            "/" + StringTools.trim(localeStr);
+        Pending p;
+        boolean leader;
+        synchronized (this.inFlight) {
+            p = this.inFlight.get(key);
+            if (p == null) {
+                p = new Pending(key, gp, localeStr, cache);
+                this.inFlight.put(key, p);
+                leader = true;
+            } else {
+                leader = false;
+            }
+        }
+        if (leader && !(this.isBatchEnabled()? this._batchRequest(p) : this._request(p))) {
+            // -- unable to queue request (should not occur, the queue is unbounded)
+            synchronized (this.inFlight) {
+                this.inFlight.remove(key);
+            }
+            p.complete(null);
+            return null;
+        }
+
+        /* wait for the in-flight request for this location */
+        ReverseGeocode rg = p.waitFor(this.timeoutMS);
+        if ((rg != null) || leader || p.isDone()) {
+            return rg;
+        }
+
+        /* follower timed out: the leader request may still succeed, make a direct request */
+        Print.logWarn("["+this.rgProvider.getName()+"] Timeout waiting for coalesced ReverseGeocode, requesting directly");
+        Pending d = new Pending(key, gp, localeStr, cache); // not added to the in-flight table
+        if (!this._request(d)) {
+            return null;
+        }
+        return d.waitFor(this.timeoutMS);
+
+    }
+
+    // ------------------------------------------------------------------------
+
+}
@@ -0,0 +1,438 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Persistent second tier for the ReverseGeocodeCache.  Entries are appended
+//  to a local file and indexed in memory by the encoded GeoPoint key.  When
+//  the number of entries exceeds the maximum size, the least-recently-used
+//  entries are discarded and the file is compacted.  The file is also compacted
+//  when superseded/expired records make up more than half of the file.
+// ----------------------------------------------------------------------------
+package org.opengts.geocoder;
+
+import java.util.*;
+import java.io.*;
+
+import org.opengts.util.*;
+
+public class ReverseGeocodeFileCache
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final int    DEFAULT_MAX_SIZE            = 200000;
+    public  static final long   DEFAULT_MAX_AGE_MS          = DateTime.DaySeconds(30) * 1000L;
+    private static final int    MINIMUM_MAX_SIZE            = 1000;
+    private static final double COMPACT_RETAIN_PERCENT      = 0.80;
+    private static final double COMPACT_STALE_PERCENT       = 0.50;
+
+    private static final int    FILE_MAGIC                  = 0x52474331; // "RGC1"
+    private static final int    HEADER_LENGTH               = 4;
+    private static final int    RECORD_OVERHEAD             = 8 + 8 + 2;  // key, time, UTF length
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Index entry: location/time of a record within the cache file
+    **/
+    private static class FileEntry
+    {
+        private long offset = 0L;
+        private long timeMS = 0L;
+        public FileEntry(long offset, long timeMS) {
+            this.offset = offset;
+            this.timeMS = timeMS;
+        }
+        public long getOffset() {
+            return this.offset;
+        }
+        public long getTimeMS() {
+            return this.timeMS;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private File                            cacheFile       = null;
+    private RandomAccessFile                cacheRAF        = null;
+    private LinkedHashMap<Long,FileEntry>   cacheIndex      = null; // access-ordered (LRU first)
+    private int                             fileRecords     = 0;    // records in file (including stale)
+    private int                             maxSize         = DEFAULT_MAX_SIZE;
+    private long                            maxAgeMS        = DEFAULT_MAX_AGE_MS;
+    private boolean                         openFailed      = false;
+
+    /**
+    *** Constructor
+    *** @param file     The cache file
+    *** @param maxSize  The maximum number of entries retained in the file
+    *** @param maxAgeMS The maximum age of an entry, in milliseconds (<=0 for no limit)
+    **/
+    public ReverseGeocodeFileCache(File file, int maxSize, long maxAgeMS)
+    {
+        super();
+        this.cacheFile  = file;
+        this.cacheIndex = new LinkedHashMap<Long,FileEntry>(1024, 0.75F, true);
+        this.maxSize    = (maxSize > MINIMUM_MAX_SIZE)? maxSize : MINIMUM_MAX_SIZE;
+        this.maxAgeMS   = maxAgeMS;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the cache file
+    **/
+    public File getFile()
+    {
+        return this.cacheFile;
+    }
+
+    /**
+    *** Gets the maximum number of entries retained in the cache file
+    **/
+    public int getMaximumSize()
+    {
+        return this.maxSize;
+    }
+
+    /**
+    *** Gets the maximum entry age, in milliseconds
+    **/
+    public long getMaximumAgeMS()
+    {
+        return this.maxAgeMS;
+    }
+
+    /**
+    *** Gets the current number of entries in the cache file
+    **/
+    public int getSize()
+    {
+        synchronized (this) {
+            this._open();
+            return this.cacheIndex.size();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if the specified entry time has expired
+    **/
+    private boolean _isExpired(long timeMS, long nowMS)
+    {
+        return (this.maxAgeMS > 0L) && ((nowMS - timeMS) > this.maxAgeMS);
+    }
+
+    /**
+    *** Opens the cache file (if not already open) and loads the index.
+    *** Must be called while synchronized on this instance.
+    *** @return True if the cache file is open
+    **/
+    private boolean _open()
+    {
+
+        /* already open? */
+        if (this.cacheRAF != null) {
+            return true;
+        } else
+        if (this.openFailed || (this.cacheFile == null)) {
+            return false;
+        }
+
+        /* open file */
+        long startMS = System.currentTimeMillis();
+        try {
+            File dir = this.cacheFile.getParentFile();
+            if ((dir != null) && !dir.isDirectory()) {
+                dir.mkdirs();
+            }
+            this.cacheRAF = new RandomAccessFile(this.cacheFile, "rw");
+            if (this.cacheRAF.length() < HEADER_LENGTH) {
+                // -- new file
+                this.cacheRAF.setLength(0L);
+                this.cacheRAF.writeInt(FILE_MAGIC);
+            } else
+            if (this.cacheRAF.readInt() != FILE_MAGIC) {
+                // -- not a cache file
+                Print.logError("Invalid ReverseGeocode cache file: " + this.cacheFile);
+                this.cacheRAF.close();
+                this.cacheRAF   = null;
+                this.openFailed = true;
+                return false;
+            } else {
+                // -- load index (later records replace earlier records)
+                long validLen = this._loadIndex();
+                if (validLen < this.cacheRAF.length()) {
+                    // -- truncated/partial last record
+                    Print.logWarn("Truncating partial ReverseGeocode cache record at " + validLen);
+                    this.cacheRAF.setLength(validLen);
+                }
+            }
+        } catch (IOException ioe) {
+            Print.logException("Unable to open ReverseGeocode cache file: " + this.cacheFile, ioe);
+            this._closeFile();
+            this.openFailed = true;
+            return false;
+        }
+        long deltaMS = System.currentTimeMillis() - startMS;
+        Print.logInfo("Loaded ReverseGeocode cache file: " + this.cacheFile +
+            " [entries=" + this.cacheIndex.size() + ", " + deltaMS + " ms]");
+
+        /* compact if necessary */
+        if (this._needsCompact()) {
+            this._compact();
+        }
+        return (this.cacheRAF != null);
+
+    }
+
+    /**
+    *** Reads the cache file and loads the in-memory index
+    *** @return The length of the valid portion of the file
+    **/
+    private long _loadIndex()
+        throws IOException
+    {
+        long nowMS  = System.currentTimeMillis();
+        long offset = HEADER_LENGTH;
+        this.fileRecords = 0;
+        DataInputStream dis = null;
+        try {
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(this.cacheFile)));
+            dis.skipBytes(HEADER_LENGTH);
+            for (;;) {
+                long key, timeMS;
+                int  len;
+                try {
+                    key    = dis.readLong();
+                    timeMS = dis.readLong();
+                    len    = dis.readUnsignedShort();
+                    if (dis.skipBytes(len) < len) { break; }
+                } catch (EOFException eof) {
+                    break;
+                }
+                if (this._isExpired(timeMS,nowMS)) {
+                    this.cacheIndex.remove(new Long(key));
+                } else {
+                    this.cacheIndex.put(new Long(key), new FileEntry(offset,timeMS));
+                }
+                offset += RECORD_OVERHEAD + len;
+                this.fileRecords++;
+            }
+        } finally {
+            if (dis != null) { try { dis.close(); } catch (Throwable th) {/*ignore*/} }
+        }
+        return offset;
+    }
+
+    /**
+    *** Closes the cache file.  Must be called while synchronized on this instance.
+    **/
+    private void _closeFile()
+    {
+        if (this.cacheRAF != null) {
+            try { this.cacheRAF.close(); } catch (Throwable th) {/*ignore*/}
+            this.cacheRAF = null;
+        }
+    }
+
+    /**
+    *** Closes the cache file
+    **/
+    public void close()
+    {
+        synchronized (this) {
+            this._closeFile();
+            this.cacheIndex.clear();
+            this.fileRecords = 0;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Reads the value of the record at the specified offset
+    **/
+    private String _readValue(long offset)
+        throws IOException
+    {
+        this.cacheRAF.seek(offset + 8 + 8);
+        return this.cacheRAF.readUTF();
+    }
+
+    /**
+    *** Appends a record to the end of the cache file
+    *** @return The offset of the appended record
+    **/
+    private long _appendRecord(RandomAccessFile raf, long key, long timeMS, String value)
+        throws IOException
+    {
+        long offset = raf.length();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(RECORD_OVERHEAD + value.length());
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeLong(key);
+        dos.writeLong(timeMS);
+        dos.writeUTF(value);
+        dos.flush();
+        raf.seek(offset);
+        raf.write(bos.toByteArray()); // single write
+        return offset;
+    }
+
+    /**
+    *** Returns true if the cache file should be compacted, either because the 
+    *** number of entries exceeds the maximum size, or because superseded/expired
+    *** records (ie. re-added or expired keys) make up too much of the file.
+    *** Must be called while synchronized on this instance.
+    **/
+    private boolean _needsCompact()
+    {
+        int entries = this.cacheIndex.size();
+        if (entries > this.maxSize) {
+            return true;
+        }
+        int stale = this.fileRecords - entries;
+        return (stale > MINIMUM_MAX_SIZE) && (stale > (int)((double)this.fileRecords * COMPACT_STALE_PERCENT));
+    }
+
+    /**
+    *** Rewrites the cache file retaining only the live entries.  If the number of
+    *** entries exceeds the maximum size, only the most recently used are retained.
+    *** Must be called while synchronized on this instance.
+    **/
+    private void _compact()
+    {
+        long startMS = System.currentTimeMillis();
+        int  retain  = (int)((double)this.maxSize * COMPACT_RETAIN_PERCENT);
+        int  skip    = (this.cacheIndex.size() > this.maxSize)? (this.cacheIndex.size() - retain) : 0;
+        File tmpFile = new File(this.cacheFile.getPath() + ".tmp");
+        RandomAccessFile tmpRAF = null;
+        LinkedHashMap<Long,FileEntry> newIndex = new LinkedHashMap<Long,FileEntry>(retain * 2, 0.75F, true);
+        try {
+            tmpRAF = new RandomAccessFile(tmpFile, "rw");
+            tmpRAF.setLength(0L);
+            tmpRAF.writeInt(FILE_MAGIC);
+            long nowMS = System.currentTimeMillis();
+            // -- iterate in LRU order (least-recently-used first)
+            for (Map.Entry<Long,FileEntry> me : this.cacheIndex.entrySet()) {
+                if (skip > 0) { skip--; continue; }
+                FileEntry fe = me.getValue();
+                if (this._isExpired(fe.getTimeMS(),nowMS)) { continue; }
+                String val = this._readValue(fe.getOffset());
+                long   ofs = this._appendRecord(tmpRAF, me.getKey().longValue(), fe.getTimeMS(), val);
+                newIndex.put(me.getKey(), new FileEntry(ofs,fe.getTimeMS()));
+            }
+            tmpRAF.close();
+            tmpRAF = null;
+            // -- replace cache file
+            this._closeFile();
+            if (!tmpFile.renameTo(this.cacheFile)) {
+                this.cacheFile.delete();
+                if (!tmpFile.renameTo(this.cacheFile)) {
+                    throw new IOException("Unable to rename " + tmpFile + " to " + this.cacheFile);
+                }
+            }
+            this.cacheRAF    = new RandomAccessFile(this.cacheFile, "rw");
+            this.cacheIndex  = newIndex;
+            this.fileRecords = newIndex.size();
+        } catch (IOException ioe) {
+            Print.logException("Unable to compact ReverseGeocode cache file: " + this.cacheFile, ioe);
+            if (tmpRAF != null) { try { tmpRAF.close(); } catch (Throwable th) {/*ignore*/} }
+            tmpFile.delete();
+            this._closeFile();
+            this.cacheIndex.clear();
+            this.fileRecords = 0;
+            this.openFailed  = true;
+            return;
+        }
+        long deltaMS = System.currentTimeMillis() - startMS;
+        Print.logInfo("Compacted ReverseGeocode cache file: " + this.cacheFile +
+            " [entries=" + this.cacheIndex.size() + ", " + deltaMS + " ms]");
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the cached value for the specified encoded GeoPoint key
+    *** @param key  The encoded GeoPoint key
+    *** @return The cached value, or null if not found
+    **/
+    public String getValue(long key)
+    {
+        synchronized (this) {
+            if (!this._open()) {
+                return null;
+            }
+            Long      K  = new Long(key);
+            FileEntry fe = this.cacheIndex.get(K); // also moves to MRU position
+            if (fe == null) {
+                return null;
+            } else
+            if (this._isExpired(fe.getTimeMS(),System.currentTimeMillis())) {
+                this.cacheIndex.remove(K);
+                return null;
+            }
+            try {
+                return this._readValue(fe.getOffset());
+            } catch (IOException ioe) {
+                Print.logError("Unable to read ReverseGeocode cache entry: " + ioe);
+                this.cacheIndex.remove(K);
+                return null;
+            }
+        }
+    }
+
+    /**
+    *** Adds the specified value to the cache file
+    *** @param key    The encoded GeoPoint key
+    *** @param value  The value to cache
+    *** @return True if the value was written
+    **/
+    public boolean addValue(long key, String value)
+    {
+        if (value == null) {
+            return false;
+        }
+        synchronized (this) {
+            if (!this._open()) {
+                return false;
+            }
+            try {
+                long timeMS = System.currentTimeMillis();
+                long offset = this._appendRecord(this.cacheRAF, key, timeMS, value);
+                this.cacheIndex.put(new Long(key), new FileEntry(offset,timeMS));
+                this.fileRecords++;
+            } catch (UTFDataFormatException ufe) {
+                // -- value too long (> 65535 bytes)
+                return false;
+            } catch (IOException ioe) {
+                Print.logError("Unable to write ReverseGeocode cache entry: " + ioe);
+                return false;
+            }
+            if (this._needsCompact()) {
+                this._compact();
+            }
+            return true;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+}
@@ -51,6 +51,11 @@ public abstract class ReverseGeocodeProviderAdapter
     public static final String PROP_alwaysFast[]            = new String[] { "alwaysFast", "forceAlwaysFast" }; // Boolean: false
     public static final String PROP_maxFailoverSeconds[]    = new String[] { "maxFailoverSeconds" }; // Long: 
     public static final String PROP_failoverQuiet[]         = new String[] { "failoverQuiet" }; // Boolean: 
+    public static final String PROP_coalesceRequests[]      = new String[] { "coalesceRequests" }; // Boolean: false
+    public static final String PROP_maxConcurrentRequests[] = new String[] { "maxConcurrentRequests" }; // Integer: 20
+    public static final String PROP_requestTimeoutMS[]      = new String[] { "requestTimeoutMS" }; // Long: 10000
+    public static final String PROP_batchSize[]             = new String[] { "batchSize" }; // Integer: 0
+    public static final String PROP_batchWaitMS[]           = new String[] { "batchWaitMS" }; // Long: 50
 
     // ------------------------------------------------------------------------
 
@@ -73,6 +78,9 @@ public abstract class ReverseGeocodeProviderAdapter
     private long                    rgFailoverTime          = 0L; // Epoch time of failover
     private long                    rgFailoverTimeoutSec    = 0L; // failover timeout
 
+    private ReverseGeocodeCoalescer rgCoalescer             = null;
+    private volatile boolean        rgCoalescerInit         = false;
+
     /**
     *** Constructor
     *** @param name  The name of this reverse-geocode provider
@@ -387,6 +395,74 @@ public abstract class ReverseGeocodeProviderAdapter
     /* get reverse-geocode */
     public abstract ReverseGeocode getReverseGeocode(GeoPoint gp, String localeStr, boolean cache);
 
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the request coalescer for this ReverseGeocodeProvider, or null if
+    *** request coalescing has not been enabled with the "coalesceRequests" property.
+    **/
+    public ReverseGeocodeCoalescer getReverseGeocodeCoalescer()
+    {
+        if (!this.rgCoalescerInit) {
+            synchronized (this) {
+                if (!this.rgCoalescerInit) { // retest
+                    RTProperties rtp = this.getProperties();
+                    if (rtp.getBoolean(PROP_coalesceRequests,false)) {
+                        ReverseGeocodeCoalescer rgc = new ReverseGeocodeCoalescer(this);
+                        rgc.setMaximumConcurrentRequests(rtp.getInt(PROP_maxConcurrentRequests,0));
+                        rgc.setTimeoutMS(rtp.getLong(PROP_requestTimeoutMS,ReverseGeocodeCoalescer.DEFAULT_TIMEOUT_MS));
+                        rgc.setBatch(rtp.getInt(PROP_batchSize,0), 
+                            rtp.getLong(PROP_batchWaitMS,ReverseGeocodeCoalescer.DEFAULT_BATCH_WAIT_MS));
+                        this.rgCoalescer = rgc;
+                    }
+                    this.rgCoalescerInit = true;
+                }
+            }
+        }
+        return this.rgCoalescer;
+    }
+
+    /**
+    *** Returns the best address for the specified GeoPoint.  Concurrent requests
+    *** for the same location are coalesced into a single provider request.
+    *** Fast (local) providers are always called directly.
+    *** @param gp        The GeoPoint
+    *** @param localeStr The locale
+    *** @param cache     True if the vehicle is stopped (see EventData.updateAddress)
+    *** @return The reverse-geocoded address
+    **/
+    public ReverseGeocode getCoalescedReverseGeocode(GeoPoint gp, String localeStr, boolean cache)
+    {
+        ReverseGeocodeCoalescer rgc = !this.isFastOperation()? this.getReverseGeocodeCoalescer() : null;
+        if (rgc != null) {
+            return rgc.getReverseGeocode(gp, localeStr, cache);
+        } else {
+            return this.getReverseGeocode(gp, localeStr, cache);
+        }
+    }
+
+    /**
+    *** Returns the best address for the specified GeoPoint from the specified 
+    *** ReverseGeocodeProvider, coalescing concurrent requests for the same location
+    *** if supported by the provider.
+    *** @param rgp       The ReverseGeocodeProvider
+    *** @param gp        The GeoPoint
+    *** @param localeStr The locale
+    *** @param cache     True if the vehicle is stopped (see EventData.updateAddress)
+    *** @return The reverse-geocoded address
+    **/
+    public static ReverseGeocode GetReverseGeocode(ReverseGeocodeProvider rgp, GeoPoint gp, String localeStr, boolean cache)
+    {
+        if (rgp == null) {
+            return null;
+        } else
+        if (rgp instanceof ReverseGeocodeProviderAdapter) {
+            return ((ReverseGeocodeProviderAdapter)rgp).getCoalescedReverseGeocode(gp, localeStr, cache);
+        } else {
+            return rgp.getReverseGeocode(gp, localeStr, cache);
+        }
+    }
+
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
@@ -44,4 +44,11 @@ public interface SubdivisionProvider
     public String getSubdivision(GeoPoint gp)
         throws SubdivisionException;
 
+    /**
+    *** Return the subdivision of the specified point, using the specified subdivision
+    *** hint (typically the last known subdivision of the vehicle) to speed up the lookup
+    **/
+    public String getSubdivision(GeoPoint gp, String hint)
+        throws SubdivisionException;
+
 }
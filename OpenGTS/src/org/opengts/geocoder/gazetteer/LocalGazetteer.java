@@ -0,0 +1,437 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Notes:
+// - This reverse-geocoder resolves addresses locally from a GeoNames gazetteer
+//   extract (ie. "cities1000.txt", "allCountries.txt", "US.txt", etc), which
+//   can be downloaded from "http://download.geonames.org/export/dump/".
+// - The gazetteer entries are loaded into an in-memory k-d tree the first time
+//   an address is requested.  Subsequent lookups do not leave the JVM.
+// - Sample "private.xml" entry:
+//      <ReverseGeocodeProvider name="gazetteer" active="true"
+//          class="org.opengts.geocoder.gazetteer.LocalGazetteer"
+//          key="">
+//          <Property key="gazetteerFile">/usr/local/geonames/cities1000.txt</Property>
+//          <Property key="maxDistanceKM">25.0</Property>
+//      </ReverseGeocodeProvider>
+// ----------------------------------------------------------------------------
+package org.opengts.geocoder.gazetteer;
+
+import java.util.*;
+import java.io.*;
+
+import org.opengts.util.*;
+
+import org.opengts.geocoder.*;
+
+public class LocalGazetteer
+    extends ReverseGeocodeProviderAdapter
+    implements ReverseGeocodeProvider
+{
+
+    // ------------------------------------------------------------------------
+    //
+    // GeoNames "geoname" table columns (tab-delimited, UTF-8):
+    //    0 geonameid, 1 name, 2 asciiname, 3 alternatenames, 4 latitude, 5 longitude,
+    //    6 feature class, 7 feature code, 8 country code, 9 cc2, 10 admin1 code,
+    //   11 admin2 code, 12 admin3 code, 13 admin4 code, 14 population, 15 elevation,
+    //   16 dem, 17 timezone, 18 modification date
+    //
+    // ------------------------------------------------------------------------
+
+    private static final int      COL_name                      =  1;
+    private static final int      COL_latitude                  =  4;
+    private static final int      COL_longitude                 =  5;
+    private static final int      COL_featureClass              =  6;
+    private static final int      COL_countryCode               =  8;
+    private static final int      COL_admin1                    = 10;
+    private static final int      COL_population                = 14;
+    private static final int      COL_timezone                  = 17;
+    private static final int      COL_MINIMUM                   = COL_countryCode + 1;
+
+    // ------------------------------------------------------------------------
+
+    protected static final String PROP_gazetteerFile            = "gazetteerFile";      // File: GeoNames extract
+    protected static final String PROP_maxDistanceKM            = "maxDistanceKM";      // Double: 25.0
+    protected static final String PROP_minPopulation            = "minPopulation";      // Long: 0
+    protected static final String PROP_featureClasses           = "featureClasses";     // String: "P"
+    protected static final String PROP_includeDistance          = "includeDistance";    // Boolean: false
+
+    // ------------------------------------------------------------------------
+
+    public    static       double DEFAULT_MAX_DISTANCE_KM       = 25.0;
+    public    static       String DEFAULT_FEATURE_CLASSES       = "P";  // populated places
+
+    private   static final double COORD_SCALE                   = 100000.0; // 5 decimal places
+
+    protected static final String ENCODING_UTF8                 = StringTools.CharEncoding_UTF_8;
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Compact static k-d tree of gazetteer places.<br>
+    *** Places are stored in parallel arrays, reordered in-place such that the
+    *** median of each range [lo,hi) is the splitting node for that range.
+    *** Even depths split on latitude, odd depths split on longitude.
+    **/
+    private static class PlaceTree
+    {
+        private int      size      = 0;
+        private int      lat[]     = null;  // latitude  * COORD_SCALE
+        private int      lon[]     = null;  // longitude * COORD_SCALE
+        private String   name[]    = null;
+        private String   admin1[]  = null;
+        private String   country[] = null;
+        private String   tmz[]     = null;
+        public PlaceTree(int capacity) {
+            this.lat     = new int[capacity];
+            this.lon     = new int[capacity];
+            this.name    = new String[capacity];
+            this.admin1  = new String[capacity];
+            this.country = new String[capacity];
+            this.tmz     = new String[capacity];
+        }
+        public int size() {
+            return this.size;
+        }
+        public void add(int lat, int lon, String name, String admin1, String country, String tmz) {
+            if (this.size >= this.lat.length) {
+                int cap = this.lat.length * 2;
+                this.lat     = Arrays.copyOf(this.lat    , cap);
+                this.lon     = Arrays.copyOf(this.lon    , cap);
+                this.name    = Arrays.copyOf(this.name   , cap);
+                this.admin1  = Arrays.copyOf(this.admin1 , cap);
+                this.country = Arrays.copyOf(this.country, cap);
+                this.tmz     = Arrays.copyOf(this.tmz    , cap);
+            }
+            int n = this.size++;
+            this.lat[n]     = lat;
+            this.lon[n]     = lon;
+            this.name[n]    = name;
+            this.admin1[n]  = admin1;
+            this.country[n] = country;
+            this.tmz[n]     = tmz;
+        }
+        // -- build
+        public void build() {
+            this._build(0, this.size, 0);
+        }
+        private void _build(int lo, int hi, int depth) {
+            if ((hi - lo) <= 1) { return; }
+            int mid = (lo + hi) >>> 1;
+            this._select(lo, hi - 1, mid, ((depth & 1) == 0)? this.lat : this.lon);
+            this._build(lo     , mid, depth + 1);
+            this._build(mid + 1, hi , depth + 1);
+        }
+        private void _select(int lo, int hi, int k, int key[]) {
+            // -- quickselect: place the k'th smallest 'key' at index k
+            while (hi > lo) {
+                int pivot = key[(lo + hi) >>> 1];
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (key[i] < pivot) { i++; }
+                    while (key[j] > pivot) { j--; }
+                    if (i <= j) { this._swap(i++, j--); }
+                }
+                if (k <= j) { hi = j; } else
+                if (k >= i) { lo = i; } else { break; }
+            }
+        }
+        private void _swap(int a, int b) {
+            int    I; String S;
+            I = this.lat[a];     this.lat[a]     = this.lat[b];     this.lat[b]     = I;
+            I = this.lon[a];     this.lon[a]     = this.lon[b];     this.lon[b]     = I;
+            S = this.name[a];    this.name[a]    = this.name[b];    this.name[b]    = S;
+            S = this.admin1[a];  this.admin1[a]  = this.admin1[b];  this.admin1[b]  = S;
+            S = this.country[a]; this.country[a] = this.country[b]; this.country[b] = S;
+            S = this.tmz[a];     this.tmz[a]     = this.tmz[b];     this.tmz[b]     = S;
+        }
+        // -- nearest-neighbor search
+        public int nearest(GeoPoint gp) {
+            if (this.size <= 0) { return -1; }
+            double qLat   = gp.getLatitude()  * COORD_SCALE;
+            double qLon   = gp.getLongitude() * COORD_SCALE;
+            double lonSc  = Math.cos(gp.getLatitudeRadians());
+            double best[] = new double[] { Double.MAX_VALUE, -1.0 };
+            this._nearest(0, this.size, 0, qLat, qLon, lonSc, best);
+            return (int)best[1];
+        }
+        private void _nearest(int lo, int hi, int depth, double qLat, double qLon, double lonSc, double best[]) {
+            if (lo >= hi) { return; }
+            int    mid  = (lo + hi) >>> 1;
+            double dLat = (double)this.lat[mid] - qLat;
+            double dLon = ((double)this.lon[mid] - qLon) * lonSc;
+            double dist = (dLat * dLat) + (dLon * dLon);
+            if (dist < best[0]) {
+                best[0] = dist;
+                best[1] = (double)mid;
+            }
+            double split = ((depth & 1) == 0)? dLat : dLon; // node - query, along split axis
+            if (split > 0.0) {
+                // -- query is below/left of node
+                this._nearest(lo, mid, depth + 1, qLat, qLon, lonSc, best);
+                if ((split * split) < best[0]) {
+                    this._nearest(mid + 1, hi, depth + 1, qLat, qLon, lonSc, best);
+                }
+            } else {
+                // -- query is above/right of node
+                this._nearest(mid + 1, hi, depth + 1, qLat, qLon, lonSc, best);
+                if ((split * split) < best[0]) {
+                    this._nearest(lo, mid, depth + 1, qLat, qLon, lonSc, best);
+                }
+            }
+        }
+        // -- accessors
+        public GeoPoint getGeoPoint(int n) {
+            return new GeoPoint((double)this.lat[n] / COORD_SCALE, (double)this.lon[n] / COORD_SCALE);
+        }
+        public String getName(int n) {
+            return this.name[n];
+        }
+        public String getAdmin1(int n) {
+            return this.admin1[n];
+        }
+        public String getCountryCode(int n) {
+            return this.country[n];
+        }
+        public String getTimeZone(int n) {
+            return this.tmz[n];
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private PlaceTree       placeTree       = null;
+    private volatile boolean loadAttempted  = false; // assigned after 'placeTree'
+
+    /**
+    *** Constructor
+    *** @param name    The name assigned to this ReverseGeocodeProvider
+    *** @param key     The optional authorization key (not used)
+    *** @param rtProps The properties associated with this ReverseGeocodeProvider
+    **/
+    public LocalGazetteer(String name, String key, RTProperties rtProps)
+    {
+        super(name, key, rtProps);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if locally resolved, false otherwise.
+    *** (ie. remote address resolution takes more than 20ms to complete)
+    *** @return true if locally resolved, false otherwise.
+    **/
+    @Override
+    public boolean isFastOperation()
+    {
+        // -- resolved locally, always fast
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the gazetteer file
+    **/
+    protected File getGazetteerFile()
+    {
+        RTProperties rtp = this.getProperties();
+        return rtp.getFile(PROP_gazetteerFile, null);
+    }
+
+    /**
+    *** Gets the maximum distance from a gazetteer place at which an address is returned
+    **/
+    protected double getMaximumDistanceKM()
+    {
+        RTProperties rtp = this.getProperties();
+        return rtp.getDouble(PROP_maxDistanceKM, DEFAULT_MAX_DISTANCE_KM);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Loads the gazetteer file (once) and returns the place tree
+    *** @return The place tree, or null if the gazetteer file could not be loaded
+    **/
+    protected PlaceTree getPlaceTree()
+    {
+        if (!this.loadAttempted) {
+            synchronized (this) {
+                if (!this.loadAttempted) { // retest
+                    this.placeTree     = this._loadPlaceTree();
+                    this.loadAttempted = true; // volatile, publishes 'placeTree'
+                }
+            }
+        }
+        return this.placeTree;
+    }
+
+    /**
+    *** Reads the gazetteer file into a new place tree
+    **/
+    private PlaceTree _loadPlaceTree()
+    {
+        RTProperties rtp = this.getProperties();
+
+        /* gazetteer file */
+        File gazFile = this.getGazetteerFile();
+        if (gazFile == null) {
+            Print.logError("["+this.getName()+"] Property '" + PROP_gazetteerFile + "' not specified");
+            return null;
+        } else
+        if (!gazFile.isFile()) {
+            Print.logError("["+this.getName()+"] Gazetteer file not found: " + gazFile);
+            return null;
+        }
+
+        /* filters */
+        long   minPop  = rtp.getLong(PROP_minPopulation, 0L);
+        String fClass  = rtp.getString(PROP_featureClasses, DEFAULT_FEATURE_CLASSES);
+
+        /* read */
+        long startMS = System.currentTimeMillis();
+        Map<String,String> intern = new HashMap<String,String>(); // shared admin/country/timezone strings
+        PlaceTree tree = new PlaceTree(65536);
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(gazFile), ENCODING_UTF8));
+            for (;;) {
+                String line = br.readLine();
+                if (line == null) { break; }
+                if (line.startsWith("#") || StringTools.isBlank(line)) { continue; }
+                String c[] = StringTools.split(line, '\t', false);
+                if (c.length < COL_MINIMUM) { continue; }
+                // -- feature class
+                if (!StringTools.isBlank(fClass) && !fClass.equals("*") && (fClass.indexOf(c[COL_featureClass]) < 0)) {
+                    continue;
+                }
+                // -- population
+                if ((minPop > 0L) && (c.length > COL_population) && (StringTools.parseLong(c[COL_population],0L) < minPop)) {
+                    continue;
+                }
+                // -- location
+                double lat = StringTools.parseDouble(c[COL_latitude] , 999.0);
+                double lon = StringTools.parseDouble(c[COL_longitude], 999.0);
+                if (!GeoPoint.isValid(lat,lon)) {
+                    continue;
+                }
+                // -- add
+                tree.add(
+                    (int)Math.round(lat * COORD_SCALE),
+                    (int)Math.round(lon * COORD_SCALE),
+                    c[COL_name],
+                    LocalGazetteer._intern(intern, (c.length > COL_admin1  )? c[COL_admin1  ] : null),
+                    LocalGazetteer._intern(intern, c[COL_countryCode]),
+                    LocalGazetteer._intern(intern, (c.length > COL_timezone)? c[COL_timezone] : null));
+            }
+        } catch (IOException ioe) {
+            Print.logException("["+this.getName()+"] Unable to read gazetteer file: " + gazFile, ioe);
+            return null;
+        } finally {
+            if (br != null) { try { br.close(); } catch (Throwable th) {/*ignore*/} }
+        }
+
+        /* build k-d tree */
+        tree.build();
+        long deltaMS = System.currentTimeMillis() - startMS;
+        Print.logInfo("["+this.getName()+"] Loaded gazetteer file: " + gazFile +
+            " [places=" + tree.size() + ", " + deltaMS + " ms]");
+        return tree;
+
+    }
+
+    private static String _intern(Map<String,String> intern, String s)
+    {
+        if (StringTools.isBlank(s)) {
+            return null;
+        } else {
+            String i = intern.get(s);
+            if (i == null) {
+                intern.put(s, s);
+                i = s;
+            }
+            return i;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns a ReverseGeocode instance for the specified GeoPoint
+    *** @param gp  The GeoPoint
+    *** @return The ReverseGeocode instance
+    **/
+    @Override
+    public ReverseGeocode getReverseGeocode(GeoPoint gp, String localeStr, boolean cache)
+    {
+
+        /* no GeoPoint? */
+        if (!GeoPoint.isValid(gp)) {
+            return null;
+        }
+
+        /* find nearest place */
+        PlaceTree tree = this.getPlaceTree();
+        if (tree == null) {
+            return null;
+        }
+        int n = tree.nearest(gp);
+        if (n < 0) {
+            return null;
+        }
+        GeoPoint placeGP = tree.getGeoPoint(n);
+        double   distKM  = gp.kilometersToPoint(placeGP);
+        if (distKM > this.getMaximumDistanceKM()) {
+            return null;
+        }
+
+        /* ReverseGeocode */
+        String city    = tree.getName(n);
+        String state   = tree.getAdmin1(n);
+        String country = tree.getCountryCode(n);
+        ReverseGeocode rg = new ReverseGeocode();
+        rg.setCity(city);
+        rg.setStateProvince(state);
+        rg.setCountryCode(country);
+        rg.setTimeZone(tree.getTimeZone(n));
+
+        /* full address */
+        StringBuffer addr = new StringBuffer();
+        if (this.getProperties().getBoolean(PROP_includeDistance,false) && (distKM >= 1.0)) {
+            addr.append(StringTools.format(distKM,"0.0")).append(" km ");
+            addr.append(GeoPoint.GetHeadingString(placeGP.headingToPoint(gp),null)).append(" of ");
+        }
+        addr.append(city);
+        if (!StringTools.isBlank(state) && !StringTools.isNumeric(state)) {
+            addr.append(", ").append(state);
+        }
+        if (!StringTools.isBlank(country)) {
+            addr.append(", ").append(country);
+        }
+        rg.setFullAddress(addr.toString());
+        return rg;
+
+    }
+
+    // ------------------------------------------------------------------------
+
+}
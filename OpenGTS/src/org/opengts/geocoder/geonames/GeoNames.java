@@ -1547,6 +1547,12 @@ public class GeoNames
         };
     }
 
+    /* return subdivision (hint ignored) */
+    public String getSubdivision(GeoPoint gp, String hint)
+    {
+        return this.getSubdivision(gp);
+    }
+
     /* return subdivision */
     public String getSubdivision(GeoPoint gp)
     {
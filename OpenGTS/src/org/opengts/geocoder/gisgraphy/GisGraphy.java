@@ -167,6 +167,12 @@ public class GisGraphy
         throw new UnsupportedOperationException("Not supported");
     }
 
+    /* return subdivision (hint ignored) */
+    public String getSubdivision(GeoPoint gp, String hint) 
+    {
+        return this.getSubdivision(gp);
+    }
+
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
@@ -174,6 +174,12 @@ public class GisGraphy // v4
         throw new UnsupportedOperationException("Not supported");
     }
 
+    /* return subdivision (hint ignored) */
+    public String getSubdivision(GeoPoint gp, String hint) 
+    {
+        return this.getSubdivision(gp);
+    }
+
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
@@ -111,6 +111,9 @@ public class Nominatim
     protected static final String PROP_cacheMaxEntryAgeMS       = "cacheMaxEntryAgeMS";
     protected static final String PROP_cacheTrimIntervalSec     = "cacheTrimIntervalSec";
     protected static final String PROP_cacheTrimIntervalMS      = "cacheTrimIntervalMS";
+    protected static final String PROP_cacheFile                = "cacheFile";              // File: persistent cache file
+    protected static final String PROP_cacheFileMaximumSize     = "cacheFileMaximumSize";   // Integer: persistent cache size
+    protected static final String PROP_cacheFileMaxEntryAgeSec  = "cacheFileMaxEntryAgeSec";// Long: Max age of persistent entry
 
     protected static       String HOST_OPENSTREETMAP            = "nominatim.openstreetmap.org";
     protected static       String HOST_MAPQUEST                 = "open.mapquestapi.com";
@@ -122,6 +125,9 @@ public class Nominatim
     public    static       int    CACHE_MAXIMUM_SIZE            = 0;            // "0" means disabled
     public    static       long   CACHE_MAXIMUM_AGE_MS          = 20L * 60000L; // 20 minutes?
     public    static       long   AUTO_TRIM_INTERVAL_MS         = 10L * 60000L; // 10 minutes?
+    public    static       File   CACHE_FILE                    = null;         // null means disabled
+    public    static       int    CACHE_FILE_MAXIMUM_SIZE       = ReverseGeocodeFileCache.DEFAULT_MAX_SIZE;
+    public    static       long   CACHE_FILE_MAXIMUM_AGE_MS     = ReverseGeocodeFileCache.DEFAULT_MAX_AGE_MS;
 
     // ------------------------------------------------------------------------
 
@@ -158,6 +164,11 @@ public class Nominatim
             long autoTrimIntervMS = rtProps.getLong(PROP_cacheTrimIntervalSec,0L) * 1000L;
             AUTO_TRIM_INTERVAL_MS = (autoTrimIntervMS > 0L)? autoTrimIntervMS :
                 rtProps.getLong(PROP_cacheTrimIntervalMS,AUTO_TRIM_INTERVAL_MS);
+            // -- persistent cache tier
+            CACHE_FILE = rtProps.getFile(PROP_cacheFile, CACHE_FILE);
+            CACHE_FILE_MAXIMUM_SIZE = rtProps.getInt(PROP_cacheFileMaximumSize, CACHE_FILE_MAXIMUM_SIZE);
+            long fileEntryAgeMS = rtProps.getLong(PROP_cacheFileMaxEntryAgeSec,0L) * 1000L;
+            CACHE_FILE_MAXIMUM_AGE_MS = (fileEntryAgeMS > 0L)? fileEntryAgeMS : CACHE_FILE_MAXIMUM_AGE_MS;
         }
 
         /* start ReverseGeocodeCache */
@@ -165,6 +176,10 @@ public class Nominatim
         if (CACHE_MAXIMUM_SIZE > 0L) {
             this.rgCache = new ReverseGeocodeCache(this.getName(),
                 CACHE_MAXIMUM_SIZE, CACHE_MAXIMUM_AGE_MS, AUTO_TRIM_INTERVAL_MS);
+            if (CACHE_FILE != null) {
+                this.rgCache.setPersistentCache(CACHE_FILE, 
+                    CACHE_FILE_MAXIMUM_SIZE, CACHE_FILE_MAXIMUM_AGE_MS);
+            }
         }
 
     }
@@ -0,0 +1,562 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Notes:
+// - This subdivision provider resolves the state/province of a GeoPoint locally
+//   from a GeoJSON FeatureCollection of first-level administrative boundaries
+//   (ie. the Natural Earth "admin_1_states_provinces" dataset converted to GeoJSON).
+// - Only subdivisions of the countries supported by "org.opengts.geocoder.country"
+//   (US, CA, MX) are loaded.  Subdivisions are returned in "US/CA" format.
+// - Boundaries are loaded into a uniform lat/lon grid index the first time a
+//   subdivision is requested.  The last subdivision of the vehicle (if provided
+//   by the caller, see "getSubdivision(GeoPoint,String)") is tested first, since
+//   consecutive events for a vehicle are usually in the same state/province.
+// - Sample "private.xml" entry:
+//      <ReverseGeocodeProvider name="subdivision" active="true"
+//          class="org.opengts.geocoder.subdiv.LocalSubdivision"
+//          key="">
+//          <Property key="boundaryFile">/usr/local/geodata/admin1_US_CA_MX.geojson</Property>
+//      </ReverseGeocodeProvider>
+// ----------------------------------------------------------------------------
+package org.opengts.geocoder.subdiv;
+
+import java.util.*;
+import java.io.*;
+
+import org.opengts.util.*;
+
+import org.opengts.geocoder.*;
+import org.opengts.geocoder.country.*;
+
+public class LocalSubdivision
+    extends ReverseGeocodeProviderAdapter
+    implements ReverseGeocodeProvider, SubdivisionProvider
+{
+
+    // ------------------------------------------------------------------------
+
+    protected static final String PROP_boundaryFile             = "boundaryFile";       // File: GeoJSON FeatureCollection
+    protected static final String PROP_codeProperty             = "codeProperty";       // String: "iso_3166_2"
+    protected static final String PROP_countryProperty          = "countryProperty";    // String: "iso_a2"
+    protected static final String PROP_nameProperty             = "nameProperty";       // String: "name"
+    protected static final String PROP_countries                = "countries";          // String: "US,CA,MX"
+    protected static final String PROP_gridSizeDegrees          = "gridSizeDegrees";    // Double: 1.0
+
+    // ------------------------------------------------------------------------
+
+    public    static       String DEFAULT_CODE_PROPERTY         = "iso_3166_2";
+    public    static       String DEFAULT_COUNTRY_PROPERTY      = "iso_a2";
+    public    static       String DEFAULT_NAME_PROPERTY         = "name";
+    public    static       String DEFAULT_COUNTRIES             = USState.COUNTRY_US + "," + Canada.COUNTRY_CA + "," + Mexico.COUNTRY_MX;
+    public    static       double DEFAULT_GRID_SIZE_DEGREES     = 1.0;
+
+    private   static final String GEOJSON_features              = "features";
+    private   static final String GEOJSON_properties            = "properties";
+    private   static final String GEOJSON_geometry              = "geometry";
+    private   static final String GEOJSON_type                  = "type";
+    private   static final String GEOJSON_coordinates           = "coordinates";
+    private   static final String GEOJSON_Polygon               = "Polygon";
+    private   static final String GEOJSON_MultiPolygon          = "MultiPolygon";
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** A single subdivision boundary.<br>
+    *** All rings (outer rings and holes, for all parts) are tested together using
+    *** the even-odd rule, which is correct for non-overlapping polygon parts.
+    *** Rings spanning more than 180 degrees of longitude are assumed to cross the 
+    *** antimeridian, and their negative longitudes are shifted by +360 degrees.
+    **/
+    private static class Region
+    {
+        private String    subdiv      = null;  // "US/CA"
+        private String    country     = null;  // "US"
+        private String    state       = null;  // "CA"
+        private String    name        = null;  // "California"
+        private double    ringLat[][] = null;
+        private double    ringLon[][] = null;
+        private boolean   ringShift[] = null;  // true if crossing the antimeridian
+        private double    ringBox[][] = null;  // [minLat, maxLat, minLon, maxLon]
+        public Region(String country, String state, String name, java.util.List<double[][]> rings) {
+            this.country   = country;
+            this.state     = state;
+            this.subdiv    = country + ReverseGeocode.SUBDIVISION_SEPARATOR + state;
+            this.name      = name;
+            this.ringLat   = new double[rings.size()][];
+            this.ringLon   = new double[rings.size()][];
+            this.ringShift = new boolean[rings.size()];
+            this.ringBox   = new double[rings.size()][];
+            for (int r = 0; r < rings.size(); r++) {
+                double ring[][] = rings.get(r); // [0]=lat[], [1]=lon[]
+                double lat[] = ring[0], lon[] = ring[1];
+                double box[] = Region._bounds(lat, lon);
+                if ((box[3] - box[2]) > 180.0) {
+                    // -- crosses the antimeridian
+                    for (int i = 0; i < lon.length; i++) {
+                        if (lon[i] < 0.0) { lon[i] += 360.0; }
+                    }
+                    box = Region._bounds(lat, lon);
+                    this.ringShift[r] = true;
+                }
+                this.ringLat[r] = lat;
+                this.ringLon[r] = lon;
+                this.ringBox[r] = box;
+            }
+        }
+        private static double[] _bounds(double lat[], double lon[]) {
+            double box[] = new double[] { 90.0, -90.0, 360.0, -180.0 };
+            for (int i = 0; i < lat.length; i++) {
+                if (lat[i] < box[0]) { box[0] = lat[i]; }
+                if (lat[i] > box[1]) { box[1] = lat[i]; }
+                if (lon[i] < box[2]) { box[2] = lon[i]; }
+                if (lon[i] > box[3]) { box[3] = lon[i]; }
+            }
+            return box;
+        }
+        public String getSubdivision() {
+            return this.subdiv;
+        }
+        public String getCountryCode() {
+            return this.country;
+        }
+        public String getStateCode() {
+            return this.state;
+        }
+        public String getName() {
+            return this.name;
+        }
+        public int getRingCount() {
+            return this.ringBox.length;
+        }
+        public double[] getRingBounds(int r) {
+            return this.ringBox[r];
+        }
+        public boolean containsPoint(double lat, double lon) {
+            // -- the point must be within the bounds of at least one (outer) ring
+            boolean inBox = false;
+            for (int r = 0; !inBox && (r < this.ringBox.length); r++) {
+                double box[] = this.ringBox[r];
+                double rl = (this.ringShift[r] && (lon < 0.0))? (lon + 360.0) : lon;
+                inBox = (lat >= box[0]) && (lat <= box[1]) && (rl >= box[2]) && (rl <= box[3]);
+            }
+            if (!inBox) {
+                return false;
+            }
+            boolean inside = false;
+            for (int r = 0; r < this.ringLat.length; r++) {
+                double rLat[] = this.ringLat[r];
+                double rLon[] = this.ringLon[r];
+                double rl = (this.ringShift[r] && (lon < 0.0))? (lon + 360.0) : lon;
+                for (int i = 0, j = rLat.length - 1; i < rLat.length; j = i++) {
+                    if (((rLat[i] > lat) != (rLat[j] > lat)) &&
+                        (rl < (rLon[j] - rLon[i]) * (lat - rLat[i]) / (rLat[j] - rLat[i]) + rLon[i])) {
+                        inside = !inside;
+                    }
+                }
+            }
+            return inside;
+        }
+    }
+
+    /**
+    *** Uniform lat/lon grid index of subdivision boundaries.<br>
+    *** Each grid cell contains the list of regions having a ring whose bounding box 
+    *** intersects the cell.  Longitude cells past +180 (shifted antimeridian rings)
+    *** wrap around to the corresponding cells past -180.
+    **/
+    private static class RegionIndex
+    {
+        private Region              regions[]   = null;
+        private Map<String,Region>  bySubdiv    = new HashMap<String,Region>();
+        private double              cellDeg     = DEFAULT_GRID_SIZE_DEGREES;
+        private int                 lonCells    = 0;
+        private int                 lonWrap     = 0;
+        private Map<Integer,Region[]> grid      = new HashMap<Integer,Region[]>();
+        public RegionIndex(java.util.List<Region> regionList, double cellDeg) {
+            this.regions  = regionList.toArray(new Region[regionList.size()]);
+            this.cellDeg  = (cellDeg > 0.0)? cellDeg : DEFAULT_GRID_SIZE_DEGREES;
+            this.lonWrap  = (int)Math.ceil(360.0 / this.cellDeg);
+            this.lonCells = this.lonWrap + 1;
+            Map<Integer,java.util.List<Region>> cells = new HashMap<Integer,java.util.List<Region>>();
+            for (Region r : this.regions) {
+                this.bySubdiv.put(r.getSubdivision(), r);
+                for (int g = 0; g < r.getRingCount(); g++) {
+                    double box[] = r.getRingBounds(g);
+                    int latLo = this._latCell(box[0]), latHi = this._latCell(box[1]);
+                    int lonLo = this._lonCell(box[2]), lonHi = this._lonCell(box[3]);
+                    for (int a = latLo; a <= latHi; a++) {
+                        for (int o = lonLo; o <= lonHi; o++) {
+                            if (o <= this.lonWrap) {
+                                this._addCell(cells, a, o, r);
+                            }
+                            if (o >= this.lonWrap) {
+                                this._addCell(cells, a, o - this.lonWrap, r);
+                            }
+                        }
+                    }
+                }
+            }
+            for (Integer key : cells.keySet()) {
+                java.util.List<Region> list = cells.get(key);
+                this.grid.put(key, list.toArray(new Region[list.size()]));
+            }
+        }
+        private void _addCell(Map<Integer,java.util.List<Region>> cells, int a, int o, Region r) {
+            Integer key = new Integer(a * this.lonCells + o);
+            java.util.List<Region> list = cells.get(key);
+            if (list == null) {
+                list = new ArrayList<Region>(2);
+                cells.put(key, list);
+            }
+            if (!list.contains(r)) {
+                list.add(r);
+            }
+        }
+        private int _latCell(double lat) {
+            return (int)Math.floor((lat +  90.0) / this.cellDeg);
+        }
+        private int _lonCell(double lon) {
+            return (int)Math.floor((lon + 180.0) / this.cellDeg);
+        }
+        public int size() {
+            return this.regions.length;
+        }
+        public int getCellCount() {
+            return this.grid.size();
+        }
+        public Region getRegion(String subdiv) {
+            return (subdiv != null)? this.bySubdiv.get(subdiv) : null;
+        }
+        public Region findRegion(double lat, double lon, Region hint) {
+            if ((hint != null) && hint.containsPoint(lat,lon)) {
+                return hint;
+            }
+            Region cell[] = this.grid.get(new Integer(this._latCell(lat) * this.lonCells + this._lonCell(lon)));
+            if (cell != null) {
+                for (Region r : cell) {
+                    if ((r != hint) && r.containsPoint(lat,lon)) {
+                        return r;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private RegionIndex             regionIndex     = null;
+    private volatile boolean        loadAttempted   = false; // assigned after 'regionIndex'
+
+    /**
+    *** Constructor
+    *** @param name    The name assigned to this ReverseGeocodeProvider
+    *** @param key     The optional authorization key (not used)
+    *** @param rtProps The properties associated with this ReverseGeocodeProvider
+    **/
+    public LocalSubdivision(String name, String key, RTProperties rtProps)
+    {
+        super(name, key, rtProps);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if locally resolved, false otherwise.
+    *** (ie. remote address resolution takes more than 20ms to complete)
+    *** @return true if locally resolved, false otherwise.
+    **/
+    @Override
+    public boolean isFastOperation()
+    {
+        // -- resolved locally, always fast
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the boundary GeoJSON file
+    **/
+    protected File getBoundaryFile()
+    {
+        RTProperties rtp = this.getProperties();
+        return rtp.getFile(PROP_boundaryFile, null);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Loads the boundary file (once) and returns the region index
+    *** @return The region index, or null if the boundary file could not be loaded
+    **/
+    protected RegionIndex getRegionIndex()
+    {
+        if (!this.loadAttempted) {
+            synchronized (this) {
+                if (!this.loadAttempted) { // retest
+                    this.regionIndex   = this._loadRegionIndex();
+                    this.loadAttempted = true; // volatile, publishes 'regionIndex'
+                }
+            }
+        }
+        return this.regionIndex;
+    }
+
+    /**
+    *** Reads the boundary file into a new region index
+    **/
+    private RegionIndex _loadRegionIndex()
+    {
+        RTProperties rtp = this.getProperties();
+
+        /* boundary file */
+        File bndFile = this.getBoundaryFile();
+        if (bndFile == null) {
+            Print.logError("["+this.getName()+"] Property '" + PROP_boundaryFile + "' not specified");
+            return null;
+        } else
+        if (!bndFile.isFile()) {
+            Print.logError("["+this.getName()+"] Boundary file not found: " + bndFile);
+            return null;
+        }
+
+        /* feature properties */
+        String codeProp    = rtp.getString(PROP_codeProperty   , DEFAULT_CODE_PROPERTY);
+        String countryProp = rtp.getString(PROP_countryProperty, DEFAULT_COUNTRY_PROPERTY);
+        String nameProp    = rtp.getString(PROP_nameProperty   , DEFAULT_NAME_PROPERTY);
+        Set<String> countries = new HashSet<String>(
+            ListTools.toList(StringTools.split(rtp.getString(PROP_countries,DEFAULT_COUNTRIES).toUpperCase(),',')));
+
+        /* parse */
+        long startMS = System.currentTimeMillis();
+        JSON._Array features;
+        try {
+            JSON json = new JSON(bndFile);
+            JSON._Object fc = json.hasObject()? json.getObject() : null;
+            features = (fc != null)? fc.getArrayForName(GEOJSON_features, null) : null;
+        } catch (Throwable th) { // JSONParsingException, IOException
+            Print.logException("["+this.getName()+"] Unable to read boundary file: " + bndFile, th);
+            return null;
+        }
+        if (features == null) {
+            Print.logError("["+this.getName()+"] Boundary file is not a GeoJSON FeatureCollection: " + bndFile);
+            return null;
+        }
+
+        /* regions */
+        java.util.List<Region> regionList = new Vector<Region>();
+        for (int f = 0; f < features.size(); f++) {
+            JSON._Object feature = features.getObjectValueAt(f, null);
+            if (feature == null) { continue; }
+            JSON._Object props = feature.getObjectForName(GEOJSON_properties, null);
+            JSON._Object geom  = feature.getObjectForName(GEOJSON_geometry  , null);
+            if ((props == null) || (geom == null)) { continue; }
+            // -- subdivision
+            String name = props.getStringForName(nameProp, null);
+            String sd[] = LocalSubdivision._normalizeSubdivision(
+                props.getStringForName(codeProp   , null),
+                props.getStringForName(countryProp, null),
+                name);
+            if ((sd == null) || !countries.contains(sd[0])) {
+                continue;
+            }
+            // -- rings
+            java.util.List<double[][]> rings = new Vector<double[][]>();
+            String      type   = geom.getStringForName(GEOJSON_type, "");
+            JSON._Array coords = geom.getArrayForName(GEOJSON_coordinates, null);
+            int         skipped = 0;
+            if (coords == null) {
+                continue;
+            } else
+            if (type.equalsIgnoreCase(GEOJSON_Polygon)) {
+                skipped += LocalSubdivision._addRings(rings, coords);
+            } else
+            if (type.equalsIgnoreCase(GEOJSON_MultiPolygon)) {
+                for (int p = 0; p < coords.size(); p++) {
+                    skipped += LocalSubdivision._addRings(rings, coords.getArrayValueAt(p,null));
+                }
+            }
+            if (skipped > 0) {
+                Print.logWarn("["+this.getName()+"] Skipped " + skipped + " invalid ring(s) for " + sd[0] + "/" + sd[1]);
+            }
+            if (rings.isEmpty()) {
+                continue;
+            }
+            String stName = StringTools.isBlank(name)? sd[1] : name;
+            regionList.add(new Region(sd[0], sd[1], stName, rings));
+        }
+
+        /* build index */
+        RegionIndex index = new RegionIndex(regionList, rtp.getDouble(PROP_gridSizeDegrees,DEFAULT_GRID_SIZE_DEGREES));
+        long deltaMS = System.currentTimeMillis() - startMS;
+        Print.logInfo("["+this.getName()+"] Loaded boundary file: " + bndFile +
+            " [regions=" + index.size() + ", cells=" + index.getCellCount() + ", " + deltaMS + " ms]");
+        return index;
+
+    }
+
+    /**
+    *** Adds the rings of a GeoJSON Polygon coordinate array to the specified list.
+    *** Each ring is returned as a 2-element array containing the latitude and longitude arrays.
+    *** Rings containing an invalid point are skipped.
+    *** @return The number of rings skipped
+    **/
+    private static int _addRings(java.util.List<double[][]> rings, JSON._Array polygon)
+    {
+        if (polygon == null) {
+            return 0;
+        }
+        int skipped = 0;
+        for (int r = 0; r < polygon.size(); r++) {
+            JSON._Array ring = polygon.getArrayValueAt(r, null);
+            if ((ring == null) || (ring.size() < 3)) { continue; }
+            double  lat[] = new double[ring.size()];
+            double  lon[] = new double[ring.size()];
+            boolean valid = true;
+            for (int i = 0; valid && (i < lat.length); i++) {
+                JSON._Array pt = ring.getArrayValueAt(i, null); // [lon,lat]
+                if ((pt == null) || (pt.size() < 2)) {
+                    valid = false;
+                } else {
+                    lon[i] = pt.getDoubleValueAt(0, Double.NaN);
+                    lat[i] = pt.getDoubleValueAt(1, Double.NaN);
+                    // -- (GeoPoint.isValid excludes +/-180, which is used at antimeridian splits)
+                    valid  = (Math.abs(lat[i]) <= 90.0) && (Math.abs(lon[i]) <= 180.0); // false if NaN
+                }
+            }
+            if (valid) {
+                rings.add(new double[][] { lat, lon });
+            } else {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    /**
+    *** Normalizes the specified feature code/country/name into a [country, state] pair
+    *** @param code    The subdivision code (ie. "US-CA", "US/CA", "CA")
+    *** @param country The country code (used if 'code' does not include the country)
+    *** @param name    The subdivision name (used if 'code' is not a known state code)
+    *** @return The [country, state] pair, or null if not a known subdivision
+    **/
+    private static String[] _normalizeSubdivision(String code, String country, String name)
+    {
+        String c = StringTools.trim(code).toUpperCase();
+        String s = c;
+        int p = c.indexOf('-');
+        if (p < 0) { p = c.indexOf(ReverseGeocode.SUBDIVISION_SEPARATOR); }
+        if (p > 0) {
+            c = c.substring(0,p);
+            s = s.substring(p+1);
+        } else {
+            c = StringTools.trim(country).toUpperCase();
+        }
+        String st = null;
+        if (c.equals(USState.COUNTRY_US)) {
+            st = USState.getCode(s, null);
+            if (st == null) { st = USState.getCode(name, null); }
+        } else
+        if (c.equals(Canada.COUNTRY_CA)) {
+            st = Canada.getCode(s, null);
+            if (st == null) { st = Canada.getCode(name, null); }
+        } else
+        if (c.equals(Mexico.COUNTRY_MX)) {
+            st = Mexico.getCode(s, null);
+            if (st == null) { st = Mexico.getCode(name, null); }
+        }
+        return !StringTools.isBlank(st)? new String[] { c, st } : null;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Finds the region containing the specified GeoPoint
+    *** @param gp    The GeoPoint
+    *** @param hint  The region tested first (may be null)
+    *** @return The region, or null if not found
+    **/
+    private Region _findRegion(GeoPoint gp, Region hint)
+    {
+        if (!GeoPoint.isValid(gp)) {
+            return null;
+        }
+        RegionIndex index = this.getRegionIndex();
+        if (index == null) {
+            return null;
+        }
+        return index.findRegion(gp.getLatitude(), gp.getLongitude(), hint);
+    }
+
+    /**
+    *** Returns the subdivision (ie. "US/CA") containing the specified GeoPoint
+    *** @param gp  The GeoPoint
+    *** @return The subdivision, or null if not found
+    **/
+    public String getSubdivision(GeoPoint gp)
+        throws SubdivisionException
+    {
+        Region r = this._findRegion(gp, null);
+        return (r != null)? r.getSubdivision() : null;
+    }
+
+    /**
+    *** Returns the subdivision (ie. "US/CA") containing the specified GeoPoint
+    *** @param gp    The GeoPoint
+    *** @param hint  The subdivision expected to contain the GeoPoint, typically
+    ***              the last known subdivision of the vehicle (may be null)
+    *** @return The subdivision, or null if not found
+    **/
+    public String getSubdivision(GeoPoint gp, String hint)
+        throws SubdivisionException
+    {
+        RegionIndex index = this.getRegionIndex();
+        Region h = (index != null)? index.getRegion(hint) : null;
+        Region r = this._findRegion(gp, h);
+        return (r != null)? r.getSubdivision() : null;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns a ReverseGeocode instance for the specified GeoPoint.<br>
+    *** Only the state/province, country, and subdivision are resolved.
+    *** @param gp  The GeoPoint
+    *** @return The ReverseGeocode instance
+    **/
+    @Override
+    public ReverseGeocode getReverseGeocode(GeoPoint gp, String localeStr, boolean cache)
+    {
+        Region r = this._findRegion(gp, null);
+        if (r == null) {
+            return null;
+        }
+        ReverseGeocode rg = new ReverseGeocode();
+        rg.setStateProvince(r.getStateCode());
+        rg.setCountryCode(r.getCountryCode());
+        rg.setSubdivision(r.getSubdivision());
+        rg.setFullAddress(r.getName() + ", " + r.getCountryCode());
+        return rg;
+    }
+
+    // ------------------------------------------------------------------------
+
+}
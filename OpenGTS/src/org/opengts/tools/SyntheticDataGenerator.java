@@ -0,0 +1,411 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Generates a synthetic Account, with Devices, Geozones, and realistic EventData
+//  histories (ignition on/off, trips between geozones, stops, idle periods), for
+//  measuring report performance (see "org.opengts.war.report.ReportBenchmark").
+//  The generated data is reproducible for a given "-seed".
+//  Typically run against an embedded Derby database, ie:
+//    -db.sql.provider=derby -db.sql.url=jdbc:derby:/tmp/gtsbench;create=true
+//    -db.sql.url.db=jdbc:derby:/tmp/gtsbench;create=true -createTables
+//  (the Derby embedded driver "derby.jar" must be in the classpath).
+//  Existing devices which already have events are skipped (their EventData keys
+//  would collide), so a fresh database (or new "-account") is required to
+//  regenerate a complete, reproducible data set.
+// ----------------------------------------------------------------------------
+package org.opengts.tools;
+
+import java.lang.*;
+import java.util.*;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+import org.opengts.db.*;
+import org.opengts.db.tables.*;
+
+public class SyntheticDataGenerator
+{
+
+    // ------------------------------------------------------------------------
+
+    private static final String DATA_SOURCE             = "synthetic";
+
+    private static final double MIN_SPEED_KPH           = 25.0;
+    private static final double MAX_SPEED_KPH           = 95.0;
+    private static final double IDLE_PROBABILITY        = 0.02;  // per in-motion sample
+    private static final double PARK_PROBABILITY        = 0.40;  // ignition off at stop
+    private static final long   DORMANT_INTERVAL_SEC    = 30L * 60L;
+
+    // ------------------------------------------------------------------------
+
+    private Account             account         = null;
+    private Random              random          = null;
+    private TimeZone            timeZone        = null;
+    private Geozone             geozones[]      = null;
+    private int                 sampleSec       = 60;
+    private boolean             rawInsert       = false;
+
+    private long                eventCount      = 0L;
+
+    /* current device state */
+    private Device              device          = null;
+    private GeoPoint            position        = null;
+    private double              heading         = 0.0;
+    private double              odometerKM      = 0.0;
+    private long                lastTimestamp   = 0L;
+
+    /**
+    *** Constructor
+    *** @param account    The Account in which the data is generated
+    *** @param seed       The random seed
+    *** @param sampleSec  The number of seconds between in-motion events
+    *** @param rawInsert  True to insert EventData records directly (bypasses "Device.insertEventData")
+    **/
+    public SyntheticDataGenerator(Account account, long seed, int sampleSec, boolean rawInsert)
+    {
+        this.account   = account;
+        this.random    = new Random(seed);
+        this.timeZone  = DateTime.getTimeZone(account.getTimeZone());
+        this.sampleSec = Math.max(sampleSec, 5);
+        this.rawInsert = rawInsert;
+    }
+
+    /**
+    *** Returns the number of EventData records generated
+    **/
+    public long getEventCount()
+    {
+        return this.eventCount;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Creates the Account Geozones (point-radius), randomly placed around the specified center
+    *** @param count    The number of Geozones
+    *** @param center   The center location
+    *** @param radiusKM The radius (kilometers) within which the Geozones are placed
+    **/
+    public void createGeozones(int count, GeoPoint center, double radiusKM)
+        throws DBException
+    {
+        this.geozones = new Geozone[Math.max(count,2)];
+        for (int i = 0; i < this.geozones.length; i++) {
+            String zoneID = "zone" + StringTools.padLeft(String.valueOf(i+1),'0',3);
+            double distM  = Math.sqrt(this.random.nextDouble()) * radiusKM * 1000.0;
+            GeoPoint gp   = center.getHeadingPoint(distM, this.random.nextDouble() * 360.0);
+            Geozone zone  = Geozone.getGeozone(this.account, zoneID, 0, true);
+            zone.setDescription("Synthetic Zone " + (i+1));
+            zone.setZoneType(Geozone.GeozoneType.POINT_RADIUS);
+            zone.setRadius(150 + this.random.nextInt(350));
+            zone.setGeoPoints(new GeoPoint[] { gp });
+            zone.setReverseGeocode(true);
+            zone.setArrivalZone(true);
+            zone.setDepartureZone(true);
+            zone.save();
+            this.geozones[i] = zone;
+        }
+    }
+
+    /* returns the center location of the specified Geozone */
+    private static GeoPoint _getZonePoint(Geozone zone)
+    {
+        return new GeoPoint(zone.getLatitude1(), zone.getLongitude1());
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* insert an event at the current device position */
+    private void _insertEvent(long ts, int statusCode, double speedKPH, String zoneID)
+        throws DBException
+    {
+        if (ts <= this.lastTimestamp) {
+            ts = this.lastTimestamp + 1L; // keep event keys unique
+        }
+        this.lastTimestamp = ts;
+        EventData.Key evKey = new EventData.Key(this.account.getAccountID(), this.device.getDeviceID(), ts, statusCode);
+        EventData ev = evKey.getDBRecord();
+        ev.setDataSource(DATA_SOURCE);
+        ev.setGeoPoint(this.position);
+        ev.setSpeedKPH(speedKPH);
+        ev.setHeading(this.heading);
+        ev.setAltitude(1500.0 + (this.random.nextDouble() * 200.0));
+        ev.setSatelliteCount(6 + this.random.nextInt(7));
+        ev.setOdometerKM(this.odometerKM);
+        if (zoneID != null) {
+            ev.setGeozoneID(zoneID);
+        }
+        if (this.rawInsert) {
+            ev.insert();
+        } else {
+            this.device.insertEventData_throw(ev);
+        }
+        this.eventCount++;
+    }
+
+    /* drive from the current position to the specified destination, returns the arrival time */
+    private long _drive(long ts, GeoPoint dest, long dayEnd)
+        throws DBException
+    {
+        this._insertEvent(ts, StatusCodes.STATUS_MOTION_START, MIN_SPEED_KPH, null);
+        double speedKPH = MIN_SPEED_KPH + (this.random.nextDouble() * (MAX_SPEED_KPH - MIN_SPEED_KPH));
+        for (;;) {
+            ts += this.sampleSec;
+            if (ts >= dayEnd) {
+                break;
+            }
+
+            /* idle (stopped in traffic, engine running) */
+            if (this.random.nextDouble() < IDLE_PROBABILITY) {
+                this._insertEvent(ts, StatusCodes.STATUS_MOTION_IDLE, 0.0, null);
+                ts += 120L + this.random.nextInt(600);
+                this._insertEvent(ts, StatusCodes.STATUS_MOTION_IDLE_END, 0.0, null);
+                continue;
+            }
+
+            /* move toward destination */
+            speedKPH = Math.max(MIN_SPEED_KPH, Math.min(MAX_SPEED_KPH, speedKPH + ((this.random.nextDouble() - 0.5) * 20.0)));
+            double stepM = speedKPH * 1000.0 * (double)this.sampleSec / 3600.0;
+            double distM = this.position.metersToPoint(dest);
+            if (distM <= stepM) {
+                this.odometerKM += distM / 1000.0;
+                this.position = dest;
+                break;
+            }
+            double h = this.position.headingToPoint(dest) + ((this.random.nextDouble() - 0.5) * 30.0);
+            this.heading = (h + 360.0) % 360.0;
+            this.position = this.position.getHeadingPoint(stepM, this.heading);
+            this.odometerKM += stepM / 1000.0;
+            this._insertEvent(ts, StatusCodes.STATUS_MOTION_IN_MOTION, speedKPH, null);
+
+        }
+        this._insertEvent(ts, StatusCodes.STATUS_MOTION_STOP, 0.0, null);
+        return ts;
+    }
+
+    /**
+    *** Generates the EventData history for the specified device over the specified days
+    *** @param dev       The Device
+    *** @param homeNdx   The index of the Geozone where the device starts each day
+    *** @param firstDay  The first day
+    *** @param days      The number of days
+    **/
+    public void generateDevice(Device dev, int homeNdx, DateTime firstDay, int days)
+        throws DBException
+    {
+        this.device        = dev;
+        this.odometerKM    = 1000.0 + this.random.nextInt(50000);
+        this.lastTimestamp = 0L;
+        Geozone home = this.geozones[homeNdx % this.geozones.length];
+        for (int d = 0; d < days; d++) {
+            DateTime day   = new DateTime(firstDay.getTimeSec() + ((long)d * DateTime.DaySeconds(1)), this.timeZone);
+            long dayStart  = day.getDayStart(this.timeZone);
+            long dayEnd    = day.getDayEnd(this.timeZone) - 3600L;
+            long ts        = dayStart + (6L * 3600L) + this.random.nextInt(3 * 3600);
+            Geozone zone   = home;
+            this.position  = _getZonePoint(zone);
+
+            /* start of day */
+            this._insertEvent(ts, StatusCodes.STATUS_IGNITION_ON, 0.0, null);
+            int trips = 2 + this.random.nextInt(5);
+            for (int t = 0; (t <= trips) && (ts < dayEnd); t++) {
+
+                /* destination (last trip returns home) */
+                Geozone dest = home;
+                if (t < trips) {
+                    do {
+                        dest = this.geozones[this.random.nextInt(this.geozones.length)];
+                    } while (dest == zone);
+                } else
+                if (zone == home) {
+                    break;
+                }
+
+                /* trip */
+                this._insertEvent(ts + 5L, StatusCodes.STATUS_GEOFENCE_DEPART, 0.0, zone.getGeozoneID());
+                ts = this._drive(ts + 10L, _getZonePoint(dest), dayEnd);
+                zone = dest;
+                this._insertEvent(ts + 5L, StatusCodes.STATUS_GEOFENCE_ARRIVE, 0.0, zone.getGeozoneID());
+                if ((t == trips) || (ts >= dayEnd)) {
+                    break;
+                }
+
+                /* stop (ignition off/on, periodic location while parked) */
+                long stopEnd = ts + (15L * 60L) + this.random.nextInt(105 * 60);
+                boolean park = (this.random.nextDouble() < PARK_PROBABILITY);
+                if (park) {
+                    this._insertEvent(ts + 30L, StatusCodes.STATUS_IGNITION_OFF, 0.0, null);
+                }
+                for (long dt = ts + DORMANT_INTERVAL_SEC; dt < stopEnd; dt += DORMANT_INTERVAL_SEC) {
+                    this._insertEvent(dt, StatusCodes.STATUS_MOTION_DORMANT, 0.0, null);
+                }
+                ts = stopEnd;
+                if (park) {
+                    this._insertEvent(ts, StatusCodes.STATUS_IGNITION_ON, 0.0, null);
+                }
+                ts += 60L;
+
+            }
+
+            /* end of day */
+            this._insertEvent(ts + 60L, StatusCodes.STATUS_IGNITION_OFF, 0.0, null);
+
+        }
+        dev.setLastOdometerKM(this.odometerKM);
+        dev.update(Device.FLD_lastOdometerKM);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* create the required tables, if not already present */
+    private static void _createTables()
+        throws DBException
+    {
+        OrderedMap<String,DBFactory<? extends DBRecord<?>>> factMap = DBAdmin.getTableFactoryMap();
+        for (DBFactory<? extends DBRecord<?>> fact : factMap.values()) {
+            if (!fact.tableExists()) {
+                Print.logInfo("Creating table: " + fact.getUntranslatedTableName());
+                fact.createTable();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static final String ARG_ACCOUNT[]       = new String[] { "account"     , "a"   };
+    private static final String ARG_DEVICES[]       = new String[] { "devices"     , "dc"  };
+    private static final String ARG_DAYS[]          = new String[] { "days"                };
+    private static final String ARG_START[]         = new String[] { "start"       , "fr"  };
+    private static final String ARG_GEOZONES[]      = new String[] { "geozones"    , "zc"  };
+    private static final String ARG_CENTER[]        = new String[] { "center"      , "gp"  };
+    private static final String ARG_RADIUS[]        = new String[] { "radiusKM"    , "rad" };
+    private static final String ARG_INTERVAL[]      = new String[] { "interval"            };
+    private static final String ARG_SEED[]          = new String[] { "seed"                };
+    private static final String ARG_TIMEZONE[]      = new String[] { "tz"                  };
+    private static final String ARG_RAW_INSERT[]    = new String[] { "rawInsert"           };
+    private static final String ARG_CREATE_TABLES[] = new String[] { "createTables"        };
+
+    private static void usage()
+    {
+        Print.logInfo("Usage:");
+        Print.logInfo("  java ... " + SyntheticDataGenerator.class.getName() + " {options}");
+        Print.logInfo("Options:");
+        Print.logInfo("  -account=<id>       Account to create [default 'bench']");
+        Print.logInfo("  -devices=<count>    Number of devices [default 10]");
+        Print.logInfo("  -days=<count>       Number of days of history [default 7]");
+        Print.logInfo("  -start=<yyyy/mm/dd> First day [default 'days' before today]");
+        Print.logInfo("  -geozones=<count>   Number of geozones [default 20]");
+        Print.logInfo("  -center=<lat>/<lon> Center of generated locations");
+        Print.logInfo("  -radiusKM=<km>      Radius of generated locations [default 25]");
+        Print.logInfo("  -interval=<sec>     Seconds between in-motion events [default 60]");
+        Print.logInfo("  -seed=<seed>        Random seed [default 1]");
+        Print.logInfo("  -tz=<timezone>      Account time zone [default 'US/Mountain']");
+        Print.logInfo("  -rawInsert          Insert EventData directly (skip Device insert processing)");
+        Print.logInfo("  -createTables       Create missing tables (ie. new embedded database)");
+        System.exit(1);
+    }
+
+    public static void main(String argv[])
+    {
+        DBConfig.cmdLineInit(argv,true);  // main
+        String   accountID = RTConfig.getString(ARG_ACCOUNT, "bench");
+        int      devCount  = RTConfig.getInt(ARG_DEVICES, 10);
+        int      days      = RTConfig.getInt(ARG_DAYS, 7);
+        int      zoneCount = RTConfig.getInt(ARG_GEOZONES, 20);
+        GeoPoint center    = new GeoPoint(RTConfig.getString(ARG_CENTER, "39.7392/-104.9903"));
+        double   radiusKM  = RTConfig.getDouble(ARG_RADIUS, 25.0);
+        int      interval  = RTConfig.getInt(ARG_INTERVAL, 60);
+        long     seed      = RTConfig.getLong(ARG_SEED, 1L);
+        String   tzStr     = RTConfig.getString(ARG_TIMEZONE, "US/Mountain");
+        boolean  rawInsert = RTConfig.getBoolean(ARG_RAW_INSERT, false);
+        if ((devCount <= 0) || (days <= 0) || !center.isValid()) {
+            usage();
+        }
+
+        /* first day */
+        TimeZone tz = DateTime.getTimeZone(tzStr);
+        DateTime firstDay;
+        if (RTConfig.hasProperty(ARG_START)) {
+            try {
+                firstDay = DateTime.parseArgumentDate(RTConfig.getString(ARG_START,""), tz);
+            } catch (DateTime.DateParseException dpe) {
+                firstDay = null;
+            }
+            if (firstDay == null) {
+                Print.logError("Invalid start date: " + RTConfig.getString(ARG_START,""));
+                usage();
+                return;
+            }
+        } else {
+            DateTime now = new DateTime(tz);
+            firstDay = new DateTime(now.getDayStart(tz) - ((long)days * DateTime.DaySeconds(1)), tz);
+        }
+
+        /* generate */
+        try {
+            if (RTConfig.getBoolean(ARG_CREATE_TABLES,false)) {
+                _createTables();
+            }
+
+            /* account */
+            Account account;
+            if (Account.exists(accountID)) {
+                account = Account.getAccount(accountID);
+            } else {
+                account = Account.getAccount(accountID, true);
+                account.setDescription("Synthetic Benchmark Account");
+                account.setTimeZone(tzStr);
+                account.setIsActive(true);
+                account.save();
+            }
+
+            /* geozones/devices */
+            long startMS = System.currentTimeMillis();
+            SyntheticDataGenerator gen = new SyntheticDataGenerator(account, seed, interval, rawInsert);
+            gen.createGeozones(zoneCount, center, radiusKM);
+            int genCount = 0;
+            for (int i = 0; i < devCount; i++) {
+                String devID = "dev" + StringTools.padLeft(String.valueOf(i+1),'0',4);
+                Device dev;
+                if (Device.exists(accountID, devID)) {
+                    dev = Device.getDevice(account, devID);
+                    if ((dev == null) || (dev.getLastEvent(false) != null)) {
+                        // -- already generated (inserting again would duplicate EventData keys)
+                        Print.logWarn("Skipping existing device with events: " + devID + " (use a fresh database)");
+                        continue;
+                    }
+                } else {
+                    dev = Device.createNewDevice(account, devID, null);
+                }
+                gen.generateDevice(dev, i, firstDay, days);
+                genCount++;
+                Print.logInfo("Generated device " + devID + " (" + gen.getEventCount() + " events total)");
+            }
+            long deltaMS = System.currentTimeMillis() - startMS;
+            Print.logInfo("Generated " + genCount + " devices, " + zoneCount + " geozones, " +
+                gen.getEventCount() + " events in " + deltaMS + " ms");
+        } catch (DBException dbe) {
+            Print.logException("Error generating synthetic data", dbe);
+            System.exit(1);
+        }
+        System.exit(0);
+
+    }
+
+}
@@ -0,0 +1,215 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Delta encoding of coordinates and integer value streams, using the "Encoded
+//  Polyline" algorithm (as used by Google Maps):
+//  - Each value is the (scaled, rounded) difference from the previous value.
+//  - The signed difference is shifted left one bit (and inverted if negative),
+//    then written in 5-bit chunks (least significant first), with 0x20 set on
+//    all but the last chunk, and 63 added to each chunk to produce a printable
+//    ASCII character.
+//  Coordinates are encoded as interleaved latitude/longitude pairs.  Value
+//  streams (timestamps, speeds, etc) are encoded as a single series.
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+public class EncodedPolyline
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final int    DEFAULT_PRECISION       = 5; // Google Maps (1e5)
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Appends the encoded representation of the specified signed value
+    *** @param sb  The StringBuffer to which the value is appended
+    *** @param v   The signed value
+    *** @return The StringBuffer
+    **/
+    public static StringBuffer EncodeSignedValue(StringBuffer sb, long v)
+    {
+        long u = (v < 0L)? ~(v << 1) : (v << 1);
+        while (u >= 0x20L) {
+            sb.append((char)((0x20L | (u & 0x1FL)) + 63L));
+            u >>>= 5;
+        }
+        sb.append((char)(u + 63L));
+        return sb;
+    }
+
+    /**
+    *** Decodes a series of encoded signed values
+    *** @param enc  The encoded string
+    *** @return The (delta) values
+    **/
+    public static long[] DecodeSignedValues(String enc)
+    {
+        if (StringTools.isBlank(enc)) {
+            return new long[0];
+        }
+        long vals[] = new long[enc.length()];
+        int n = 0;
+        int p = 0;
+        while (p < enc.length()) {
+            long u = 0L;
+            int shift = 0;
+            long b;
+            do {
+                b = (long)(enc.charAt(p++) - 63);
+                u |= (b & 0x1FL) << shift;
+                shift += 5;
+            } while ((b >= 0x20L) && (p < enc.length()));
+            vals[n++] = ((u & 1L) != 0L)? ~(u >>> 1) : (u >>> 1);
+        }
+        long rtn[] = new long[n];
+        System.arraycopy(vals, 0, rtn, 0, n);
+        return rtn;
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Delta encoder for a single series of integer values
+    **/
+    public static class ValueStream
+    {
+        private StringBuffer sb     = new StringBuffer();
+        private long         last   = 0L;
+        private int          count  = 0;
+        public ValueStream() {
+            super();
+        }
+        /* appends the next value */
+        public ValueStream add(long v) {
+            EncodedPolyline.EncodeSignedValue(this.sb, v - this.last);
+            this.last = v;
+            this.count++;
+            return this;
+        }
+        /* appends the next value (scaled and rounded) */
+        public ValueStream add(double v, double scale) {
+            return this.add(Math.round(v * scale));
+        }
+        public int size() {
+            return this.count;
+        }
+        public String toString() {
+            return this.sb.toString();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private StringBuffer sb         = new StringBuffer();
+    private double       scale      = 1.0E5;
+    private int          precision  = DEFAULT_PRECISION;
+    private long         lastLat    = 0L;
+    private long         lastLon    = 0L;
+    private int          count      = 0;
+
+    /**
+    *** Constructor (Google Maps precision)
+    **/
+    public EncodedPolyline()
+    {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+    *** Constructor
+    *** @param precision  The number of decimal places retained (ie. 5 or 6)
+    **/
+    public EncodedPolyline(int precision)
+    {
+        this.precision = precision;
+        this.scale     = Math.pow(10.0, precision);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the number of decimal places retained
+    **/
+    public int getPrecision()
+    {
+        return this.precision;
+    }
+
+    /**
+    *** Appends the specified point
+    *** @param lat  The latitude
+    *** @param lon  The longitude
+    **/
+    public EncodedPolyline add(double lat, double lon)
+    {
+        long iLat = Math.round(lat * this.scale);
+        long iLon = Math.round(lon * this.scale);
+        EncodedPolyline.EncodeSignedValue(this.sb, iLat - this.lastLat);
+        EncodedPolyline.EncodeSignedValue(this.sb, iLon - this.lastLon);
+        this.lastLat = iLat;
+        this.lastLon = iLon;
+        this.count++;
+        return this;
+    }
+
+    /**
+    *** Gets the number of points in this polyline
+    **/
+    public int size()
+    {
+        return this.count;
+    }
+
+    /**
+    *** Returns the encoded polyline
+    **/
+    public String toString()
+    {
+        return this.sb.toString();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Decodes the specified encoded polyline
+    *** @param enc        The encoded polyline
+    *** @param precision  The number of decimal places
+    *** @return The decoded points
+    **/
+    public static GeoPoint[] Decode(String enc, int precision)
+    {
+        long d[] = EncodedPolyline.DecodeSignedValues(enc);
+        double scale = Math.pow(10.0, precision);
+        GeoPoint gp[] = new GeoPoint[d.length / 2];
+        long lat = 0L, lon = 0L;
+        for (int i = 0; i < gp.length; i++) {
+            lat += d[2 * i];
+            lon += d[(2 * i) + 1];
+            gp[i] = new GeoPoint((double)lat / scale, (double)lon / scale);
+        }
+        return gp;
+    }
+
+    // ------------------------------------------------------------------------
+
+}
@@ -0,0 +1,481 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Streaming XLSX (Office Open XML SpreadsheetML) writer.
+//  - Rows are written to the output stream as they are added.  Only a bounded
+//    window of the most recent rows is held in memory (to allow cells to be added
+//    to recent rows in any order), so memory use does not depend on the number
+//    of rows in the spreadsheet.
+//  - All cells use one of a fixed set of cell styles (title, subtitle, header,
+//    body, subtotal, total) defined once in the workbook style sheet.
+//  - Strings are written inline (no shared-string table is accumulated).
+//  - Column widths are taken from header columns added before the first row is
+//    written to the output stream.
+// ----------------------------------------------------------------------------
+package org.opengts.util;
+
+import java.util.*;
+import java.io.*;
+import java.util.zip.*;
+
+public class ExcelStreamWriter
+    implements ExcelAPI
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final int    DFT_ROW_WINDOW      = 100;
+
+    private static final String SHEET_ENTRY         = "xl/worksheets/sheet1.xml";
+
+    /* cell style indices (see "STYLES_XML" cellXfs) */
+    private static final int    STYLE_DEFAULT       = 0;
+    private static final int    STYLE_TITLE         = 1;
+    private static final int    STYLE_SUBTITLE      = 2;
+    private static final int    STYLE_HEADER        = 3;
+    private static final int    STYLE_BODY          = 4;
+    private static final int    STYLE_SUBTOTAL      = 5;
+    private static final int    STYLE_TOTAL         = 6;
+
+    private static final String CONTENT_TYPES_XML   =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+        "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">" +
+        "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>" +
+        "<Default Extension=\"xml\" ContentType=\"application/xml\"/>" +
+        "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>" +
+        "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>" +
+        "<Override PartName=\"/" + SHEET_ENTRY + "\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>" +
+        "</Types>\n";
+
+    private static final String RELS_XML            =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+        "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+        "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>" +
+        "</Relationships>\n";
+
+    private static final String WORKBOOK_RELS_XML   =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+        "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+        "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet1.xml\"/>" +
+        "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>" +
+        "</Relationships>\n";
+
+    private static final String STYLES_XML          =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+        "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">" +
+        "<fonts count=\"3\">" +
+          "<font><sz val=\"" + Font_POINT_10 + "\"/><name val=\"Arial\"/></font>" +
+          "<font><b/><sz val=\"" + Font_POINT_14 + "\"/><name val=\"Arial\"/></font>" +
+          "<font><b/><sz val=\"" + Font_POINT_10 + "\"/><name val=\"Arial\"/></font>" +
+        "</fonts>" +
+        "<fills count=\"3\">" +
+          "<fill><patternFill patternType=\"none\"/></fill>" +
+          "<fill><patternFill patternType=\"gray125\"/></fill>" +
+          "<fill><patternFill patternType=\"solid\"><fgColor rgb=\"FFDDDDDD\"/><bgColor indexed=\"64\"/></patternFill></fill>" +
+        "</fills>" +
+        "<borders count=\"2\">" +
+          "<border><left/><right/><top/><bottom/><diagonal/></border>" +
+          "<border><left style=\"thin\"/><right style=\"thin\"/><top style=\"thin\"/><bottom style=\"thin\"/><diagonal/></border>" +
+        "</borders>" +
+        "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>" +
+        "<cellXfs count=\"7\">" +
+          "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>" +                                                                                          // STYLE_DEFAULT
+          "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\" applyAlignment=\"1\"><alignment horizontal=\"center\"/></xf>" +                 // STYLE_TITLE
+          "<xf numFmtId=\"0\" fontId=\"2\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\" applyAlignment=\"1\"><alignment horizontal=\"center\"/></xf>" +                 // STYLE_SUBTITLE
+          "<xf numFmtId=\"0\" fontId=\"2\" fillId=\"2\" borderId=\"1\" xfId=\"0\" applyFont=\"1\" applyFill=\"1\" applyBorder=\"1\" applyAlignment=\"1\"><alignment horizontal=\"center\" vertical=\"top\" wrapText=\"1\"/></xf>" + // STYLE_HEADER
+          "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"1\" xfId=\"0\" applyBorder=\"1\"/>" +                                                                      // STYLE_BODY
+          "<xf numFmtId=\"0\" fontId=\"2\" fillId=\"0\" borderId=\"1\" xfId=\"0\" applyFont=\"1\" applyBorder=\"1\"/>" +                                                      // STYLE_SUBTOTAL
+          "<xf numFmtId=\"0\" fontId=\"2\" fillId=\"2\" borderId=\"1\" xfId=\"0\" applyFont=\"1\" applyFill=\"1\" applyBorder=\"1\"/>" +                                      // STYLE_TOTAL
+        "</cellXfs>" +
+        "<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>" +
+        "</styleSheet>\n";
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns the spreadsheet column name ("A", "B", ... "AA", ...) for the specified
+    *** 0-based column index
+    **/
+    public static String GetColumnName(int colIndex)
+    {
+        StringBuffer sb = new StringBuffer();
+        for (int c = colIndex + 1; c > 0; c = (c - 1) / 26) {
+            sb.insert(0, (char)('A' + ((c - 1) % 26)));
+        }
+        return sb.toString();
+    }
+
+    /**
+    *** Returns the specified text escaped for XML element content (characters which
+    *** are not valid in XML are removed)
+    **/
+    private static String _xmlText(String s)
+    {
+        if (s == null) {
+            return "";
+        }
+        StringBuffer sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if ((ch < ' ') && (ch != '\t') && (ch != '\n') && (ch != '\r')) {
+                if (sb == null) {
+                    sb = new StringBuffer(s.substring(0, i));
+                }
+            } else
+            if (sb != null) {
+                sb.append(ch);
+            }
+        }
+        return XMLTools.escapeXML((sb != null)? sb.toString() : s);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Buffered spreadsheet cell
+    **/
+    private static class Cell
+    {
+        public int     colIndex = 0;
+        public Object  value    = null;
+        public int     style    = STYLE_DEFAULT;
+        public Cell(int colIndex, Object value, int style) {
+            this.colIndex = colIndex;
+            this.value    = value;
+            this.style    = style;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private String                          name            = "Report";
+    private int                             rowWindow       = DFT_ROW_WINDOW;
+    private OutputStream                    output          = null;
+    private ZipOutputStream                 zip             = null;
+    private Writer                          sheet           = null;
+    private boolean                         sheetDataStart  = false;
+    private boolean                         complete        = false;
+
+    private TreeMap<Integer,Vector<Cell>>   rows            = new TreeMap<Integer,Vector<Cell>>();
+    private int                             lastFlushedRow  = -1;
+    private int                             maxRowIndex     = -1;
+    private long                            rowCount        = 0L;
+
+    private TreeMap<Integer,Integer>        colWidths       = new TreeMap<Integer,Integer>();
+    private Vector<String>                  mergedCells     = new Vector<String>();
+
+    /**
+    *** Constructor
+    *** @param out        The stream to which the spreadsheet is written
+    *** @param rowWindow  The maximum number of rows held in memory
+    **/
+    public ExcelStreamWriter(OutputStream out, int rowWindow)
+    {
+        this.output    = out;
+        this.rowWindow = (rowWindow > 0)? rowWindow : DFT_ROW_WINDOW;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Initializes this spreadsheet (only XLSX is supported)
+    *** @param xlsx  Must be true
+    *** @param name  The worksheet name
+    **/
+    public void init(boolean xlsx, String name)
+    {
+        if (!xlsx) {
+            throw new IllegalArgumentException("Only XLSX is supported by the streaming writer");
+        }
+        String n = StringTools.trim(name).replaceAll("[\\[\\]:*?/\\\\]", "_");
+        this.name = !n.equals("")? ((n.length() > 31)? n.substring(0,31) : n) : "Report";
+    }
+
+    /**
+    *** Writes the package parts preceding the worksheet, and starts the worksheet
+    **/
+    private void _start()
+        throws IOException
+    {
+        if (this.zip != null) {
+            return;
+        }
+        if (this.output == null) {
+            throw new IOException("OutputStream not specified");
+        }
+        this.zip = new ZipOutputStream(this.output);
+        this._writeEntry("[Content_Types].xml"       , CONTENT_TYPES_XML);
+        this._writeEntry("_rels/.rels"               , RELS_XML);
+        this._writeEntry("xl/workbook.xml",
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+            "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" " +
+            "xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">" +
+            "<sheets><sheet name=\"" + XMLTools.escapeXML(this.name) + "\" sheetId=\"1\" r:id=\"rId1\"/></sheets>" +
+            "</workbook>\n");
+        this._writeEntry("xl/_rels/workbook.xml.rels", WORKBOOK_RELS_XML);
+        this._writeEntry("xl/styles.xml"             , STYLES_XML);
+        this.zip.putNextEntry(new ZipEntry(SHEET_ENTRY));
+        this.sheet = new BufferedWriter(new OutputStreamWriter(this.zip, StringTools.CharEncoding_UTF_8));
+        this.sheet.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        this.sheet.write("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">\n");
+    }
+
+    /**
+    *** Writes a complete package part
+    **/
+    private void _writeEntry(String entryName, String xml)
+        throws IOException
+    {
+        this.zip.putNextEntry(new ZipEntry(entryName));
+        this.zip.write(xml.getBytes(StringTools.CharEncoding_UTF_8));
+        this.zip.closeEntry();
+    }
+
+    /**
+    *** Writes the column widths and starts the sheet data (once)
+    **/
+    private void _startSheetData()
+        throws IOException
+    {
+        if (this.sheetDataStart) {
+            return;
+        }
+        this.sheetDataStart = true;
+        if (!this.colWidths.isEmpty()) {
+            this.sheet.write("<cols>");
+            for (Map.Entry<Integer,Integer> e : this.colWidths.entrySet()) {
+                int col = e.getKey().intValue() + 1;
+                this.sheet.write("<col min=\"" + col + "\" max=\"" + col + "\" width=\"" + e.getValue() + "\" customWidth=\"1\"/>");
+            }
+            this.sheet.write("</cols>\n");
+        }
+        this.sheet.write("<sheetData>\n");
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Adds a cell to the specified row, writing rows which fall outside the row window
+    **/
+    private void _addCell(int rowIndex, int colIndex, Object value, int style)
+    {
+        if (this.complete) {
+            throw new IllegalStateException("Spreadsheet already written");
+        } else
+        if (rowIndex <= this.lastFlushedRow) {
+            // -- row has already been written (outside of row window)
+            Print.logWarn("Row already written, cell ignored: " + GetColumnName(colIndex) + (rowIndex + 1));
+            return;
+        }
+        Integer rowKey = new Integer(rowIndex);
+        Vector<Cell> row = this.rows.get(rowKey);
+        if (row == null) {
+            row = new Vector<Cell>();
+            this.rows.put(rowKey, row);
+        }
+        row.add(new Cell(colIndex, value, style));
+        if (rowIndex > this.maxRowIndex) {
+            this.maxRowIndex = rowIndex;
+            try {
+                this._flushRows(this.maxRowIndex - this.rowWindow);
+            } catch (IOException ioe) {
+                throw new RuntimeException("Unable to write spreadsheet rows", ioe);
+            }
+        }
+    }
+
+    /**
+    *** Writes all buffered rows up to, and including, the specified row index
+    **/
+    private void _flushRows(int toRowIndex)
+        throws IOException
+    {
+        while (!this.rows.isEmpty() && (this.rows.firstKey().intValue() <= toRowIndex)) {
+            Map.Entry<Integer,Vector<Cell>> e = this.rows.pollFirstEntry();
+            this._writeRow(e.getKey().intValue(), e.getValue());
+        }
+        if (toRowIndex > this.lastFlushedRow) {
+            this.lastFlushedRow = toRowIndex;
+        }
+    }
+
+    /**
+    *** Writes the specified row to the worksheet
+    **/
+    private void _writeRow(int rowIndex, Vector<Cell> cells)
+        throws IOException
+    {
+        this._start();
+        this._startSheetData();
+        String r = String.valueOf(rowIndex + 1);
+        Writer w = this.sheet;
+        w.write("<row r=\"" + r + "\">");
+        Cell sorted[] = cells.toArray(new Cell[cells.size()]);
+        Arrays.sort(sorted, new Comparator<Cell>() {
+            public int compare(Cell c1, Cell c2) {
+                return c1.colIndex - c2.colIndex;
+            }
+        });
+        int lastCol = -1;
+        for (Cell c : sorted) {
+            if (c.colIndex == lastCol) {
+                continue; // duplicate cell, keep first
+            }
+            lastCol = c.colIndex;
+            String ref = GetColumnName(c.colIndex) + r;
+            String s   = (c.style != STYLE_DEFAULT)? (" s=\"" + c.style + "\"") : "";
+            Object v   = c.value;
+            if (v == null) {
+                w.write("<c r=\"" + ref + "\"" + s + "/>");
+            } else
+            if ((v instanceof Number) && !Double.isNaN(((Number)v).doubleValue()) && !Double.isInfinite(((Number)v).doubleValue())) {
+                w.write("<c r=\"" + ref + "\"" + s + "><v>" + v.toString() + "</v></c>");
+            } else
+            if (v instanceof Boolean) {
+                w.write("<c r=\"" + ref + "\"" + s + " t=\"b\"><v>" + (((Boolean)v).booleanValue()? "1" : "0") + "</v></c>");
+            } else {
+                w.write("<c r=\"" + ref + "\"" + s + " t=\"inlineStr\"><is><t xml:space=\"preserve\">" + _xmlText(v.toString()) + "</t></is></c>");
+            }
+        }
+        w.write("</row>\n");
+        this.rowCount++;
+    }
+
+    /**
+    *** Records a merged range in the specified row
+    **/
+    private void _addMerge(int rowIndex, int colIndex, int colSpan)
+    {
+        if (colSpan > 1) {
+            String r = String.valueOf(rowIndex + 1);
+            this.mergedCells.add(GetColumnName(colIndex) + r + ":" + GetColumnName(colIndex + colSpan - 1) + r);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public void setTitle(int rowIndex, String title, int colSpan)
+    {
+        this._addCell(rowIndex, 0, title, STYLE_TITLE);
+        this._addMerge(rowIndex, 0, colSpan);
+    }
+
+    public void setSubtitle(int rowIndex, String title, int colSpan)
+    {
+        this._addCell(rowIndex, 0, title, STYLE_SUBTITLE);
+        this._addMerge(rowIndex, 0, colSpan);
+    }
+
+    public void setBlankRow(int rowIndex, int colSpan)
+    {
+        this._addCell(rowIndex, 0, null, STYLE_DEFAULT);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public void addHeaderColumn(int rowIndex, int colIndex, String colTitle, int charWidth)
+    {
+        this.addHeaderColumn(rowIndex, colIndex, 1, colTitle, charWidth);
+    }
+
+    public void addHeaderColumn(int rowIndex, int colIndex, int colSpan, String colTitle, int charWidth)
+    {
+        this._addCell(rowIndex, colIndex, colTitle, STYLE_HEADER);
+        this._addMerge(rowIndex, colIndex, colSpan);
+        if ((charWidth > 0) && (colSpan <= 1) && !this.sheetDataStart) {
+            Integer key = new Integer(colIndex);
+            Integer w   = this.colWidths.get(key);
+            if ((w == null) || (w.intValue() < charWidth)) {
+                this.colWidths.put(key, new Integer(charWidth));
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public void addBodyColumn(int rowIndex, int colIndex, Object value)
+    {
+        this._addCell(rowIndex, colIndex, value, STYLE_BODY);
+    }
+
+    public void addSubtotalColumn(int rowIndex, int colIndex, Object value)
+    {
+        this._addCell(rowIndex, colIndex, value, STYLE_SUBTOTAL);
+    }
+
+    public void addTotalColumn(int rowIndex, int colIndex, Object value)
+    {
+        this._addCell(rowIndex, colIndex, value, STYLE_TOTAL);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Not supported (the spreadsheet is written to the OutputStream specified in the
+    *** constructor)
+    **/
+    public boolean write(File dir)
+    {
+        Print.logError("Streaming spreadsheet is written to the constructor OutputStream");
+        return false;
+    }
+
+    /**
+    *** Writes the remaining rows and completes the spreadsheet.  The specified stream
+    *** must be the stream specified in the constructor (or null).  The underlying stream
+    *** is flushed, but not closed.
+    **/
+    public boolean write(OutputStream out)
+    {
+        if (this.complete) {
+            return false;
+        } else
+        if ((out != null) && (out != this.output)) {
+            Print.logError("Streaming spreadsheet must be written to the constructor OutputStream");
+            return false;
+        }
+        try {
+            this._flushRows(this.maxRowIndex);
+            this._start();
+            this._startSheetData();
+            this.sheet.write("</sheetData>\n");
+            if (!this.mergedCells.isEmpty()) {
+                this.sheet.write("<mergeCells count=\"" + this.mergedCells.size() + "\">");
+                for (String m : this.mergedCells) {
+                    this.sheet.write("<mergeCell ref=\"" + m + "\"/>");
+                }
+                this.sheet.write("</mergeCells>\n");
+            }
+            this.sheet.write("</worksheet>\n");
+            this.sheet.flush();
+            this.zip.closeEntry();
+            this.zip.finish();
+            this.output.flush();
+            this.complete = true;
+            Print.logInfo("Wrote streamed spreadsheet rows: " + this.rowCount);
+            return true;
+        } catch (IOException ioe) {
+            Print.logError("Unable to write spreadsheet: " + ioe);
+            return false;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+}
@@ -181,6 +181,8 @@ public class RTKey
     public static final String ThreadPool_SendMail_         = "SendMail.ThreadPool.";               // prefix
     public static final String ThreadPool_EventRuleAction_  = "Rule.ThreadPool.EventRuleAction.";   // prefix
     public static final String ThreadPool_DeviceEventUpdate_= "Device.ThreadPool.DeviceEventUpdate.";// prefix
+    public static final String ThreadPool_ReportDevice_     = "ReportData.ThreadPool.DeviceCollection.";// prefix
+    public static final String ThreadPool_ReportJob_        = "ReportJobQueue.ThreadPool.";         // prefix
 
     public static final String ServerSocketThread_maximumClientThreadPoolSize = "ServerSocketThread.maximumClientThreadPoolSize"; // Integer
     public static final String ServerSocketThread_udpReceiveBufferSize        = "ServerSocketThread.udpReceiveBufferSize"; // Integer
@@ -97,6 +97,11 @@ public class Events
     private static final String  PROP_Events_defaultLimit       = "Events.defaultLimit";
     private static final String  PROP_Events_maximumLimit       = "Events.maximumLimit";
     private static final String  PROP_Events_accCtlAllowOrigin  = "Events.accessControlAllowOrigin";
+    private static final String  PROP_Events_compressResponse   = "Events.compressResponse";
+    private static final String  PROP_Events_allowStreaming     = "Events.allowStreaming";
+    private static final String  PROP_Events_streamLimit        = "Events.streamLimit";
+    private static final String  PROP_Events_changeFeedLimit    = "Events.changeFeedLimit";
+    private static final String  PROP_Events_changeFeedMaxLimit = "Events.changeFeedMaximumLimit";
 
     /* old XML format */
     private static       boolean OLD_XML_FORMAT                 = false;
@@ -104,6 +109,12 @@ public class Events
     /* limits */
     public  static       long    DFT_LIMIT                      = 100L;
     public  static       long    MAX_LIMIT                      = 1000L;
+    public  static       long    STREAM_LIMIT                   = 0L;     // no limit
+    public  static       long    FEED_LIMIT                     = 1000L;
+    public  static       long    FEED_MAX_LIMIT                 = 10000L;
+
+    /* commands */
+    public  static final String  CMD_CHANGES                    = "changes";
 
     // ------------------------------------------------------------------------
     // http://example.com/events/Data.xml?a=account&u=user&p=password&d=device&tz=US/Pacific&rf=YYYY/MM/DD/hh:mm:ss&rt=YYYY/MM/DD/hh:mm:ss&l=200
@@ -131,6 +142,8 @@ public class Events
     private static final String  PARM_ALL_TAGS[]    = new String[] { "alltags"    ,         "at" };
     private static final String  PARM_OLD_XML[]     = new String[] { "oldxml"     , "old" , "ox" };
     private static final String  PARM_EXPIRE[]      = new String[] { "expire"     , "exp" , "ex" };
+    private static final String  PARM_STREAM[]      = new String[] { "stream"     ,         "st" };
+    private static final String  PARM_CURSOR[]      = new String[] { "cursor"     , "cur" , "cr" };
 
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -146,6 +159,9 @@ public class Events
         OLD_XML_FORMAT = RTConfig.getBoolean(PROP_Events_useOldXMLFormat,OLD_XML_FORMAT);
         DFT_LIMIT      = Math.max(RTConfig.getLong(PROP_Events_defaultLimit,DFT_LIMIT),1L);
         MAX_LIMIT      = Math.max(RTConfig.getLong(PROP_Events_maximumLimit,MAX_LIMIT),DFT_LIMIT);
+        STREAM_LIMIT   = Math.max(RTConfig.getLong(PROP_Events_streamLimit,STREAM_LIMIT),0L);
+        FEED_LIMIT     = Math.max(RTConfig.getLong(PROP_Events_changeFeedLimit,FEED_LIMIT),1L);
+        FEED_MAX_LIMIT = Math.max(RTConfig.getLong(PROP_Events_changeFeedMaxLimit,FEED_MAX_LIMIT),FEED_LIMIT);
 
     };
 
@@ -156,14 +172,34 @@ public class Events
     public void doGet(HttpServletRequest request, HttpServletResponse response)
         throws ServletException, IOException
     {
-        this._doWork_wrapper(false, request, response);
+        HttpServletResponse resp = Events.getCompressedResponse(request, response);
+        try {
+            this._doWork_wrapper(false, request, resp);
+        } finally {
+            CommonServlet.finishCompressedResponse(resp);
+        }
     }
 
     /* POST request */
     public void doPost(HttpServletRequest request, HttpServletResponse response)
         throws ServletException, IOException
     {
-        this._doWork_wrapper(true, request, response);
+        HttpServletResponse resp = Events.getCompressedResponse(request, response);
+        try {
+            this._doWork_wrapper(true, request, resp);
+        } finally {
+            CommonServlet.finishCompressedResponse(resp);
+        }
+    }
+
+    /* return response wrapper which compresses the response, if enabled/accepted */
+    private static HttpServletResponse getCompressedResponse(HttpServletRequest request, HttpServletResponse response)
+    {
+        if (RTConfig.getBoolean(PROP_Events_compressResponse,true)) {
+            return CommonServlet.getCompressedResponse(request, response, CompressedHttpServletResponse.DEFAULT_MIN_SIZE);
+        } else {
+            return response;
+        }
     }
 
     private void _doWork_wrapper(boolean isPost, 
@@ -236,6 +272,7 @@ public class Events
         String  accountID  = Events.getRequestString (request, PARM_ACCOUNT  , "");
         String  userID     = Events.getRequestString (request, PARM_USER     , "");
         String  password   = Events.getRequestString (request, PARM_PASSWORD , "");
+        String  command    = Events.getRequestString (request, PARM_COMMAND  , "");
         String  deviceArgs = Events.getRequestString (request, PARM_DEVICE   , "");
         String  groupArgs  = Events.getRequestString (request, PARM_GROUP    , "");
         String  tzStr      = Events.getRequestString (request, PARM_TIMEZONE , "");
@@ -246,6 +283,8 @@ public class Events
         boolean allTags    = Events.getRequestBoolean(request, PARM_ALL_TAGS , false);
         boolean oldXMLFmt  = Events.getRequestBoolean(request, PARM_OLD_XML  , OLD_XML_FORMAT);
         String  expireStr  = Events.getRequestString (request, PARM_EXPIRE   , "");
+        String  cursorStr  = Events.getRequestString (request, PARM_CURSOR   , "");
+        boolean stream     = Events.getRequestBoolean(request, PARM_STREAM   , !StringTools.isBlank(cursorStr));
 
         /* default to 'admin' user */
         if (StringTools.isBlank(userID)) {
@@ -512,8 +551,27 @@ public class Events
             }
         }
 
+        /* change-feed */
+        if (command.equalsIgnoreCase(CMD_CHANGES)) {
+            this.writeChangeFeed(request, response,
+                account, deviceIDSet,
+                startTime, cursorStr, outFmt, oldXMLFmt, allTags, dispTmz,
+                privLabel);
+            return;
+        }
+
+        /* streamed events */
+        if (stream) {
+            this.writeEventStream(request, response,
+                account, deviceIDSet,
+                startTime, endTime, validGPS,
+                cursorStr, outFmt, oldXMLFmt, allTags, dispTmz,
+                privLabel);
+            return;
+        }
+
         /* extract records */
-        // NOT CURRENTLY SCALABLE!
+        // NOT CURRENTLY SCALABLE! (see "stream=true")
         // this version assumes that the number of returned records is reasonable and fits in memory
         Collection<Device> devList = new Vector<Device>();
         //java.util.List<EventData> evList = new Vector<EventData>();
@@ -539,6 +597,21 @@ public class Events
             return;
         }
 
+        /* unchanged since last request? */
+        // -- keyed on the request, and the newest event timestamp (etc) of the selected events
+        ResponseValidator validator = new ResponseValidator(
+            request.getRequestURI(), account.getAccountID(), userID, 
+            deviceArgs, groupArgs, tzStr, rangeFr, rangeTo, 
+            String.valueOf(limit), String.valueOf(validGPS), 
+            String.valueOf(allTags), String.valueOf(oldXMLFmt));
+        for (Device dev : devList) {
+            validator.addKey(dev.getDeviceID());
+            validator.addEvents(dev.getSavedRangeEvents());
+        }
+        if (validator.checkNotModified(request, response)) {
+            return;
+        }
+
         /* mime content type */
         this.setContentMimeType(response, outFmt);
         if ((outFmt == EventUtil.FORMAT_XML) && oldXMLFmt) {
@@ -571,6 +644,175 @@ public class Events
 
     // ------------------------------------------------------------------------
 
+    /* write events as they are read from the database */
+    private void writeEventStream(
+        HttpServletRequest request, HttpServletResponse response,
+        Account account, OrderedSet<String> deviceIDSet,
+        long startTime, long endTime, boolean validGPS,
+        String cursorStr, int outFmt, boolean oldXMLFmt, boolean allTags, TimeZone dispTmz,
+        BasicPrivateLabel privLabel)
+        throws ServletException, IOException
+    {
+
+        /* streaming allowed? */
+        if (!RTConfig.getBoolean(PROP_Events_allowStreaming,true)) {
+            this.errorResponse(response, outFmt, "Streaming not allowed");
+            return;
+        } else
+        if (!EventUtil.isStreamFormat(outFmt)) {
+            this.errorResponse(response, outFmt, "Streaming not supported for format");
+            return;
+        }
+
+        /* continuation cursor */
+        EventUtil.StreamCursor cursor = null;
+        if (!StringTools.isBlank(cursorStr)) {
+            cursor = EventUtil.StreamCursor.parseToken(cursorStr);
+            if ((cursor == null) || !deviceIDSet.contains(cursor.getDeviceID())) {
+                Print.logError("Invalid stream cursor: " + cursorStr);
+                this.errorResponse(response, outFmt, "Invalid cursor");
+                return;
+            }
+        }
+
+        /* limit (per response, 0 for no limit) */
+        long limit = Events.getRequestLong(request, PARM_LIMIT, STREAM_LIMIT);
+
+        /* devices (events are read while writing) */
+        Collection<Device> devList = new Vector<Device>();
+        try {
+            for (String devID : deviceIDSet) {
+                Device dev = Device._getDevice(account, devID);
+                if (dev != null) {
+                    devList.add(dev);
+                } else {
+                    Print.logWarn("Device not found: " + devID);
+                }
+            }
+        } catch (DBException dbe) {
+            dbe.printException();
+            this.errorResponse(response, outFmt, "Internal error (devices)");
+            return;
+        }
+
+        /* mime content type */
+        this.setContentMimeType(response, outFmt);
+        if ((outFmt == EventUtil.FORMAT_XML) && oldXMLFmt) {
+            outFmt = EventUtil.FORMAT_XMLOLD;
+        }
+
+        /* write streamed events */
+        // -- errors after the response has been started are reported in the stream trailer,
+        // -  along with the cursor of the last event written (see "EventUtil.writeEventStream")
+        PrintWriter out = response.getWriter();
+        try {
+            EventUtil.StreamCursor next = EventUtil.getInstance().writeEventStream(out,
+                account, devList,
+                startTime, endTime, validGPS,
+                limit, cursor,
+                outFmt, allTags, dispTmz,
+                privLabel);
+            if (next != null) {
+                Print.logDebug("Event stream limit reached: " + next);
+            }
+        } catch (DBException dbe) {
+            Print.logException("Error reading streamed events", dbe);
+        } catch (IOException ioe) {
+            Print.logException("Error writing streamed events", ioe);
+        }
+
+    }
+
+    // ------------------------------------------------------------------------
+    // http://localhost:8080/events/changes.json?a=demo&g=all&cmd=changes&rf=2017/01/01&l=1000
+    // http://localhost:8080/events/changes.json?a=demo&g=all&cmd=changes&cursor=<Cursor>
+
+    /* write the events inserted after the specified change-feed cursor */
+    private void writeChangeFeed(
+        HttpServletRequest request, HttpServletResponse response,
+        Account account, OrderedSet<String> deviceIDSet,
+        long sinceTime, String cursorStr, int outFmt, boolean oldXMLFmt, boolean allTags, TimeZone dispTmz,
+        BasicPrivateLabel privLabel)
+        throws ServletException, IOException
+    {
+
+        /* supported? */
+        if (!EventChangeFeed.IsSupported()) {
+            this.errorResponse(response, outFmt, "Change-feed not supported");
+            return;
+        } else
+        if (!EventUtil.isStreamFormat(outFmt)) {
+            this.errorResponse(response, outFmt, "Change-feed not supported for format");
+            return;
+        }
+
+        /* cursor */
+        // -- the initial cursor starts at the "rangefrom" insertion time (all events if not specified)
+        EventChangeFeed.Cursor cursor = null;
+        if (!StringTools.isBlank(cursorStr)) {
+            cursor = EventChangeFeed.Cursor.parseToken(cursorStr);
+            if (cursor == null) {
+                Print.logError("Invalid change-feed cursor: " + cursorStr);
+                this.errorResponse(response, outFmt, "Invalid cursor");
+                return;
+            }
+        } else {
+            cursor = new EventChangeFeed.Cursor((sinceTime > 0L)? ((sinceTime * 1000L) - 1L) : -1L);
+        }
+
+        /* limit */
+        long limit = Events.getRequestLong(request, PARM_LIMIT, FEED_LIMIT);
+        if (limit <= 0L) {
+            limit = FEED_LIMIT;
+        } else
+        if (limit > FEED_MAX_LIMIT) {
+            limit = FEED_MAX_LIMIT;
+        }
+
+        /* read changes */
+        String accountID = account.getAccountID();
+        Collection<Device> devList = new Vector<Device>();
+        EventChangeFeed.Page page = null;
+        try {
+            page = EventChangeFeed.getChanges(accountID, deviceIDSet, cursor, limit);
+            Set<String> pageDevIDs = new HashSet<String>();
+            for (EventData ev : page.getEvents()) {
+                if (pageDevIDs.add(ev.getDeviceID())) {
+                    Device dev = Device._getDevice(account, ev.getDeviceID());
+                    if (dev != null) {
+                        devList.add(dev);
+                    }
+                }
+            }
+        } catch (DBException dbe) {
+            dbe.printException();
+            this.errorResponse(response, outFmt, "Internal error (events)");
+            return;
+        }
+
+        /* mime content type */
+        this.setContentMimeType(response, outFmt);
+        if ((outFmt == EventUtil.FORMAT_XML) && oldXMLFmt) {
+            outFmt = EventUtil.FORMAT_XMLOLD;
+        }
+
+        /* write events */
+        // -- the next cursor is always included (a page with fewer than 'limit' events is current)
+        PrintWriter out = response.getWriter();
+        try {
+            EventUtil.getInstance().writeEventList(out,
+                account, devList,
+                page.getEvents(), page.getNextCursor().toToken(),
+                outFmt, allTags, dispTmz,
+                privLabel);
+        } catch (IOException ioe) {
+            Print.logException("Error writing change-feed events", ioe);
+        }
+
+    }
+
+    // ------------------------------------------------------------------------
+
     private void setContentMimeType(HttpServletResponse response, int outFmt)
     {
         switch (outFmt) {
@@ -291,6 +291,8 @@ public class JSMap
         JavaScriptTools.writeJSVar(out, "ROUTE_LINE_SHOW"       , rtp.getBoolean(PROP_map_routeLine,true));
         JavaScriptTools.writeJSVar(out, "ROUTE_LINE_COLOR"      , rtp.getString(PROP_map_routeLine_color,"#FF2222"));
         JavaScriptTools.writeJSVar(out, "ROUTE_LINE_ARROWS"     , rtp.getBoolean(PROP_map_routeLine_arrows,false));
+        JavaScriptTools.writeJSVar(out, "CLUSTER_COLOR"         , rtp.getString(PROP_map_cluster_color,"#3366FF"));
+        JavaScriptTools.writeJSVar(out, "MAP_DATA_ENCODED"      , rtp.getBoolean(PROP_map_encodedData,true));
         JavaScriptTools.writeJSVar(out, "ROUTE_SNAP_TO_ROAD"    , rtp.getBoolean(PROP_map_routeLine_snapToRoad,false)); // Google V2 only
         JavaScriptTools.writeJSVar(out, "REPLAY_INTERVAL"       , this.getReplayInterval());
         JavaScriptTools.writeJSVar(out, "REPLAY_SINGLE"         , this.getReplaySinglePushpin());
@@ -343,6 +345,7 @@ public class JSMap
             "Only partial data displayed.  The maximum allowed pushpins has been reached.<BR>" + 
             "Adjust the Date/Time range accordingly to view the remaining pushpins."));
         JavaScriptTools.writeJSVar(out, "TEXT_UNAVAILABLE"          , i18n.getString("JSMap.unavailable","unavailable"));
+        JavaScriptTools.writeJSVar(out, "TEXT_DEVICES_CLUSTER"      , i18n.getString("JSMap.devicesCluster","devices"));
         JavaScriptTools.writeJSVar(out, "TEXT_showLocationDetails"  , i18n.getString("JSMap.showLocationDetails","Show Location Details"));
         JavaScriptTools.writeJSVar(out, "TEXT_hideLocationDetails"  , i18n.getString("JSMap.hideLocationDetails","Hide Location Details"));
 
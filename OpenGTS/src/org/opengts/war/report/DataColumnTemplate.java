@@ -45,6 +45,8 @@ public abstract class DataColumnTemplate
 
     private String                  colTitle = "";
 
+    private String                  dataFields[] = null;
+
     /**
     *** Constructor
     **/
@@ -84,6 +86,28 @@ public abstract class DataColumnTemplate
 
     // ------------------------------------------------------------------------
 
+    /**
+    *** Sets the data record (ie. EventData) fields read by this column.  This list is 
+    *** used to select only the fields required by a report.
+    *** @param fields  The field names read by this column (empty if no fields are read)
+    **/
+    public void setDataFields(String... fields)
+    {
+        this.dataFields = (fields != null)? fields : new String[0];
+    }
+
+    /**
+    *** Gets the data record (ie. EventData) fields read by this column
+    *** @return The field names read by this column, or null if not declared (in which
+    ***         case all fields may be read by this column)
+    **/
+    public String[] getDataFields()
+    {
+        return this.dataFields;
+    }
+
+    // ------------------------------------------------------------------------
+
     /* return displayable help for this data column */
     public String getHelp()
     {
@@ -118,6 +118,37 @@ public abstract class DataRowTemplate
         return new HashSet<String>(this.lookupTable.keySet());
     }
 
+    /* set the data record fields read by the specified column (column must exist) */
+    public boolean setColumnDataFields(String key, String... fields)
+    {
+        DataColumnTemplate dc = this.getColumnTemplate(key);
+        if (dc != null) {
+            dc.setDataFields(fields);
+            return true;
+        } else {
+            Print.logWarn("Column key does not exist: " + key);
+            return false;
+        }
+    }
+
+    /* return the data record fields read by the specified columns (null if any column is undeclared) */
+    public Set<String> getColumnDataFields(ReportColumn cols[])
+    {
+        Set<String> fields = new HashSet<String>();
+        if (cols != null) {
+            for (ReportColumn rc : cols) {
+                DataColumnTemplate dc = (rc != null)? this.getColumnTemplate(rc.getKey()) : null;
+                String df[] = (dc != null)? dc.getDataFields() : null;
+                if (df == null) {
+                    // -- undeclared column, may read any field
+                    return null;
+                }
+                ListTools.toSet(df, fields);
+            }
+        }
+        return fields;
+    }
+
     /* add column alias (specified column must exist) */
     /*
     private boolean addColumnAlias(String newAliasKey, String existingKey)
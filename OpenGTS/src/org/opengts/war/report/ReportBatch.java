@@ -0,0 +1,546 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Batch execution of a group of reports over the same Account devices (ie. the
+//  nightly scheduled detail/summary/trip/geozone reports for the same day).
+//  - When a batch report first reads the EventData records for a device, the
+//    records required by all batch reports which include the device are selected
+//    in a single query (union of the report time ranges and status codes).
+//  - Reports which change their constraints while reading records (ie. MotionReport,
+//    see "ReportData.getWidensEventConstraints") contribute all status codes, and
+//    no valid-GPS requirement, to the union.
+//  - Each batch report is then served from this shared per-device buffer.  The
+//    report time range, status codes, valid-GPS, limit and order constraints are
+//    applied to the buffered records exactly as the SQL selection would, and each
+//    report receives its own copy of the EventData records (reports modify the
+//    records they read, ie. previous-event chain, report distance, etc).  A read
+//    which is not covered by the buffered selection (time range, status codes,
+//    valid-GPS, or selected fields) is selected from the EventData table instead.
+//  - The buffer for a device is released as soon as the last batch report including
+//    the device has read it (or has completed).  Batch reports are run concurrently
+//    (see "ReportJobQueue"), and read the devices in the same order, so a buffer is
+//    typically held only while the batch reports read the same device.  Reports with
+//    an additional "WHERE" selection are not shared, and select their own records.
+//  - The number of buffered EventData records is bounded by the property
+//    "ReportBatch.maximumEvents".  Devices which do not fit within this bound are
+//    selected separately by each report.
+// ----------------------------------------------------------------------------
+package org.opengts.war.report;
+
+import java.util.*;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+import org.opengts.db.tables.*;
+
+import org.opengts.war.tools.*;
+
+public class ReportBatch
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final String  PROP_ReportBatch_maximumEvents = "ReportBatch.maximumEvents";
+
+    private static final long    DFT_MAXIMUM_EVENTS             = 50000L;
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Shared EventData records for a single device
+    **/
+    private static class DeviceEvents
+    {
+        private Set<ReportData> pending = new HashSet<ReportData>(); // reports yet to read the device
+        private EventData       events[] = null;  // ascending by timestamp
+        private boolean         fetched  = false; // true once selected (or not shareable)
+        private long            timeStart = -1L;  // selected constraints
+        private long            timeEnd   = -1L;
+        private Set<Integer>    codes     = null; // null for all status codes
+        private boolean         validGPS  = false;
+        private Set<String>     fields    = null; // null for all fields
+        public DeviceEvents() {
+            super();
+        }
+        /* returns true if the selected records include all records for the specified constraints */
+        public boolean covers(long tStart, long tEnd, int sc[], boolean vGPS, Set<String> flds) {
+            if ((this.timeStart >= 0L) && ((tStart < 0L) || (tStart < this.timeStart))) {
+                return false; // starts before selected range
+            } else
+            if ((this.timeEnd >= 0L) && ((tEnd < 0L) || (tEnd > this.timeEnd))) {
+                return false; // ends after selected range
+            } else
+            if (this.validGPS && !vGPS) {
+                return false; // invalid GPS records not selected
+            } else
+            if ((this.fields != null) && ((flds == null) || !this.fields.containsAll(flds))) {
+                return false; // fields not selected
+            }
+            if (this.codes != null) {
+                if ((sc == null) || (sc.length == 0)) {
+                    return false; // all status codes not selected
+                }
+                for (int c : sc) {
+                    if (!this.codes.contains(new Integer(c))) {
+                        return false; // status code not selected
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private java.util.List<ReportData>  reports         = new Vector<ReportData>();
+    private Set<ReportData>             completed       = new HashSet<ReportData>();
+    private Map<String,DeviceEvents>    deviceEvents    = new HashMap<String,DeviceEvents>();
+    private String                      accountID       = null;
+
+    private long                        maxEvents       = DFT_MAXIMUM_EVENTS;
+    private long                        bufferedEvents  = 0L;
+
+    private long                        queryCount      = 0L;  // EventData selections
+    private long                        sharedCount     = 0L;  // selections served from buffer
+
+    /**
+    *** Constructor
+    **/
+    public ReportBatch()
+    {
+        this.maxEvents = RTConfig.getLong(PROP_ReportBatch_maximumEvents, DFT_MAXIMUM_EVENTS);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Adds a report to this batch.  All batch reports must be for the same Account.
+    *** @param rd  The report to add
+    *** @return True if the report was added
+    **/
+    public synchronized boolean addReport(ReportData rd)
+    {
+
+        /* validate */
+        if (rd == null) {
+            return false;
+        } else
+        if (this.reports.contains(rd)) {
+            return true;
+        } else
+        if (this.accountID == null) {
+            this.accountID = rd.getAccountID();
+        } else
+        if (!this.accountID.equals(rd.getAccountID())) {
+            Print.logWarn("Report Account does not match batch Account: " + rd.getAccountID());
+            return false;
+        }
+
+        /* add report */
+        this.reports.add(rd);
+        rd.setReportBatch(this);
+
+        /* plan shared device reads */
+        if (StringTools.isBlank(rd.getWhereSelector())) {
+            ReportDeviceList devList = rd.getReportDeviceList();
+            if (devList != null) {
+                for (Iterator<String> i = devList.iterator(); i.hasNext();) {
+                    String devID = i.next();
+                    DeviceEvents de = this.deviceEvents.get(devID);
+                    if (de == null) {
+                        de = new DeviceEvents();
+                        this.deviceEvents.put(devID, de);
+                    }
+                    de.pending.add(rd);
+                }
+            }
+        }
+        return true;
+
+    }
+
+    /**
+    *** Gets the reports in this batch
+    **/
+    public java.util.List<ReportData> getReports()
+    {
+        return this.reports;
+    }
+
+    /**
+    *** Writes the specified batch report.  The shared device EventData records which are no
+    *** longer needed by the remaining batch reports are released when the report completes.
+    *** @param rd      The batch report
+    *** @param format  The report format
+    *** @param out     The report output
+    *** @return The number of records written
+    **/
+    public int writeReport(ReportData rd, String format, OutputProvider out)
+        throws ReportException
+    {
+        try {
+            return rd.writeReport(format, out);
+        } finally {
+            this.reportCompleted(rd);
+        }
+    }
+
+    /**
+    *** Indicates that the specified report no longer requires shared device records
+    *** @param rd  The completed batch report
+    *** @return True if all batch reports have completed (the batch may be closed)
+    **/
+    public boolean reportCompleted(ReportData rd)
+    {
+        java.util.List<DeviceEvents> deList;
+        synchronized (this) {
+            deList = new Vector<DeviceEvents>(this.deviceEvents.values());
+        }
+        for (DeviceEvents de : deList) {
+            synchronized (de) {
+                if (de.pending.remove(rd) && de.pending.isEmpty()) {
+                    this._release(de);
+                }
+            }
+        }
+        synchronized (this) {
+            if (this.reports.contains(rd)) {
+                this.completed.add(rd);
+            }
+            return (this.completed.size() >= this.reports.size());
+        }
+    }
+
+    /**
+    *** Removes the specified report from this batch (ie. the report was not started)
+    **/
+    public void removeReport(ReportData rd)
+    {
+        if (rd != null) {
+            this.reportCompleted(rd);
+            synchronized (this) {
+                this.reports.remove(rd);
+                this.completed.remove(rd);
+            }
+            rd.setReportBatch(null);
+        }
+    }
+
+    /**
+    *** Releases all shared device records, and removes the reports from this batch
+    **/
+    public synchronized void close()
+    {
+        Print.logInfo(this.getStatistics());
+        for (ReportData rd : this.reports) {
+            rd.setReportBatch(null);
+        }
+        this.reports.clear();
+        this.completed.clear();
+        this.deviceEvents.clear();
+        this.bufferedEvents = 0L;
+    }
+
+    /**
+    *** Returns a String containing the batch statistics
+    **/
+    public synchronized String getStatistics()
+    {
+        return "ReportBatch: reports=" + this.reports.size() +
+            " devices=" + this.deviceEvents.size() +
+            " queries=" + this.queryCount + " shared=" + this.sharedCount +
+            " buffered=" + this.bufferedEvents + "/" + this.maxEvents;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* release the buffered records for a device (DeviceEvents lock held) */
+    private void _release(DeviceEvents de)
+    {
+        if (de.events != null) {
+            synchronized (this) {
+                this.bufferedEvents -= de.events.length;
+            }
+            de.events = null;
+        }
+    }
+
+    /* reserves buffer space for the specified number of records */
+    private synchronized long _getAvailableEvents()
+    {
+        return this.maxEvents - this.bufferedEvents;
+    }
+
+    private synchronized void _addBufferedEvents(long count, boolean query)
+    {
+        this.bufferedEvents += count;
+        if (query) {
+            this.queryCount++;
+        } else {
+            this.sharedCount++;
+        }
+    }
+
+    /* select the records for all pending batch reports (DeviceEvents lock held) */
+    private void _fetch(String acctID, String devID, DeviceEvents de)
+        throws DBException
+    {
+        de.fetched = true;
+
+        /* union of pending report constraints */
+        long    timeStart = Long.MAX_VALUE;
+        long    timeEnd   = Long.MIN_VALUE;
+        boolean validGPS  = true;
+        Set<Integer> codes = new HashSet<Integer>();
+        boolean allCodes  = false;
+        boolean openEnd   = false;
+        Set<String> selFields = new HashSet<String>();
+        boolean allFields = false;
+        for (ReportData rd : de.pending) {
+            long rdEnd = rd.getTimeEnd();
+            timeStart = Math.min(timeStart, rd.getTimeStart());
+            timeEnd   = Math.max(timeEnd  , rdEnd);
+            openEnd   = openEnd || (rdEnd < 0L);
+            boolean widens = rd.getWidensEventConstraints(); // ie. MotionReport
+            validGPS  = validGPS && !widens && rd.getValidGPSRequired();
+            int sc[]  = widens? null : rd.getStatusCodes();
+            if ((sc == null) || (sc.length == 0)) {
+                allCodes = true;
+            } else {
+                for (int c : sc) { codes.add(new Integer(c)); }
+            }
+            Set<String> rf = allFields? null : rd.getEventDataFields();
+            if (rf == null) {
+                allFields = true;
+            } else {
+                selFields.addAll(rf);
+            }
+        }
+        if (timeStart < 0L) {
+            timeStart = -1L;
+        }
+        if (openEnd) {
+            timeEnd = -1L;
+        }
+        int statCodes[] = null;
+        if (!allCodes) {
+            statCodes = new int[codes.size()];
+            int n = 0;
+            for (Integer c : codes) { statCodes[n++] = c.intValue(); }
+        }
+
+        /* select */
+        long avail = this._getAvailableEvents();
+        if (avail <= 0L) {
+            return; // not shared
+        }
+        EventData ed[] = EventData.getRangeEvents(
+            acctID, devID,
+            timeStart, timeEnd,
+            statCodes,
+            validGPS,
+            EventData.LimitType.FIRST, avail + 1L, true/*ascending*/,
+            null/*addtnlSelect_1*/, null/*addtnlSelect_2*/,
+            (allFields? null : selFields),
+            null/*rcdHandler*/);
+        if (ed.length > avail) {
+            Print.logInfo("Too many events to share for device: " + devID);
+            this._addBufferedEvents(0L, true);
+            return; // not shared
+        }
+        de.events    = ed;
+        de.timeStart = timeStart;
+        de.timeEnd   = timeEnd;
+        de.codes     = allCodes? null : codes;
+        de.validGPS  = validGPS;
+        de.fields    = allFields? null : selFields;
+        this._addBufferedEvents(ed.length, true);
+
+    }
+
+    /* returns a copy of the specified EventData record */
+    private static EventData _copy(EventData ev)
+        throws DBException
+    {
+        DBRecordKey<EventData> evKey = ev.getRecordKey();
+        DBRecordKey<EventData> cpKey = EventData.getFactory().createKey();
+        for (DBField kf : cpKey.getKeyFields()) {
+            String name = kf.getName();
+            cpKey.setKeyValue(name, evKey.getKeyValue(name));
+        }
+        EventData cp = cpKey.getDBRecord();
+        cp.setAllFieldValues(ev);
+        return cp;
+    }
+
+    /* returns true if the EventData record has a valid GPS/CellTower location */
+    private static boolean _isValidGPS(EventData ev, boolean hasCellLoc)
+    {
+        if ((ev.getLatitude() != 0.0) || (ev.getLongitude() != 0.0)) {
+            return true;
+        } else
+        if (hasCellLoc && ((ev.getCellLatitude() != 0.0) || (ev.getCellLongitude() != 0.0))) {
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+    *** Returns the range of EventData records for the specified report.  If the device
+    *** records are shared by this batch, the records are selected from the shared buffer
+    *** (in the same manner as "EventData.getRangeEvents"), otherwise they are selected
+    *** from the EventData table.
+    **/
+    protected EventData[] getRangeEvents(
+        ReportData rd,
+        String acctID, String devID,
+        long timeStart, long timeEnd,
+        int statCode[],
+        boolean validGPS,
+        EventData.LimitType limitType, long limit, boolean ascending,
+        String addtnlSelect_1, String addtnlSelect_2,
+        DBRecordHandler<EventData> rcdHandler)
+        throws DBException
+    {
+
+        /* shared device records */
+        EventData shared[] = null;
+        DeviceEvents de = null;
+        if (StringTools.isBlank(addtnlSelect_1) &&
+            StringTools.isBlank(addtnlSelect_2) &&
+            !StringTools.isBlank(devID) &&
+            StringTools.equals(acctID, this.accountID)) {
+            synchronized (this) {
+                de = this.deviceEvents.get(devID);
+            }
+        }
+        if (de != null) {
+            synchronized (de) {
+                if (de.pending.contains(rd)) {
+                    if (!de.fetched) {
+                        this._fetch(acctID, devID, de);
+                    }
+                    if ((de.events != null) && de.covers(timeStart, timeEnd, statCode, validGPS, rd.getEventDataFields())) {
+                        shared = de.events;
+                    } else
+                    if (de.events != null) {
+                        Print.logDebug("Read not covered by shared events: " + rd.getReportName() + " " + devID);
+                    }
+                    de.pending.remove(rd);
+                    if (de.pending.isEmpty()) {
+                        this._release(de);
+                    }
+                }
+            }
+        }
+        if (shared == null) {
+            synchronized (this) {
+                this.queryCount++;
+            }
+            return EventData.getRangeEvents(
+                acctID, devID,
+                timeStart, timeEnd,
+                statCode,
+                validGPS,
+                limitType, limit, ascending,
+                addtnlSelect_1, addtnlSelect_2,
+                rd.getEventDataFields(),
+                rcdHandler);
+        }
+        this._addBufferedEvents(0L, false);
+
+        /* matching records (ascending) */
+        boolean hasCellLoc = EventData.getFactory().hasField(EventData.FLD_cellLatitude);
+        Set<Integer> codes = null;
+        if ((statCode != null) && (statCode.length > 0)) {
+            codes = new HashSet<Integer>();
+            for (int c : statCode) { codes.add(new Integer(c)); }
+        }
+        java.util.List<EventData> match = new Vector<EventData>();
+        for (EventData ev : shared) {
+            long ts = ev.getTimestamp();
+            if ((timeStart >= 0L) && (ts < timeStart)) {
+                continue;
+            } else
+            if ((timeEnd >= 0L) && (timeEnd >= timeStart) && (ts > timeEnd)) {
+                continue;
+            } else
+            if ((codes != null) && !codes.contains(new Integer(ev.getStatusCode()))) {
+                continue;
+            } else
+            if (validGPS && !_isValidGPS(ev,hasCellLoc)) {
+                continue;
+            }
+            match.add(ev);
+        }
+
+        /* selection order/limit (see "EventData._createRangeEventSelector") */
+        boolean selAscending = ascending;
+        if ((limit > 0L) && ((limitType == null) || EventData.LimitType.LAST.equals(limitType))) {
+            selAscending = false;
+        }
+        if (!selAscending) {
+            Collections.reverse(match);
+        }
+        if ((limit > 0L) && (match.size() > limit)) {
+            match = match.subList(0, (int)limit);
+        }
+
+        /* handle records (see "DBRecord.select") */
+        java.util.List<EventData> rcdList = new Vector<EventData>();
+        EventData lastRcd = null;
+        for (EventData ev : match) {
+            EventData rcd = _copy(ev);
+            if (rcdHandler != null) {
+                int rcdStatus = rcdHandler.handleDBRecord(rcd);
+                if (rcdStatus == DBRecordHandler.DBRH_STOP) {
+                    break;
+                } else
+                if (rcdStatus == DBRecordHandler.DBRH_SAVE) {
+                    rcdList.add(rcd);
+                } else
+                if (rcdStatus == DBRecordHandler.DBRH_SAVE_STOP) {
+                    rcdList.add(rcd);
+                    break;
+                } else
+                if (rcdStatus == DBRecordHandler.DBRH_SAVE_LAST) {
+                    if (lastRcd != null) { rcdList.add(lastRcd); }
+                } else
+                if (rcdStatus == DBRecordHandler.DBRH_SAVE_LAST_STOP) {
+                    if (lastRcd != null) { rcdList.add(lastRcd); }
+                    break;
+                }
+            } else {
+                rcdList.add(rcd);
+            }
+            lastRcd = rcd;
+        }
+
+        /* requested order */
+        if (selAscending != ascending) {
+            Collections.reverse(rcdList);
+        }
+        return rcdList.toArray(new EventData[rcdList.size()]);
+
+    }
+
+    // ------------------------------------------------------------------------
+
+}
@@ -0,0 +1,406 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Command-line benchmark which runs the 'reports.xml' reports over an Account
+//  (ie. the data created by "org.opengts.tools.SyntheticDataGenerator"), and
+//  records, for each report, the wall time, rows/second, peak heap usage, and
+//  number of executed SQL statements.  Report output is discarded (only the
+//  number of bytes written is recorded).  Results are displayed, and optionally
+//  written in CSV format to the "-out" file.
+//  The ReportCache is disabled by default (see "-cache"), so that each run
+//  measures report generation rather than a cached result.
+// ----------------------------------------------------------------------------
+package org.opengts.war.report;
+
+import java.util.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+import org.opengts.db.*;
+import org.opengts.db.tables.*;
+
+import org.opengts.war.tools.*;
+
+public class ReportBenchmark
+{
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Benchmark result for a single report
+    **/
+    public static class Result
+    {
+        private String  reportName  = null;
+        private int     runs        = 0;
+        private long    rows        = 0L;
+        private long    bytes       = 0L;
+        private long    totalMS     = 0L;
+        private long    minMS       = Long.MAX_VALUE;
+        private long    peakHeap    = 0L;
+        private long    sqlCount    = 0L;
+        private String  error       = null;
+        public Result(String reportName) {
+            this.reportName = reportName;
+        }
+        public void addRun(long rows, long bytes, long deltaMS, long peakHeap, long sqlCount) {
+            this.runs++;
+            this.rows      = rows;
+            this.bytes     = bytes;
+            this.totalMS  += deltaMS;
+            this.minMS     = Math.min(this.minMS, deltaMS);
+            this.peakHeap  = Math.max(this.peakHeap, peakHeap);
+            this.sqlCount  = sqlCount;
+        }
+        public void setError(String err) {
+            this.error = err;
+        }
+        public String getReportName() {
+            return this.reportName;
+        }
+        public long getAverageMS() {
+            return (this.runs > 0)? (this.totalMS / this.runs) : 0L;
+        }
+        public double getRowsPerSecond() {
+            long avgMS = this.getAverageMS();
+            return (avgMS > 0L)? ((double)this.rows * 1000.0 / (double)avgMS) : 0.0;
+        }
+        public static String getCSVHeader() {
+            return "report,runs,rows,bytes,avgMS,minMS,rowsPerSec,peakHeapKB,sqlCount,error";
+        }
+        public String toCSV() {
+            StringBuffer sb = new StringBuffer();
+            sb.append(this.reportName).append(",");
+            sb.append(this.runs).append(",");
+            sb.append(this.rows).append(",");
+            sb.append(this.bytes).append(",");
+            sb.append(this.getAverageMS()).append(",");
+            sb.append((this.runs > 0)? this.minMS : 0L).append(",");
+            sb.append(StringTools.format(this.getRowsPerSecond(),"0.0")).append(",");
+            sb.append(this.peakHeap / 1024L).append(",");
+            sb.append(this.sqlCount).append(",");
+            sb.append((this.error != null)? StringTools.replace(this.error,","," ") : "");
+            return sb.toString();
+        }
+        public String toString() {
+            if (this.error != null) {
+                return this.reportName + ": ERROR " + this.error;
+            }
+            return this.reportName + ": rows=" + this.rows + " avgMS=" + this.getAverageMS() +
+                " minMS=" + ((this.runs > 0)? this.minMS : 0L) +
+                " rows/sec=" + StringTools.format(this.getRowsPerSecond(),"0.0") +
+                " peakHeapKB=" + (this.peakHeap / 1024L) + " sql=" + this.sqlCount;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** OutputStream which discards, and counts, the written bytes
+    **/
+    private static class CountingOutputStream
+        extends OutputStream
+    {
+        private long count = 0L;
+        public CountingOutputStream() {
+            super();
+        }
+        public void write(int b) {
+            this.count++;
+        }
+        public void write(byte b[], int off, int len) {
+            this.count += len;
+        }
+        public long getCount() {
+            return this.count;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /* reset the peak usage of all heap memory pools */
+    private static void _resetPeakHeap()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /* returns the sum of the peak usage of all heap memory pools */
+    private static long _getPeakHeap()
+    {
+        long peak = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    // ------------------------------------------------------------------------
+
+    private Account             account     = null;
+    private Device              device      = null;
+    private TimeZone            timeZone    = null;
+    private long                timeStart   = -1L;
+    private long                timeEnd     = -1L;
+    private String              format      = ReportURL.FORMAT_HTML;
+
+    /**
+    *** Constructor
+    *** @param account    The Account
+    *** @param device     The Device used for device (detail) reports
+    *** @param timeStart  The report start time
+    *** @param timeEnd    The report end time
+    *** @param format     The report format
+    **/
+    public ReportBenchmark(Account account, Device device, long timeStart, long timeEnd, String format)
+    {
+        this.account   = account;
+        this.device    = device;
+        this.timeZone  = DateTime.getTimeZone(account.getTimeZone());
+        this.timeStart = timeStart;
+        this.timeEnd   = timeEnd;
+        this.format    = format;
+    }
+
+    /* create the report for the specified factory */
+    private ReportData _createReport(ReportFactory rf)
+        throws ReportException
+    {
+        RequestProperties reqState = new RequestProperties();
+        reqState.setCurrentAccount(this.account);
+        reqState.setTimeZone(this.timeZone, null);
+        reqState.setReport(true);
+        ReportEntry re = new ReportEntry(rf, "");
+        ReportData rd;
+        if (rf.getReportTypeIsGroup()) {
+            reqState.setFleet(true);
+            ReportDeviceList rdl = new ReportDeviceList(this.account, null);
+            rdl.addAllAuthorizedDevices();
+            rd = rf.createReport(re, null, reqState, rdl);
+        } else
+        if (rf.getReportTypeIsDevice()) {
+            rd = rf.createReport(re, null, reqState, this.device);
+        } else {
+            rd = rf.createReport(re, null, reqState);
+        }
+        ReportConstraints rc = rd.getReportConstraints();
+        rc.setTimeStart(this.timeStart);
+        rc.setTimeEnd(this.timeEnd);
+        rc.setTimeZone(this.timeZone);
+        return rd;
+    }
+
+    /**
+    *** Runs the specified report
+    *** @param rf          The report factory
+    *** @param warmup      The number of runs which are not recorded
+    *** @param iterations  The number of recorded runs
+    *** @return The benchmark result
+    **/
+    public Result run(ReportFactory rf, int warmup, int iterations)
+    {
+        Result result = new Result(rf.getReportName());
+        try {
+            for (int i = 0; i < (warmup + iterations); i++) {
+                System.gc();
+                _resetPeakHeap();
+                long sqlStart = DBConnection.getExecutedSQLCount();
+                long startNS  = System.nanoTime();
+                ReportData rd = this._createReport(rf);
+                CountingOutputStream cos = new CountingOutputStream();
+                OutputProvider op = new OutputProvider(cos);
+                int rows = rd.writeReport(this.format, op);
+                if (op.hasWriter()) {
+                    op.getWriter().flush();
+                }
+                long deltaMS  = (System.nanoTime() - startNS) / 1000000L;
+                long sqlCount = DBConnection.getExecutedSQLCount() - sqlStart;
+                if (i >= warmup) {
+                    result.addRun(rows, cos.getCount(), deltaMS, _getPeakHeap(), sqlCount);
+                }
+            }
+        } catch (Throwable th) {
+            Print.logException("Report error: " + rf.getReportName(), th);
+            result.setError(th.toString());
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static final String ARG_XML[]           = new String[] { "xml"                  };
+    private static final String ARG_OUT[]           = new String[] { "out"                  };
+    private static final String ARG_REPORT[]        = new String[] { "report"   , "reports" };
+    private static final String ARG_ACCOUNT[]       = new String[] { "account"  , "a"       };
+    private static final String ARG_DEVICE[]        = new String[] { "device"   , "d"       };
+    private static final String ARG_FROM[]          = new String[] { "from"     , "fr"      };
+    private static final String ARG_TO[]            = new String[] { "to"                   };
+    private static final String ARG_DAYS[]          = new String[] { "days"                 };
+    private static final String ARG_FORMAT[]        = new String[] { "format"               };
+    private static final String ARG_WARMUP[]        = new String[] { "warmup"               };
+    private static final String ARG_ITERATIONS[]    = new String[] { "iterations", "n"      };
+    private static final String ARG_CACHE[]         = new String[] { "cache"                };
+
+    private static void usage()
+    {
+        Print.logInfo("Usage:");
+        Print.logInfo("  java ... " + ReportBenchmark.class.getName() + " {options}");
+        Print.logInfo("Options:");
+        Print.logInfo("  -account=<id>          Account [default 'bench']");
+        Print.logInfo("  -device=<id>           Device for device reports [default first device]");
+        Print.logInfo("  -report=<name>[,...]   Reports to run [default all 'reports.xml' reports]");
+        Print.logInfo("  -from=<yyyy/mm/dd>     Report start date [default 'days' before today]");
+        Print.logInfo("  -to=<yyyy/mm/dd>       Report end date [default end of yesterday]");
+        Print.logInfo("  -days=<count>          Number of days, if 'from' not specified [default 7]");
+        Print.logInfo("  -format=<format>       Report format (html|csv|xml|xlsx) [default html]");
+        Print.logInfo("  -warmup=<count>        Unrecorded runs per report [default 1]");
+        Print.logInfo("  -iterations=<count>    Recorded runs per report [default 3]");
+        Print.logInfo("  -cache=<true|false>    Enable the ReportCache [default false]");
+        Print.logInfo("  -xml=<file>            'reports.xml' file");
+        Print.logInfo("  -out=<file>            CSV results file");
+        System.exit(1);
+    }
+
+    public static void main(String argv[])
+    {
+        DBConfig.cmdLineInit(argv,true);  // main
+        File    reportXML  = RTConfig.getFile(ARG_XML, null);
+        File    output     = RTConfig.getFile(ARG_OUT, null);
+        String  accountID  = RTConfig.getString(ARG_ACCOUNT, "bench");
+        String  deviceID   = RTConfig.getString(ARG_DEVICE, null);
+        String  rptNames[] = StringTools.split(RTConfig.getString(ARG_REPORT,""),',');
+        String  format     = RTConfig.getString(ARG_FORMAT, ReportURL.FORMAT_HTML);
+        int     days       = RTConfig.getInt(ARG_DAYS, 7);
+        int     warmup     = Math.max(RTConfig.getInt(ARG_WARMUP, 1), 0);
+        int     iterations = Math.max(RTConfig.getInt(ARG_ITERATIONS, 3), 1);
+        boolean useCache   = RTConfig.getBoolean(ARG_CACHE, false);
+
+        /* ReportCache (disabled, otherwise recorded runs would time cache hits) */
+        RTConfig.setBoolean(ReportCache.PROP_ReportCache_enable, useCache);
+
+        /* load 'reports.xml' */
+        ReportFactory.ReportFactoryVars rfv = ReportFactory.loadReportDefinitionXML_file(reportXML);
+        if (rfv.hasParsingErrors() || (rfv.getCount() <= 0)) {
+            Print.logError("Unable to load reports: " + rfv.getXMLFile());
+            usage();
+        }
+
+        /* Account/Device */
+        Account account = null;
+        Device  device  = null;
+        try {
+            account = Account.getAccount(accountID);
+            if (account == null) {
+                Print.logError("Account not found: " + accountID);
+                usage();
+            }
+            if (StringTools.isBlank(deviceID)) {
+                OrderedSet<String> devIDs = Device.getDeviceIDsForAccount(accountID, null, false, 1L);
+                deviceID = !ListTools.isEmpty(devIDs)? devIDs.get(0) : null;
+            }
+            device = !StringTools.isBlank(deviceID)? Device.getDevice(account, deviceID) : null;
+            if (device == null) {
+                Print.logError("Device not found: " + accountID + "/" + deviceID);
+                usage();
+            }
+        } catch (DBException dbe) {
+            Print.logException("Error reading Account/Device", dbe);
+            System.exit(1);
+        }
+
+        /* time range */
+        TimeZone tz = DateTime.getTimeZone(account.getTimeZone());
+        DateTime now = new DateTime(tz);
+        long timeEnd   = now.getDayStart(tz) - 1L;
+        long timeStart = now.getDayStart(tz) - ((long)days * DateTime.DaySeconds(1));
+        try {
+            if (RTConfig.hasProperty(ARG_FROM)) {
+                timeStart = DateTime.parseArgumentDate(RTConfig.getString(ARG_FROM,""), tz, false).getTimeSec();
+            }
+            if (RTConfig.hasProperty(ARG_TO)) {
+                timeEnd = DateTime.parseArgumentDate(RTConfig.getString(ARG_TO,""), tz, true).getTimeSec();
+            }
+        } catch (Throwable th) { // DateParseException, NullPointerException
+            Print.logError("Invalid date range: " + th);
+            usage();
+        }
+
+        /* selected reports */
+        java.util.List<ReportFactory> rfList = new Vector<ReportFactory>();
+        if (ListTools.isEmpty(rptNames) || StringTools.isBlank(rptNames[0])) {
+            rfList.addAll(rfv.getReportFactories());
+        } else {
+            for (String name : rptNames) {
+                ReportFactory rf = rfv.getReportFactory(name.trim());
+                if (rf == null) {
+                    Print.logError("Report not found: " + name);
+                    usage();
+                }
+                rfList.add(rf);
+            }
+        }
+
+        /* run */
+        Print.logInfo("Benchmark: account=" + accountID + " device=" + deviceID +
+            " range=" + new DateTime(timeStart,tz) + " .. " + new DateTime(timeEnd,tz) +
+            " format=" + format + " warmup=" + warmup + " iterations=" + iterations +
+            " cache=" + useCache);
+        ReportBenchmark bench = new ReportBenchmark(account, device, timeStart, timeEnd, format);
+        java.util.List<Result> results = new Vector<Result>();
+        for (ReportFactory rf : rfList) {
+            Result r = bench.run(rf, warmup, iterations);
+            Print.logInfo(r.toString());
+            results.add(r);
+        }
+        long defLoads = EventData.getFactory().getDeferredLoadCount();
+        if (defLoads > 0L) {
+            Print.logWarn("EventData deferred field reloads: " + defLoads + " " + 
+                EventData.getFactory().getDeferredLoadFields());
+        }
+
+        /* CSV results */
+        if (output != null) {
+            PrintWriter pw = null;
+            try {
+                pw = new PrintWriter(new FileOutputStream(output));
+                pw.println(Result.getCSVHeader());
+                for (Result r : results) {
+                    pw.println(r.toCSV());
+                }
+                Print.logInfo("Wrote results: " + output);
+            } catch (IOException ioe) {
+                Print.logError("Unable to write results: " + output + " [" + ioe + "]");
+            } finally {
+                if (pw != null) { pw.close(); }
+            }
+        }
+        System.exit(0);
+
+    }
+
+}
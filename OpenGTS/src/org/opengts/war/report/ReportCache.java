@@ -0,0 +1,287 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Cache of per-device report results (see "ReportData.collectDeviceData").
+//  - Entries are keyed by the report definition (class, name, type, properties),
+//    report constraints, time range, time zone, device, and the device settings
+//    used by the report (see "CacheableDeviceDataCollector.getDeviceSettingsKey").
+//    The Account/Device "lastUpdateTime" is not part of the key, since it changes
+//    with every event received from the device.  The locale is not part of the
+//    key, since the cached data is formatted when the report is rendered.
+//  - Only ranges which end in the past are cached.
+//  - Each entry records a signature of the device EventData records within its
+//    time range (record count, latest creation time, and blank address count, see
+//    "EventData.getDeviceRangeSignatures").  The signatures for all devices in a
+//    report are read before the report is collected, and an entry is only used if
+//    its signature is unchanged.  Events inserted into, or deleted from, the range,
+//    and blank addresses filled in (ie. by "EventAddressBackfill"), by any process,
+//    therefore invalidate only the entries for the affected device and range.
+//  - Nothing is cached if the signatures cannot be read (ie. "COUNT(*)" is not
+//    allowed for the EventData table, see "EventData.allowInnoDBCountWithWhere").
+//  - The cache is bounded by the estimated memory size of the cached data, and
+//    the least recently used entries are discarded first.
+// ----------------------------------------------------------------------------
+package org.opengts.war.report;
+
+import java.util.*;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+import org.opengts.db.*;
+import org.opengts.db.tables.*;
+
+public class ReportCache
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final String  PROP_ReportCache_enable        = "ReportCache.enable";
+    public  static final String  PROP_ReportCache_maximumSize   = "ReportCache.maximumSize";
+    private static final String  PROP_cacheResults              = "cacheResults";
+
+    private static final long    DFT_MAXIMUM_SIZE               = 32L * 1024L * 1024L; // bytes
+
+    /* signature of a device with no events in range */
+    private static final String  EMPTY_SIGNATURE                = "0:0:0";
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Per-device data collector whose results may be cached
+    **/
+    public interface CacheableDeviceDataCollector<T>
+        extends ReportData.DeviceDataCollector<T>
+    {
+        /* returns the estimated memory size (bytes) of the collected device data, or
+        ** '-1' if the data should not be cached */
+        public long getEstimatedSize(T data);
+        /* returns a key representing the Device settings used to collect the device
+        ** data (ie. ignition status codes), included in the cache key */
+        public String getDeviceSettingsKey(Device device);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Cache entry
+    **/
+    private static class CacheEntry
+    {
+        private String  signature   = null;
+        private Object  data        = null;
+        private long    size        = 0L;
+        public CacheEntry(String signature, Object data, long size) {
+            this.signature = signature;
+            this.data      = data;
+            this.size      = size;
+        }
+    }
+
+    private static Map<String,CacheEntry> cacheMap  = new LinkedHashMap<String,CacheEntry>(64, 0.75f, true);
+    private static long                   cacheSize = 0L;
+    private static long                   hitCount  = 0L;
+    private static long                   missCount = 0L;
+
+    /**
+    *** Returns the maximum estimated memory size of the cache
+    **/
+    public static long GetMaximumSize()
+    {
+        return RTConfig.getLong(PROP_ReportCache_maximumSize, DFT_MAXIMUM_SIZE);
+    }
+
+    /**
+    *** Gets the cached data for the specified key, if the signature matches
+    **/
+    private static Object _get(String key, String signature)
+    {
+        synchronized (ReportCache.cacheMap) {
+            CacheEntry ce = ReportCache.cacheMap.get(key);
+            if (ce == null) {
+                ReportCache.missCount++;
+                return null;
+            } else
+            if (!ce.signature.equals(signature)) {
+                // -- events inserted/deleted within range
+                ReportCache.cacheMap.remove(key);
+                ReportCache.cacheSize -= ce.size;
+                ReportCache.missCount++;
+                return null;
+            } else {
+                ReportCache.hitCount++;
+                return ce.data;
+            }
+        }
+    }
+
+    /**
+    *** Adds the specified data to the cache, discarding the least recently used entries
+    *** to remain within the maximum size
+    **/
+    private static void _put(String key, String signature, Object data, long size)
+    {
+        long maxSize = ReportCache.GetMaximumSize();
+        if ((data == null) || (size < 0L) || (size > (maxSize / 4L))) {
+            return; // not cached
+        }
+        synchronized (ReportCache.cacheMap) {
+            CacheEntry old = ReportCache.cacheMap.put(key, new CacheEntry(signature, data, size));
+            if (old != null) {
+                ReportCache.cacheSize -= old.size;
+            }
+            ReportCache.cacheSize += size;
+            for (Iterator<CacheEntry> i = ReportCache.cacheMap.values().iterator(); (ReportCache.cacheSize > maxSize) && i.hasNext();) {
+                CacheEntry ce = i.next();
+                i.remove();
+                ReportCache.cacheSize -= ce.size;
+            }
+        }
+    }
+
+    /**
+    *** Removes all cache entries
+    **/
+    public static void Clear()
+    {
+        synchronized (ReportCache.cacheMap) {
+            ReportCache.cacheMap.clear();
+            ReportCache.cacheSize = 0L;
+        }
+    }
+
+    /**
+    *** Returns a String containing the cache statistics
+    **/
+    public static String GetStatistics()
+    {
+        synchronized (ReportCache.cacheMap) {
+            return "ReportCache: entries=" + ReportCache.cacheMap.size() +
+                " size=" + ReportCache.cacheSize + "/" + ReportCache.GetMaximumSize() +
+                " hits=" + ReportCache.hitCount + " misses=" + ReportCache.missCount;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if the results of the specified report may be cached (the cache is
+    *** enabled, and the report time range ends in the past)
+    **/
+    public static boolean IsCacheable(ReportData rd)
+    {
+        if (rd == null) {
+            return false;
+        } else
+        if (!RTConfig.getBoolean(PROP_ReportCache_enable,true)) {
+            return false;
+        } else
+        if (!rd.getProperties().getBoolean(PROP_cacheResults,true)) {
+            return false;
+        } else
+        if (rd.getAccount() == null) {
+            return false;
+        }
+        long timeEnd = rd.getTimeEnd();
+        return ((timeEnd > 0L) && (timeEnd < DateTime.getCurrentTimeSec()));
+    }
+
+    /**
+    *** Gets the cache key for the report definition, constraints, and time zone
+    **/
+    private static String _getReportKey(ReportData rd)
+    {
+        ReportConstraints rc = rd.getReportConstraints();
+        Account acct = rd.getAccount();
+        StringBuffer sb = new StringBuffer();
+        sb.append(rd.getClass().getName()).append("|");
+        sb.append(rd.getReportName()).append("|");
+        sb.append(rd.getReportType()).append("|");
+        sb.append(rd.getProperties().toString()).append("|");
+        sb.append(rc.toString()).append("|");
+        sb.append(rc.getRuleSelector()).append("|");
+        sb.append(StringTools.join(rc.getStatusCodes(),",")).append("|");
+        sb.append(rc.getOrderAscending()).append("|");
+        sb.append(rd.getTimeZoneString()).append("|");
+        sb.append(acct.getAccountID());
+        return FileTools.getHash_SHA1(StringTools.getBytes(sb.toString()));
+    }
+
+    /**
+    *** Returns a collector which returns the cached device data if available, otherwise
+    *** collects and caches the device data using the specified collector.  Returns the
+    *** specified collector if the report results may not be cached.
+    *** @param rd         The report
+    *** @param collector  The per-device data collector
+    *** @param devIDs     The report device IDs
+    *** @return The caching collector
+    **/
+    public static <T> ReportData.DeviceDataCollector<T> GetCachingCollector(
+        ReportData rd,
+        ReportData.DeviceDataCollector<T> collector,
+        java.util.List<String> devIDs)
+    {
+        if (!(collector instanceof CacheableDeviceDataCollector) || !ReportCache.IsCacheable(rd)) {
+            return collector;
+        }
+
+        /* device event signatures */
+        final Map<String,String> sigMap;
+        try {
+            sigMap = EventData.getDeviceRangeSignatures(rd.getAccountID(), devIDs, rd.getTimeStart(), rd.getTimeEnd());
+        } catch (DBException dbe) {
+            Print.logException("Unable to read EventData signatures, not cached", dbe);
+            return collector;
+        }
+        if (sigMap == null) {
+            // -- signatures not available, not cached
+            return collector;
+        }
+
+        /* caching collector */
+        final CacheableDeviceDataCollector<T> cacheable = (CacheableDeviceDataCollector<T>)collector;
+        final String reportKey = ReportCache._getReportKey(rd);
+        return new ReportData.DeviceDataCollector<T>() {
+            @SuppressWarnings("unchecked")
+            public T collectDeviceData(ReportData wrd, Device device) throws DBException {
+                String key = reportKey + "|" + device.getDeviceID() + "|" + cacheable.getDeviceSettingsKey(device);
+                String sig = sigMap.get(device.getDeviceID());
+                if (sig == null) {
+                    sig = EMPTY_SIGNATURE;
+                }
+                Object data = ReportCache._get(key, sig);
+                if (data != null) {
+                    return (T)data;
+                }
+                T devData = cacheable.collectDeviceData(wrd, device);
+                if (devData != null) {
+                    ReportCache._put(key, sig, devData, cacheable.getEstimatedSize(devData));
+                }
+                return devData;
+            }
+            public int getRecordCount(T data) {
+                return cacheable.getRecordCount(data);
+            }
+        };
+
+    }
+
+    // ------------------------------------------------------------------------
+
+}
@@ -135,6 +135,7 @@ public class ReportConstraints
             this.setRuleSelector(rc.getRuleSelector());
             this.setStatusCodes(rc.getStatusCodes());
             this.setOrderAscending(rc.getOrderAscending());
+            this.setEmailAddresses(rc.getEmailAddresses());
         }
     }
 
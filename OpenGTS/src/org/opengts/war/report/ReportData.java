@@ -60,6 +60,7 @@ import org.opengts.war.report.ReportFactory;
 import org.opengts.war.report.ReportColumn;
 
 public abstract class ReportData
+    implements Cloneable
 {
 
     // ------------------------------------------------------------------------
@@ -83,6 +84,34 @@ public abstract class ReportData
     private static final String  PROP_loginAgeColorRange           = "loginAgeColorRange";
     private static final String  PROP_loginAgeColorRange_array     = "loginAgeColorRange.array";
 
+    /* streamed EventData retrieval (runtime config default, may be overridden by report property) */
+    public  static final String  PROP_ReportData_streamEventData   = "ReportData.streamEventData";
+    public  static final String  PROP_ReportData_streamChunkSize   = "ReportData.streamChunkSize";
+    private static final String  PROP_streamEventData              = "streamEventData";
+    private static final String  PROP_streamChunkSize              = "streamChunkSize";
+    private static final long    DFT_STREAM_CHUNK_SIZE             = 2000L;
+    private static final long    MIN_STREAM_CHUNK_SIZE             = 100L;
+
+    /* parallel per-device data collection (runtime config default, may be overridden by report property) */
+    public  static final String  PROP_ReportData_parallelDevices   = "ReportData.parallelDevices";
+    private static final String  PROP_parallelDevices              = "parallelDevices";
+    private static final int     DFT_PARALLEL_DEVICES              = 4;
+
+    /* per-device data collection ThreadPool (shared by all reports, bounds the DB connections used) */
+    // ReportData.ThreadPool.DeviceCollection.maximumPoolSize=8
+    // ReportData.ThreadPool.DeviceCollection.maximumIdleSeconds=120
+    // ReportData.ThreadPool.DeviceCollection.maximumQueueSize=0
+    private static final RTKey   PROP_ThreadPool_ReportDevice_     = RTKey.valueOf(RTKey.ThreadPool_ReportDevice_);
+    private static final int     ThreadPool_ReportDevice_Size      =   8;   // max threads (DB connections)
+    private static final int     ThreadPool_ReportDevice_IdleSec   = 120;   // trim idle threads
+    private static final int     ThreadPool_ReportDevice_QueSize   =   0;   // max queue size
+    private static ThreadPool    ThreadPool_ReportDevice           = new ThreadPool(
+        "ReportDeviceCollection",
+        PROP_ThreadPool_ReportDevice_, // property allowing default override
+        ThreadPool_ReportDevice_Size,
+        ThreadPool_ReportDevice_IdleSec,
+        ThreadPool_ReportDevice_QueSize);
+
     // ------------------------------------------------------------------------
 
     public  static final String  FORMAT_MAP                        = "map";
@@ -134,6 +163,9 @@ public abstract class ReportData
 
     private Object/*ReportJob*/ rptJob              = null;
 
+    private ReportBatch         rptBatch            = null;
+    private ReportData          rptBatchReport      = null; // batch report (device workers are copies)
+
     private PrivateLabel        privLabel           = null;
     private RequestProperties   reqState            = null;
     private Account             account             = null;
@@ -357,6 +389,46 @@ public abstract class ReportData
         return this.reqState; // never null
     }
 
+    /**
+    *** Sets the batch in which this report is executed (see "ReportBatch")
+    **/
+    public void setReportBatch(ReportBatch batch)
+    {
+        this.rptBatch       = batch;
+        this.rptBatchReport = (batch != null)? this : null;
+    }
+
+    /**
+    *** Gets the batch in which this report is executed (null if not part of a batch)
+    **/
+    public ReportBatch getReportBatch()
+    {
+        return this.rptBatch;
+    }
+
+    /**
+    *** Returns true if this report may widen its status code and valid-GPS constraints
+    *** when its EventData records are read (see "ReportBatch").  Shared batch records
+    *** for such reports are selected for all status codes, regardless of GPS validity.
+    **/
+    public boolean getWidensEventConstraints()
+    {
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sets the RequestProperties instance (ie. when the report is generated after the
+    *** servlet request has completed, see "ReportJobQueue")
+    **/
+    public void setRequestProperties(RequestProperties reqState)
+    {
+        if (reqState != null) {
+            this.reqState = reqState;
+        }
+    }
+
     /**
     *** Returns true if this is a "SOAP" request
     **/
@@ -1075,55 +1147,351 @@ public abstract class ReportData
     *** @return An array of EventData records for the device (may be null if a callback
     ***         DBRecordHandler has been specified).
     **/
-    protected EventData[] getEventData_DeviceList(DBRecordHandler<EventData> rcdHandler)
+    protected EventData[] getEventData_DeviceList(final DBRecordHandler<EventData> rcdHandler)
     {
         long rptLimit = this.getReportLimit(); // report record limit
 
+        /* collect EventData records for each device */
+        // -- devices are read in parallel only if there is no callback DBRecordHandler (which
+        // -  may not be thread-safe), and if the report allows it (see "getParallelDeviceCount")
+        java.util.List<EventData[]> devEvents = this.collectDeviceData(
+            new DeviceDataCollector<EventData[]>() {
+                public EventData[] collectDeviceData(ReportData rd, Device device) throws DBException {
+                    return rd._getEventData_Device(device, null, rcdHandler); // may be empty
+                }
+                public int getRecordCount(EventData ed[]) {
+                    return ListTools.size(ed);
+                }
+            }, (rcdHandler == null));
+
         /* EventData record accumulator */
         java.util.List<EventData> edList = new Vector<EventData>();
+        for (EventData ed[] : devEvents) {
+            if (rptLimit < 0L) {
+                // -- no limit: add all of new EventData records to list
+                ListTools.toList(ed, edList);
+            } else {
+                int maxRcds = (int)rptLimit - edList.size();
+                if (maxRcds <= 0) {
+                    break;
+                } else
+                if (ed.length <= maxRcds) {
+                    // -- under limit: add all of new EventData records to list
+                    ListTools.toList(ed, edList);
+                } else {
+                    // -- clip to limit
+                    ListTools.toList(ed, 0, maxRcds, edList);
+                }
+            }
+        }
+        return edList.toArray(new EventData[edList.size()]);
+    }
+
+    // ------------------------------------------------------------------------
+    // per-device data collection
 
-        /* iterate through devices */
+    /**
+    *** Updates the progress of the ReportJobQueue job generating this report (if any)
+    *** @param done   The number of devices collected
+    *** @param total  The total number of devices
+    *** @return False if the job has been cancelled (collection should stop)
+    **/
+    protected boolean updateJobProgress(int done, int total)
+    {
+        ReportJobQueue.Job job = ReportJobQueue.GetCurrentJob();
+        if (job == null) {
+            return true;
+        }
+        job.setProgress(done, total);
+        return !job.isCancelled();
+    }
+
+    /**
+    *** Collects the report data for a single device (see "collectDeviceData").<br>
+    *** When devices are collected in parallel, each device is collected using a separate
+    *** copy of the ReportData instance (see "createDeviceWorker"), so per-device state held
+    *** in the ReportData instance is not shared between devices.
+    **/
+    public interface DeviceDataCollector<T>
+    {
+        /* collects the data for the specified device, using the specified ReportData instance */
+        public T collectDeviceData(ReportData rd, Device device) throws DBException;
+        /* returns the number of report records in the collected device data */
+        public int getRecordCount(T data);
+    }
+
+    /**
+    *** Returns true if this report supports collecting device data in parallel (ie. all
+    *** per-device state is reset for each device, and the per-device collection does not
+    *** modify objects shared with other devices).  The default is false.  A report may also
+    *** explicitly enable/disable parallel collection with the "parallelDevices" property.
+    **/
+    protected boolean getSupportsParallelDevices()
+    {
+        return false;
+    }
+
+    /**
+    *** Returns the maximum number of devices collected in parallel by this report (1 if the
+    *** devices are to be collected sequentially)
+    **/
+    public int getParallelDeviceCount()
+    {
+        RTProperties rtp = this.getProperties();
+        int dft = this.getSupportsParallelDevices()? RTConfig.getInt(PROP_ReportData_parallelDevices,DFT_PARALLEL_DEVICES) : 1;
+        int count = rtp.getInt(PROP_parallelDevices, dft);
+        return Math.max(Math.min(count, ThreadPool_ReportDevice.getMaxPoolSize()), 1);
+    }
+
+    /**
+    *** Creates a copy of this ReportData instance used to collect the data for a single device
+    *** in parallel with other devices.  The default is a shallow copy, with a separate copy of
+    *** the ReportConstraints (which reports may adjust per device, see "getEventData_Device").
+    *** Subclasses which modify other shared objects per device must override this method
+    *** to copy those objects as well.
+    **/
+    protected ReportData createDeviceWorker()
+    {
+        try {
+            ReportData rd = (ReportData)super.clone();
+            rd.eventDataCount    = 0;
+            rd.eventMatchCount   = 0;
+            rd.maxEventDataCount = 0;
+            if (this.rptConstraints != null) {
+                rd.rptConstraints = (ReportConstraints)this.rptConstraints.clone();
+            }
+            return rd;
+        } catch (CloneNotSupportedException cnse) {
+            return null; // will not occur
+        }
+    }
+
+    /**
+    *** Collects the report data for each device in the ReportDeviceList, in parallel if
+    *** supported by this report (see "getParallelDeviceCount").  Collection stops once the
+    *** leading devices already collected account for "getReportLimit()" records.
+    *** @param collector      The per-device data collector
+    *** @param allowParallel  False to force sequential collection
+    *** @return The collected (non-null) device data, in ReportDeviceList order
+    **/
+    protected <T> java.util.List<T> collectDeviceData(DeviceDataCollector<T> collector, boolean allowParallel)
+    {
+        long rptLimit = this.getReportLimit(); // report record limit
+        java.util.List<T> dataList = new Vector<T>();
         this.maxEventDataCount = 0;
+
+        /* devices */
         ReportDeviceList devList = this.getReportDeviceList();
-        for (Iterator<String> i = devList.iterator(); i.hasNext();) {
-            String devID = i.next();
-            this.eventDataCount  = 0; // per device
-            this.eventMatchCount = 0; // per device
-
-            /* have we reached our limit? */
-            if ((rptLimit >= 0L) && (edList.size() >= rptLimit)) {
-                break;
+        java.util.List<String> devIDs = new Vector<String>();
+        if (devList != null) {
+            for (Iterator<String> i = devList.iterator(); i.hasNext();) {
+                devIDs.add(i.next());
+            }
+        }
+        int parallel = allowParallel? Math.min(this.getParallelDeviceCount(), devIDs.size()) : 1;
+
+        /* cached device data (see "ReportCache") */
+        collector = ReportCache.GetCachingCollector(this, collector, devIDs);
+
+        /* sequential */
+        if (parallel <= 1) {
+            long rcdCount = 0L;
+            int  devCount = 0;
+            for (String devID : devIDs) {
+                if ((rptLimit >= 0L) && (rcdCount >= rptLimit)) {
+                    break; // report limit reached
+                }
+                if (!this.updateJobProgress(devCount++, devIDs.size())) {
+                    break; // report job cancelled
+                }
+                this.eventDataCount  = 0; // per device
+                this.eventMatchCount = 0; // per device
+                try {
+                    Device device = devList.getDevice(devID);
+                    T data = (device != null)? collector.collectDeviceData(this, device) : null;
+                    if (data != null) {
+                        dataList.add(data);
+                        rcdCount += collector.getRecordCount(data);
+                    }
+                } catch (DBException dbe) {
+                    Print.logError("Error retrieving EventData for Device: " + devID);
+                }
+                if (this.eventDataCount > this.maxEventDataCount) {
+                    this.maxEventDataCount = this.eventDataCount;
+                }
             }
-            // -- there is room for at least one more record
+            return dataList;
+        }
 
-            /* get device records */
-            try {
-                Device device  = devList.getDevice(devID);
-                EventData ed[] = this._getEventData_Device(device, null, rcdHandler); // may be empty
-                if (rptLimit < 0L) {
-                    // -- no limit: add all of new EventData records to list
-                    ListTools.toList(ed, edList);
-                } else {
-                    int maxRcds = (int)rptLimit - edList.size(); // > 0
-                    if (ed.length <= maxRcds) {
-                        // -- under limit: add all of new EventData records to list
-                        ListTools.toList(ed, edList);
+        /* parallel */
+        DeviceCollection<T> dc = new DeviceCollection<T>(this, collector, devIDs.size(), rptLimit);
+        int next = 0;
+        synchronized (dc) {
+            while (true) {
+                boolean active = this.updateJobProgress(dc.getDoneCount(), devIDs.size());
+                while (active && (dc.running < parallel) && (next < devIDs.size()) && !dc.isLimitReached()) {
+                    int    ndx   = next++;
+                    String devID = devIDs.get(ndx);
+                    Device device = null;
+                    try {
+                        device = devList.getDevice(devID); // read here, ReportDeviceList is not thread-safe
+                    } catch (DBException dbe) {
+                        Print.logError("Error retrieving EventData for Device: " + devID);
+                    }
+                    if (device == null) {
+                        dc.setDeviceData(ndx, null, 0); // skip
+                    } else
+                    if (ThreadPool_ReportDevice.run(dc.createJob(ndx, device))) {
+                        dc.running++;
                     } else {
-                        // -- clip to limit
-                        ListTools.toList(ed, 0, maxRcds, edList);
+                        // -- job queue is full, collect in this thread
+                        dc.runJob(ndx, device);
                     }
                 }
-            } catch (DBException dbe) {
-                Print.logError("Error retrieving EventData for Device: " + devID);
+                if (dc.running <= 0) {
+                    break;
+                }
+                try { dc.wait(); } catch (InterruptedException ie) { /* continue */ }
             }
+        }
+        if (dc.getMaxEventDataCount() > this.maxEventDataCount) {
+            this.maxEventDataCount = dc.getMaxEventDataCount();
+        }
+        return dc.getDataList(dataList);
 
-            /* maximum selected EventData records */
-            if (this.eventDataCount > this.maxEventDataCount) {
-                this.maxEventDataCount = this.eventDataCount;
-            }
+    }
 
+    /**
+    *** State for a parallel "collectDeviceData" (all fields are guarded by this instance)
+    **/
+    private static class DeviceCollection<T>
+    {
+        private ReportData             report            = null;
+        private DeviceDataCollector<T> collector         = null;
+        private Object                 data[]            = null;
+        private int                    rcdCount[]        = null;
+        private boolean                done[]            = null;
+        private long                   rptLimit          = -1L;
+        private int                    maxEventDataCount = 0;
+        public  int                    running           = 0;
+        public DeviceCollection(ReportData rd, DeviceDataCollector<T> collector, int devCount, long rptLimit) {
+            this.report    = rd;
+            this.collector = collector;
+            this.data      = new Object[devCount];
+            this.rcdCount  = new int[devCount];
+            this.done      = new boolean[devCount];
+            this.rptLimit  = rptLimit;
+        }
+        /* returns true if the leading completed devices account for the report limit */
+        public synchronized boolean isLimitReached() {
+            if (this.rptLimit < 0L) {
+                return false;
+            }
+            long count = 0L;
+            for (int i = 0; (i < this.done.length) && this.done[i]; i++) {
+                count += this.rcdCount[i];
+                if (count >= this.rptLimit) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        public synchronized int getMaxEventDataCount() {
+            return this.maxEventDataCount;
+        }
+        public synchronized int getDoneCount() {
+            int count = 0;
+            for (int i = 0; i < this.done.length; i++) {
+                if (this.done[i]) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        public synchronized void setDeviceData(int ndx, T devData, int eventDataCount) {
+            this.data[ndx]     = devData;
+            this.rcdCount[ndx] = (devData != null)? this.collector.getRecordCount(devData) : 0;
+            this.done[ndx]     = true;
+            if (eventDataCount > this.maxEventDataCount) {
+                this.maxEventDataCount = eventDataCount;
+            }
+        }
+        /* collects the specified device using a copy of the report */
+        public void runJob(int ndx, Device device) {
+            ReportData worker = this.report.createDeviceWorker();
+            T devData = null;
+            try {
+                devData = this.collector.collectDeviceData(worker, device);
+            } catch (DBException dbe) {
+                Print.logError("Error retrieving EventData for Device: " + device.getDeviceID());
+            } catch (Throwable th) {
+                Print.logException("Error collecting report data for Device: " + device.getDeviceID(), th);
+            }
+            this.setDeviceData(ndx, devData, worker.eventDataCount);
+        }
+        public Runnable createJob(final int ndx, final Device device) {
+            return new Runnable() {
+                public void run() {
+                    DeviceCollection.this.runJob(ndx, device);
+                    synchronized (DeviceCollection.this) {
+                        DeviceCollection.this.running--;
+                        DeviceCollection.this.notifyAll();
+                    }
+                }
+            };
+        }
+        /* returns the collected data in device order, up to the report limit */
+        @SuppressWarnings("unchecked")
+        public synchronized java.util.List<T> getDataList(java.util.List<T> list) {
+            long count = 0L;
+            for (int i = 0; (i < this.done.length) && this.done[i]; i++) {
+                if ((this.rptLimit >= 0L) && (count >= this.rptLimit)) {
+                    break;
+                }
+                if (this.data[i] != null) {
+                    list.add((T)this.data[i]);
+                    count += this.rcdCount[i];
+                }
+            }
+            return list;
         }
-        return edList.toArray(new EventData[edList.size()]);
+    }
+
+    // ------------------------------------------------------------------------
+    // streamed EventData record retrieval
+
+    /**
+    *** Returns true if EventData records for the ReportDeviceList should be read and rendered
+    *** incrementally (see "getEventDataIterator_DeviceList"), rather than accumulated into
+    *** a single array for all devices.
+    **/
+    public boolean getStreamEventData()
+    {
+        boolean dft = RTConfig.getBoolean(PROP_ReportData_streamEventData, true);
+        return this.getProperties().getBoolean(PROP_streamEventData, dft);
+    }
+
+    /**
+    *** Returns the maximum number of EventData records read from the database in a single
+    *** query when EventData records are streamed
+    **/
+    public long getStreamChunkSize()
+    {
+        long dft = RTConfig.getLong(PROP_ReportData_streamChunkSize, DFT_STREAM_CHUNK_SIZE);
+        long chunk = this.getProperties().getLong(PROP_streamChunkSize, dft);
+        return Math.max(chunk, MIN_STREAM_CHUNK_SIZE);
+    }
+
+    /**
+    *** Returns an iterator over the EventData records for the predefined ReportDeviceList and
+    *** constraints.  Records are read one device at a time, in chunks of at most
+    *** "getStreamChunkSize()" records, as the iterator is consumed.  The records returned are
+    *** the same as those returned by "getEventData_DeviceList(null)".
+    *** @return The EventData row data iterator
+    **/
+    protected DBDataIterator getEventDataIterator_DeviceList()
+    {
+        return new EventDataStreamIterator();
     }
 
     /**
@@ -1203,14 +1571,56 @@ public abstract class ReportData
         return true;
     }
 
+    /**
+    *** Returns the set of EventData fields which should be selected for this report, or
+    *** null to select all fields.  This method can be overridden by subclasses which
+    *** display the selected EventData records directly through the report column templates
+    *** (see "getColumnEventDataFields").  Fields not selected are loaded on first access.
+    *** @return The set of EventData fields to select, or null for all fields
+    **/
+    protected Set<String> getEventDataFields()
+    {
+        return null;
+    }
+
+    /**
+    *** Returns the set of EventData fields read by the columns of this report, or null
+    *** if all fields should be selected (ie. a rule selector is in effect, or a report
+    *** column does not declare the fields it reads).
+    *** @return The set of EventData fields to select, or null for all fields
+    **/
+    protected Set<String> getColumnEventDataFields()
+    {
+        if (!StringTools.isBlank(this.getRuleSelector())) {
+            // -- rule selector may reference any field
+            return null;
+        }
+        DataRowTemplate drt = this.getDataRowTemplate();
+        Set<String> fields = (drt != null)? drt.getColumnDataFields(this.getReportColumns()) : null;
+        return (fields != null)? EventData.getSelectFields(fields) : null;
+    }
+
     // ------------------------------------------------------------------------
     // read EventData records (based on Device)
 
     private static class LastEventData
     {
-        private EventData event = null;
-        public void setEvent(EventData ev) { this.event = ev; }
+        private EventData    event      = null;
+        private long         readCount  = 0L;
+        private Set<Integer> lastCodes  = new HashSet<Integer>(); // status codes read at the last timestamp
+        public void setEvent(EventData ev) {
+            if (ev != null) {
+                if ((this.event == null) || (this.event.getTimestamp() != ev.getTimestamp())) {
+                    this.lastCodes.clear();
+                }
+                this.lastCodes.add(new Integer(ev.getStatusCode()));
+                this.readCount++;
+            }
+            this.event = ev;
+        }
         public EventData getEvent() { return this.event; }
+        public long getReadCount() { return this.readCount; }
+        public Set<Integer> getLastTimestampStatusCodes() { return this.lastCodes; }
     }
 
     /**
@@ -1248,6 +1658,26 @@ public abstract class ReportData
         long timeStart, long timeEnd,
         String addtlWhereSelect_1,
         final DBRecordHandler<EventData> rcdHandler)
+    {
+        return this._getEventData_Device(deviceDB,
+            timeStart, timeEnd,
+            addtlWhereSelect_1,
+            this.getSelectionLimitType(), this.getSelectionLimit(),
+            new LastEventData(),
+            rcdHandler);
+    }
+
+    /**
+    *** Returns an array EventData records for the specified Device
+    *** @param lastEDR   The last EventData record read.  Continues the previous-event chain
+    ***                  from a prior call, and is updated with each EventData record read.
+    **/
+    private EventData[] _getEventData_Device(final Device deviceDB, 
+        long timeStart, long timeEnd,
+        String addtlWhereSelect_1,
+        EventData.LimitType limitType, long limit,
+        final LastEventData lastEDR,
+        final DBRecordHandler<EventData> rcdHandler)
     {
         String addtlWhereSelect_2 = this.getWhereSelector();
         //Print.logInfo("Additional Where #2: " + addtlWhereSelect_2);
@@ -1281,7 +1711,6 @@ public abstract class ReportData
         }
 
         /* create record handler */
-        final LastEventData lastEDR = new LastEventData(); 
         DBRecordHandler<EventData> evRcdHandler = new DBRecordHandler<EventData>() {
             public int handleDBRecord(EventData rcd) throws DBException {
                 //Print.logInfo("Read EventData: " + rcd);
@@ -1354,14 +1783,28 @@ public abstract class ReportData
         try {
             String devID = (deviceDB != null)? deviceDB.getDeviceID() : null;
             //Print.logInfo("Reading EventData: dev="+deviceDB +", ts="+timeStart +", te="+timeEnd);
-            ed = EventData.getRangeEvents(
-                accountID, devID,
-                timeStart, timeEnd,
-                this.getStatusCodes(),
-                this.getValidGPSRequired(),
-                this.getSelectionLimitType(), this.getSelectionLimit(), this.getOrderAscending(),
-                addtlWhereSelect_1, addtlWhereSelect_2,
-                evRcdHandler);
+            ReportBatch batch = this.getReportBatch();
+            if (batch != null) {
+                // -- may be read from the EventData shared by the batch reports
+                ed = batch.getRangeEvents(this.rptBatchReport,
+                    accountID, devID,
+                    timeStart, timeEnd,
+                    this.getStatusCodes(),
+                    this.getValidGPSRequired(),
+                    limitType, limit, this.getOrderAscending(),
+                    addtlWhereSelect_1, addtlWhereSelect_2,
+                    evRcdHandler);
+            } else {
+                ed = EventData.getRangeEvents(
+                    accountID, devID,
+                    timeStart, timeEnd,
+                    this.getStatusCodes(),
+                    this.getValidGPSRequired(),
+                    limitType, limit, this.getOrderAscending(),
+                    addtlWhereSelect_1, addtlWhereSelect_2,
+                    this.getEventDataFields(),
+                    evRcdHandler);
+            }
         } catch (DBException dbe) {
             Print.logException("Unable to obtain EventData records", dbe);
         }
@@ -1461,6 +1904,15 @@ public abstract class ReportData
         /* get events */
         long recordCount = 0L;
         try {
+            if (EventDailyRollup.IsEnabled() && StringTools.isBlank(this.getWhereSelector())) {
+                // -- count whole days from the daily rollups
+                // -  (the selection limit does not apply to "COUNT(*)")
+                return EventDailyRollup.getEventCount(
+                    accountID, deviceDB.getDeviceID(),
+                    timeStart, timeEnd,
+                    this.getStatusCodes(),
+                    this.getValidGPSRequired());
+            }
             recordCount = EventData.countRangeEvents(
                 accountID, deviceDB.getDeviceID(),
                 timeStart, timeEnd,
@@ -1907,6 +2359,169 @@ public abstract class ReportData
 
     }
 
+    /**
+    *** This is an implementation of DBDataIterator that reads the EventData records for the
+    *** ReportDeviceList incrementally (see "getEventDataIterator_DeviceList").<br>
+    *** Each device is read in ascending order in chunks of "getStreamChunkSize()" records,
+    *** each chunk continuing after the last record read (by timestamp, excluding status codes
+    *** already read at that timestamp).  Reports which select the last N events, or in
+    *** descending order, are read one device at a time.
+    **/
+    protected class EventDataStreamIterator
+        implements DBDataIterator
+    {
+        private Iterator<String> devIter    = null;
+        private int              devCount   = 0;
+        private int              devTotal   = 0;
+        private long             rptLimit   = -1L;
+        private long             selLimit   = -1L;
+        private long             chunkSize  = DFT_STREAM_CHUNK_SIZE;
+        private boolean          chunked    = false;
+        private long             rptCount   = 0L;
+        private Device           device     = null;
+        private LastEventData    lastEDR    = null;
+        private EventData        chunk[]    = null;
+        private int              chunkNdx   = 0;
+        private EventData        dataObj    = null;
+        private DBDataRow        dataRow    = null;
+
+        public EventDataStreamIterator() {
+            ReportDeviceList devList = ReportData.this.getReportDeviceList();
+            this.devIter   = (devList != null)? devList.iterator() : null;
+            this.devTotal  = (devList != null)? devList.size() : 0;
+            this.rptLimit  = ReportData.this.getReportLimit();
+            this.selLimit  = ReportData.this.getSelectionLimit();
+            this.chunkSize = ReportData.this.getStreamChunkSize();
+            this.chunked   = ReportData.this.getOrderAscending() && 
+                ((this.selLimit <= 0L) || EventData.LimitType.FIRST.equals(ReportData.this.getSelectionLimitType()));
+            ReportData.this.maxEventDataCount = 0;
+            this.dataRow = new DBDataRowAdapter(ReportData.this) {
+                public Object getRowObject() {
+                    return EventDataStreamIterator.this.dataObj;
+                }
+                public Object getDBValue(String name, int rowNdx, ReportColumn rptCol) {
+                    Object obj = EventDataStreamIterator.this.dataObj;
+                    if (obj != null) {
+                        DataRowTemplate drt = ReportData.this.getDataRowTemplate();
+                        return drt.getFieldValue(name, rowNdx, ReportData.this, rptCol, obj); // DataRowTemplate.getFieldValue
+                    } else {
+                        return "";
+                    }
+                }
+            };
+        }
+
+        public boolean hasNext() {
+            if ((this.rptLimit >= 0L) && (this.rptCount >= this.rptLimit)) {
+                return false; // report limit reached
+            }
+            while ((this.chunk == null) || (this.chunkNdx >= this.chunk.length)) {
+                if (!this._readChunk()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public DBDataRow next() {
+            if (this.hasNext()) {
+                this.dataObj = this.chunk[this.chunkNdx];
+                this.chunk[this.chunkNdx++] = null; // release rendered records
+                this.rptCount++;
+                return this.dataRow;
+            } else {
+                this.dataObj = null;
+                return null;
+            }
+        }
+
+        /* read the next chunk of EventData records, returns false if there are no more devices */
+        private boolean _readChunk() {
+            ReportData rd = ReportData.this;
+
+            /* next device */
+            if (this.device == null) {
+                if ((this.devIter == null) || !this.devIter.hasNext()) {
+                    return false;
+                }
+                if (!rd.updateJobProgress(this.devCount++, this.devTotal)) {
+                    return false; // report job cancelled
+                }
+                String devID = this.devIter.next();
+                try {
+                    this.device = rd.getReportDeviceList().getDevice(devID);
+                } catch (DBException dbe) {
+                    Print.logError("Error retrieving EventData for Device: " + devID);
+                    this.device = null;
+                }
+                if (this.device == null) {
+                    this.chunk = null;
+                    return true; // skip device
+                }
+                this.lastEDR = new LastEventData();
+                rd.eventDataCount  = 0; // per device
+                rd.eventMatchCount = 0; // per device
+            }
+
+            /* read chunk */
+            long timeStart = rd.getTimeStart();
+            long timeEnd   = rd.getTimeEnd();
+            boolean lastChunk;
+            if (this.chunked) {
+                long limit = this.chunkSize;
+                if (this.selLimit > 0L) {
+                    limit = Math.min(limit, this.selLimit - this.lastEDR.getReadCount());
+                }
+                String afterSel = null;
+                EventData lastEv = this.lastEDR.getEvent();
+                if (lastEv != null) {
+                    // -- continue after the last record read
+                    lastEv.setPreviousEventData(null); // limit the previous-event chain to one chunk
+                    timeStart = lastEv.getTimestamp();
+                    DBWhere dwh = new DBWhere(EventData.getFactory());
+                    java.util.List<String> notRead = new Vector<String>();
+                    for (Integer sc : this.lastEDR.getLastTimestampStatusCodes()) {
+                        notRead.add(dwh.NE(EventData.FLD_statusCode, sc.intValue()));
+                    }
+                    afterSel = dwh.OR(
+                        dwh.GT(EventData.FLD_timestamp, timeStart),
+                        dwh.AND(notRead));
+                }
+                long readCount = this.lastEDR.getReadCount();
+                this.chunk = rd._getEventData_Device(this.device,
+                    timeStart, timeEnd,
+                    afterSel,
+                    EventData.LimitType.FIRST, limit,
+                    this.lastEDR,
+                    null/*rcdHandler*/);
+                readCount = this.lastEDR.getReadCount() - readCount;
+                lastChunk = (readCount < limit) || 
+                    ((this.selLimit > 0L) && (this.lastEDR.getReadCount() >= this.selLimit));
+            } else {
+                this.chunk = rd._getEventData_Device(this.device,
+                    timeStart, timeEnd,
+                    null/*addtlWhere*/,
+                    rd.getSelectionLimitType(), rd.getSelectionLimit(),
+                    this.lastEDR,
+                    null/*rcdHandler*/);
+                lastChunk = true;
+            }
+            this.chunkNdx = 0;
+
+            /* device complete */
+            if (lastChunk) {
+                if (rd.eventDataCount > rd.maxEventDataCount) {
+                    rd.maxEventDataCount = rd.eventDataCount;
+                }
+                this.device  = null;
+                this.lastEDR = null;
+            }
+            return true;
+
+        }
+
+    }
+
     // ------------------------------------------------------------------------
     
 }
@@ -0,0 +1,861 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Asynchronous report job queue.
+//  - Reports are generated on a bounded ThreadPool, rather than on the servlet
+//    request thread.  The number of concurrently running jobs is bounded globally
+//    (the ThreadPool size), and per account.  The number of queued jobs is also
+//    bounded globally, and per account.
+//  - Queued jobs are started in submission order, skipping jobs for accounts which
+//    already have their maximum number of running jobs.
+//  - Other queued jobs for the same account are started along with a job, as a
+//    "ReportBatch" (up to "ReportJobQueue.maximumBatchSize" jobs, within the free
+//    ThreadPool threads).  The batch jobs run concurrently, and share the EventData
+//    records selected for each device.
+//  - Job progress (devices collected) is reported by "ReportData.collectDeviceData"
+//    and the streamed EventData iterator, which also stop when a job is cancelled.
+//  - The generated report is written to a result file in the job directory, along
+//    with a job properties file, and may be downloaded until the retention period
+//    has expired.  Job properties files are reloaded after a restart.
+//  - If "ReportJobQueue.email" is true, emailed reports are also generated and sent
+//    by a job (no result file is retained).  Otherwise emailed reports are generated
+//    synchronously, so that the sender is notified of any failure.
+//  - Reports are queued when requested (see "ReportDisplay.PARM_ASYNC", the report
+//    menu "Run in background" option), or when the number of devices in the report
+//    is at least "ReportJobQueue.autoQueueDeviceCount".
+// ----------------------------------------------------------------------------
+package org.opengts.war.report;
+
+import java.util.*;
+import java.io.*;
+
+import org.opengts.util.*;
+import org.opengts.dbtools.*;
+import org.opengts.db.*;
+import org.opengts.db.tables.*;
+
+import org.opengts.war.tools.*;
+
+public class ReportJobQueue
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final String  PROP_ReportJobQueue_enable                 = "ReportJobQueue.enable";
+    public  static final String  PROP_ReportJobQueue_email                  = "ReportJobQueue.email";
+    public  static final String  PROP_ReportJobQueue_accountMaximumRunning  = "ReportJobQueue.accountMaximumRunning";
+    public  static final String  PROP_ReportJobQueue_maximumQueued          = "ReportJobQueue.maximumQueued";
+    public  static final String  PROP_ReportJobQueue_accountMaximumQueued   = "ReportJobQueue.accountMaximumQueued";
+    public  static final String  PROP_ReportJobQueue_directory              = "ReportJobQueue.directory";
+    public  static final String  PROP_ReportJobQueue_retentionHours         = "ReportJobQueue.retentionHours";
+    public  static final String  PROP_ReportJobQueue_autoQueueDeviceCount   = "ReportJobQueue.autoQueueDeviceCount";
+    public  static final String  PROP_ReportJobQueue_maximumBatchSize       = "ReportJobQueue.maximumBatchSize";
+
+    private static final int     DFT_ACCOUNT_MAXIMUM_RUNNING                = 1;
+    private static final int     DFT_MAXIMUM_QUEUED                         = 200;
+    private static final int     DFT_ACCOUNT_MAXIMUM_QUEUED                 = 20;
+    private static final long    DFT_RETENTION_HOURS                        = 48L;
+    private static final int     DFT_AUTO_QUEUE_DEVICE_COUNT                = 200; // 0 to disable
+    private static final int     DFT_MAXIMUM_BATCH_SIZE                     = 4;   // 1 to disable
+
+    private static final String  JOB_FILE_EXTN                              = "job";
+
+    /* report job ThreadPool (bounds the number of concurrently running report jobs) */
+    // ReportJobQueue.ThreadPool.maximumPoolSize=4
+    // ReportJobQueue.ThreadPool.maximumIdleSeconds=300
+    // ReportJobQueue.ThreadPool.maximumQueueSize=0
+    private static final RTKey   PROP_ThreadPool_ReportJob_     = RTKey.valueOf(RTKey.ThreadPool_ReportJob_);
+    private static final int     ThreadPool_ReportJob_Size      =   4;   // max running jobs
+    private static final int     ThreadPool_ReportJob_IdleSec   = 300;   // trim idle threads
+    private static final int     ThreadPool_ReportJob_QueSize   =   0;   // max queue size (queued here)
+    private static ThreadPool    ThreadPool_ReportJob           = new ThreadPool(
+        "ReportJobQueue",
+        PROP_ThreadPool_ReportJob_, // property allowing default override
+        ThreadPool_ReportJob_Size,
+        ThreadPool_ReportJob_IdleSec,
+        ThreadPool_ReportJob_QueSize);
+
+    /**
+    *** Report formats which may be generated by a report job
+    **/
+    private static final String  QUEUED_FORMATS[] = new String[] {
+        ReportURL.FORMAT_HTML,
+        ReportURL.FORMAT_CSV,
+        ReportURL.FORMAT_TXT,
+        ReportURL.FORMAT_XML,
+        ReportURL.FORMAT_XLS,
+        ReportURL.FORMAT_XLSX,
+    };
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Report job state
+    **/
+    public enum State {
+        QUEUED,
+        RUNNING,
+        DONE,
+        ERROR,
+        CANCELLED;
+        public boolean isActive() {
+            return this.equals(QUEUED) || this.equals(RUNNING);
+        }
+    };
+
+    // ------------------------------------------------------------------------
+
+    private static final String  JOB_id             = "id";
+    private static final String  JOB_accountID      = "accountID";
+    private static final String  JOB_userID         = "userID";
+    private static final String  JOB_reportName     = "reportName";
+    private static final String  JOB_title          = "title";
+    private static final String  JOB_format         = "format";
+    private static final String  JOB_emailTo        = "emailTo";
+    private static final String  JOB_state          = "state";
+    private static final String  JOB_createTime     = "createTime";
+    private static final String  JOB_startTime      = "startTime";
+    private static final String  JOB_endTime        = "endTime";
+    private static final String  JOB_message        = "message";
+
+    /**
+    *** Report job
+    **/
+    public static class Job
+    {
+        private String      id              = "";
+        private String      accountID       = "";
+        private String      userID          = "";
+        private String      reportName      = "";
+        private String      title           = "";
+        private String      format          = "";
+        private String      emailTo         = null;
+        private String      emailSubject    = null;
+        private State       state           = State.QUEUED;
+        private long        createTime      = 0L;
+        private long        startTime       = 0L;
+        private long        endTime         = 0L;
+        private int         devicesDone     = 0;
+        private int         devicesTotal    = 0;
+        private String      message         = "";
+        private boolean     cancelled       = false;
+        private ReportData  report          = null; // released once the job ends
+        private Job() {
+            // -- see "_createJob", "_loadJob"
+        }
+        /* job id */
+        public String getID() {
+            return this.id;
+        }
+        public String getAccountID() {
+            return this.accountID;
+        }
+        public String getUserID() {
+            return this.userID;
+        }
+        /* returns true if the specified account/user submitted this job */
+        public boolean isOwner(String acctID, String usrID) {
+            return this.accountID.equals(StringTools.trim(acctID)) && this.userID.equals(StringTools.trim(usrID));
+        }
+        public String getReportName() {
+            return this.reportName;
+        }
+        public String getReportTitle() {
+            return this.title;
+        }
+        public String getFormat() {
+            return this.format;
+        }
+        /* returns true if this job emails the report */
+        public boolean isEmail() {
+            return !StringTools.isBlank(this.emailTo);
+        }
+        public String getEmailTo() {
+            return this.emailTo;
+        }
+        public synchronized State getState() {
+            return this.state;
+        }
+        public synchronized boolean isActive() {
+            return this.state.isActive();
+        }
+        public long getCreateTime() {
+            return this.createTime;
+        }
+        public synchronized long getStartTime() {
+            return this.startTime;
+        }
+        public synchronized long getEndTime() {
+            return this.endTime;
+        }
+        public synchronized String getMessage() {
+            return this.message;
+        }
+        /* sets the number of devices collected, and the total number of devices */
+        public synchronized void setProgress(int done, int total) {
+            this.devicesDone  = done;
+            this.devicesTotal = total;
+        }
+        /* returns the percent complete (0..100), or -1 if unknown */
+        public synchronized int getProgressPercent() {
+            if (State.DONE.equals(this.state)) {
+                return 100;
+            } else
+            if (this.devicesTotal <= 0) {
+                return State.RUNNING.equals(this.state)? -1 : 0;
+            } else {
+                return (int)Math.min(((long)this.devicesDone * 100L) / (long)this.devicesTotal, 99L);
+            }
+        }
+        /* returns true if this job has been cancelled */
+        public synchronized boolean isCancelled() {
+            return this.cancelled;
+        }
+        /* returns the result file name (without directory) */
+        public String getFileName() {
+            return this.id + "." + this.format.toLowerCase();
+        }
+        /* returns the suggested download file name */
+        public String getDownloadName() {
+            return this.reportName + "." + this.format.toLowerCase();
+        }
+        public String getMimeType() {
+            return HTMLTools.getMimeTypeFromExtension(this.format.toLowerCase(), HTMLTools.MIME_BINARY());
+        }
+        /* returns the result file, or null if not available */
+        public File getResultFile() {
+            if (!State.DONE.equals(this.getState()) || this.isEmail()) {
+                return null;
+            }
+            File file = new File(ReportJobQueue.GetDirectory(), this.getFileName());
+            return file.isFile()? file : null;
+        }
+        private synchronized void _setState(State state, String msg) {
+            this.state = state;
+            this.message = StringTools.trim(msg);
+            if (State.RUNNING.equals(state)) {
+                this.startTime = DateTime.getCurrentTimeSec();
+            } else
+            if (!state.isActive()) {
+                this.endTime = DateTime.getCurrentTimeSec();
+                this.report  = null;
+            }
+        }
+        private synchronized RTProperties _getProperties() {
+            RTProperties rtp = new RTProperties();
+            rtp.setString(JOB_id         , this.id);
+            rtp.setString(JOB_accountID  , this.accountID);
+            rtp.setString(JOB_userID     , this.userID);
+            rtp.setString(JOB_reportName , this.reportName);
+            rtp.setString(JOB_title      , this.title);
+            rtp.setString(JOB_format     , this.format);
+            rtp.setString(JOB_emailTo    , this.emailTo);
+            rtp.setString(JOB_state      , this.state.toString());
+            rtp.setLong(  JOB_createTime , this.createTime);
+            rtp.setLong(  JOB_startTime  , this.startTime);
+            rtp.setLong(  JOB_endTime    , this.endTime);
+            rtp.setString(JOB_message    , this.message);
+            return rtp;
+        }
+        public String toString() {
+            return "ReportJob[" + this.id + "] " + this.accountID + "/" + this.userID + " " + this.reportName + " (" + this.getState() + ")";
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static ThreadLocal<Job>     currentJob  = new ThreadLocal<Job>();
+
+    private static Map<String,Job>      jobMap      = new LinkedHashMap<String,Job>(); // all jobs
+    private static java.util.List<Job>  jobQueue    = new Vector<Job>(); // queued jobs
+    private static boolean              jobsLoaded  = false;
+    private static long                 jobSequence = 0L;
+
+    /**
+    *** Returns true if the report job queue is enabled
+    **/
+    public static boolean IsEnabled()
+    {
+        return RTConfig.getBoolean(PROP_ReportJobQueue_enable, true);
+    }
+
+    /**
+    *** Returns true if emailed reports are to be generated and sent by a report job
+    *** (default false: emailed reports are generated synchronously)
+    **/
+    public static boolean IsEmailEnabled()
+    {
+        return ReportJobQueue.IsEnabled() && RTConfig.getBoolean(PROP_ReportJobQueue_email, false);
+    }
+
+    /**
+    *** Returns true if the specified report format may be generated by a report job
+    **/
+    public static boolean IsQueuedFormat(String format)
+    {
+        for (String f : QUEUED_FORMATS) {
+            if (f.equalsIgnoreCase(format)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+    *** Returns true if the specified report should be generated by a report job even if
+    *** not explicitly requested (ie. the number of devices in the report is at least
+    *** "ReportJobQueue.autoQueueDeviceCount")
+    **/
+    public static boolean GetAutoQueue(ReportData rd)
+    {
+        if ((rd == null) || !ReportJobQueue.IsEnabled()) {
+            return false;
+        }
+        int minDevCount = RTConfig.getInt(PROP_ReportJobQueue_autoQueueDeviceCount, DFT_AUTO_QUEUE_DEVICE_COUNT);
+        if (minDevCount <= 0) {
+            return false;
+        }
+        ReportDeviceList rdl = rd.getReportDeviceList();
+        return ((rdl != null) && (rdl.size() >= minDevCount))? true : false;
+    }
+
+    /**
+    *** Gets the directory in which report job results are stored
+    **/
+    public static File GetDirectory()
+    {
+        String dir = RTConfig.getString(PROP_ReportJobQueue_directory, null);
+        if (StringTools.isBlank(dir)) {
+            return new File(System.getProperty("java.io.tmpdir","/tmp"), "gtsReportJobs");
+        } else {
+            return new File(dir);
+        }
+    }
+
+    /**
+    *** Gets the number of seconds a completed job (and its result) is retained
+    **/
+    private static long _getRetentionSec()
+    {
+        return RTConfig.getLong(PROP_ReportJobQueue_retentionHours, DFT_RETENTION_HOURS) * DateTime.HourSeconds(1);
+    }
+
+    /**
+    *** Returns the report job run by the current thread, or null if the current thread is
+    *** not running a report job
+    **/
+    public static Job GetCurrentJob()
+    {
+        return ReportJobQueue.currentJob.get();
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Submits the specified report to be generated in the specified format.  The
+    *** report must have been fully initialized (see "ReportData.postInitialize").
+    *** @param rd      The report
+    *** @param format  The report format (see "IsQueuedFormat")
+    *** @return The queued report job
+    *** @throws ReportException if the job queue (or the account job queue) is full
+    **/
+    public static Job SubmitReport(ReportData rd, String format)
+        throws ReportException
+    {
+        if (!ReportJobQueue.IsQueuedFormat(format)) {
+            throw new ReportException("Report format may not be queued: " + format);
+        }
+        Job job = ReportJobQueue._createJob(rd, format.toUpperCase());
+        return ReportJobQueue._submit(job, rd);
+    }
+
+    /**
+    *** Submits the specified report to be generated in HTML and emailed to the specified
+    *** recipients.  The report must have been fully initialized.
+    *** @param rd       The report
+    *** @param toEmail  The recipient email addresses
+    *** @param subject  The email subject
+    *** @return The queued report job
+    *** @throws ReportException if the job queue (or the account job queue) is full
+    **/
+    public static Job SubmitEmail(ReportData rd, String toEmail, String subject)
+        throws ReportException
+    {
+        if (StringTools.isBlank(toEmail)) {
+            throw new ReportException("No email recipients specified");
+        }
+        Job job = ReportJobQueue._createJob(rd, ReportURL.FORMAT_HTML);
+        job.emailTo      = toEmail;
+        job.emailSubject = subject;
+        return ReportJobQueue._submit(job, rd);
+    }
+
+    /**
+    *** Creates a new job for the specified report
+    **/
+    private static Job _createJob(ReportData rd, String format)
+    {
+        Job job = new Job();
+        long now = DateTime.getCurrentTimeSec();
+        synchronized (ReportJobQueue.jobMap) {
+            long seq = ++ReportJobQueue.jobSequence;
+            job.id = Long.toHexString(System.currentTimeMillis()) + "-" + StringTools.format(seq % 10000L,"0000");
+        }
+        job.accountID    = StringTools.trim(rd.getAccountID());
+        job.userID       = StringTools.trim(rd.getUserID());
+        job.reportName   = StringTools.trim(rd.getReportName());
+        job.title        = StringTools.trim(rd.getReportTitle());
+        job.format       = format;
+        job.createTime   = now;
+        ReportDeviceList rdl = rd.getReportDeviceList();
+        job.devicesTotal = (rdl != null)? rdl.size() : 0;
+        return job;
+    }
+
+    /**
+    *** Queues the specified job
+    **/
+    private static Job _submit(Job job, ReportData rd)
+        throws ReportException
+    {
+
+        /* detach the report from the servlet request */
+        rd.setRequestProperties(ReportJobQueue._detachRequestProperties(rd.getRequestProperties()));
+        job.report = rd;
+
+        /* queue */
+        ReportJobQueue._loadJobs();
+        int maxQueued     = RTConfig.getInt(PROP_ReportJobQueue_maximumQueued       , DFT_MAXIMUM_QUEUED);
+        int acctMaxQueued = RTConfig.getInt(PROP_ReportJobQueue_accountMaximumQueued, DFT_ACCOUNT_MAXIMUM_QUEUED);
+        synchronized (ReportJobQueue.jobMap) {
+            if ((maxQueued > 0) && (ReportJobQueue.jobQueue.size() >= maxQueued)) {
+                Print.logWarn("Report job queue is full: " + job);
+                throw new ReportException("Report job queue is full");
+            }
+            int acctQueued = 0;
+            for (Job j : ReportJobQueue.jobQueue) {
+                if (j.accountID.equals(job.accountID)) {
+                    acctQueued++;
+                }
+            }
+            if ((acctMaxQueued > 0) && (acctQueued >= acctMaxQueued)) {
+                Print.logWarn("Account report job queue is full: " + job);
+                throw new ReportException("Account report job queue is full");
+            }
+            ReportJobQueue.jobMap.put(job.id, job);
+            ReportJobQueue.jobQueue.add(job);
+        }
+        Print.logInfo("Queued " + job);
+
+        /* start */
+        ReportJobQueue._dispatch();
+        return job;
+
+    }
+
+    /**
+    *** Returns a copy of the specified RequestProperties which does not refer to the
+    *** servlet request/response (which are no longer valid once the request completes)
+    **/
+    private static RequestProperties _detachRequestProperties(RequestProperties reqState)
+    {
+        RequestProperties rp = new RequestProperties();
+        rp.setPrivateLabel(reqState.getPrivateLabel());
+        Locale locale = reqState.getLocale();
+        rp.setLocaleString((locale != null)? locale.toString() : null);
+        rp.setCurrentAccount(reqState.getCurrentAccount());
+        rp.setCurrentUser(reqState.getCurrentUser());
+        rp.setTimeZone(reqState.getTimeZone(), reqState.getTimeZoneString(null));
+        rp.setEventDateFrom(reqState.getEventDateFrom());
+        rp.setEventDateTo(reqState.getEventDateTo());
+        rp.setFleet(reqState.isFleet());
+        rp.setReport(reqState.isReport());
+        rp.setSoapRequest(reqState.isSoapRequest());
+        rp.setCookiesRequired(true); // URLs are not encoded with a session id
+        rp.setEncodeEMailHTML(true); // inline CSS, omit interactive links
+        return rp;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Starts queued jobs, in submission order, while the number of running jobs is below
+    *** the ThreadPool size, skipping jobs for accounts at their maximum running jobs.
+    *** Other queued jobs for the same account are started with each job, as a ReportBatch.
+    **/
+    private static void _dispatch()
+    {
+        int maxRunning     = ThreadPool_ReportJob.getMaxPoolSize();
+        int acctMaxRunning = RTConfig.getInt(PROP_ReportJobQueue_accountMaximumRunning, DFT_ACCOUNT_MAXIMUM_RUNNING);
+        int maxBatchSize   = RTConfig.getInt(PROP_ReportJobQueue_maximumBatchSize     , DFT_MAXIMUM_BATCH_SIZE);
+        synchronized (ReportJobQueue.jobMap) {
+            Map<String,Integer> acctRunning = new HashMap<String,Integer>();
+            int running = 0;
+            for (Job j : ReportJobQueue.jobMap.values()) {
+                if (State.RUNNING.equals(j.getState())) {
+                    Integer n = acctRunning.get(j.accountID);
+                    acctRunning.put(j.accountID, new Integer((n != null)? (n.intValue() + 1) : 1));
+                    running++;
+                }
+            }
+            for (int q = 0; (running < maxRunning) && (q < ReportJobQueue.jobQueue.size());) {
+                Job job = ReportJobQueue.jobQueue.get(q);
+                Integer n = acctRunning.get(job.accountID);
+                int acctCount = (n != null)? n.intValue() : 0;
+                if ((acctMaxRunning > 0) && (acctCount >= acctMaxRunning)) {
+                    q++;
+                    continue; // account at maximum, leave queued
+                }
+
+                /* batch: other queued jobs for the same account */
+                java.util.List<Job> group = new Vector<Job>();
+                group.add(job);
+                for (int b = q + 1; (b < ReportJobQueue.jobQueue.size()) && (group.size() < maxBatchSize) && ((running + group.size()) < maxRunning); b++) {
+                    Job bj = ReportJobQueue.jobQueue.get(b);
+                    if (bj.accountID.equals(job.accountID)) {
+                        group.add(bj);
+                    }
+                }
+                ReportBatch batch = null;
+                if (group.size() > 1) {
+                    batch = new ReportBatch();
+                    for (Iterator<Job> g = group.iterator(); g.hasNext();) {
+                        if (!batch.addReport(g.next().report)) {
+                            g.remove();
+                        }
+                    }
+                }
+
+                /* start (removed from queue, 'q' now refers to the next queued job) */
+                boolean stopping = false;
+                for (final Job gj : group) {
+                    if (stopping) {
+                        if (batch != null) {
+                            batch.removeReport(gj.report); // not started, leave queued
+                        }
+                        continue;
+                    }
+                    gj._setState(State.RUNNING, "");
+                    boolean started = ThreadPool_ReportJob.run(new Runnable() {
+                        public void run() {
+                            ReportJobQueue._runJob(gj);
+                        }
+                    });
+                    if (!started) {
+                        gj._setState(State.QUEUED, "");
+                        if (batch != null) {
+                            batch.removeReport(gj.report);
+                        }
+                        stopping = true; // ThreadPool is stopping
+                        continue;
+                    }
+                    ReportJobQueue.jobQueue.remove(gj);
+                    acctRunning.put(gj.accountID, new Integer(++acctCount));
+                    running++;
+                }
+                if (stopping) {
+                    break;
+                }
+
+            }
+        }
+    }
+
+    /**
+    *** Runs the specified job (called from the report job ThreadPool)
+    **/
+    private static void _runJob(Job job)
+    {
+        ReportData rd = job.report;
+        File dir  = ReportJobQueue.GetDirectory();
+        File file = new File(dir, job.getFileName());
+        ReportJobQueue.currentJob.set(job);
+        Print.logInfo("Starting " + job);
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create report job directory: " + dir);
+            }
+            if (job.isEmail()) {
+                ReportJobQueue._emailReport(job, rd);
+            } else {
+                ReportJobQueue._writeReport(job, rd, file);
+            }
+            if (job.isCancelled()) {
+                file.delete();
+                job._setState(State.CANCELLED, "");
+            } else {
+                job._setState(State.DONE, "");
+            }
+        } catch (Throwable th) { // ReportException, IOException, ...
+            Print.logException("Report job error: " + job, th);
+            file.delete();
+            job._setState(State.ERROR, th.getMessage());
+        } finally {
+            ReportJobQueue.currentJob.set(null);
+            ReportBatch batch = (rd != null)? rd.getReportBatch() : null;
+            if ((batch != null) && batch.reportCompleted(rd)) {
+                batch.close(); // all batch jobs completed
+            }
+        }
+        Print.logInfo("Completed " + job);
+        ReportJobQueue._saveJob(job);
+        ReportJobQueue._dispatch();
+    }
+
+    /**
+    *** Writes the report to the specified file
+    **/
+    private static void _writeReport(Job job, ReportData rd, File file)
+        throws ReportException, IOException
+    {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            if (job.getFormat().equalsIgnoreCase(ReportURL.FORMAT_HTML)) {
+                PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, StringTools.CharEncoding_UTF_8));
+                ReportJobQueue._writeHTMLDocument(rd, pw);
+                pw.flush();
+            } else {
+                OutputProvider op = new OutputProvider(out);
+                rd.writeReport(job.getFormat(), op);
+                if (op.hasWriter()) {
+                    op.getWriter().flush();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+    *** Writes the report as a standalone HTML document (with inline style)
+    **/
+    private static void _writeHTMLDocument(ReportData rd, PrintWriter pw)
+        throws ReportException, IOException
+    {
+        RequestProperties reqState = rd.getRequestProperties();
+        PrivateLabel privLabel = rd.getPrivateLabel();
+        pw.write("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.0 Transitional//EN\">\n");
+        pw.write("<html>\n");
+        pw.write("<head>\n");
+        pw.write("  <meta http-equiv='content-type' content='text/html; charset=UTF-8'/>\n");
+        pw.write("  <title>" + StringTools.htmlFilterText(rd.getReportTitle()) + "</title>\n");
+        String cssDir = privLabel.getCssDirectory();
+        WebPageAdaptor.writeCssLink(pw, reqState, "ReportDisplay.css", cssDir);
+        ReportLayout reportLayout = rd.getReportLayout();
+        if (reportLayout.hasCSSFiles()) {
+            for (String cssFile : reportLayout.getCSSFiles(true)) {
+                WebPageAdaptor.writeCssLink(pw, reqState, cssFile, cssDir);
+            }
+        }
+        rd.writeReportStyle(ReportURL.FORMAT_HTML, new OutputProvider(pw));
+        pw.write("</head>\n");
+        pw.write("<body>\n");
+        rd.writeReport(ReportURL.FORMAT_HTML, new OutputProvider(pw));
+        pw.write("</body>\n");
+        pw.write("</html>\n");
+    }
+
+    /**
+    *** Generates the HTML report and emails it to the job recipients
+    **/
+    private static void _emailReport(Job job, ReportData rd)
+        throws ReportException, IOException
+    {
+
+        /* generate report */
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(baos, StringTools.CharEncoding_UTF_8));
+        ReportJobQueue._writeHTMLDocument(rd, pw);
+        pw.flush();
+        if (job.isCancelled()) {
+            return;
+        }
+
+        /* email report */
+        Account account = rd.getAccount();
+        SmtpProperties smtpProps = account.getSmtpProperties(rd.getPrivateLabel());
+        String frEmail = smtpProps.getFromEmailType("report");
+        if (StringTools.isBlank(frEmail)) {
+            throw new ReportException("'From' email address not specified");
+        }
+        SendMail.Attachments attach = new SendMail.Attachments(
+            SendMail.MULTIPART_MIXED,
+            new SendMail.Attachment(
+                baos.toByteArray(),
+                job.getReportName() + ".html",
+                HTMLTools.MIME_HTML())
+        );
+        String subj = !StringTools.isBlank(job.emailSubject)? job.emailSubject : job.getReportTitle();
+        SendMail.send(frEmail,job.getEmailTo(),subj,null,attach,smtpProps,false);
+        Audit.reportEmail(job.getAccountID(),job.getUserID(),job.getReportName(),job.getEmailTo()); // SystemAudit
+        Print.logInfo("Report Email: " + subj + " (sent to " + job.getEmailTo() + ")");
+
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the specified job
+    *** @param id  The job id
+    *** @return The job, or null if not found (or expired)
+    **/
+    public static Job GetJob(String id)
+    {
+        ReportJobQueue._loadJobs();
+        synchronized (ReportJobQueue.jobMap) {
+            return !StringTools.isBlank(id)? ReportJobQueue.jobMap.get(id) : null;
+        }
+    }
+
+    /**
+    *** Gets the jobs submitted by the specified account/user, most recent first
+    *** @param accountID  The account ID
+    *** @param userID     The user ID
+    *** @return The list of jobs
+    **/
+    public static java.util.List<Job> GetJobs(String accountID, String userID)
+    {
+        ReportJobQueue._loadJobs();
+        ReportJobQueue._purgeJobs();
+        java.util.List<Job> list = new Vector<Job>();
+        synchronized (ReportJobQueue.jobMap) {
+            for (Job j : ReportJobQueue.jobMap.values()) {
+                if (j.isOwner(accountID, userID)) {
+                    list.add(0, j);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+    *** Cancels the specified job.  A queued job is removed from the queue, and a running
+    *** job is stopped before the next device is collected.
+    *** @param job  The job to cancel
+    *** @return True if the job was active
+    **/
+    public static boolean CancelJob(Job job)
+    {
+        if (job == null) {
+            return false;
+        }
+        boolean wasQueued;
+        synchronized (ReportJobQueue.jobMap) {
+            synchronized (job) {
+                if (!job.state.isActive()) {
+                    return false;
+                }
+                job.cancelled = true;
+            }
+            wasQueued = ReportJobQueue.jobQueue.remove(job);
+        }
+        if (wasQueued) {
+            job._setState(State.CANCELLED, "");
+            ReportJobQueue._saveJob(job);
+        }
+        Print.logInfo("Cancelled " + job);
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Saves the job properties file for a completed job
+    **/
+    private static void _saveJob(Job job)
+    {
+        File dir = ReportJobQueue.GetDirectory();
+        try {
+            if (dir.isDirectory() || dir.mkdirs()) {
+                job._getProperties().saveProperties(new File(dir, job.getID() + "." + JOB_FILE_EXTN));
+            }
+        } catch (IOException ioe) {
+            Print.logError("Unable to save report job: " + job + " [" + ioe + "]");
+        }
+    }
+
+    /**
+    *** Loads the completed jobs saved in the job directory (once)
+    **/
+    private static void _loadJobs()
+    {
+        synchronized (ReportJobQueue.jobMap) {
+            if (ReportJobQueue.jobsLoaded) {
+                return;
+            }
+            ReportJobQueue.jobsLoaded = true;
+            File files[] = ReportJobQueue.GetDirectory().listFiles();
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files); // job ids are in creation order
+            for (File f : files) {
+                if (!f.getName().endsWith("." + JOB_FILE_EXTN)) {
+                    continue;
+                }
+                RTProperties rtp = new RTProperties(f);
+                Job job = new Job();
+                job.id         = rtp.getString(JOB_id        , "");
+                job.accountID  = rtp.getString(JOB_accountID , "");
+                job.userID     = rtp.getString(JOB_userID    , "");
+                job.reportName = rtp.getString(JOB_reportName, "");
+                job.title      = rtp.getString(JOB_title     , "");
+                job.format     = rtp.getString(JOB_format    , ReportURL.FORMAT_HTML);
+                job.emailTo    = rtp.getString(JOB_emailTo   , null);
+                job.state      = EnumTools.getValueOf(State.class, rtp.getString(JOB_state,""), State.ERROR);
+                job.createTime = rtp.getLong(JOB_createTime  , 0L);
+                job.startTime  = rtp.getLong(JOB_startTime   , 0L);
+                job.endTime    = rtp.getLong(JOB_endTime     , 0L);
+                job.message    = rtp.getString(JOB_message   , "");
+                if (StringTools.isBlank(job.id) || job.state.isActive()) {
+                    continue; // only completed jobs are saved
+                }
+                ReportJobQueue.jobMap.put(job.id, job);
+            }
+        }
+        ReportJobQueue._purgeJobs();
+    }
+
+    /**
+    *** Removes completed jobs (and their files) older than the retention period
+    **/
+    private static void _purgeJobs()
+    {
+        long oldTime = DateTime.getCurrentTimeSec() - ReportJobQueue._getRetentionSec();
+        java.util.List<Job> expired = new Vector<Job>();
+        synchronized (ReportJobQueue.jobMap) {
+            for (Iterator<Job> i = ReportJobQueue.jobMap.values().iterator(); i.hasNext();) {
+                Job j = i.next();
+                if (!j.isActive() && (j.getEndTime() < oldTime)) {
+                    i.remove();
+                    expired.add(j);
+                }
+            }
+        }
+        File dir = ReportJobQueue.GetDirectory();
+        for (Job j : expired) {
+            new File(dir, j.getFileName()).delete();
+            new File(dir, j.getID() + "." + JOB_FILE_EXTN).delete();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+}
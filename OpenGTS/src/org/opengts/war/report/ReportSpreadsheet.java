@@ -50,6 +50,10 @@ public class ReportSpreadsheet // FORMAT_XLS
     /* set to "true" to attempt to convert numeric column value strings to Double/Long */
     private static boolean  CONVERT_VALUES_TO_NUMERIC   = true;
 
+    /* Runtime properties for streamed XLSX output (see "ExcelStreamWriter") */
+    public  static final String PROP_Excel_streaming            = "Excel.streaming";
+    public  static final String PROP_Excel_streamingRowWindow   = "Excel.streamingRowWindow";
+
     // ------------------------------------------------------------------------
 
     private static boolean  initExcelSpreadsheetClass   = false;
@@ -80,21 +84,71 @@ public class ReportSpreadsheet // FORMAT_XLS
         return (GetExcelSpreadsheetClass() != null);
     }
 
+    /**
+    *** Returns true if XLSX spreadsheets are written using the streaming writer, which
+    *** writes rows to the output stream as they are produced (see "ExcelStreamWriter")
+    **/
+    public static boolean IsStreamingSupported()
+    {
+        return RTConfig.getBoolean(PROP_Excel_streaming, true);
+    }
+
+    /**
+    *** Returns true if the specified spreadsheet format is supported
+    *** @param xlsx  True for XLSX, false for XLS
+    **/
+    public static boolean IsExcelSpreadsheetSupported(boolean xlsx)
+    {
+        if (xlsx && IsStreamingSupported()) {
+            return true;
+        } else {
+            return IsExcelSpreadsheetSupported();
+        }
+    }
+
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
     private ReportData  rptData         = null;
     private ExcelAPI    excel           = null;
     private boolean     xlsx            = false;
+    private boolean     streaming       = false;
+    private OutputStream output         = null;
     private boolean     convertNumeric  = CONVERT_VALUES_TO_NUMERIC;
     
     private int         currentRow      = 0;
     private int         currentCol      = 0;
 
     public ReportSpreadsheet(boolean xlsx, ReportData rd)
+    {
+        this(xlsx, rd, null);
+    }
+
+    /**
+    *** Constructor
+    *** @param xlsx  True for XLSX, false for XLS
+    *** @param rd    The report
+    *** @param out   The OutputStream to which the spreadsheet will be written.  If non-null,
+    ***              and streaming is supported, XLSX rows are written to this stream as they
+    ***              are added.
+    **/
+    public ReportSpreadsheet(boolean xlsx, ReportData rd, OutputStream out)
     {
         this.xlsx = xlsx;
         this.rptData = rd;
+        this.output = out;
+
+        /* streaming XLSX writer */
+        if (this.xlsx && (out != null) && IsStreamingSupported()) {
+            GetExcelSpreadsheetClass(); // initialize properties
+            this.convertNumeric = CONVERT_VALUES_TO_NUMERIC;
+            int rowWindow = RTConfig.getInt(PROP_Excel_streamingRowWindow, ExcelStreamWriter.DFT_ROW_WINDOW);
+            Print.logInfo("Creating streaming Excel spreadsheet report instance ...");
+            this.excel = new ExcelStreamWriter(out, rowWindow);
+            this.excel.init(this.xlsx, this.rptData.getReportName());
+            this.streaming = true;
+            return;
+        }
 
         /* create interface instance */
         Class<?> ssClass = GetExcelSpreadsheetClass();
@@ -134,6 +188,14 @@ public class ReportSpreadsheet // FORMAT_XLS
         return this.xlsx;
     }
 
+    /**
+    *** Returns true if rows are written to the output stream as they are added
+    **/
+    public boolean isStreaming()
+    {
+        return this.streaming;
+    }
+
     // ------------------------------------------------------------------------
 
     public int incrementRowIndex()
@@ -526,6 +526,19 @@ public class EventDataLayout
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /* EventData fields read by the "best location" columns */
+    private static final String BEST_LOCATION_FIELDS[] = new String[] {
+        EventData.FLD_latitude    , EventData.FLD_longitude    ,
+        EventData.FLD_cellLatitude, EventData.FLD_cellLongitude,
+        EventData.FLD_horzAccuracy, EventData.FLD_cellAccuracy ,
+    };
+
+    // -- fuel level/volume columns (see "EventData.getFuelLevel", "EventData.getFuelRemain")
+    private static final String FUEL_LEVEL_FIELDS[] = new String[] {
+        EventData.FLD_fuelLevel   , EventData.FLD_fuelLevel2   ,
+        EventData.FLD_fuelRemain  , EventData.FLD_fuelTotal    ,
+    };
+
     protected static class EventDataRow
         extends DataRowTemplate
     {
@@ -5294,6 +5307,199 @@ public class EventDataLayout
                 }
             });
 
+            // -- EventData fields read by each column (used to limit the selected columns).
+            // -  Columns not declared here (ie. those with custom/dynamic field access) cause
+            // -  the report to select all EventData columns.
+            this.setColumnDataFields(DATA_INDEX              , EventData.FLD_latitude, EventData.FLD_longitude);
+            this.setColumnDataFields(DATA_DEVICE_ID          );
+            this.setColumnDataFields(DATA_DEVICE_IMEI        );
+            this.setColumnDataFields(DATA_DEVICE_UNIQUE_ID   );
+            this.setColumnDataFields(DATA_DEVICE_MODEM_ID    );
+            this.setColumnDataFields(DATA_DEVICE_DESC        );
+            this.setColumnDataFields(DATA_DEVICE_NAME        );
+            this.setColumnDataFields(DATA_DEVICE_BATTERY_LEVEL);
+            this.setColumnDataFields(DATA_DEVICE_BATTERY_VOLTS);
+            this.setColumnDataFields(DATA_DEVICE_VIN         );
+            this.setColumnDataFields(DATA_DEVICE_LICENSE     );
+            this.setColumnDataFields(DATA_DEVICE_PHONE       );
+            this.setColumnDataFields(DATA_DEVICE_CREATION    );
+            this.setColumnDataFields(DATA_GROUP_ID           );
+            this.setColumnDataFields(DATA_DATE               );
+            this.setColumnDataFields(DATA_TIME               );
+            this.setColumnDataFields(DATA_DATETIME           );
+            this.setColumnDataFields(DATA_TIMESTAMP          );
+            this.setColumnDataFields(DATA_CREATE_DATE        , EventData.FLD_creationTime);
+            this.setColumnDataFields(DATA_CREATE_TIME        , EventData.FLD_creationTime);
+            this.setColumnDataFields(DATA_CREATE_DATETIME    , EventData.FLD_creationTime);
+            this.setColumnDataFields(DATA_CREATE_TIMESTAMP   , EventData.FLD_creationTime);
+            this.setColumnDataFields(DATA_CREATE_AGE         , EventData.FLD_creationTime);
+            this.setColumnDataFields(DATA_CREATE_MILLIS      , EventData.FLD_creationMillis);
+            this.setColumnDataFields(DATA_STATUS_CODE        );
+            this.setColumnDataFields(DATA_STATUS_DESC        );
+            this.setColumnDataFields(DATA_ENTITY_ID          , EventData.FLD_entityID);
+            this.setColumnDataFields(DATA_ENTITY_DESC        , EventData.FLD_entityID);
+            this.setColumnDataFields(DATA_DRIVER_ID          , EventData.FLD_driverID);
+            this.setColumnDataFields(DATA_DRIVER_DESC        , EventData.FLD_driverID);
+            this.setColumnDataFields(DATA_DRIVER_STATUS      , EventData.FLD_driverStatus);
+            this.setColumnDataFields(DATA_DRIVER_MESSAGE     , EventData.FLD_driverMessage);
+            this.setColumnDataFields(DATA_MESSAGE_DATETIME   , EventData.FLD_messageTimestamp);
+            this.setColumnDataFields(DATA_MESSAGE_TIMESTAMP  , EventData.FLD_messageTimestamp);
+            this.setColumnDataFields(DATA_MESSAGE_ID         , EventData.FLD_messageID);
+            this.setColumnDataFields(DATA_MESSAGE_STATUS     , EventData.FLD_messageStatus);
+            this.setColumnDataFields(DATA_MESSAGE_STATUS_DESC, EventData.FLD_messageStatus);
+            this.setColumnDataFields(DATA_JOB_NUMBER         , EventData.FLD_jobNumber);
+            this.setColumnDataFields(DATA_RFID_TAG           , EventData.FLD_rfidTag);
+            this.setColumnDataFields(DATA_SAMPLE_ID          , EventData.FLD_sampleID);
+            this.setColumnDataFields(DATA_SAMPLE_INDEX       , EventData.FLD_sampleIndex);
+            this.setColumnDataFields(DATA_ETA_DATETIME       , EventData.FLD_etaTimestamp);
+            this.setColumnDataFields(DATA_ETA_TIMESTAMP      , EventData.FLD_etaTimestamp);
+            this.setColumnDataFields(DATA_ETA_UNIQUE_ID      , EventData.FLD_etaUniqueID);
+            this.setColumnDataFields(DATA_ETA_DISTANCE       , EventData.FLD_etaDistanceKM);
+            this.setColumnDataFields(DATA_ETA_LATITUDE       , EventData.FLD_etaLatitude, EventData.FLD_etaLongitude);
+            this.setColumnDataFields(DATA_ETA_LONGITUDE      , EventData.FLD_etaLatitude, EventData.FLD_etaLongitude);
+            this.setColumnDataFields(DATA_ETA_GEOPOINT       , EventData.FLD_etaLatitude, EventData.FLD_etaLongitude);
+            this.setColumnDataFields(DATA_STOP_UNIQUE_ID     , EventData.FLD_stopID);
+            this.setColumnDataFields(DATA_STOP_STATUS        , EventData.FLD_stopStatus);
+            this.setColumnDataFields(DATA_STOP_STATUS_DESC   , EventData.FLD_stopStatus);
+            this.setColumnDataFields(DATA_STOP_INDEX         , EventData.FLD_stopIndex);
+            this.setColumnDataFields(DATA_GPS_AGE            , EventData.FLD_gpsAge);
+            this.setColumnDataFields(DATA_LATITUDE           , EventData.FLD_gpsAge, EventData.FLD_latitude, EventData.FLD_longitude);
+            this.setColumnDataFields(DATA_LONGITUDE          , EventData.FLD_gpsAge, EventData.FLD_latitude, EventData.FLD_longitude);
+            this.setColumnDataFields(DATA_GEOPOINT           , EventData.FLD_gpsAge, EventData.FLD_latitude, EventData.FLD_longitude);
+            this.setColumnDataFields(DATA_GPSFIX_STATUS      , EventData.FLD_gpsFixStatus);
+            this.setColumnDataFields(DATA_ACCURACY           , EventData.FLD_horzAccuracy);
+            this.setColumnDataFields(DATA_SPEED_LIMIT        , EventData.FLD_speedLimitKPH);
+            this.setColumnDataFields(DATA_OVER_SPEED_LIMIT   , EventData.FLD_speedKPH, EventData.FLD_speedLimitKPH);
+            this.setColumnDataFields(DATA_SPEED              , EventData.FLD_speedKPH);
+            this.setColumnDataFields(DATA_SPEED_HEADING      , EventData.FLD_speedKPH, EventData.FLD_heading);
+            this.setColumnDataFields(DATA_SPEED_UNITS        , EventData.FLD_speedKPH, EventData.FLD_heading);
+            this.setColumnDataFields(DATA_HEADING            , EventData.FLD_speedKPH, EventData.FLD_heading);
+            this.setColumnDataFields(DATA_SATELLITES         , EventData.FLD_satelliteCount);
+            this.setColumnDataFields(DATA_DISTANCE           , EventData.FLD_distanceKM);
+            this.setColumnDataFields(DATA_ODOMETER           , EventData.FLD_distanceKM, EventData.FLD_odometerKM, EventData.FLD_odometerOffsetKM);
+            this.setColumnDataFields(DATA_REPORT_DISTANCE    );
+            this.setColumnDataFields(DATA_CELL_LATITUDE      , EventData.FLD_cellLatitude, EventData.FLD_cellLongitude, EventData.FLD_cellAccuracy);
+            this.setColumnDataFields(DATA_CELL_LONGITUDE     , EventData.FLD_cellLatitude, EventData.FLD_cellLongitude, EventData.FLD_cellAccuracy);
+            this.setColumnDataFields(DATA_CELL_GEOPOINT      , EventData.FLD_cellLatitude, EventData.FLD_cellLongitude, EventData.FLD_cellAccuracy);
+            this.setColumnDataFields(DATA_CELL_ACCURACY      , EventData.FLD_cellLatitude, EventData.FLD_cellLongitude, EventData.FLD_cellAccuracy);
+            this.setColumnDataFields(DATA_BEST_LATITUDE      , BEST_LOCATION_FIELDS);
+            this.setColumnDataFields(DATA_BEST_LONGITUDE     , BEST_LOCATION_FIELDS);
+            this.setColumnDataFields(DATA_BEST_GEOPOINT      , BEST_LOCATION_FIELDS);
+            this.setColumnDataFields(DATA_BEST_ACCURACY      , BEST_LOCATION_FIELDS);
+            this.setColumnDataFields(DATA_INPUT_STATE        , EventData.FLD_inputMask);
+            this.setColumnDataFields(DATA_INPUT_BIT          , EventData.FLD_inputMask);
+            this.setColumnDataFields(DATA_OUTPUT_STATE       , EventData.FLD_outputMask);
+            this.setColumnDataFields(DATA_OUTPUT_BIT         , EventData.FLD_outputMask);
+            this.setColumnDataFields(DATA_SEATBELT_STATE     , EventData.FLD_seatbeltMask);
+            this.setColumnDataFields(DATA_SEATBELT_BIT       , EventData.FLD_seatbeltMask);
+            this.setColumnDataFields(DATA_DOOR_STATE         , EventData.FLD_doorStateMask);
+            this.setColumnDataFields(DATA_DOOR_BIT           , EventData.FLD_doorStateMask);
+            this.setColumnDataFields(DATA_LIGHTS_STATE       , EventData.FLD_lightsStateMask);
+            this.setColumnDataFields(DATA_LIGHTS_BIT         , EventData.FLD_lightsStateMask);
+            this.setColumnDataFields(DATA_GEOZONE_ID         , EventData.FLD_geozoneID);
+            this.setColumnDataFields(DATA_GEOZONE_DESC       , EventData.FLD_geozoneID);
+            this.setColumnDataFields(DATA_ADDRESS            , EventData.FLD_address);
+            this.setColumnDataFields(DATA_CITY               , EventData.FLD_city);
+            this.setColumnDataFields(DATA_STATE              , EventData.FLD_stateProvince);
+            this.setColumnDataFields(DATA_COUNTRY            , EventData.FLD_country);
+            this.setColumnDataFields(DATA_SUBDIVISION        , EventData.FLD_subdivision);
+            this.setColumnDataFields(DATA_BAROMETER          , EventData.FLD_barometer);
+            this.setColumnDataFields(DATA_AMBIENT_TEMP       , EventData.FLD_ambientTemp);
+            this.setColumnDataFields(DATA_CABIN_TEMP         , EventData.FLD_cabinTemp);
+            this.setColumnDataFields(DATA_CARGO_TEMP         , EventData.FLD_cargoTemp);
+            this.setColumnDataFields(DATA_BATTERY            , EventData.FLD_batteryLevel, EventData.FLD_batteryVolts);
+            this.setColumnDataFields(DATA_BATTERY_VOLTS      , EventData.FLD_batteryVolts);
+            this.setColumnDataFields(DATA_BATTERY_PERCENT    , EventData.FLD_batteryLevel);
+            this.setColumnDataFields(DATA_LAST_BATTERY_PCT   );
+            this.setColumnDataFields(DATA_BATTERY_TEMP       , EventData.FLD_batteryTemp);
+            this.setColumnDataFields(DATA_ANALOG_0           , EventData.FLD_analog0);
+            this.setColumnDataFields(DATA_ANALOG_1           , EventData.FLD_analog1);
+            this.setColumnDataFields(DATA_ANALOG_2           , EventData.FLD_analog2);
+            this.setColumnDataFields(DATA_ANALOG_3           , EventData.FLD_analog3);
+            this.setColumnDataFields(DATA_PULSE_COUNT        , EventData.FLD_pulseCount);
+            this.setColumnDataFields(DATA_FREQUENCY          , EventData.FLD_frequencyHz);
+            this.setColumnDataFields(DATA_FUEL_CAPACITY      );
+            this.setColumnDataFields(DATA_FUEL_CAPACITY_1    );
+            this.setColumnDataFields(DATA_FUEL_CAPACITY_2    );
+            this.setColumnDataFields(DATA_FUEL_LEVEL         , FUEL_LEVEL_FIELDS);
+            this.setColumnDataFields(DATA_FUEL_LEVEL_1       , FUEL_LEVEL_FIELDS);
+            this.setColumnDataFields(DATA_FUEL_LEVEL_2       , FUEL_LEVEL_FIELDS);
+            this.setColumnDataFields(DATA_FUEL_LEVEL_VOL     , FUEL_LEVEL_FIELDS);
+            this.setColumnDataFields(DATA_FUEL_LEVEL_VOL_1   , FUEL_LEVEL_FIELDS);
+            this.setColumnDataFields(DATA_FUEL_LEVEL_VOL_2   , FUEL_LEVEL_FIELDS);
+            this.setColumnDataFields(DATA_FUEL_TOTAL         , EventData.FLD_fuelTotal);
+            this.setColumnDataFields(DATA_FUEL_REMAIN        , EventData.FLD_fuelRemain);
+            this.setColumnDataFields(DATA_FUEL_TRIP          , EventData.FLD_fuelTrip);
+            this.setColumnDataFields(DATA_FUEL_IDLE          , EventData.FLD_fuelIdle);
+            this.setColumnDataFields(DATA_FUEL_ENGINE_ON     , EventData.FLD_fuelEngineOn);
+            this.setColumnDataFields(DATA_FUEL_ECONOMY       , EventData.FLD_fuelEconomy);
+            this.setColumnDataFields(DATA_FUEL_ECONOMY_TYPE  );
+            this.setColumnDataFields(DATA_FUEL_PRESSURE      , EventData.FLD_fuelPressure);
+            this.setColumnDataFields(DATA_FUEL_RATE          , EventData.FLD_fuelUsage);
+            this.setColumnDataFields(DATA_PTO_ENGAGED        , EventData.FLD_ptoEngaged, EventData.FLD_ptoHours);
+            this.setColumnDataFields(DATA_PTO_HOURS          , EventData.FLD_ptoEngaged, EventData.FLD_ptoHours);
+            this.setColumnDataFields(DATA_PTO_DISTANCE       , EventData.FLD_ptoDistanceKM);
+            this.setColumnDataFields(DATA_WORK_HOURS         , EventData.FLD_workHours);
+            this.setColumnDataFields(DATA_WORK_DISTANCE      , EventData.FLD_workDistanceKM);
+            this.setColumnDataFields(DATA_WORK_SHIFT         );
+            this.setColumnDataFields(DATA_VEH_BATTERY_VOLTS  , EventData.FLD_vBatteryVolts);
+            this.setColumnDataFields(DATA_THROTTLE_POSITION  , EventData.FLD_throttlePos);
+            this.setColumnDataFields(DATA_INTAKE_TEMP        , EventData.FLD_intakeTemp);
+            this.setColumnDataFields(DATA_AIR_PRESSURE       , EventData.FLD_airPressure);
+            this.setColumnDataFields(DATA_AIR_FILTER_PRESS   , EventData.FLD_airFilterPressure);
+            this.setColumnDataFields(DATA_MASS_AIR_FLOW      , EventData.FLD_massAirFlowRate);
+            this.setColumnDataFields(DATA_TURBO_PRESS        , EventData.FLD_turboPressure);
+            this.setColumnDataFields(DATA_TANK_LEVEL         , EventData.FLD_tankLevel);
+            this.setColumnDataFields(DATA_FAULT_CODES        , EventData.FLD_faultCode, EventData.FLD_j1708Fault);
+            this.setColumnDataFields(DATA_FAULT_CODE         , EventData.FLD_faultCode, EventData.FLD_j1708Fault);
+            this.setColumnDataFields(DATA_MALFUNCTION_LAMP   , EventData.FLD_malfunctionLamp);
+            this.setColumnDataFields(DATA_LAST_FAULT_CODES   );
+            this.setColumnDataFields(DATA_AIRBAG_LAMP        , EventData.FLD_airbagLamp);
+            this.setColumnDataFields(DATA_ABS_LAMP           , EventData.FLD_absLamp);
+            this.setColumnDataFields(DATA_OIL_LEVEL          , EventData.FLD_oilLevel);
+            this.setColumnDataFields(DATA_OIL_PRESSURE       , EventData.FLD_oilPressure);
+            this.setColumnDataFields(DATA_OIL_TEMP           , EventData.FLD_oilTemp);
+            this.setColumnDataFields(DATA_ENGINE_RPM         , EventData.FLD_engineRpm);
+            this.setColumnDataFields(DATA_ENGINE_HOURS       , EventData.FLD_engineHours);
+            this.setColumnDataFields(DATA_ENGINE_ON_HOURS    , EventData.FLD_engineOnHours);
+            this.setColumnDataFields(DATA_ENGINE_LOAD        , EventData.FLD_engineLoad);
+            this.setColumnDataFields(DATA_IDLE_HOURS         , EventData.FLD_idleHours);
+            this.setColumnDataFields(DATA_TRANS_GEAR         , EventData.FLD_transGear);
+            this.setColumnDataFields(DATA_TRANS_OIL_TEMP     , EventData.FLD_transOilTemp);
+            this.setColumnDataFields(DATA_COOLANT_PRESSURE   , EventData.FLD_coolantPressure);
+            this.setColumnDataFields(DATA_COOLANT_LEVEL      , EventData.FLD_coolantLevel);
+            this.setColumnDataFields(DATA_COOLANT_TEMP       , EventData.FLD_coolantTemp);
+            this.setColumnDataFields(DATA_BRAKE_G_FORCE      , EventData.FLD_brakeGForce);
+            this.setColumnDataFields(DATA_BRAKE_FORCE        , EventData.FLD_brakeGForce);
+            this.setColumnDataFields(DATA_BRAKE_PRESSURE     , EventData.FLD_brakePressure);
+            this.setColumnDataFields(DATA_BRAKE_POSITION     , EventData.FLD_brakePos);
+            this.setColumnDataFields(DATA_ACCELERATION       , EventData.FLD_acceleration);
+            this.setColumnDataFields(DATA_ACCEL_XYZ          , EventData.FLD_accelerometerXYZ);
+            this.setColumnDataFields(DATA_ACCEL_MAGNITUDE    , EventData.FLD_accelerometerXYZ);
+            this.setColumnDataFields(DATA_IMPACT_MAGNITUDE   , EventData.FLD_acceleration, EventData.FLD_accelerometerXYZ, EventData.FLD_impactData, EventData.FLD_impactDataType);
+            this.setColumnDataFields(DATA_CHECKIN_DATETIME   );
+            this.setColumnDataFields(DATA_CHECKIN_AGE        );
+            this.setColumnDataFields(DATA_CUSTOM_FIELD       );
+            this.setColumnDataFields(DATA_DATA_SOURCE        , EventData.FLD_dataSource);
+            this.setColumnDataFields(DATA_RAW_DATA           , EventData.FLD_rawData);
+            this.setColumnDataFields(DATA_TRIP_START_DATETIME, EventData.FLD_tripStartTime);
+            this.setColumnDataFields(DATA_TRIP_STOP_DATETIME , EventData.FLD_tripStopTime);
+            this.setColumnDataFields(DATA_TRIP_DISTANCE      , EventData.FLD_tripDistanceKM);
+            this.setColumnDataFields(DATA_TRIP_IDLE_HOURS    , EventData.FLD_tripIdleHours);
+            this.setColumnDataFields(DATA_TRIP_MAX_SPEED     , EventData.FLD_tripMaxSpeedKPH);
+            this.setColumnDataFields(DATA_TRIP_MAX_RPM       , EventData.FLD_tripMaxRpm);
+            this.setColumnDataFields(DATA_TRIP_START_LAT     , EventData.FLD_tripStartLatitude);
+            this.setColumnDataFields(DATA_TRIP_START_LON     , EventData.FLD_tripStartLongitude);
+            this.setColumnDataFields(DATA_TRIP_ELAPSED       , EventData.FLD_tripElapsedSeconds);
+            this.setColumnDataFields(DATA_DAY_ENGINE_STARTS  , EventData.FLD_dayEngineStarts);
+            this.setColumnDataFields(DATA_DAY_IDLE_HOURS     , EventData.FLD_dayIdleHours);
+            this.setColumnDataFields(DATA_DAY_FUEL_IDLE      , EventData.FLD_dayFuelIdle);
+            this.setColumnDataFields(DATA_DAY_WORK_HOURS     , EventData.FLD_dayWorkHours);
+            this.setColumnDataFields(DATA_DAY_FUEL_WORK      , EventData.FLD_dayFuelWork);
+            this.setColumnDataFields(DATA_DAY_FUEL_PTO       , EventData.FLD_dayFuelPTO);
+            this.setColumnDataFields(DATA_DAY_FUEL_TOTAL     , EventData.FLD_dayFuelTotal);
+            this.setColumnDataFields(DATA_DAY_DISTANCE       , EventData.FLD_dayDistanceKM);
+
         }
     }
 
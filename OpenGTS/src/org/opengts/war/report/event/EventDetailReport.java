@@ -146,6 +146,18 @@ public class EventDetailReport
 
     // ------------------------------------------------------------------------
 
+    /**
+    *** Returns the set of EventData fields read by the columns of this report
+    *** @return The set of EventData fields to select, or null for all fields
+    **/
+    @Override
+    protected Set<String> getEventDataFields()
+    {
+        return super.getColumnEventDataFields();
+    }
+
+    // ------------------------------------------------------------------------
+
     private String getSelectBy()
     {
         // -- EventData record selection type [where|driver|deviceList]
@@ -210,12 +222,13 @@ public class EventDetailReport
             Print.logInfo("Getting events by Driver: " + driverID);
             ed = super.getEventData_Driver(driverID, rcdHandler);
         } else
-        if (this.isSelectByDeviceList()) {
+        if (super.getStreamEventData()) {
             // -- select events based on Devices in "super.getReportDeviceList()"
-            //Print.logInfo("Getting events by DeviceList ...");
-            ed = super.getEventData_DeviceList(rcdHandler);
+            // -  events are read incrementally as the report rows are written
+            //Print.logInfo("Streaming events by DeviceList ...");
+            return super.getEventDataIterator_DeviceList();
         } else {
-            // -- default to select by device
+            // -- select events based on Devices in "super.getReportDeviceList()"
             //Print.logInfo("Getting events by DeviceList ...");
             ed = super.getEventData_DeviceList(rcdHandler);
         }
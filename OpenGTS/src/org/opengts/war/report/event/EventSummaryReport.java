@@ -136,6 +136,15 @@ public class EventSummaryReport
         return true;
     }
 
+    /**
+    *** Returns true, the selected event is matched per device
+    **/
+    @Override
+    protected boolean getSupportsParallelDevices()
+    {
+        return true;
+    }
+
     // ------------------------------------------------------------------------
 
     /**
@@ -198,6 +207,16 @@ public class EventSummaryReport
 
     }
 
+    /**
+    *** Returns the set of EventData fields read by the columns of this report
+    *** @return The set of EventData fields to select, or null for all fields
+    **/
+    @Override
+    protected Set<String> getEventDataFields()
+    {
+        return super.getColumnEventDataFields();
+    }
+
     // ------------------------------------------------------------------------
 
     /**
@@ -145,6 +145,38 @@ public class EventCountReport
         /* init */
         this.rowData = new Vector<FieldData>();
 
+        /* count events */
+        DBFactory<EventData> edFact = EventData.getFactory();
+        if (EventDailyRollup.IsEnabled() && StringTools.isBlank(this.getWhereSelector())) {
+            // -- whole days are counted from the daily rollups (per device)
+            this._countEventsByDevice();
+        } else
+        if (edFact.isMySQLInnoDB() && !edFact.getAllowInnoDBCOUNT()) {
+            // -- "COUNT(*)" disallowed (counts will be reported as '-1')
+            this._countEventsByDevice();
+        } else {
+            // -- counted by the database, for all devices at once
+            try {
+                this._countEventsByAggregate();
+            } catch (DBException dbe) {
+                Print.logException("Unable to obtain aggregate EventData counts", dbe);
+                this.rowData.clear();
+                this._countEventsByDevice();
+            }
+        }
+
+        /* return data iterator */
+        FieldData.sortByDeviceDescription(this.rowData);
+        return new ListDataIterator(this.rowData);
+        
+    }
+
+    /**
+    *** Counts the events for each device/day with a separate select per device/day
+    **/
+    private void _countEventsByDevice()
+    {
+
         /* loop through devices */
         String devID = "";
         ReportDeviceList devList = this.getReportDeviceList();
@@ -209,10 +241,127 @@ public class EventCountReport
 
         }
 
-        /* return data iterator */
-        FieldData.sortByDeviceDescription(this.rowData);
-        return new ListDataIterator(this.rowData);
-        
+    }
+
+    /**
+    *** Counts the events for all devices with aggregate selects, grouped by device 
+    *** (and by day, if summarizing by day).  Consecutive days with the same TimeZone 
+    *** offset are counted with a single select, grouped by a day bucket aligned to the
+    *** local day.  Days on which the TimeZone offset changes (DST) are counted separately.
+    **/
+    private void _countEventsByAggregate()
+        throws DBException
+    {
+        String           acctID    = this.getAccountID();
+        ReportDeviceList devList   = this.getReportDeviceList();
+        long             startTime = this.getTimeStart();
+        long             endTime   = this.getTimeEnd();
+        TimeZone         tz        = this.getTimeZone();
+        int              statCode[]= this.getStatusCodes();
+        boolean          validGPS  = this.getValidGPSRequired();
+        String           wherSel   = this.getWhereSelector();
+
+        /* device list */
+        java.util.List<String> devIDList = new Vector<String>();
+        for (Iterator<String> i = devList.iterator(); i.hasNext();) {
+            devIDList.add(i.next());
+        }
+
+        /* count total events for date-range */
+        if (!this.summarizeByDay) {
+            Map<String,Map<Long,Long>> devCounts = EventData.getDeviceEventCounts(
+                acctID, devIDList,
+                startTime, endTime,
+                statCode, validGPS, wherSel,
+                0L, 0L);
+            for (String devID : devIDList) {
+                Device device = devList.getDevice(devID);
+                if (device == null) {
+                    // unlikely
+                    Print.logError("Returned DeviceList 'Device' is null: " + devID);
+                    continue;
+                }
+                Map<Long,Long> bucketMap = devCounts.get(devID);
+                Long rcdCount = (bucketMap != null)? bucketMap.get(new Long(0L)) : null;
+                FieldData fd = new FieldData();
+                fd.setDevice(device);
+                fd.setString(FieldLayout.DATA_DEVICE_ID, devID);
+                fd.setLong(  FieldLayout.DATA_COUNT    , ((rcdCount != null)? rcdCount.longValue() : 0L));
+                this.rowData.add(fd); // single record per device
+            }
+            return;
+        }
+
+        /* summarize by day */
+        // -- days between date-range
+        java.util.List<long[]> days = new Vector<long[]>(); // { dayStart, dayEnd, dayNumber, tzOffset }
+        for (long dayStart = startTime; dayStart < endTime;) {
+            DateTime dayDT = new DateTime(dayStart,tz);
+            long dayEnd = dayDT.getDayEnd(tz); // 23:59:59
+            if (dayEnd > endTime) { dayEnd = endTime; } // will exit on next iteration
+            long ofsStart = tz.getOffset(dayStart * 1000L) / 1000L;
+            long ofsEnd   = tz.getOffset(dayEnd   * 1000L) / 1000L;
+            long tzOfs    = (ofsStart == ofsEnd)? ofsStart : Long.MIN_VALUE; // MIN_VALUE: DST change
+            days.add(new long[] { dayStart, dayEnd, dayDT.getDayNumber(tz), tzOfs });
+            dayStart = dayEnd + 1; // beginning of next day
+        }
+
+        // -- count consecutive days with the same TimeZone offset
+        // -  DeviceID ==> (DayNumber ==> Count)
+        Map<String,Map<Long,Long>> dayCounts = new HashMap<String,Map<Long,Long>>();
+        long DAY_SEC = DateTime.DaySeconds(1);
+        for (int d = 0; d < days.size();) {
+            long tzOfs = days.get(d)[3];
+            int  e     = d + 1;
+            if (tzOfs != Long.MIN_VALUE) {
+                while ((e < days.size()) && (days.get(e)[3] == tzOfs)) { e++; }
+            }
+            long runStart = days.get(d)[0];
+            long runEnd   = days.get(e - 1)[1];
+            Map<String,Map<Long,Long>> devCounts = EventData.getDeviceEventCounts(
+                acctID, devIDList,
+                runStart, runEnd,
+                statCode, validGPS, wherSel,
+                ((tzOfs != Long.MIN_VALUE)? DAY_SEC : 0L), ((tzOfs != Long.MIN_VALUE)? tzOfs : 0L));
+            for (String devID : devCounts.keySet()) {
+                Map<Long,Long> bucketMap = devCounts.get(devID);
+                Map<Long,Long> dayMap = dayCounts.get(devID);
+                if (dayMap == null) {
+                    dayMap = new HashMap<Long,Long>();
+                    dayCounts.put(devID, dayMap);
+                }
+                for (int i = d; i < e; i++) {
+                    long day[]  = days.get(i);
+                    long bucket = (tzOfs != Long.MIN_VALUE)? ((day[0] + tzOfs) / DAY_SEC) : 0L;
+                    Long count  = bucketMap.get(new Long(bucket));
+                    if (count != null) {
+                        dayMap.put(new Long(day[2]), count);
+                    }
+                }
+            }
+            d = e;
+        }
+
+        // -- create report records
+        for (String devID : devIDList) {
+            Device device = devList.getDevice(devID);
+            if (device == null) {
+                // unlikely
+                Print.logError("Returned DeviceList 'Device' is null: " + devID);
+                continue;
+            }
+            Map<Long,Long> dayMap = dayCounts.get(devID);
+            for (long day[] : days) {
+                Long rcdCount = (dayMap != null)? dayMap.get(new Long(day[2])) : null;
+                FieldData fd = new FieldData();
+                fd.setDevice(device);
+                fd.setString(FieldLayout.DATA_DEVICE_ID, devID);
+                fd.setLong(  FieldLayout.DATA_DATE     , day[2]);
+                fd.setLong(  FieldLayout.DATA_COUNT    , ((rcdCount != null)? rcdCount.longValue() : 0L));
+                this.rowData.add(fd);
+            }
+        }
+
     }
 
     /**
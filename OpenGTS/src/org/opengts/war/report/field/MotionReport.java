@@ -111,6 +111,12 @@ public class MotionReport
     private static final String PROP_stopOnIgnitionOff      = "stopOnIgnitionOff";
     private static final String PROP_tabulateByWorkHours    = "tabulateByWorkHours";
     private static final String PROP_WorkHours_             = "WorkHours.";
+    private static final String PROP_useTripSegments        = "useTripSegments";
+
+    // ------------------------------------------------------------------------
+    // estimated memory size of a detail/total FieldData row (see "ReportCache")
+
+    private static final long   FIELD_DATA_SIZE             = 2048L;
 
     // ------------------------------------------------------------------------
     // Trip start types
@@ -254,6 +260,7 @@ public class MotionReport
     private boolean                     fleetSortTrim           = false;    // property
     private boolean                     alwaysReadAllEvents     = false;    // property
     private boolean                     legacyIdleDefinition    = false;    // property
+    private boolean                     useTripSegments         = false;    // property
 
     private boolean                     showMapLink             = true;     // property
 
@@ -374,6 +381,7 @@ public class MotionReport
         this.minSpeedKPH          = rtp.getDouble( PROP_minimumSpeedKPH     , MIN_SPEED_KPH);
         this.minStoppedTimeSec    = rtp.getLong(   PROP_minimumStoppedTime  , MIN_STOPPED_TIME_SEC);
         this.stopOnIgnitionOff    = rtp.getBoolean(PROP_stopOnIgnitionOff   , STOP_ON_IGNITION_OFF);
+        this.useTripSegments      = rtp.getBoolean(PROP_useTripSegments     , false);
 
         /* fieldSortByField ascending/descending */
         String _fleetSortByField = rtp.getString( PROP_fleetSortByField    , "");
@@ -421,6 +429,16 @@ public class MotionReport
 
     // ------------------------------------------------------------------------
 
+    /**
+    *** Returns true, since the selected status codes and valid-GPS requirement are reset
+    *** for each device when the EventData records are read (see "getEventData_Device")
+    **/
+    @Override
+    public boolean getWidensEventConstraints()
+    {
+        return true;
+    }
+
     /**
     *** Override 'getEventData' to reset selected status codes
     *** @param device       The Device for which EventData records will be selected
@@ -615,273 +633,59 @@ public class MotionReport
         this.deviceTotalData = new Vector<FieldData>();
         Vector<FieldData> allDevicesDetailData = new Vector<FieldData>();
 
-        /* device list */
+        /* account */
         Account account   = this.getAccount();
-        String  accountID = account.getAccountID();
-        ReportDeviceList devList = this.getReportDeviceList();
-
-        /* loop through devices */
-        deviceListIterator:
-        for (Iterator<String> i = devList.iterator(); i.hasNext();) {
-            String devID = i.next();
-            //Print.logInfo("Processing events for device: " + devID);
-
-            // -- new device detail data iterator
-            this.deviceDetailData    = new Vector<FieldData>();
-
-            // -- reset per-device totals */
-            this.totalOdomKM         = 0.0;
-            this.totalDriveSec       = 0L ;
-            this.totalDriveFuel      = 0.0;
-            this.totalStopCount      = 0;
-            this.totalStopSec        = 0L ;
-            this.totalIdleSec        = 0L ;
-            this.totalIdleFuel       = 0.0;
-            this.totalMaxSpeedK      = 0.0;
-            this.tworkOdomKM         = 0.0;
-            this.tworkDriveSec       = 0L;
-            this.tworkDriveFuel      = 0.0;
-            this.tworkStopCount      = 0;
-            this.tworkIdleFuel       = 0.0;
-
-            // -- reset ignition state
-            this.isIgnitionOn        = false;
-            this.lastIgnitionEvent   = null;
-            this.ignitionCodes       = null;
-            // -- reset idle state
-            this.idleStartEvent      = null;
-            this.idleStopEvent       = null;
-            this.idleAccumulator     = 0L;
-            // -- reset maximum achieved speed
-            this.maxAchievedSpeedK   = 0.0;
-            // -- reset motion
-            this.isInMotion          = false;
-            this.lastMotionEvent     = null;
-            this.pendingStopEvent    = null;
-            // -- reset start
-            this.lastStartTime       = 0L;
-            this.lastStartPoint      = null;
-            this.lastStartAddress    = "";
-            this.lastStartOdometer   = 0.0;
-            this.lastStartOdomOfs    = 0.0;
-            this.lastStartFuelUsed   = 0.0;
-            this.lastStartFuelLevel  = 0.0;
-            this.lastStartFuelRemain = 0.0;
-            // -- reset stop
-            this.lastStopTime        = 0L;
-            this.lastStopPoint       = null;
-            this.lastStopAddress     = "";
-            this.lastStopOdometer    = 0.0;
-            this.lastStopOdomOfs     = 0.0;
-            this.lastStopFuelUsed    = 0.0;
-            this.lastStopFuelLevel   = 0.0;
-            this.lastStopFuelRemain  = 0.0;
-            // -- reset state
-            this.lastStateChange     = STATE_UNKNOWN;
-            // -- reset last valid odometer
-            this.lastValidOdometerKM = 0.0;
-            this.lastValidOdomOfsKM  = 0.0;
-
-            try {
-
-                /* get device */
-                Device device = devList.getDevice(devID);
-                if (device == null) {
-                    Print.logWarn("Device not found: " + devID);
-                    continue; // deviceListIterator
+
+        /* collect device motion data (in parallel, if enabled) */
+        java.util.List<DeviceMotionData> devMotion = this.collectDeviceData(
+            new ReportCache.CacheableDeviceDataCollector<DeviceMotionData>() {
+                public DeviceMotionData collectDeviceData(ReportData rd, Device device) {
+                    return ((MotionReport)rd)._collectDeviceMotion(device);
                 }
-                //Print.logDebug("Analyzing Device: " + devID);
-
-                // -- Device ignition statusCodes
-                this.ignitionCodes = device.getIgnitionStatusCodes();
-                boolean hasIgnition = (this.ignitionCodes != null);
-
-                // -- trip start/stop type
-                RTProperties rtp = this.getProperties();
-                String tt = rtp.getString(PROP_tripStartType,MOTION_SPEED[0]).toLowerCase();
-                //Print.logInfo("Trip type: " + tt);
-                if (ListTools.contains(MOTION_DEFAULT,tt)) {
-                    // -- "default" (TRIP_ON_ENGINE not selected when using "default")
-                    String devCode = device.getDeviceCode();
-                    DCServerConfig dcs = DCServerFactory.getServerConfig(devCode);
-                    if ((dcs == null) && StringTools.isBlank(devCode) && Account.IsDemoAccount(accountID)) {
-                        // -- special case for "demo" account when 'deviceCode' is blank
-                        dcs = DCServerFactory.getServerConfig(DCServerFactory.OPENDMTP_NAME);
-                        if (dcs == null) {
-                            Print.logWarn("Account 'demo' DCServerConfig not found: " + DCServerFactory.OPENDMTP_NAME);
-                        }
-                    }
-                    if (dcs != null) {
-                        // -- DCServerConfig found
-                        if (dcs.getStartStopSupported(false)) {
-                            // -- Device supports start/stop
-                            this.tripStartType = TRIP_ON_START;
-                        } else
-                        if (hasIgnition) {
-                            // -- Device supports ignition state
-                            this.tripStartType = TRIP_ON_IGNITION;
-                        } else {
-                            // -- Default to speed
-                            this.tripStartType = TRIP_ON_SPEED;
-                        }
-                    } else {
-                        // -- DCServerConfig not found ('deviceCode' is either blank or invalid)
-                        if (hasIgnition) {
-                            // -- Device supports ignition state
-                            this.tripStartType = TRIP_ON_IGNITION;
-                        } else {
-                            // -- Default
-                            this.tripStartType = TRIP_ON_SPEED;
-                        }
-                    }
-                    this.tripTypeDefault = true;
-                } else
-                if (ListTools.contains(MOTION_STARTSTOP,tt)) {
-                    // -- "startstop"
-                    this.tripStartType = TRIP_ON_START;
-                    this.tripTypeDefault = false;
-                } else
-                if (ListTools.contains(MOTION_IGNITION,tt)/* && hasIgnition */) {
-                    // -- "ignition"
-                    this.tripStartType   = TRIP_ON_IGNITION;
-                    this.tripTypeDefault = false;
-                    if (!hasIgnition) {
-                        this.ignitionCodes = new int[] { StatusCodes.STATUS_IGNITION_OFF, StatusCodes.STATUS_IGNITION_ON };
-                        hasIgnition = true;
-                    }
-                } else
-                if (ListTools.contains(MOTION_ENGINE,tt)) {
-                    // -- "ignition"
-                    this.tripStartType   = TRIP_ON_ENGINE;
-                    this.tripTypeDefault = false;
-                } else {
-                    // -- "speed", "motion"
-                    this.tripStartType   = TRIP_ON_SPEED;
-                    this.tripTypeDefault = true;
+                public int getRecordCount(DeviceMotionData dmd) {
+                    return 0; // the report limit is not applied to motion detail
                 }
-
-                /* debug */
-                if (RTConfig.isDebugMode()) {
-                    Print.logDebug("Trip Start Type: [" + this.tripStartType + "] " + TripTypeName(this.tripStartType));
-                    if (hasIgnition) {
-                        String ignOff = StatusCodes.GetHex(this.ignitionCodes[0]);
-                        String ignOn  = StatusCodes.GetHex(this.ignitionCodes[1]);
-                        Print.logDebug("Device Ignition Codes "+ignOff+":"+ignOn+" [" + accountID + "/" + devID + "]");
-                    } else {
-                        Print.logDebug("No defined Device ignition codes [" + accountID + "/" + devID + "]");
-                    }
+                public long getEstimatedSize(DeviceMotionData dmd) {
+                    return (long)(ListTools.size(dmd.detailData) + 1) * FIELD_DATA_SIZE;
                 }
-
-                // -- get events
-                //this.lastValidOdometerKM = 0.0; <-- already reset above
-                this.deviceEventIndex = 0L; // provide an index to all events read
-                this.getEventData_Device(device, this); // <== callback to 'handleDBRecord'
-                //Print.logInfo("Total Accumulated Idle Time: " + this.totalIdleSec + " seconds");
-
-                // -- handle final record here
-                if (this.lastStopTime > 0) {
-                    // -- we are stopped
-                    long   driveTime = (this.lastStartTime > 0L)? (this.lastStopTime     - this.lastStartTime    ) : -1L;
-                    double driveDist = (this.lastStartTime > 0L)? (this.lastStopOdometer - this.lastStartOdometer) : -1.0; // kilometers
-                    double fuelTrip  = (this.lastStartTime > 0L)? (this.lastStopFuelUsed - this.lastStartFuelUsed) : -1.0; // liter
-                    double driveEcon = (fuelTrip > 0.0)? (driveDist / fuelTrip) : 0.0; // kilometers per liter
-                    Device.FuelEconomyType driveEconType = Device.FuelEconomyType.FUEL_CONSUMED;
-                    long   stopElaps = -1L;
-                    long   idleElaps = (this.idleAccumulator > 0L)? this.idleAccumulator : -1L;
-                    double fuelIdle  = -1.0;
-                    double maxSpeedK = (this.maxAchievedSpeedK > 0.0)? this.maxAchievedSpeedK : 0.0; // final trip stop
-                    this._addRecord( // getBodyDataIterator
-                        this.deviceDetailData,
-                        accountID, devID, device,
-                        this.lastStartTime  , this.lastStartPoint, this.lastStartAddress, this.lastStartOdometer, this.lastStartOdomOfs, this.lastStartFuelUsed,
-                        this.lastStopTime   , this.lastStopPoint , this.lastStopAddress , this.lastStopOdometer , this.lastStopOdomOfs , this.lastStopFuelUsed ,
-                        driveTime, driveDist, fuelTrip, driveEcon, driveEconType,
-                        stopElaps, idleElaps, fuelIdle, maxSpeedK);
-                } else
-                if (this.lastStartTime > 0) {
-                    // -- we haven't stopped during the range of this report
-                    long   driveTime = -1L;
-                    double driveDist = -1.0; // kilometers
-                    double fuelTrip  = -1.0; // liters
-                    double driveEcon = -1.0; // kilometers per liter
-                    Device.FuelEconomyType driveEconType = Device.FuelEconomyType.UNKNOWN;
-                    long   stopElaps = -1L;
-                    long   idleElaps = -1L;
-                    double fuelIdle  = -1.0;
-                    double maxSpeedK = (this.maxAchievedSpeedK > 0.0)? this.maxAchievedSpeedK : 0.0; // final trip stop
-                    this._addRecord( // getBodyDataIterator
-                        this.deviceDetailData,
-                        accountID, devID, device,
-                        this.lastStartTime  , this.lastStartPoint, this.lastStartAddress, this.lastStartOdometer, this.lastStartOdomOfs, this.lastStartFuelUsed,
-                        -1L                 , null               , ""                   , -1.0                  , 0.0                  , -1.0                  ,
-                        driveTime, driveDist, fuelTrip, driveEcon, driveEconType,
-                        stopElaps, idleElaps, fuelIdle, maxSpeedK);
-                } else {
-                    // -- 
+                public String getDeviceSettingsKey(Device device) {
+                    // -- settings read by "_collectDeviceMotion" (the description is displayed from the cached rows)
+                    return StringTools.join(device.getIgnitionStatusCodes(),",") + "|" +
+                        device.getDeviceCode() + "|" +
+                        device.getHoursOfOperation() + "|" +
+                        device.getDescription();
                 }
+            }, true);
 
-                /* fuel economy */
-                double driveEcon = (this.totalDriveFuel > 0.0)? (this.totalOdomKM / this.totalDriveFuel) : 0.0;
-                Device.FuelEconomyType driveEconType = Device.FuelEconomyType.FUEL_CONSUMED;
+        /* merge device data */
+        for (DeviceMotionData dmd : devMotion) {
 
-                /* device total record */
-                FieldData fd = new FieldData();
-                fd.setRowType(DBDataRow.RowType.TOTAL);
-                long idleElaps = (this.totalIdleSec > 0L)? this.totalIdleSec : -1L;
-                fd.setAccount(account);
-                fd.setDevice(device);
-                fd.setString(FieldLayout.DATA_ACCOUNT_ID        , this.getAccountID());
-                fd.setString(FieldLayout.DATA_DEVICE_ID         , devID);
-                fd.setDouble(FieldLayout.DATA_ODOMETER_DELTA    , this.totalOdomKM); // odomDelta
-                fd.setLong(  FieldLayout.DATA_TRIP_ELAPSED      , this.totalDriveSec);
-                fd.setLong(  FieldLayout.DATA_DRIVING_ELAPSED   , this.totalDriveSec);
-                fd.setDouble(FieldLayout.DATA_FUEL_TRIP         , this.totalDriveFuel);
-                fd.setDouble(FieldLayout.DATA_FUEL_ECONOMY      , driveEcon);
-                fd.setValue( FieldLayout.DATA_FUEL_ECONOMY_TYPE , driveEconType);
-                fd.setLong(  FieldLayout.DATA_STOP_COUNT        , this.totalStopCount);
-                fd.setLong(  FieldLayout.DATA_STOP_ELAPSED      , this.totalStopSec);
-                fd.setLong(  FieldLayout.DATA_IDLE_ELAPSED      , idleElaps);
-                fd.setDouble(FieldLayout.DATA_FUEL_IDLE         , this.totalIdleFuel);
-                fd.setDouble(FieldLayout.DATA_SPEED_MAXIMUM     , this.totalMaxSpeedK);
-                // -- Work Hours
-                fd.setLong(  FieldLayout.DATA_TRIP_ELAPSED_WH   , this.tworkDriveSec);
-                fd.setLong(  FieldLayout.DATA_DRIVING_ELAPSED_WH, this.tworkDriveSec);
-                fd.setDouble(FieldLayout.DATA_ODOMETER_DELTA_WH , this.tworkOdomKM);
-                fd.setDouble(FieldLayout.DATA_FUEL_TRIP_WH      , this.tworkDriveFuel);
-                fd.setDouble(FieldLayout.DATA_FUEL_IDLE_WH      , this.tworkIdleFuel);
-                fd.setLong(  FieldLayout.DATA_STOP_COUNT_WH     , this.tworkStopCount);
-                // -- After Hours
-                fd.setLong(  FieldLayout.DATA_TRIP_ELAPSED_AH   , (this.totalDriveSec - this.tworkDriveSec));
-                fd.setLong(  FieldLayout.DATA_DRIVING_ELAPSED_AH, (this.totalDriveSec - this.tworkDriveSec));
-                fd.setDouble(FieldLayout.DATA_ODOMETER_DELTA_AH , (this.totalOdomKM - this.tworkOdomKM));
-                this.deviceTotalData.add(fd);
+            /* device total record */
+            if (dmd.totalData != null) {
+                this.deviceTotalData.add(dmd.totalData);
 
                 /* grand totals */
-                grandTotalOdomKM    += this.totalOdomKM;
-                grandTotalDriveSec  += this.totalDriveSec;
-                grandTotalDriveFuel += this.totalDriveFuel;
-                grandTotalStopCount += this.totalStopCount;
-                grandTotalStopSec   += this.totalStopSec;
-                grandTotalIdleSec   += this.totalIdleSec;
-                grandTotalIdleFuel  += this.totalIdleFuel;
-                grandTotalMaxSpeedK  = Math.max(grandTotalMaxSpeedK,this.totalMaxSpeedK);
+                grandTotalOdomKM    += dmd.totalOdomKM;
+                grandTotalDriveSec  += dmd.totalDriveSec;
+                grandTotalDriveFuel += dmd.totalDriveFuel;
+                grandTotalStopCount += dmd.totalStopCount;
+                grandTotalStopSec   += dmd.totalStopSec;
+                grandTotalIdleSec   += dmd.totalIdleSec;
+                grandTotalIdleFuel  += dmd.totalIdleFuel;
+                grandTotalMaxSpeedK  = Math.max(grandTotalMaxSpeedK,dmd.totalMaxSpeedK);
                 // -- Work Hours
-                gworkTotalOdomKM    += this.tworkOdomKM;
-                gworkTotalDriveSec  += this.tworkDriveSec;
+                gworkTotalOdomKM    += dmd.tworkOdomKM;
+                gworkTotalDriveSec  += dmd.tworkDriveSec;
                 // -- After Hours
-                gafterTotalOdomKM   += (this.totalOdomKM - this.tworkOdomKM);
-                gafterTotalDriveSec += (this.totalDriveSec - this.tworkDriveSec);
+                gafterTotalOdomKM   += (dmd.totalOdomKM - dmd.tworkOdomKM);
+                gafterTotalDriveSec += (dmd.totalDriveSec - dmd.tworkDriveSec);
 
-            } catch (DBException dbe) {
-                Print.logError("Error retrieving EventData for Device: " + devID);
             }
 
             /* save device detail data */
-            allDevicesDetailData.addAll(this.deviceDetailData);
-            this.deviceDetailData.clear();
-            this.deviceDetailData = null;
+            allDevicesDetailData.addAll(dmd.detailData);
 
-        } // Device list iterator
+        }
 
         /* return row iterator */
         if (this.isFleetReport) {
@@ -950,6 +754,388 @@ public class MotionReport
         
     }
 
+    /**
+    *** Per-device motion data (see "_collectDeviceMotion")
+    **/
+    private static class DeviceMotionData
+    {
+        public Vector<FieldData>    detailData      = null;
+        public FieldData            totalData       = null;
+        public double               totalOdomKM     = 0.0;
+        public long                 totalDriveSec   = 0L;
+        public double               totalDriveFuel  = 0.0;
+        public int                  totalStopCount  = 0;
+        public long                 totalStopSec    = 0L;
+        public long                 totalIdleSec    = 0L;
+        public double               totalIdleFuel   = 0.0;
+        public double               totalMaxSpeedK  = 0.0;
+        public double               tworkOdomKM     = 0.0;
+        public long                 tworkDriveSec   = 0L;
+    }
+
+    /**
+    *** Returns true, the per-device motion state is reset for each device.
+    **/
+    @Override
+    protected boolean getSupportsParallelDevices()
+    {
+        return true;
+    }
+
+    /**
+    *** Analyzes the motion events for the specified device.  When devices are collected in
+    *** parallel, this is called on a separate copy of this report for each device.
+    *** @param device  The Device
+    *** @return The device detail/total data
+    **/
+    private DeviceMotionData _collectDeviceMotion(Device device)
+    {
+        Account account   = this.getAccount();
+        String  accountID = account.getAccountID();
+        String  devID     = device.getDeviceID();
+        DeviceMotionData dmd = new DeviceMotionData();
+        //Print.logInfo("Processing events for device: " + devID);
+
+        // -- new device detail data iterator
+        this.deviceDetailData    = new Vector<FieldData>();
+
+        // -- reset per-device totals */
+        this.totalOdomKM         = 0.0;
+        this.totalDriveSec       = 0L ;
+        this.totalDriveFuel      = 0.0;
+        this.totalStopCount      = 0;
+        this.totalStopSec        = 0L ;
+        this.totalIdleSec        = 0L ;
+        this.totalIdleFuel       = 0.0;
+        this.totalMaxSpeedK      = 0.0;
+        this.tworkOdomKM         = 0.0;
+        this.tworkDriveSec       = 0L;
+        this.tworkDriveFuel      = 0.0;
+        this.tworkStopCount      = 0;
+        this.tworkIdleFuel       = 0.0;
+
+        // -- reset ignition state
+        this.isIgnitionOn        = false;
+        this.lastIgnitionEvent   = null;
+        this.ignitionCodes       = null;
+        // -- reset idle state
+        this.idleStartEvent      = null;
+        this.idleStopEvent       = null;
+        this.idleAccumulator     = 0L;
+        // -- reset maximum achieved speed
+        this.maxAchievedSpeedK   = 0.0;
+        // -- reset motion
+        this.isInMotion          = false;
+        this.lastMotionEvent     = null;
+        this.pendingStopEvent    = null;
+        // -- reset start
+        this.lastStartTime       = 0L;
+        this.lastStartPoint      = null;
+        this.lastStartAddress    = "";
+        this.lastStartOdometer   = 0.0;
+        this.lastStartOdomOfs    = 0.0;
+        this.lastStartFuelUsed   = 0.0;
+        this.lastStartFuelLevel  = 0.0;
+        this.lastStartFuelRemain = 0.0;
+        // -- reset stop
+        this.lastStopTime        = 0L;
+        this.lastStopPoint       = null;
+        this.lastStopAddress     = "";
+        this.lastStopOdometer    = 0.0;
+        this.lastStopOdomOfs     = 0.0;
+        this.lastStopFuelUsed    = 0.0;
+        this.lastStopFuelLevel   = 0.0;
+        this.lastStopFuelRemain  = 0.0;
+        // -- reset state
+        this.lastStateChange     = STATE_UNKNOWN;
+        // -- reset last valid odometer
+        this.lastValidOdometerKM = 0.0;
+        this.lastValidOdomOfsKM  = 0.0;
+
+        //Print.logDebug("Analyzing Device: " + devID);
+
+        // -- Device ignition statusCodes
+        this.ignitionCodes = device.getIgnitionStatusCodes();
+        boolean hasIgnition = (this.ignitionCodes != null);
+
+        // -- trip start/stop type
+        RTProperties rtp = this.getProperties();
+        String tt = rtp.getString(PROP_tripStartType,MOTION_SPEED[0]).toLowerCase();
+        //Print.logInfo("Trip type: " + tt);
+        if (ListTools.contains(MOTION_DEFAULT,tt)) {
+            // -- "default" (TRIP_ON_ENGINE not selected when using "default")
+            String devCode = device.getDeviceCode();
+            DCServerConfig dcs = DCServerFactory.getServerConfig(devCode);
+            if ((dcs == null) && StringTools.isBlank(devCode) && Account.IsDemoAccount(accountID)) {
+                // -- special case for "demo" account when 'deviceCode' is blank
+                dcs = DCServerFactory.getServerConfig(DCServerFactory.OPENDMTP_NAME);
+                if (dcs == null) {
+                    Print.logWarn("Account 'demo' DCServerConfig not found: " + DCServerFactory.OPENDMTP_NAME);
+                }
+            }
+            if (dcs != null) {
+                // -- DCServerConfig found
+                if (dcs.getStartStopSupported(false)) {
+                    // -- Device supports start/stop
+                    this.tripStartType = TRIP_ON_START;
+                } else
+                if (hasIgnition) {
+                    // -- Device supports ignition state
+                    this.tripStartType = TRIP_ON_IGNITION;
+                } else {
+                    // -- Default to speed
+                    this.tripStartType = TRIP_ON_SPEED;
+                }
+            } else {
+                // -- DCServerConfig not found ('deviceCode' is either blank or invalid)
+                if (hasIgnition) {
+                    // -- Device supports ignition state
+                    this.tripStartType = TRIP_ON_IGNITION;
+                } else {
+                    // -- Default
+                    this.tripStartType = TRIP_ON_SPEED;
+                }
+            }
+            this.tripTypeDefault = true;
+        } else
+        if (ListTools.contains(MOTION_STARTSTOP,tt)) {
+            // -- "startstop"
+            this.tripStartType = TRIP_ON_START;
+            this.tripTypeDefault = false;
+        } else
+        if (ListTools.contains(MOTION_IGNITION,tt)/* && hasIgnition */) {
+            // -- "ignition"
+            this.tripStartType   = TRIP_ON_IGNITION;
+            this.tripTypeDefault = false;
+            if (!hasIgnition) {
+                this.ignitionCodes = new int[] { StatusCodes.STATUS_IGNITION_OFF, StatusCodes.STATUS_IGNITION_ON };
+                hasIgnition = true;
+            }
+        } else
+        if (ListTools.contains(MOTION_ENGINE,tt)) {
+            // -- "ignition"
+            this.tripStartType   = TRIP_ON_ENGINE;
+            this.tripTypeDefault = false;
+        } else {
+            // -- "speed", "motion"
+            this.tripStartType   = TRIP_ON_SPEED;
+            this.tripTypeDefault = true;
+        }
+
+        /* debug */
+        if (RTConfig.isDebugMode()) {
+            Print.logDebug("Trip Start Type: [" + this.tripStartType + "] " + TripTypeName(this.tripStartType));
+            if (hasIgnition) {
+                String ignOff = StatusCodes.GetHex(this.ignitionCodes[0]);
+                String ignOn  = StatusCodes.GetHex(this.ignitionCodes[1]);
+                Print.logDebug("Device Ignition Codes "+ignOff+":"+ignOn+" [" + accountID + "/" + devID + "]");
+            } else {
+                Print.logDebug("No defined Device ignition codes [" + accountID + "/" + devID + "]");
+            }
+        }
+
+        // -- get events
+        //this.lastValidOdometerKM = 0.0; <-- already reset above
+        this.deviceEventIndex = 0L; // provide an index to all events read
+        if (!this._addTripSegmentRecords(device)) {
+            this.getEventData_Device(device, this); // <== callback to 'handleDBRecord'
+        }
+        //Print.logInfo("Total Accumulated Idle Time: " + this.totalIdleSec + " seconds");
+
+        // -- handle final record here
+        if (this.lastStopTime > 0) {
+            // -- we are stopped
+            long   driveTime = (this.lastStartTime > 0L)? (this.lastStopTime     - this.lastStartTime    ) : -1L;
+            double driveDist = (this.lastStartTime > 0L)? (this.lastStopOdometer - this.lastStartOdometer) : -1.0; // kilometers
+            double fuelTrip  = (this.lastStartTime > 0L)? (this.lastStopFuelUsed - this.lastStartFuelUsed) : -1.0; // liter
+            double driveEcon = (fuelTrip > 0.0)? (driveDist / fuelTrip) : 0.0; // kilometers per liter
+            Device.FuelEconomyType driveEconType = Device.FuelEconomyType.FUEL_CONSUMED;
+            long   stopElaps = -1L;
+            long   idleElaps = (this.idleAccumulator > 0L)? this.idleAccumulator : -1L;
+            double fuelIdle  = -1.0;
+            double maxSpeedK = (this.maxAchievedSpeedK > 0.0)? this.maxAchievedSpeedK : 0.0; // final trip stop
+            this._addRecord( // getBodyDataIterator
+                this.deviceDetailData,
+                accountID, devID, device,
+                this.lastStartTime  , this.lastStartPoint, this.lastStartAddress, this.lastStartOdometer, this.lastStartOdomOfs, this.lastStartFuelUsed,
+                this.lastStopTime   , this.lastStopPoint , this.lastStopAddress , this.lastStopOdometer , this.lastStopOdomOfs , this.lastStopFuelUsed ,
+                driveTime, driveDist, fuelTrip, driveEcon, driveEconType,
+                stopElaps, idleElaps, fuelIdle, maxSpeedK);
+        } else
+        if (this.lastStartTime > 0) {
+            // -- we haven't stopped during the range of this report
+            long   driveTime = -1L;
+            double driveDist = -1.0; // kilometers
+            double fuelTrip  = -1.0; // liters
+            double driveEcon = -1.0; // kilometers per liter
+            Device.FuelEconomyType driveEconType = Device.FuelEconomyType.UNKNOWN;
+            long   stopElaps = -1L;
+            long   idleElaps = -1L;
+            double fuelIdle  = -1.0;
+            double maxSpeedK = (this.maxAchievedSpeedK > 0.0)? this.maxAchievedSpeedK : 0.0; // final trip stop
+            this._addRecord( // getBodyDataIterator
+                this.deviceDetailData,
+                accountID, devID, device,
+                this.lastStartTime  , this.lastStartPoint, this.lastStartAddress, this.lastStartOdometer, this.lastStartOdomOfs, this.lastStartFuelUsed,
+                -1L                 , null               , ""                   , -1.0                  , 0.0                  , -1.0                  ,
+                driveTime, driveDist, fuelTrip, driveEcon, driveEconType,
+                stopElaps, idleElaps, fuelIdle, maxSpeedK);
+        } else {
+            // -- 
+        }
+
+        /* fuel economy */
+        double driveEcon = (this.totalDriveFuel > 0.0)? (this.totalOdomKM / this.totalDriveFuel) : 0.0;
+        Device.FuelEconomyType driveEconType = Device.FuelEconomyType.FUEL_CONSUMED;
+
+        /* device total record */
+        FieldData fd = new FieldData();
+        fd.setRowType(DBDataRow.RowType.TOTAL);
+        long idleElaps = (this.totalIdleSec > 0L)? this.totalIdleSec : -1L;
+        fd.setAccount(account);
+        fd.setDevice(device);
+        fd.setString(FieldLayout.DATA_ACCOUNT_ID        , this.getAccountID());
+        fd.setString(FieldLayout.DATA_DEVICE_ID         , devID);
+        fd.setDouble(FieldLayout.DATA_ODOMETER_DELTA    , this.totalOdomKM); // odomDelta
+        fd.setLong(  FieldLayout.DATA_TRIP_ELAPSED      , this.totalDriveSec);
+        fd.setLong(  FieldLayout.DATA_DRIVING_ELAPSED   , this.totalDriveSec);
+        fd.setDouble(FieldLayout.DATA_FUEL_TRIP         , this.totalDriveFuel);
+        fd.setDouble(FieldLayout.DATA_FUEL_ECONOMY      , driveEcon);
+        fd.setValue( FieldLayout.DATA_FUEL_ECONOMY_TYPE , driveEconType);
+        fd.setLong(  FieldLayout.DATA_STOP_COUNT        , this.totalStopCount);
+        fd.setLong(  FieldLayout.DATA_STOP_ELAPSED      , this.totalStopSec);
+        fd.setLong(  FieldLayout.DATA_IDLE_ELAPSED      , idleElaps);
+        fd.setDouble(FieldLayout.DATA_FUEL_IDLE         , this.totalIdleFuel);
+        fd.setDouble(FieldLayout.DATA_SPEED_MAXIMUM     , this.totalMaxSpeedK);
+        // -- Work Hours
+        fd.setLong(  FieldLayout.DATA_TRIP_ELAPSED_WH   , this.tworkDriveSec);
+        fd.setLong(  FieldLayout.DATA_DRIVING_ELAPSED_WH, this.tworkDriveSec);
+        fd.setDouble(FieldLayout.DATA_ODOMETER_DELTA_WH , this.tworkOdomKM);
+        fd.setDouble(FieldLayout.DATA_FUEL_TRIP_WH      , this.tworkDriveFuel);
+        fd.setDouble(FieldLayout.DATA_FUEL_IDLE_WH      , this.tworkIdleFuel);
+        fd.setLong(  FieldLayout.DATA_STOP_COUNT_WH     , this.tworkStopCount);
+        // -- After Hours
+        fd.setLong(  FieldLayout.DATA_TRIP_ELAPSED_AH   , (this.totalDriveSec - this.tworkDriveSec));
+        fd.setLong(  FieldLayout.DATA_DRIVING_ELAPSED_AH, (this.totalDriveSec - this.tworkDriveSec));
+        fd.setDouble(FieldLayout.DATA_ODOMETER_DELTA_AH , (this.totalOdomKM - this.tworkOdomKM));
+        dmd.totalData = fd;
+
+        /* device totals (see "getBodyDataIterator") */
+        dmd.totalOdomKM    = this.totalOdomKM;
+        dmd.totalDriveSec  = this.totalDriveSec;
+        dmd.totalDriveFuel = this.totalDriveFuel;
+        dmd.totalStopCount = this.totalStopCount;
+        dmd.totalStopSec   = this.totalStopSec;
+        dmd.totalIdleSec   = this.totalIdleSec;
+        dmd.totalIdleFuel  = this.totalIdleFuel;
+        dmd.totalMaxSpeedK = this.totalMaxSpeedK;
+        dmd.tworkOdomKM    = this.tworkOdomKM;
+        dmd.tworkDriveSec  = this.tworkDriveSec;
+
+        /* device detail data */
+        dmd.detailData = this.deviceDetailData;
+        this.deviceDetailData = null;
+        return dmd;
+
+    }
+
+    /**
+    *** Returns true if the precomputed TripSegment table can be used in place of the
+    *** EventData records for the specified device.  The segments must have been computed
+    *** with the same trip delimiter (and "speed" parameters) as this report.
+    *** @param device  The Device
+    *** @return True if the TripSegment table can be used
+    **/
+    private boolean _canUseTripSegments(Device device)
+    {
+        if (!this.useTripSegments) {
+            return false;
+        } else
+        if (this.legacyIdleDefinition) {
+            // -- segments only record the non-legacy idle definition
+            return false;
+        } else
+        if (!TripSegment.IsEnabled()) {
+            return false;
+        } else
+        if (TripSegment.GetTripType(device) != this.tripStartType) {
+            return false;
+        } else
+        if (this.tripStartType == TRIP_ON_SPEED) {
+            return (TripSegment.GetMinimumSpeedKPH()        == this.minSpeedKPH      ) &&
+                   (TripSegment.GetMinimumStoppedTimeSec()  == this.minStoppedTimeSec) &&
+                   (TripSegment.GetStopOnIgnitionOff()      == this.stopOnIgnitionOff);
+        } else {
+            return (TripSegment.GetStopOnIgnitionOff()      == this.stopOnIgnitionOff);
+        }
+    }
+
+    /**
+    *** Adds a detail record for each precomputed trip segment starting within the
+    *** report time range, in place of analyzing the EventData records.
+    *** Trips are attributed to the range containing their start time.
+    *** @param device  The Device
+    *** @return True if the TripSegment table was used, false if the EventData records
+    ***     must be analyzed
+    **/
+    private boolean _addTripSegmentRecords(Device device)
+    {
+        if (!this._canUseTripSegments(device)) {
+            return false;
+        }
+        String acctID = device.getAccountID();
+        String devID  = device.getDeviceID();
+        long timeEnd  = this.getTimeEnd();
+        long rangeEnd = (timeEnd > 0L)? timeEnd : Long.MAX_VALUE;
+        TripSegment segs[];
+        try {
+            if (!TripSegment.hasSegmentCoverage(acctID, devID, this.getTimeStart(), timeEnd)) {
+                Print.logDebug("TripSegments do not cover range, analyzing EventData: " + acctID + "/" + devID);
+                return false;
+            }
+            segs = TripSegment.getTripSegments(acctID, devID, this.getTimeStart(), timeEnd);
+        } catch (DBException dbe) {
+            Print.logException("Unable to read TripSegments, analyzing EventData: " + acctID + "/" + devID, dbe);
+            return false;
+        }
+        Print.logDebug("Using " + segs.length + " TripSegment(s): " + acctID + "/" + devID);
+        for (TripSegment ts : segs) {
+            double maxSpeedK = (ts.getMaxSpeedKPH() > 0.0)? ts.getMaxSpeedKPH() : 0.0;
+            if (ts.hasStopped() && (ts.getStopTime() <= rangeEnd)) {
+                // -- start --> stop [==> start]
+                long   nextStart = ts.getNextStartTime();
+                long   driveTime = ts.getDriveSeconds();
+                double driveDist = ts.getDriveDistanceKM(); // kilometers
+                double fuelTrip  = ts.getStopFuelUsed() - ts.getStartFuelUsed(); // liters
+                double driveEcon = (fuelTrip > 0.0)? (driveDist / fuelTrip) : 0.0; // kilometers per liter
+                Device.FuelEconomyType driveEconType = Device.FuelEconomyType.FUEL_CONSUMED;
+                long   stopElaps = ((nextStart > 0L) && (nextStart <= rangeEnd))? ts.getStopSeconds() : -1L;
+                long   idleElaps = (ts.getIdleSeconds() > 0L)? ts.getIdleSeconds() : -1L;
+                double fuelIdle  = -1.0;
+                this._addRecord( // _addTripSegmentRecords
+                    this.deviceDetailData,
+                    acctID, devID, device,
+                    ts.getStartTime(), ts.getStartGeoPoint(), ts.getStartAddress(), ts.getStartOdometerKM(), ts.getStartOdomOffsetKM(), ts.getStartFuelUsed(),
+                    ts.getStopTime() , ts.getStopGeoPoint() , ts.getStopAddress() , ts.getStopOdometerKM() , ts.getStopOdomOffsetKM() , ts.getStopFuelUsed() ,
+                    driveTime, driveDist, fuelTrip, driveEcon, driveEconType,
+                    stopElaps, idleElaps, fuelIdle, maxSpeedK);
+            } else {
+                // -- we haven't stopped during the range of this report
+                Device.FuelEconomyType driveEconType = Device.FuelEconomyType.UNKNOWN;
+                this._addRecord( // _addTripSegmentRecords
+                    this.deviceDetailData,
+                    acctID, devID, device,
+                    ts.getStartTime(), ts.getStartGeoPoint(), ts.getStartAddress(), ts.getStartOdometerKM(), ts.getStartOdomOffsetKM(), ts.getStartFuelUsed(),
+                    -1L              , null                 , ""                  , -1.0                   , 0.0                      , -1.0                 ,
+                    -1L, -1.0, -1.0, -1.0, driveEconType,
+                    -1L, -1L, -1.0, maxSpeedK);
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+
     /**
     *** Creates and returns an iterator for the row data displayed in the total rows of this report.
     *** @return The total row data iterator
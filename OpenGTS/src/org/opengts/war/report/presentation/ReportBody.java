@@ -49,6 +49,12 @@ public class ReportBody
 
     public static final String  PROP_ReportBody_debugXLS    = "ReportBody.debugXLS";
 
+    /* flush the output after this many body rows (rows are written as they are read) */
+    private static final int    FLUSH_ROW_INTERVAL          = 500;
+
+    /* HTML body rows are also flushed when this many milliseconds have elapsed since the last flush */
+    private static final long   FLUSH_HTML_INTERVAL_MS      = 1000L;
+
     // ------------------------------------------------------------------------
 
     private ReportTable         reportTable     = null;
@@ -150,12 +156,18 @@ public class ReportBody
         /* report body */
         DBDataIterator data = (report != null)? report.getBodyDataIterator() : null;
         if ((data != null) && data.hasNext()) {
-            int RC = 0;
+            int  RC = 0;
+            long lastFlushMS = 0L; // first row is flushed immediately
             for (RC = 0; data.hasNext(); RC++) {
                 DBDataRow dr = data.next();
                 if (dr != null) {
                     this.bodyRow.writeHTML(out, level+1, RC, false/*totals*/, dr);
                 }
+                long nowMS = System.currentTimeMillis();
+                if ((((RC + 1) % FLUSH_ROW_INTERVAL) == 0) || ((nowMS - lastFlushMS) >= FLUSH_HTML_INTERVAL_MS)) {
+                    out.flush();
+                    lastFlushMS = nowMS;
+                }
             }
             this._setRecordCount(report, RC);
         }
@@ -201,6 +213,9 @@ public class ReportBody
                 if (dr != null) {
                     this.bodyRow.writeXML(out, level+1, RC, false/*totals*/, dr);
                 }
+                if (((RC + 1) % FLUSH_ROW_INTERVAL) == 0) {
+                    out.flush();
+                }
             }
             this._setRecordCount(report, RC);
         }
@@ -243,6 +258,9 @@ public class ReportBody
                 if (dr != null) {
                     this.bodyRow.writeCSV(out, level+1, RC, false/*totals*/, dr);
                 }
+                if (((RC + 1) % FLUSH_ROW_INTERVAL) == 0) {
+                    out.flush();
+                }
             }
             this._setRecordCount(report, RC);
         }
@@ -312,6 +312,7 @@ public class ReportTable
         out.print("<table class='"+tableClass+"' width='100%' cellspacing='0' cellpadding='0' border='0'>\n");
         out.print("<!-- Report Header -->\n");
         this.rptHeader.writeHTML(out, level+1, rd);
+        out.flush(); // title/header are displayed before the report data is read
         out.print("<!-- Report Data -->\n");
         this.rptBody.writeHTML(out, level+1, rd);
         out.print("</table>\n");
@@ -519,6 +520,34 @@ public class ReportTable
             pw.print(XmlFilter(isSoapRequest,rptURL.toString()));
             pw.print(XMLTools.endTAG(isSoapRequest,TAG_ReportUrl,true));
         } else
+        if (rptFormat.equals(ReportURL.Format.EMAIL) && ReportJobQueue.IsEmailEnabled()) { // FORMAT_EMAIL
+            // -- generate and email the report on the report job queue
+            String rptMsg = "";
+            boolean sent  = false;
+            String toEmail = rc.hasEmailAddresses()?
+                rc.getEmailAddresses() :
+                Account.getReportEmailAddress(rd.getAccount(),rd.getUser());
+            if (StringTools.isBlank(toEmail)) {
+                Print.logWarn("No email recipients have been specified");
+                rptMsg = "No email recipients specified";
+                sent   = false;
+            } else {
+                try {
+                    ReportJobQueue.SubmitEmail(rd, toEmail, ReportTable._getEmailSubject(i18n, rd));
+                    rptMsg = "EMail queued: " + toEmail;
+                    sent   = true; // queued
+                } catch (ReportException re) {
+                    rptMsg = re.getMessage();
+                    sent   = false;
+                }
+            }
+            pw.print(PFX2);
+            pw.print(XMLTools.startTAG(isSoapRequest,TAG_ReportEmail,        // TAG_ReportEmail
+                XMLTools.ATTR(ATTR_sent,(sent?"true":"false")),              // ATTR_sent
+                false,false));
+            pw.print(XmlFilter(isSoapRequest,rptMsg));
+            pw.print(XMLTools.endTAG(isSoapRequest,TAG_ReportEmail,true));
+        } else
         if (rptFormat.equals(ReportURL.Format.EMAIL)) { // FORMAT_EMAIL
             String rptMsg = "";
             boolean sent  = false;
@@ -546,33 +575,11 @@ public class ReportTable
                     sent   = false;
                 } else {
                     String reportID = rd.getReportName();
-                    // -- report subtitle (should be Device/Group selection) [2.6.2-B14]
-                    StringBuffer subTitle = new StringBuffer();
-                    ReportDeviceList rdl = rd.getReportDeviceList();
-                    if (rd.isDeviceGroupReport()) {
-                        // -- DeviceGroup selection
-                        DeviceGroup grp = rdl.getDeviceGroup();
-                        //subTitle.append("Group: ");
-                        if (grp != null) {
-                            subTitle.append("[").append(grp.getGroupID()).append("] ");
-                            subTitle.append(grp.getDescription());
-                        }
-                    } else {
-                        // -- Device selection
-                        Device dev = rdl.getFirstDevice();
-                        //subTitle.append("Device: ");
-                        if (dev != null) {
-                            subTitle.append("[").append(dev.getDeviceID()).append("] ");
-                            subTitle.append(dev.getDescription());
-                        }
-                    }
                     // -- report attachment
                     byte rptAttach[] = StringTools.getBytes(htmlStr);
                     String multipartType = "";
                     // -- subject
-                    String subj = 
-                        i18n.getString("ReportDisplay.reportTitle","Report")+": " +
-                        rd.getReportTitle() + " - " + subTitle; // email subject
+                    String subj = ReportTable._getEmailSubject(i18n, rd); // email subject
                     // -- body
                     String body = null;
                     boolean inclBodyText = false; // [2.6.4-B44]
@@ -650,6 +657,33 @@ public class ReportTable
 
     }
 
+    /* returns the email subject for the specified report (see also "ReportDisplay") */
+    public static String _getEmailSubject(I18N i18n, ReportData rd)
+    {
+        // -- report subtitle (should be Device/Group selection) [2.6.2-B14]
+        StringBuffer subTitle = new StringBuffer();
+        ReportDeviceList rdl = rd.getReportDeviceList();
+        if (rd.isDeviceGroupReport()) {
+            // -- DeviceGroup selection
+            DeviceGroup grp = rdl.getDeviceGroup();
+            //subTitle.append("Group: ");
+            if (grp != null) {
+                subTitle.append("[").append(grp.getGroupID()).append("] ");
+                subTitle.append(grp.getDescription());
+            }
+        } else {
+            // -- Device selection
+            Device dev = rdl.getFirstDevice();
+            //subTitle.append("Device: ");
+            if (dev != null) {
+                subTitle.append("[").append(dev.getDeviceID()).append("] ");
+                subTitle.append(dev.getDescription());
+            }
+        }
+        return i18n.getString("ReportDisplay.reportTitle","Report") + ": " +
+            rd.getReportTitle() + " - " + subTitle; // email subject
+    }
+
     /* write "emailReport" JSP */
     protected static String _writeHTMLReport(
         final RequestProperties reqState,
@@ -903,8 +937,17 @@ public class ReportTable
             return 0;
         }
 
+        /* output stream */
+        OutputStream os = null;
+        try {
+            os = out.getOutputStream();
+        } catch (IOException ioe) {
+            throw new ReportException("'OutputStream' error", ioe);
+        }
+
         /* ReportSpreadsheet */
-        ReportSpreadsheet rptSS = new ReportSpreadsheet(xlsx, rd);
+        // -- XLSX rows are streamed to the output stream as they are added
+        ReportSpreadsheet rptSS = new ReportSpreadsheet(xlsx, rd, os);
 
         /* create XLS report */
         int rcdCount = 0;
@@ -926,13 +969,7 @@ public class ReportTable
             }
         }
 
-        /* write to output */
-        OutputStream os = null;
-        try {
-            os = out.getOutputStream();
-        } catch (IOException ioe) {
-            throw new ReportException("'OutputStream' error", ioe);
-        }
+        /* write to output (remaining streamed rows) */
         boolean ok = rptSS.write(os);
 
         /* return count */
@@ -211,6 +211,187 @@ public class CommonServlet
         }
     }
 
+    // ------------------------------------------------------------------------
+
+    public  static final String HEADER_ACCEPT_ENCODING          = "Accept-Encoding";
+    public  static final String HEADER_ETAG                     = "ETag";
+    public  static final String HEADER_LAST_MODIFIED            = "Last-Modified";
+    public  static final String HEADER_IF_NONE_MATCH            = "If-None-Match";
+    public  static final String HEADER_IF_MODIFIED_SINCE        = "If-Modified-Since";
+    public  static final String HEADER_CACHE_CONTROL            = "Cache-Control";
+
+    /**
+    *** Returns the preferred compression content-encoding accepted by the client,
+    *** based on the request "Accept-Encoding" header.
+    *** @param request  The HttpServletRequest
+    *** @return "gzip", "deflate", or null if neither is accepted
+    **/
+    public static String getAcceptedCompression(HttpServletRequest request)
+    {
+        String accept = (request != null)? request.getHeader(HEADER_ACCEPT_ENCODING) : null;
+        if (StringTools.isBlank(accept)) {
+            return null;
+        }
+        // -- ie. "gzip, deflate;q=0.5, identity"
+        double gzipQ = 0.0, deflQ = 0.0;
+        String enc[] = StringTools.parseStringArray(accept.toLowerCase(), ',');
+        for (int i = 0; i < enc.length; i++) {
+            String e = enc[i].trim();
+            double q = 1.0;
+            int p = e.indexOf(';');
+            if (p >= 0) {
+                String qs = e.substring(p + 1).trim();
+                if (qs.startsWith("q=")) {
+                    q = StringTools.parseDouble(qs.substring(2).trim(), 0.0);
+                }
+                e = e.substring(0, p).trim();
+            }
+            if (e.equals(CompressedHttpServletResponse.ENCODING_GZIP) || e.equals("x-gzip")) {
+                gzipQ = q;
+            } else
+            if (e.equals(CompressedHttpServletResponse.ENCODING_DEFLATE)) {
+                deflQ = q;
+            }
+        }
+        if ((gzipQ > 0.0) && (gzipQ >= deflQ)) {
+            return CompressedHttpServletResponse.ENCODING_GZIP;
+        } else
+        if (deflQ > 0.0) {
+            return CompressedHttpServletResponse.ENCODING_DEFLATE;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+    *** Returns a response wrapper which compresses the response body, if the client
+    *** accepts a supported compression encoding.  "finishCompressedResponse" must be
+    *** called on the returned response once the response has been written.
+    *** @param request   The HttpServletRequest
+    *** @param response  The HttpServletResponse
+    *** @param minSize   The minimum response size for which compression will be applied
+    *** @return The compressing response wrapper, or the specified response if compression
+    ***     was not accepted by the client
+    **/
+    public static HttpServletResponse getCompressedResponse(
+        HttpServletRequest request, HttpServletResponse response,
+        int minSize)
+    {
+        if ((response == null) || (response instanceof CompressedHttpServletResponse)) {
+            return response;
+        }
+        // -- the response varies with "Accept-Encoding", whether or not it is compressed
+        response.setHeader(CompressedHttpServletResponse.HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        String encoding = CommonServlet.getAcceptedCompression(request);
+        if (encoding == null) {
+            return response;
+        }
+        return new CompressedHttpServletResponse(response, encoding, minSize);
+    }
+
+    /**
+    *** Completes the response body of a response returned by "getCompressedResponse"
+    *** @param response  The HttpServletResponse
+    **/
+    public static void finishCompressedResponse(HttpServletResponse response)
+    {
+        if (response instanceof CompressedHttpServletResponse) {
+            try {
+                ((CompressedHttpServletResponse)response).finish();
+            } catch (IOException ioe) {
+                // -- client likely closed the connection
+                Print.logDebug("Unable to finish compressed response: " + ioe);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Sets the validator headers ("ETag"/"Last-Modified") on the response, and returns
+    *** true if the request validators indicate that the client already has the current
+    *** version of the response, in which case a "304 Not Modified" status has been set
+    *** and no response body should be written.
+    *** @param request     The HttpServletRequest
+    *** @param response    The HttpServletResponse
+    *** @param etag        The entity-tag for the current response content (may be null)
+    *** @param lastModSec  The last modified time of the response content (<=0 if unknown)
+    *** @return True if "304 Not Modified" has been set on the response
+    **/
+    public static boolean checkNotModified(
+        HttpServletRequest request, HttpServletResponse response,
+        String etag, long lastModSec)
+    {
+        if ((request == null) || (response == null)) {
+            return false;
+        }
+
+        /* set validators */
+        // -- "no-cache" allows the client to store the response, but requires revalidation
+        response.setHeader(HEADER_CACHE_CONTROL, "private, no-cache");
+        if (!StringTools.isBlank(etag)) {
+            response.setHeader(HEADER_ETAG, etag);
+        }
+        if (lastModSec > 0L) {
+            response.setDateHeader(HEADER_LAST_MODIFIED, lastModSec * 1000L);
+        }
+
+        /* GET/HEAD only */
+        String method = request.getMethod();
+        if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method)) {
+            return false;
+        }
+
+        /* If-None-Match (takes precedence over If-Modified-Since) */
+        String ifNoneMatch = request.getHeader(HEADER_IF_NONE_MATCH);
+        if (!StringTools.isBlank(ifNoneMatch)) {
+            if (StringTools.isBlank(etag)) {
+                return false;
+            }
+            String tag = CommonServlet._opaqueETag(etag);
+            String inm[] = StringTools.parseStringArray(ifNoneMatch, ',');
+            for (int i = 0; i < inm.length; i++) {
+                String t = inm[i].trim();
+                if (t.equals("*") || CommonServlet._opaqueETag(t).equals(tag)) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /* If-Modified-Since */
+        if (lastModSec > 0L) {
+            long ims = -1L;
+            try {
+                ims = request.getDateHeader(HEADER_IF_MODIFIED_SINCE);
+            } catch (IllegalArgumentException iae) {
+                // -- invalid date format
+                ims = -1L;
+            }
+            if ((ims > 0L) && ((lastModSec * 1000L) <= ims)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        }
+
+        /* modified */
+        return false;
+
+    }
+
+    /**
+    *** Returns the opaque portion of the specified entity-tag (weak comparison)
+    **/
+    private static String _opaqueETag(String etag)
+    {
+        String t = StringTools.trim(etag);
+        if (t.startsWith("W/") || t.startsWith("w/")) {
+            t = t.substring(2);
+        }
+        return t;
+    }
+
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
@@ -0,0 +1,357 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  HttpServletResponse wrapper which transparently compresses the response body
+//  ("gzip" or "deflate", as negotiated from the request "Accept-Encoding").
+//  - Only text-based content types (HTML, JSON, XML, KML, CSV, JavaScript, etc)
+//    are compressed.
+//  - Responses smaller than 'minSize' bytes are sent uncompressed.
+//  - "finish()" must be called after the servlet has completed writing the
+//    response (see "CommonServlet.finishCompressedResponse").
+// ----------------------------------------------------------------------------
+package org.opengts.war.tools;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+
+import javax.servlet.*;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.opengts.util.StringTools;
+import org.opengts.util.Print;
+
+public class CompressedHttpServletResponse
+    extends HttpServletResponseWrapper
+{
+
+    // ------------------------------------------------------------------------
+
+    public  static final String ENCODING_GZIP               = "gzip";
+    public  static final String ENCODING_DEFLATE            = "deflate";
+
+    public  static final String HEADER_CONTENT_ENCODING     = "Content-Encoding";
+    public  static final String HEADER_CONTENT_LENGTH       = "Content-Length";
+    public  static final String HEADER_VARY                 = "Vary";
+    public  static final String HEADER_ACCEPT_ENCODING      = "Accept-Encoding";
+
+    public  static final int    DEFAULT_MIN_SIZE            = 1024;
+
+    /* compressible content types (substring match) */
+    private static final String COMPRESSIBLE_TYPES[]        = new String[] {
+        "text/",
+        "json",
+        "xml",          // includes KML "application/vnd.google-earth.kml+xml"
+        "javascript",
+        "csv",
+    };
+
+    /**
+    *** Returns true if the specified content type is text-based and should be compressed
+    *** @param contentType  The response content type
+    *** @return True if the content type is compressible
+    **/
+    public static boolean IsCompressibleContentType(String contentType)
+    {
+        if (StringTools.isBlank(contentType)) {
+            return false;
+        }
+        String ct = contentType.toLowerCase();
+        for (String t : COMPRESSIBLE_TYPES) {
+            if (ct.indexOf(t) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    private String                          encoding        = ENCODING_GZIP;
+    private int                             minSize         = DEFAULT_MIN_SIZE;
+
+    private CompressedServletOutputStream   compStream      = null;
+    private ServletOutputStream             outStream       = null;
+    private PrintWriter                     printWriter     = null;
+
+    private int                             statusCode      = SC_OK;
+    private long                            contentLength   = -1L;
+    private boolean                         compressing     = false;
+    private boolean                         passThrough     = false;
+
+    /**
+    *** Constructor
+    *** @param response  The wrapped HttpServletResponse
+    *** @param encoding  The content encoding ("gzip" or "deflate")
+    *** @param minSize   The minimum response size for which compression will be applied
+    **/
+    public CompressedHttpServletResponse(HttpServletResponse response, String encoding, int minSize)
+    {
+        super(response);
+        this.encoding = ENCODING_DEFLATE.equalsIgnoreCase(encoding)? ENCODING_DEFLATE : ENCODING_GZIP;
+        this.minSize  = minSize;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the negotiated content encoding
+    **/
+    public String getContentEncoding()
+    {
+        return this.encoding;
+    }
+
+    /**
+    *** Returns true if the response body is being compressed
+    **/
+    public boolean isCompressing()
+    {
+        return this.compressing;
+    }
+
+    /**
+    *** Gets the wrapped response output stream
+    **/
+    protected OutputStream getUnderlyingOutputStream()
+        throws IOException
+    {
+        return super.getOutputStream();
+    }
+
+    /**
+    *** Called by CompressedServletOutputStream prior to writing compressed output.
+    *** @return True if compression may proceed, false if the response must be
+    ***     written uncompressed.
+    **/
+    protected boolean startCompression()
+    {
+        if ((this.statusCode == SC_NO_CONTENT) || (this.statusCode == SC_NOT_MODIFIED)) {
+            return false;
+        } else
+        if (super.containsHeader(HEADER_CONTENT_ENCODING)) {
+            // -- already encoded by the servlet
+            return false;
+        } else
+        if (!IsCompressibleContentType(super.getContentType())) {
+            return false;
+        } else
+        if (super.isCommitted()) {
+            // -- too late to set headers
+            return false;
+        }
+        super.setHeader(HEADER_CONTENT_ENCODING, this.encoding);
+        if (!super.containsHeader(HEADER_VARY)) {
+            super.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        }
+        this.compressing = true;
+        return true;
+    }
+
+    /**
+    *** Called by CompressedServletOutputStream prior to writing uncompressed output
+    **/
+    protected void startPassThrough()
+    {
+        this.passThrough = true;
+        if (this.contentLength >= 0L) {
+            // -- apply previously deferred content length
+            super.setHeader(HEADER_CONTENT_LENGTH, String.valueOf(this.contentLength));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private CompressedServletOutputStream createOutputStream()
+    {
+        if (this.compStream == null) {
+            this.compStream = new CompressedServletOutputStream(this, this.minSize);
+        }
+        return this.compStream;
+    }
+
+    public ServletOutputStream getOutputStream()
+        throws IOException
+    {
+        if (this.printWriter != null) {
+            throw new IllegalStateException("getWriter() has already been called for this response");
+        }
+        if (this.outStream == null) {
+            this.outStream = this.createOutputStream();
+        }
+        return this.outStream;
+    }
+
+    public PrintWriter getWriter()
+        throws IOException
+    {
+        if (this.printWriter != null) {
+            return this.printWriter;
+        }
+        if (this.outStream != null) {
+            throw new IllegalStateException("getOutputStream() has already been called for this response");
+        }
+        this.outStream = this.createOutputStream();
+        String charEnc = this.getCharacterEncoding();
+        try {
+            this.printWriter = new PrintWriter(new OutputStreamWriter(this.outStream, charEnc));
+        } catch (UnsupportedEncodingException uee) {
+            Print.logWarn("Unsupported character encoding: " + charEnc);
+            this.printWriter = new PrintWriter(new OutputStreamWriter(this.outStream, StringTools.CharEncoding_UTF_8));
+        }
+        return this.printWriter;
+    }
+
+    /**
+    *** Completes the (possibly compressed) response body
+    **/
+    public void finish()
+        throws IOException
+    {
+        if (this.compStream != null) {
+            this.compStream.setFinishing();
+        }
+        if (this.printWriter != null) {
+            this.printWriter.close(); // calls "compStream.finish()"
+        } else
+        if (this.compStream != null) {
+            this.compStream.finish();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    public void flushBuffer()
+        throws IOException
+    {
+        if (this.printWriter != null) {
+            this.printWriter.flush();
+        }
+        if (this.compStream != null) {
+            this.compStream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    public void reset()
+    {
+        super.reset();
+        this.contentLength = -1L;
+        this.statusCode    = SC_OK;
+        if (this.compStream != null) {
+            this.compStream.resetPending();
+        }
+    }
+
+    public void resetBuffer()
+    {
+        super.resetBuffer();
+        if (this.compStream != null) {
+            this.compStream.resetPending();
+        }
+    }
+
+    public void setStatus(int sc)
+    {
+        this.statusCode = sc;
+        super.setStatus(sc);
+    }
+
+    public void sendError(int sc)
+        throws IOException
+    {
+        this.statusCode = sc;
+        super.sendError(sc);
+    }
+
+    public void sendError(int sc, String msg)
+        throws IOException
+    {
+        this.statusCode = sc;
+        super.sendError(sc, msg);
+    }
+
+    // ------------------------------------------------------------------------
+    // The content length is not known until the response has been compressed,
+    // so it is deferred until the response is known to be uncompressed.
+
+    public void setContentLength(int len)
+    {
+        this._setContentLength((long)len);
+    }
+
+    public void setContentLengthLong(long len) // Servlet 3.1
+    {
+        this._setContentLength(len);
+    }
+
+    private void _setContentLength(long len)
+    {
+        if (this.passThrough) {
+            super.setHeader(HEADER_CONTENT_LENGTH, String.valueOf(len));
+        } else
+        if (!this.compressing) {
+            this.contentLength = len;
+        }
+    }
+
+    public void setHeader(String name, String value)
+    {
+        if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            this._setContentLength(StringTools.parseLong(value,-1L));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    public void addHeader(String name, String value)
+    {
+        if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            this._setContentLength(StringTools.parseLong(value,-1L));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    public void setIntHeader(String name, int value)
+    {
+        if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            this._setContentLength((long)value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    public void addIntHeader(String name, int value)
+    {
+        if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            this._setContentLength((long)value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+}
@@ -0,0 +1,246 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+package org.opengts.war.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.servlet.*;
+import javax.servlet.ServletOutputStream;
+
+/**
+*** CompressedServletOutputStream class<br>
+*** Output stream used by CompressedHttpServletResponse.  The first 'minSize' bytes are
+*** held until the response is known to be large enough to benefit from compression,
+*** after which the output is written through a "gzip"/"deflate" compressor.<br>
+*** This class may need to be modified when using Tomcat-8 (Servlet Specification 3.1).
+**/
+public class CompressedServletOutputStream // <-- mod may be required for Tomcat-7/8 (see BufferedServletOutputStream)
+    extends ServletOutputStream
+{
+
+    // ------------------------------------------------------------------------
+
+    private CompressedHttpServletResponse   response    = null;
+    private int                             minSize     = 0;
+
+    private ByteArrayOutputStream           pending     = null;
+    private OutputStream                    outStream   = null; // null until decided
+    private DeflaterOutputStream            compressor  = null;
+    private boolean                         finishing   = false;
+    private boolean                         closed      = false;
+
+    /**
+    *** Constructor
+    *** @param response  The CompressedHttpServletResponse
+    *** @param minSize   The minimum response size for which compression will be applied
+    **/
+    public CompressedServletOutputStream(CompressedHttpServletResponse response, int minSize)
+    {
+        this.response = response;
+        this.minSize  = Math.max(minSize, 0);
+        this.pending  = new ByteArrayOutputStream(Math.max(this.minSize, 32));
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns true if the output is being compressed
+    **/
+    public boolean isCompressing()
+    {
+        return (this.compressor != null);
+    }
+
+    /**
+    *** Returns true if the compress/pass-through decision has been made
+    **/
+    public boolean isDecided()
+    {
+        return (this.outStream != null);
+    }
+
+    /**
+    *** Decides whether the output is to be compressed, and writes any pending bytes
+    **/
+    private void _decide(boolean compress)
+        throws IOException
+    {
+        if (this.outStream != null) {
+            return;
+        }
+        OutputStream out = this.response.getUnderlyingOutputStream();
+        if (compress && this.response.startCompression()) {
+            String encoding = this.response.getContentEncoding();
+            if (CompressedHttpServletResponse.ENCODING_DEFLATE.equals(encoding)) {
+                this.compressor = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION), 8192, true/*syncFlush*/);
+            } else {
+                this.compressor = new GZIPOutputStream(out, 8192, true/*syncFlush*/);
+            }
+            this.outStream = this.compressor;
+        } else {
+            this.response.startPassThrough();
+            this.outStream = out;
+        }
+        if (this.pending.size() > 0) {
+            this.pending.writeTo(this.outStream);
+        }
+        this.pending = null;
+    }
+
+    /**
+    *** Discards any unwritten output (if the compress/pass-through decision has not yet been made)
+    *** @return True if the output was discarded, false if output has already been written
+    **/
+    public boolean resetPending()
+    {
+        if (this.outStream == null) {
+            this.pending.reset();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+    *** Indicates that the response is being completed.  Subsequent flushes (ie. from
+    *** closing the response PrintWriter) will not force compression of small responses.
+    **/
+    public void setFinishing()
+    {
+        this.finishing = true;
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Write byte
+    **/
+    public void write(int b)
+        throws IOException
+    {
+        if (this.closed) {
+            throw new IOException("Stream closed");
+        } else
+        if (this.outStream != null) {
+            this.outStream.write(b);
+        } else {
+            this.pending.write(b);
+            if (this.pending.size() >= this.minSize) {
+                this._decide(true);
+            }
+        }
+    }
+
+    /**
+    *** Write bytes
+    **/
+    public void write(byte b[], int ofs, int len)
+        throws IOException
+    {
+        if (this.closed) {
+            throw new IOException("Stream closed");
+        } else
+        if (this.outStream != null) {
+            this.outStream.write(b, ofs, len);
+        } else {
+            this.pending.write(b, ofs, len);
+            if (this.pending.size() >= this.minSize) {
+                this._decide(true);
+            }
+        }
+    }
+
+    /**
+    *** Flush.  An explicit flush forces the compress/pass-through decision, so that
+    *** progressively written responses are delivered as they are written.
+    **/
+    public void flush()
+        throws IOException
+    {
+        if (this.closed) {
+            return;
+        }
+        if (this.outStream == null) {
+            if ((this.pending.size() <= 0) || this.finishing) {
+                return; // nothing to flush, or deferred until "finish"
+            }
+            this._decide(true);
+        }
+        this.outStream.flush();
+    }
+
+    /**
+    *** Finishes the response output.  Small responses (less than 'minSize' bytes) are
+    *** written uncompressed.
+    **/
+    public void finish()
+        throws IOException
+    {
+        if (this.closed) {
+            return;
+        }
+        if (this.outStream == null) {
+            if (this.pending.size() <= 0) {
+                // -- nothing written (ie. "304 Not Modified", or error page)
+                this.closed = true;
+                return;
+            }
+            this._decide(false);
+        }
+        if (this.compressor != null) {
+            this.compressor.finish();
+        }
+        this.outStream.flush();
+        this.closed = true;
+    }
+
+    /**
+    *** Close
+    **/
+    public void close()
+        throws IOException
+    {
+        this.finish();
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Servlet specification 3.1 support in Tomcat-8
+    ***  - Required for Tomcat-8, not used in Tomcat-7
+    **/
+    public boolean isReady()
+    {
+        return true;
+    }
+
+    /**
+    *** Servlet specification 3.1 support in Tomcat-8
+    *** (see BufferedServletOutputStream)
+    **/
+    public void setWriteListener(/*javax.servlet.*/WriteListener wl) {/*NO-OP*/}
+
+    // ------------------------------------------------------------------------
+
+}
@@ -131,6 +131,11 @@ public interface MapProvider
     public static final String  PROP_map_routeLine_snapToRoad[] = new String[] { "map.routeLine.snapToRoad"                          };  // boolean (snap route-line to road) Google V2 only
     public static final String  PROP_map_view[]                 = new String[] { "map.view"                                          };  // String  (road|satellite|hybrid)
     public static final String  PROP_map_minProximity[]         = new String[] { "map.minProximity" /*meters*/                       };  // double  (mim meters between events)
+    public static final String  PROP_map_simplify[]             = new String[] { "map.simplify"                                      };  // boolean (simplify long tracks)
+    public static final String  PROP_map_simplify_minPoints[]   = new String[] { "map.simplify.minPoints"                            };  // int     (min events before simplifying)
+    public static final String  PROP_map_simplify_pixels[]      = new String[] { "map.simplify.tolerancePixels"                      };  // double  (simplify tolerance in pixels)
+    public static final String  PROP_map_cluster_color[]        = new String[] { "map.cluster.color"                                 };  // String  (fleet device cluster color)
+    public static final String  PROP_map_encodedData[]          = new String[] { "map.encodedData"                                   };  // boolean (request encoded-polyline tracks)
     public static final String  PROP_map_includeGeozones[]      = new String[] { "map.includeGeozones"    , "includeGeozones"        };  // boolean (include traversed Geozones)
     public static final String  PROP_pushpin_zoom[]             = new String[] { "pushpin.zoom"                                      };  // dbl/int (default zoom with points)
     public static final String  PROP_default_zoom[]             = new String[] { "default.zoom"                                      };  // dbl/int (default zoom without points)
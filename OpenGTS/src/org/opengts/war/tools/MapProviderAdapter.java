@@ -75,6 +75,22 @@ public abstract class MapProviderAdapter
     private static final boolean    DFT_REPLAY_ENABLED         = false;
     private static final long       DFT_REPLAY_INTERVAL        = 1000L;
 
+    private static final boolean    DFT_SIMPLIFY_ENABLED       = true;
+    private static final int        DFT_SIMPLIFY_MIN_POINTS    = 1000;
+    private static final double     DFT_SIMPLIFY_PIXELS        = 1.0;
+    private static final int        DFT_SIMPLIFY_FRAME_WIDTH   = 1280;  // assumed size of "fillFrame" map
+    private static final int        DFT_SIMPLIFY_FRAME_HEIGHT  = 1024;
+
+    /* map-update request parameters (track simplification) */
+    public  static final String     PARM_SIMPLIFY              = "simplify";   // tolerance meters (0 to disable)
+    public  static final String     PARM_ZOOM                  = "zoom";       // map zoom level
+
+    /* map-update request parameters (fleet clustering) */
+    public  static final String     PARM_BOUNDS                = "bounds";     // "minLat,maxLat,minLon,maxLon"
+
+    /* map-update request parameters (compact map data) */
+    public  static final String     PARM_ENCODED               = "encoded";    // "1" for encoded-polyline JSON tracks
+
     // ------------------------------------------------------------------------
     // ------------------------------------------------------------------------
 
@@ -1027,11 +1043,94 @@ public abstract class MapProviderAdapter
         response.setHeader("PRAGMA"       , "NO-CACHE");
         response.setDateHeader("EXPIRES"  , 0         );
 
+        /* precheck (ie. adjust RequestProperties) */
+        this.writeMapUpdate_precheck(reqState);
+
+        /* unchanged since the previous update? (checked before the events are read) */
+        if (this.checkMapUpdateNotModified(mapDataFormat, reqState)) {
+            return;
+        }
+
+        /* extract records */
+        EventDataProvider evdata[] = null;
+        try {
+            // -- This returns an array of EventData records based on the request attributes
+            evdata = reqState.getMapEvents(-1L); // does not return null
+        } catch (DBException dbe) {
+            Print.logException("Error reading Events", dbe);
+            out.println("\nError reading Events");
+            return;
+        }
+
         /* write map data */
         this.writeMapUpdate( // XML/JSON format specified by caller
             out, 0, 
             mapDataFormat, true/*isTopLevelTag*/,
-            reqState); // XML/JSON
+            reqState, evdata); // XML/JSON
+
+    }
+
+    /**
+    *** Sets the map-update validator headers ("ETag"/"Last-Modified") and returns true
+    *** if the client already has the current map-update content (in which case a
+    *** "304 Not Modified" status has been set).  The validator is keyed on the request
+    *** parameters (excluding "_uniq"), and on the "lastUpdateTime" of the selected
+    *** devices (updated with each received event, and advanced by deferred/background
+    *** address updates, see "Device.touchLastUpdateTime"), so that it can be checked
+    *** before the map events are read.
+    *** @param mapDataFormat  The map data format
+    *** @param reqState       The current session state
+    *** @return True if the map-update content has not been modified
+    **/
+    protected boolean checkMapUpdateNotModified(
+        int mapDataFormat,
+        RequestProperties reqState)
+    {
+        HttpServletRequest  request  = reqState.getHttpServletRequest();
+        HttpServletResponse response = reqState.getHttpServletResponse();
+        if ((request == null) || (response == null)) {
+            return false;
+        }
+        Account  acct   = reqState.getCurrentAccount();
+        User     user   = reqState.getCurrentUser();
+        DateTime latest = reqState.getLastEventTime();
+        TimeZone tmz    = reqState.getTimeZone();
+        if (acct == null) {
+            return false;
+        }
+
+        /* selected devices, and device data version */
+        Collection<String> devIDs = null;
+        long devVers[] = null;
+        try {
+            if (reqState.isFleet()) {
+                devIDs = reqState._getDeviceIDsForSelectedGroup(true/*fleet*/,false/*inclActv*/);
+            } else {
+                String devID = reqState.getSelectedDeviceID();
+                devIDs = !StringTools.isBlank(devID)? ListTools.toList(new String[] { devID }) : null;
+            }
+            if (ListTools.isEmpty(devIDs)) {
+                return false;
+            }
+            devVers = Device.getLastUpdateTimeSummary(acct.getAccountID(), devIDs);
+        } catch (DBException dbe) {
+            Print.logException("Unable to read Device update times", dbe);
+            return false;
+        }
+
+        /* validator */
+        ResponseValidator validator = new ResponseValidator(
+            this.getName(), String.valueOf(mapDataFormat),
+            ResponseValidator.getRequestKey(request, ResponseValidator.PARM_UNIQUE),
+            reqState.getPrivateLabel().getName(),
+            acct.getAccountID(),
+            (user != null)? user.getUserID() : "",
+            reqState.isFleet()? reqState.getSelectedDeviceGroupID() : reqState.getSelectedDeviceID(),
+            (tmz    != null)? tmz.getID() : "",
+            (latest != null)? String.valueOf(latest.getTimeSec()) : "");
+        validator.addKey(StringTools.join(devIDs,","));
+        validator.addDataVersion(devVers, devVers[2]);
+        return validator.checkNotModified(request, response);
 
     }
 
@@ -1068,6 +1167,31 @@ public abstract class MapProviderAdapter
             return;
         }
 
+        /* write map data */
+        this.writeMapUpdate(
+            out, indentLevel, 
+            mapDataFormat, isTopLevelTag,
+            reqState, evdata);
+
+    }
+
+    /**
+    *** Writes the specified events in XML/JSON format to the http output stream.
+    *** @param out            The output stream
+    *** @param indentLevel    The indent level
+    *** @param mapDataFormat  The map data format
+    *** @param isTopLevelTag  True if top-level tag
+    *** @param reqState       The current session state
+    *** @param evdata         The events to write (obtained from "reqState.getMapEvents")
+    *** @throws IOException
+    **/
+    protected void writeMapUpdate(
+        PrintWriter out, int indentLevel, 
+        int mapDataFormat, boolean isTopLevelTag,
+        RequestProperties reqState, EventDataProvider evdata[])
+        throws IOException
+    {
+
         /* arguments */
         RTProperties mapRTP     = this.getProperties(); // not null
         PrivateLabel privLabel  = reqState.getPrivateLabel(); // not null
@@ -1088,6 +1212,9 @@ public abstract class MapProviderAdapter
         /* pushpins */
         OrderedMap<String,PushpinIcon> iconMap = this.getPushpinIconMap(reqState);
 
+        /* simplify long tracks */
+        evdata = this.simplifyMapEvents(reqState, evdata);
+
         /* convert "evdata" to snapToRoad? [EXPERIMENTAL] */
         boolean ENABLE_SNAP_TO_ROAD = true;
         boolean snapToRoad = mapRTP.getBoolean(MapProvider.PROP_map_routeLine_snapToRoad, false);
@@ -1162,8 +1289,9 @@ public abstract class MapProviderAdapter
         /* return events */
         try {
             EventUtil evUtil = EventUtil.getInstance();
-            // -- map data format: XML, JSON
-            int mdf = EventUtil.IsXMLMapDataFormat(mapDataFormat)? EventUtil.MAPDATA_XML : EventUtil.MAPDATA_JSON;
+            // -- map data format: XML, JSON, JSON (encoded tracks)
+            int mdf = EventUtil.IsXMLMapDataFormat(mapDataFormat)? EventUtil.MAPDATA_XML : 
+                (mapDataFormat == EventUtil.MAPDATA_JSON_ENCODED)? EventUtil.MAPDATA_JSON_ENCODED : EventUtil.MAPDATA_JSON;
             // -- debug/testing
             /*
             RTConfig.setDebugMode(true);
@@ -1190,7 +1318,8 @@ public abstract class MapProviderAdapter
                 isFleet, fleetRoute, selID,
                 tmz, 
                 acct, user,
-                latest, lastBatt, lastSig, proximityM);
+                latest, lastBatt, lastSig, proximityM,
+                reqState.getMapClusters());
         } catch (IOException ioe) {
             Print.logException("Error writing events", ioe);
             out.println("\nError writing Events"); // output is Mime type plain
@@ -1200,6 +1329,69 @@ public abstract class MapProviderAdapter
 
     // ------------------------------------------------------------------------
 
+    /**
+    *** Simplifies long device tracks to the resolution of the map (see TrackSimplifier).
+    *** The tolerance is taken from the request "simplify" (meters) or "zoom" parameters,
+    *** otherwise from the map size and the bounding-box of the events (since the map is
+    *** zoomed to fit the events).  Significant events (stops, alarms, geozone transitions,
+    *** etc) are always retained.
+    *** @param reqState  The current session state
+    *** @param evdata    The selected events
+    *** @return The simplified events
+    **/
+    protected EventDataProvider[] simplifyMapEvents(
+        RequestProperties reqState, EventDataProvider evdata[])
+    {
+        RTProperties mapRTP = this.getProperties(); // not null
+        int evCount = ListTools.size(evdata);
+        if (!mapRTP.getBoolean(MapProvider.PROP_map_simplify, DFT_SIMPLIFY_ENABLED)) {
+            return evdata;
+        } else
+        if (evCount < Math.max(mapRTP.getInt(MapProvider.PROP_map_simplify_minPoints, DFT_SIMPLIFY_MIN_POINTS),3)) {
+            return evdata;
+        }
+
+        /* tolerance */
+        HttpServletRequest request = reqState.getHttpServletRequest();
+        double tolPixels = mapRTP.getDouble(MapProvider.PROP_map_simplify_pixels, DFT_SIMPLIFY_PIXELS);
+        double simplifyM = (request != null)? AttributeTools.getRequestDouble(request, PARM_SIMPLIFY, -1.0) : -1.0;
+        double zoom      = (request != null)? AttributeTools.getRequestDouble(request, PARM_ZOOM    , -1.0) : -1.0;
+        double toleranceM;
+        if (simplifyM >= 0.0) {
+            // -- explicit tolerance ("0" disables)
+            toleranceM = simplifyM;
+        } else
+        if (zoom >= 0.0) {
+            // -- resolution at specified zoom level
+            GeoPoint center = evdata[evCount - 1].getGeoPoint();
+            double lat = GeoPoint.isValid(center)? center.getLatitude() : 0.0;
+            toleranceM = TrackSimplifier.GetMetersPerPixel(zoom, lat) * tolPixels;
+        } else {
+            // -- resolution of map zoomed to fit events
+            int W = this.getWidth();
+            int H = this.getHeight();
+            if ((W <= 0) || (H <= 0)) {
+                // -- map fills frame
+                W = DFT_SIMPLIFY_FRAME_WIDTH;
+                H = DFT_SIMPLIFY_FRAME_HEIGHT;
+            }
+            toleranceM = TrackSimplifier.GetMetersPerPixel(evdata, W, H) * tolPixels;
+        }
+        if (toleranceM <= 0.0) {
+            return evdata;
+        }
+
+        /* simplify */
+        EventDataProvider simplified[] = TrackSimplifier.simplify(evdata, toleranceM);
+        if (RTConfig.isDebugMode()) {
+            Print.logDebug("Simplified map events ["+StringTools.format(toleranceM,"0.0")+" m]: " + evCount + " ==> " + ListTools.size(simplified));
+        }
+        return simplified;
+
+    }
+
+    // ------------------------------------------------------------------------
+
     /**
     *** Returns the PushpinIcon map
     *** @param reqState  The RequestProperties state from the current session
@@ -433,6 +433,7 @@ public class RequestProperties
     private long                eventLimitCnt           = 100L;
     private EventData.LimitType eventLimitType          = EventData.LimitType.LAST;
     private DateTime            lastEvent               = null;
+    private FleetClusterGrid.Result mapClusters         = null;
 
     private int                 showPassword            = -1; // tri-state
 
@@ -1997,6 +1998,64 @@ public class RequestProperties
 
     // --------------------------------
 
+    /**
+    *** Returns true if the fleet map events can be obtained from the FleetSnapshotCache.
+    *** (ie. only the last valid-GPS event per device, with no status-code filtering,
+    *** and an end time which is not in the past)
+    **/
+    private boolean _useFleetSnapshot(long perDevLimit, EventData.LimitType limitType,
+        boolean notifyEventsOnly, long endTime)
+    {
+        if (!FleetSnapshotCache.IsEnabled()) {
+            return false;
+        } else
+        if ((perDevLimit != 1L) || (limitType != EventData.LimitType.LAST) || notifyEventsOnly) {
+            return false;
+        } else
+        if (this.hasStatusMarkers() || !ListTools.isEmpty(this.getStatusCodes())) {
+            return false;
+        } else
+        if ((endTime > 0L) && (endTime < DateTime.getCurrentTimeSec())) {
+            // -- historical fleet positions
+            return false;
+        }
+        return true;
+    }
+
+    /**
+    *** Gets the fleet map device clusters within the map viewport specified by the
+    *** request "bounds"/"zoom" parameters (see FleetSnapshotCache.getClusters).
+    *** @return The clusters, or null if the fleet map is not to be clustered
+    **/
+    private FleetClusterGrid.Result _getFleetClusters(Account account, Collection<String> devIDs, long startTime)
+        throws DBException
+    {
+        if (!FleetSnapshotCache.IsClusteringEnabled()) {
+            return null;
+        } else
+        if (ListTools.size(devIDs) < FleetSnapshotCache.GetClusterMinDevices()) {
+            return null;
+        } else
+        if (!StringTools.isBlank(this.getFleetMapDeviceSelector())) {
+            // -- rule selector requires each Device record
+            return null;
+        }
+        HttpServletRequest request = this.getHttpServletRequest();
+        String    gbStr  = (request != null)? AttributeTools.getRequestString(request, MapProviderAdapter.PARM_BOUNDS, "") : "";
+        int       zoom   = (request != null)? AttributeTools.getRequestInt(   request, MapProviderAdapter.PARM_ZOOM  , -1) : -1;
+        GeoBounds bounds = !StringTools.isBlank(gbStr)? new GeoBounds(gbStr, ',') : null; // "minLat,maxLat,minLon,maxLon"
+        return FleetSnapshotCache.getInstance().getClusters(account, devIDs, bounds, zoom, startTime);
+    }
+
+    /**
+    *** Gets the fleet map device clusters from the last call to "getMapEvents"
+    *** @return The clusters, or null if the fleet map events were not clustered
+    **/
+    public FleetClusterGrid.Result getMapClusters()
+    {
+        return this.mapClusters;
+    }
+
     /* return array of events based on requested parameters */
     public EventData[] getMapEvents()
         throws DBException
@@ -2025,7 +2084,11 @@ public class RequestProperties
         long startTime = this.getEventDateFromSec();
         long endTime   = this.getEventDateToSec();
 
+        /* EventData fields displayed on the map (null for all fields) */
+        Set<String> selFields = EventUtil.getMapEventFields(privLabel);
+
         /* get events */
+        this.mapClusters = null;
         if (this.isFleet()) {
             // -- fleet events
 
@@ -2047,7 +2110,49 @@ public class RequestProperties
 
             // -- not every device may have an event
             java.util.List<EventData> evList = new Vector<EventData>();
-            for (int i = 0; i < devIDList.size(); i++) { // apply limit?
+            if (this._useFleetSnapshot(perDevLimit, limitType, notifyEventsOnly, endTime)) {
+                // -- last event per device from the in-memory fleet snapshot
+                java.util.List<String> authDevIDs = new Vector<String>();
+                for (String deviceID : devIDList) {
+                    if ((user == null) || user.isAuthorizedDevice(deviceID)) {
+                        authDevIDs.add(deviceID);
+                    }
+                }
+                FleetClusterGrid.Result clusters = this._getFleetClusters(account, authDevIDs, startTime);
+                if (clusters != null) {
+                    // -- only the individual devices within the viewport are returned as events
+                    this.mapClusters = clusters;
+                    authDevIDs = clusters.getDeviceIDs();
+                }
+                Map<String,Device>    devMap = Device.getDevicesForAccount(account, authDevIDs);
+                Map<String,EventData> evMap  = FleetSnapshotCache.getInstance().getLastEvents(account, authDevIDs);
+                for (String deviceID : authDevIDs) {
+                    Device device = devMap.get(deviceID);
+                    if (!this.acceptDeviceForFleetMapEvents(device)) {
+                        // -- skip this device
+                        continue;
+                    }
+                    EventData ev = evMap.get(deviceID);
+                    if (ev == null) {
+                        continue;
+                    }
+                    long ts = ev.getTimestamp();
+                    if ((startTime > 0L) && (ts < startTime)) {
+                        continue;
+                    } else
+                    if ((endTime > 0L) && (ts > endTime)) {
+                        continue;
+                    }
+                    ev.setDevice(device);
+                    evList.add(ev);
+                    // -- limit?
+                    if ((limitCnt > 0L) && (evList.size() >= limitCnt)) {
+                        break;
+                    }
+                }
+                devIDList = null; // skip Device loop below
+            }
+            for (int i = 0; (devIDList != null) && (i < devIDList.size()); i++) { // apply limit?
                 String deviceID = devIDList.get(i);
 
                 // -- omit unauthorized devices
@@ -2105,7 +2210,8 @@ public class RequestProperties
                         statusCodes,                // status codes
                         true,                       // validGPS (or cell lat/lon?)
                         limitType,                  // limitType (LAST)
-                        perDevLimit);               // max points
+                        perDevLimit,                // max points
+                        selFields);                 // selected fields
                         // -- 'ev' already points to 'device'
                     if (ev != null) {
                         for (int e = 0; e < ev.length; e++) {
@@ -2173,7 +2279,8 @@ public class RequestProperties
                     statusCodes,                // status codes
                     true,                       // validGPS
                     limitType,                  // limitType
-                    perDevLimit);               // max points
+                    perDevLimit,                // max points
+                    selFields);                 // selected fields
             } else {
                 ev = device.getRangeEvents( // may return null
                     devStartTime,               // startTime
@@ -2181,7 +2288,8 @@ public class RequestProperties
                     statusCodes,                // status codes
                     true,                       // validGPS
                     limitType,                  // limitType
-                    perDevLimit);               // max points
+                    perDevLimit,                // max points
+                    selFields);                 // selected fields
             }
             // -- 'ev' already points to 'device'
 
@@ -2222,6 +2330,9 @@ public class RequestProperties
         long startTime = this.getEventDateFromSec();
         long endTime   = this.getEventDateToSec();
 
+        /* EventData fields displayed on the map (null for all fields) */
+        Set<String> selFields = EventUtil.getMapEventFields(privLabel);
+
         /* get events */
         java.util.List<Device> devList = new Vector<Device>();
         if (this.isFleet()) {
@@ -2295,7 +2406,8 @@ public class RequestProperties
                         statusCodes,                // status codes
                         true,                       // validGPS
                         limitType,                  // limitType (LAST)
-                        perDevLimit);               // max points
+                        perDevLimit,                // max points
+                        selFields);                 // selected fields
                         // 'ev' already points to 'device'
                 }
                 if (!ListTools.isEmpty(ev)) {
@@ -2363,7 +2475,8 @@ public class RequestProperties
                     statusCodes,                // status codes
                     true,                       // validGPS
                     limitType,                  // limitType
-                    perDevLimit);               // max points
+                    perDevLimit,                // max points
+                    selFields);                 // selected fields
             } else {
                 ev = device.getRangeEvents( // may return null
                     devStartTime,               // startTime
@@ -2371,7 +2484,8 @@ public class RequestProperties
                     statusCodes,                // status codes
                     true,                       // validGPS
                     limitType,                  // limitType
-                    perDevLimit);               // max points
+                    perDevLimit,                // max points
+                    selFields);                 // selected fields
             }
             // 'ev' already points to 'device'
 
@@ -0,0 +1,231 @@
+// ----------------------------------------------------------------------------
+// Copyright 2007-2017, GeoTelematic Solutions, Inc.
+// All rights reserved
+// ----------------------------------------------------------------------------
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ----------------------------------------------------------------------------
+// Description:
+//  Accumulates a validator (weak "ETag" and "Last-Modified") for event-data
+//  responses, so that polling clients which already have the current content
+//  receive a "304 Not Modified" response.
+//  - The entity-tag is derived from the request scope (ie. the request parameters,
+//    excluding cache-busting parameters such as "_uniq", account/user, timezone,
+//    etc), and either the device/timestamp/status-code of each event in the
+//    response (and whether the event has an address, so that a deferred reverse-
+//    geocode changes the entity-tag), or a data version which can be read before
+//    the events are selected (see "addDataVersion").
+//  - The "Last-Modified" time is the newest event creation time (not the event
+//    timestamp, since a late-arriving event may have an older timestamp), or the
+//    data version time.
+//  - A data version time within the current second is not yet stable (another
+//    update may occur within the same second), in which case the entity-tag is
+//    made unique, and "Last-Modified" is omitted, so that it is never matched.
+// ----------------------------------------------------------------------------
+package org.opengts.war.tools;
+
+import java.util.*;
+import java.util.zip.CRC32;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.opengts.util.*;
+import org.opengts.db.*;
+import org.opengts.db.tables.*;
+
+public class ResponseValidator
+{
+
+    // ------------------------------------------------------------------------
+
+    /* request parameters which only make the request URL unique */
+    public  static final String PARM_UNIQUE[]   = new String[] { "_uniq" };
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Returns a key representing the request parameters, in sorted order, excluding
+    *** the specified parameters (ie. cache-busting parameters which make each request
+    *** URL unique)
+    *** @param request  The HttpServletRequest
+    *** @param exclude  The parameter names to exclude
+    *** @return The request parameter key
+    **/
+    public static String getRequestKey(HttpServletRequest request, String... exclude)
+    {
+        if (request == null) {
+            return "";
+        }
+        Map<String,String> parms = new TreeMap<String,String>();
+        for (Enumeration<?> e = request.getParameterNames(); e.hasMoreElements();) {
+            String n = (String)e.nextElement();
+            if (!ListTools.contains(exclude,n)) {
+                String v[] = request.getParameterValues(n);
+                parms.put(n, (v != null)? StringTools.join(v,",") : "");
+            }
+        }
+        StringBuffer sb = new StringBuffer();
+        sb.append(request.getRequestURI()).append("?");
+        for (String n : parms.keySet()) {
+            sb.append(n).append("=").append(parms.get(n)).append("&");
+        }
+        return sb.toString();
+    }
+
+    // ------------------------------------------------------------------------
+
+    private CRC32   crc         = new CRC32();
+    private long    lastTS      = 0L;
+    private long    lastMod     = 0L;
+    private long    count       = 0L;
+    private boolean unstable    = false;
+
+    /**
+    *** Constructor
+    *** @param scope  The values which identify the requested content
+    **/
+    public ResponseValidator(String... scope)
+    {
+        if (scope != null) {
+            for (String s : scope) {
+                this.addKey(s);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Adds a key value to the validator
+    *** @param key  The key value (may be null)
+    **/
+    public ResponseValidator addKey(String key)
+    {
+        byte b[] = StringTools.getBytes(StringTools.trim(key));
+        this.crc.update(b, 0, b.length);
+        this.crc.update(0);
+        return this;
+    }
+
+    /**
+    *** Adds an event to the validator
+    *** @param ev  The event
+    **/
+    public void addEvent(EventDataProvider ev)
+    {
+        if (ev != null) {
+            long ts = ev.getTimestamp();
+            this.addKey(ev.getDeviceID());
+            this.addKey(String.valueOf(ts));
+            this.addKey(String.valueOf(ev.getStatusCode()));
+            this.addKey(StringTools.isBlank(ev.getAddress())? "" : "A");
+            if (ts > this.lastTS) {
+                this.lastTS = ts;
+            }
+            if (ev instanceof EventData) {
+                // -- creation time (a late-arriving event may have an older timestamp)
+                long ct = ((EventData)ev).getCreationTime();
+                if (ct > this.lastMod) {
+                    this.lastMod = ct;
+                }
+            }
+            this.count++;
+        }
+    }
+
+    /**
+    *** Adds the specified events to the validator
+    *** @param evList  The array of events (may be null)
+    **/
+    public void addEvents(EventDataProvider evList[])
+    {
+        if (evList != null) {
+            for (EventDataProvider ev : evList) {
+                this.addEvent(ev);
+            }
+        }
+    }
+
+    /**
+    *** Adds a data version to the validator, which changes whenever the response
+    *** content changes (ie. see "Device.getLastUpdateTimeSummary")
+    *** @param version     The data version values
+    *** @param updateTime  The data version time (seconds)
+    **/
+    public void addDataVersion(long version[], long updateTime)
+    {
+        if (version != null) {
+            for (long v : version) {
+                this.addKey(String.valueOf(v));
+            }
+        }
+        if (updateTime >= DateTime.getCurrentTimeSec()) {
+            // -- another update may occur within this same second
+            this.unstable = true;
+        } else
+        if (updateTime > this.lastMod) {
+            this.lastMod = updateTime;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+    *** Gets the newest event timestamp
+    **/
+    public long getLastTimestamp()
+    {
+        return this.lastTS;
+    }
+
+    /**
+    *** Gets the last modified time (the newest event creation time, or data version
+    *** time), or 0 if not known
+    **/
+    public long getLastModified()
+    {
+        return this.unstable? 0L : this.lastMod;
+    }
+
+    /**
+    *** Gets the (weak) entity-tag
+    **/
+    public String getETag()
+    {
+        String tag = Long.toHexString(this.crc.getValue()) + "-" +
+            Long.toHexString(this.lastTS) + "-" +
+            Long.toHexString(this.count);
+        if (this.unstable) {
+            // -- never matched
+            tag += "-" + Long.toHexString(System.nanoTime());
+        }
+        return "W/\"" + tag + "\"";
+    }
+
+    /**
+    *** Sets the validator headers on the response, and returns true if a
+    *** "304 Not Modified" status has been set (see "CommonServlet.checkNotModified")
+    *** @param request   The HttpServletRequest
+    *** @param response  The HttpServletResponse
+    *** @return True if the response content has not been modified
+    **/
+    public boolean checkNotModified(HttpServletRequest request, HttpServletResponse response)
+    {
+        return CommonServlet.checkNotModified(request, response, this.getETag(), this.getLastModified());
+    }
+
+    // ------------------------------------------------------------------------
+
+}
@@ -368,10 +368,13 @@ public class Track
     public void doGet(HttpServletRequest request, HttpServletResponse response)
         throws ServletException, IOException
     {
+        HttpServletResponse resp = Track.getCompressedResponse(request, response);
         try {
-            this._doWork_wrapper(false, request, response);
+            this._doWork_wrapper(false, request, resp);
         } catch (Throwable th) {
             Print.logException("Unexpected error",th);
+        } finally {
+            CommonServlet.finishCompressedResponse(resp);
         }
     }
 
@@ -379,10 +382,23 @@ public class Track
     public void doPost(HttpServletRequest request, HttpServletResponse response)
         throws ServletException, IOException
     {
+        HttpServletResponse resp = Track.getCompressedResponse(request, response);
         try {
-            this._doWork_wrapper(true, request, response);
+            this._doWork_wrapper(true, request, resp);
         } catch (Throwable th) {
             Print.logException("Unexpected error",th);
+        } finally {
+            CommonServlet.finishCompressedResponse(resp);
+        }
+    }
+
+    /* return response wrapper which compresses the response, if enabled/accepted */
+    private static HttpServletResponse getCompressedResponse(HttpServletRequest request, HttpServletResponse response)
+    {
+        if (RTConfig.getBoolean(DBConfig.PROP_track_compressResponse,true)) {
+            return CommonServlet.getCompressedResponse(request, response, CompressedHttpServletResponse.DEFAULT_MIN_SIZE);
+        } else {
+            return response;
         }
     }
 
@@ -54,6 +54,7 @@ import org.opengts.db.tables.*;
 
 import org.opengts.war.tools.*;
 import org.opengts.war.report.*;
+import org.opengts.war.report.presentation.ReportTable;
 import org.opengts.war.track.Calendar;
 import org.opengts.war.track.*;
 
@@ -70,6 +71,7 @@ public class ReportDisplay
     // ------------------------------------------------------------------------
 
     public  static final String CSS_REPORT_DISPLAY[]        = new String[] { "reportDisplayTable", "reportDisplayCell" };
+    public  static final String CSS_REPORT_STREAM_ERROR     = "rptStreamError";
 
     // ------------------------------------------------------------------------
     
@@ -89,6 +91,15 @@ public class ReportDisplay
     public  static final String PARM_MENU                   = ReportMenu.PARM_MENU;
     public  static final String PARM_EMAIL_ADDR[]           = ReportMenu.PARM_EMAIL_ADDR;
 
+    public  static final String PARM_ASYNC                  = "r_async";    // queue report job
+
+    /* report job commands (see "ReportJobQueue") */
+    public  static final String COMMAND_JOB_STATUS          = "jobStatus";
+    public  static final String COMMAND_JOB_DOWNLOAD        = "jobDownload";
+    public  static final String COMMAND_JOB_CANCEL          = "jobCancel";
+
+    private static final long   JOB_STATUS_REFRESH_MS       = 5000L;
+
     // ------------------------------------------------------------------------
 
     public ReportDisplay()
@@ -482,6 +493,268 @@ public class ReportDisplay
 
     // ------------------------------------------------------------------------
 
+    /* write the HTML report directly to the client, outside of the page frame JSP.
+    ** The response content length is not set, so the report header, row chunks
+    ** (see "ReportBody.writeHTML"), and footer are sent to the browser as they are
+    ** flushed (chunked transfer encoding). */
+    private void _writeReportStream(
+        HttpServletResponse response, final RequestProperties reqState,
+        final ReportData report, final ReportLayout reportLayout,
+        boolean isTableSortable, String onload)
+        throws ReportException, IOException
+    {
+        HttpServletRequest request = reqState.getHttpServletRequest();
+        PrivateLabel privLabel = reqState.getPrivateLabel();
+
+        /* write frame */
+        CommonServlet.setResponseContentType(response, HTMLTools.MIME_HTML());
+        PrintWriter pw = response.getWriter();
+
+        // -- HTML start
+        pw.write("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.0 Transitional//EN\">\n");
+        pw.write("<html xmlns='http://www.w3.org/1999/xhtml'>\n");
+
+        // -- HTML head
+        pw.write("\n");
+        pw.write("<head>\n");
+        pw.write("  <meta http-equiv='content-type' content='text/html; charset=UTF-8'/>\n");
+        pw.write("  <meta http-equiv='cache-control' content='no-cache'/>\n");
+        pw.write("  <meta http-equiv='expires' content='0'/>\n"); // expires 'now'
+        pw.write("  <meta name='copyright' content='"+privLabel.getCopyright()+"'/>\n");
+        pw.write("  <meta name='robots' content='none'/>\n");
+        pw.write("  <title>" + privLabel.getPageTitle() + "</title>\n");
+        JavaScriptTools.writeUtilsJS(pw, request);
+        if (isTableSortable) {
+            JavaScriptTools.writeJSInclude(pw, JavaScriptTools.qualifyJSFileRef(ReportPresentation.SORTTABLE_JS), request);
+        }
+        pw.write("<!-- Begin Report Style -->\n");
+        String cssDir = this.getCssDirectory();
+        WebPageAdaptor.writeCssLink(pw, reqState, "ReportDisplay.css", cssDir);
+        if (reportLayout.hasCSSFiles()) {
+            for (String file : reportLayout.getCSSFiles(true)) {
+                WebPageAdaptor.writeCssLink(pw, reqState, file, cssDir);
+            }
+        }
+        report.writeReportStyle(ReportURL.FORMAT_HTML, new OutputProvider(pw));
+        pw.write("<!-- End Report Style -->\n");
+        pw.write("</head>\n");
+        pw.write("\n");
+
+        // -- HTML body
+        if (!StringTools.isBlank(onload)) {
+            pw.write("<body onload=\"" + onload + "\">\n");
+        } else {
+            pw.write("<body>\n");
+        }
+        pw.flush(); // send head before the report data is read
+        try {
+            report.writeReport(ReportURL.FORMAT_HTML, new OutputProvider(pw));
+        } catch (ReportException re) {
+            // -- response has already been committed, show the error below the partial report
+            Print.logException("Error streaming report: " + report.getReportName(), re);
+            I18N i18n = privLabel.getI18N(ReportDisplay.class);
+            String errMsg = i18n.getString("ReportDisplay.streamError","Error generating report, the report above may be incomplete");
+            pw.write("</td></tr></tbody></table>\n"); // close a partially written table (ignored if not open)
+            pw.write("<div class='"+CSS_REPORT_STREAM_ERROR+"'>");
+            pw.write(StringTools.htmlFilterText(errMsg));
+            if (!StringTools.isBlank(re.getMessage())) {
+                pw.write(": " + StringTools.htmlFilterText(re.getMessage()));
+            }
+            pw.write("</div>\n");
+        }
+        pw.write("</body>\n");
+
+        // -- HTML end
+        pw.write("</html>\n");
+        pw.close();
+
+    }
+
+    // ------------------------------------------------------------------------
+    // report jobs (see "ReportJobQueue")
+
+    /* returns the description of the report job state */
+    private String _getJobStateDescription(I18N i18n, ReportJobQueue.Job job)
+    {
+        switch (job.getState()) {
+            case QUEUED    : return i18n.getString("ReportDisplay.jobQueued"   ,"Queued");
+            case RUNNING   : return i18n.getString("ReportDisplay.jobRunning"  ,"Running");
+            case DONE      : return i18n.getString("ReportDisplay.jobDone"     ,"Complete");
+            case CANCELLED : return i18n.getString("ReportDisplay.jobCancelled","Cancelled");
+            default        : return i18n.getString("ReportDisplay.jobError"    ,"Error");
+        }
+    }
+
+    /* handle report job status/download/cancel commands */
+    private void _writeJobPage(
+        final RequestProperties reqState,
+        String cmdName, String jobID,
+        String pageMsg)
+        throws IOException
+    {
+        PrivateLabel privLabel = reqState.getPrivateLabel();
+        I18N         i18n      = privLabel.getI18N(ReportDisplay.class);
+        String       m         = pageMsg;
+
+        /* job (must be owned by the current account/user) */
+        ReportJobQueue.Job job = ReportJobQueue.GetJob(jobID);
+        if ((job != null) && !job.isOwner(reqState.getCurrentAccountID(),reqState.getCurrentUserID())) {
+            Print.logWarn("Report job not owned by current user: " + job);
+            job = null;
+        }
+
+        /* download */
+        if (cmdName.equals(COMMAND_JOB_DOWNLOAD)) {
+            File file = (job != null)? job.getResultFile() : null;
+            if (file != null) {
+                HttpServletResponse response = reqState.getHttpServletResponse();
+                CommonServlet.setResponseContentType(response, job.getMimeType());
+                response.setHeader(HTMLTools.HEADER_CONTENT_DISPOSITION, "attachment; filename=\"" + job.getDownloadName() + "\"");
+                InputStream in = new FileInputStream(file);
+                try {
+                    OutputStream out = response.getOutputStream();
+                    FileTools.copyStreams(in, out);
+                    out.close();
+                } finally {
+                    in.close();
+                }
+                return;
+            }
+            m = i18n.getString("ReportDisplay.jobNotFound","The requested report is no longer available"); // UserErrMsg
+        } else
+        if (cmdName.equals(COMMAND_JOB_CANCEL)) {
+            if (ReportJobQueue.CancelJob(job)) {
+                m = i18n.getString("ReportDisplay.jobCancel","The report ''{0}'' has been cancelled", job.getReportTitle()); // UserErrMsg
+            }
+        }
+
+        /* job status */
+        this._writeJobStatus(reqState, m);
+
+    }
+
+    /* write the report job status page for the current account/user */
+    private void _writeJobStatus(
+        final RequestProperties reqState,
+        String pageMsg)
+        throws IOException
+    {
+        final PrivateLabel privLabel = reqState.getPrivateLabel();
+        final I18N         i18n      = privLabel.getI18N(ReportDisplay.class);
+        final Account      account   = reqState.getCurrentAccount();
+        final TimeZone     tmz       = reqState.getTimeZone();
+        final String       dateFmt   = (account != null)? account.getDateFormat() : BasicPrivateLabel.getDefaultDateFormat();
+        final String       timeFmt   = (account != null)? account.getTimeFormat() : BasicPrivateLabel.getDefaultTimeFormat();
+
+        /* jobs */
+        final java.util.List<ReportJobQueue.Job> jobs = ReportJobQueue.GetJobs(reqState.getCurrentAccountID(), reqState.getCurrentUserID());
+        boolean hasActive = false;
+        for (ReportJobQueue.Job j : jobs) {
+            if (j.isActive()) {
+                hasActive = true;
+                break;
+            }
+        }
+
+        /* style */
+        HTMLOutput HTML_CSS = new HTMLOutput() {
+            public void write(PrintWriter pw) throws IOException {
+                String cssDir = ReportDisplay.this.getCssDirectory(); 
+                WebPageAdaptor.writeCssLink(pw, reqState, "ReportDisplay.css", cssDir);
+            }
+        };
+
+        /* JavaScript (refresh while jobs are active) */
+        final String statusURL = this.encodePageURL(reqState, COMMAND_JOB_STATUS);
+        final boolean refresh  = hasActive;
+        HTMLOutput HTML_JS = new HTMLOutput() {
+            public void write(PrintWriter pw) throws IOException {
+                if (refresh) {
+                    JavaScriptTools.writeStartJavaScript(pw);
+                    pw.write("setTimeout(function() { location.replace(\"" + statusURL + "\"); }, " + JOB_STATUS_REFRESH_MS + ");\n");
+                    JavaScriptTools.writeEndJavaScript(pw);
+                }
+            }
+        };
+
+        /* job table */
+        HTMLOutput HTML_CONTENT = new HTMLOutput(CSS_REPORT_DISPLAY, pageMsg) {
+            public void write(PrintWriter pw) throws IOException {
+                pw.write("<h1 class='rptTitle'>" + i18n.getString("ReportDisplay.reportJobs","Queued Reports") + "</h1>\n");
+                if (ListTools.isEmpty(jobs)) {
+                    pw.write("<h2 class='rptNoData'>" + i18n.getString("ReportDisplay.noReportJobs","No queued reports") + "</h2>\n");
+                    return;
+                }
+                pw.write("<table class='rptTbl' cellspacing='0' cellpadding='0' border='0'>\n");
+                pw.write("<thead>\n");
+                pw.write("<tr class='rptHdrRow'>\n");
+                pw.write("<th class='rptHdrCol_nosort'>" + i18n.getString("ReportDisplay.jobReport"   ,"Report")    + "</th>\n");
+                pw.write("<th class='rptHdrCol_nosort'>" + i18n.getString("ReportDisplay.jobFormat"   ,"Format")    + "</th>\n");
+                pw.write("<th class='rptHdrCol_nosort'>" + i18n.getString("ReportDisplay.jobSubmitted","Submitted") + "</th>\n");
+                pw.write("<th class='rptHdrCol_nosort'>" + i18n.getString("ReportDisplay.jobState"    ,"State")     + "</th>\n");
+                pw.write("<th class='rptHdrCol_nosort'>" + i18n.getString("ReportDisplay.jobProgress" ,"Progress")  + "</th>\n");
+                pw.write("<th class='rptHdrCol_nosort'>&nbsp;</th>\n");
+                pw.write("</tr>\n");
+                pw.write("</thead>\n");
+                pw.write("<tbody>\n");
+                int row = 0;
+                for (ReportJobQueue.Job job : jobs) {
+                    String rowCls = ((row++ & 1) == 0)? "rptBodyRowOdd" : "rptBodyRowEven";
+                    // -- progress
+                    String progress;
+                    int pct = job.getProgressPercent();
+                    if (ReportJobQueue.State.ERROR.equals(job.getState())) {
+                        progress = StringTools.htmlFilterText(job.getMessage());
+                    } else
+                    if (job.isActive() && (pct >= 0)) {
+                        progress = pct + "%";
+                    } else {
+                        progress = "&nbsp;";
+                    }
+                    // -- action
+                    String action;
+                    if (job.isActive()) {
+                        String url = ReportDisplay.this.encodePageURL(reqState, COMMAND_JOB_CANCEL, job.getID());
+                        action = "<a href='" + url + "'>" + i18n.getString("ReportDisplay.jobCancelLink","Cancel") + "</a>";
+                    } else
+                    if (job.isEmail()) {
+                        action = StringTools.htmlFilterText(job.getEmailTo());
+                    } else
+                    if (job.getResultFile() != null) {
+                        String url = ReportDisplay.this.encodePageURL(reqState, COMMAND_JOB_DOWNLOAD, job.getID());
+                        action = "<a href='" + url + "'>" + i18n.getString("ReportDisplay.jobDownloadLink","Download") + "</a>";
+                    } else {
+                        action = "&nbsp;";
+                    }
+                    // -- row
+                    DateTime createDT = new DateTime(job.getCreateTime(), tmz);
+                    pw.write("<tr class='" + rowCls + "'>\n");
+                    pw.write("<td class='rptBodyCol' nowrap>" + StringTools.htmlFilterText(job.getReportTitle()) + "</td>\n");
+                    pw.write("<td class='rptBodyCol' nowrap>" + (job.isEmail()? i18n.getString("ReportDisplay.jobEmail","EMail") : job.getFormat()) + "</td>\n");
+                    pw.write("<td class='rptBodyCol' nowrap>" + createDT.format(dateFmt + " " + timeFmt) + "</td>\n");
+                    pw.write("<td class='rptBodyCol' nowrap>" + ReportDisplay.this._getJobStateDescription(i18n,job) + "</td>\n");
+                    pw.write("<td class='rptBodyCol'>" + progress + "</td>\n");
+                    pw.write("<td class='rptBodyCol' nowrap>" + action + "</td>\n");
+                    pw.write("</tr>\n");
+                }
+                pw.write("</tbody>\n");
+                pw.write("</table>\n");
+            }
+        };
+
+        /* write frame */
+        CommonServlet.writePageFrame(
+            reqState,
+            null,null,                  // onLoad/onUnload
+            HTML_CSS,                   // Style sheets
+            HTML_JS,                    // JavaScript
+            null,                       // Navigation
+            HTML_CONTENT);              // Content
+
+    }
+
+    // ------------------------------------------------------------------------
+
     public void writePage(
         final RequestProperties reqState, 
         final String pageMsg)
@@ -524,8 +797,17 @@ public class ReportDisplay
         String rptMenuURL = privLabel.getWebPageURL(reqState, rptMenu);
         //Print.logDebug("ReportMenu: %s => %s", rptMenu, rptMenuURL);
 
+        /* report job status/download/cancel */
+        String cmdName = StringTools.trim(reqState.getCommandName());
+        if (cmdName.equals(COMMAND_JOB_STATUS)   ||
+            cmdName.equals(COMMAND_JOB_DOWNLOAD) ||
+            cmdName.equals(COMMAND_JOB_CANCEL)     ) {
+            this._writeJobPage(reqState, cmdName, reqState.getCommandArg(), m);
+            return;
+        }
+
         /* get report */
-        //String cmdName = reqState.getCommandName(); // should be COMMAND_REPORT_SELECT (but ignored)
+        // -- cmdName should be COMMAND_REPORT_SELECT (but ignored)
         if (StringTools.isBlank(reportID)) {
             if (!StringTools.isBlank(deviceID)) {
                 Print.logInfo("Assuming default Device report 'EventDetail'");
@@ -860,6 +1142,23 @@ public class ReportDisplay
         // -- After all external configuration and constraints have been set
         reportDta.postInitialize();
 
+        /* queue report job? */
+        // -- generate the report on the report job queue, rather than on this request thread
+        boolean rptAsync = StringTools.parseBoolean(AttributeTools.getRequestString(request,PARM_ASYNC,""),false) ||
+            ReportJobQueue.GetAutoQueue(reportDta);
+        if (rptAsync && ReportJobQueue.IsEnabled() && ReportJobQueue.IsQueuedFormat(rptFormat)) {
+            try {
+                ReportJobQueue.SubmitReport(reportDta, rptFormat);
+                m = i18n.getString("ReportDisplay.reportQueued","The report ''{0}'' has been queued", 
+                    reportFactory.getReportTitle(locale)); // UserErrMsg
+            } catch (ReportException re) {
+                m = i18n.getString("ReportDisplay.reportQueueError","Unable to queue report: {0}", 
+                    re.getMessage()); // UserErrMsg
+            }
+            this._writeJobStatus(reqState, m);
+            return;
+        }
+
         /* XML output? */
         // -- output as XML to browser
         if (rptFormat.equalsIgnoreCase(ReportURL.FORMAT_XML)) {
@@ -1128,6 +1427,34 @@ public class ReportDisplay
         // -- output as EMail to SMTP server
         if (rptFormat.equalsIgnoreCase(ReportURL.FORMAT_EHTML)) {
             // -- This EHTML path is chosen when selecting to "EMail" a report from the login report menu.
+            if (!emailAddr.equalsIgnoreCase("INLINE") && ReportJobQueue.IsEmailEnabled()) {
+                // -- generate and email the report on the report job queue
+                SmtpProperties smtpProps = account.getSmtpProperties(privLabel);
+                String frEmail = smtpProps.getFromEmailType("report");
+                String toEmail = Recipients.extractEmailRecipients(emailAddr);
+                if (StringTools.isBlank(frEmail)) {
+                    Print.logWarn("'From' email address has not been configured");
+                    m = i18n.getString("ReportDisplay.missingFromEmail","The 'From' email address has not been configured"); // UserErrMsg
+                } else
+                if (StringTools.isBlank(toEmail)) {
+                    Print.logWarn("No email recipients have been specified");
+                    m = i18n.getString("ReportDisplay.missingToEmail","No recipient email address has been specified"); // UserErrMsg
+                } else {
+                    try {
+                        ReportJobQueue.SubmitEmail(reportDta, toEmail, ReportTable._getEmailSubject(i18n,reportDta));
+                        m = i18n.getString("ReportDisplay.reportEmailQueued","The selected report has been queued to be emailed"); // UserErrMsg
+                    } catch (ReportException re) {
+                        m = i18n.getString("ReportDisplay.reportQueueError","Unable to queue report: {0}", 
+                            re.getMessage()); // UserErrMsg
+                    }
+                }
+                // -- redisplay the Report Menu
+                WebPage rptPage = privLabel.getWebPage(rptMenu);
+                if (rptPage != null) {
+                    rptPage.writePage(reqState, m);
+                }
+                return;
+            }
             // -  set Report JSP
             String uri = privLabel.getJSPFile("emailReport", false);
             //Print.logStackTrace("Embedded Report JSP: " + uri);
@@ -1198,33 +1525,11 @@ public class ReportDisplay
                         Print.logWarn("No email recipients have been specified");
                         m = i18n.getString("ReportDisplay.missingToEmail","No recipient email address has been specified"); // UserErrMsg
                     } else {
-                        // -- report subtitle (should be Device/Group selection)
-                        StringBuffer subTitle = new StringBuffer();
-                        ReportDeviceList rdl = reportDta.getReportDeviceList();
-                        if (reportDta.isDeviceGroupReport()) {
-                            // -- DeviceGroup selection
-                            DeviceGroup grp = rdl.getDeviceGroup();
-                            //subTitle.append("Group: ");
-                            if (grp != null) {
-                                subTitle.append("[").append(grp.getGroupID()).append("] ");
-                                subTitle.append(grp.getDescription());
-                            }
-                        } else {
-                            // -- Device selection
-                            Device dev = rdl.getFirstDevice();
-                            //subTitle.append("Device: ");
-                            if (dev != null) {
-                                subTitle.append("[").append(dev.getDeviceID()).append("] ");
-                                subTitle.append(dev.getDescription());
-                            }
-                        }
                         // -- report attachment
                         byte rptAttach[] = bhsp.toByteArray();  // contains entire report HTML
                         String multipartType = "";
                         // -- subject
-                        String subj = 
-                            i18n.getString("ReportDisplay.reportTitle","Report") + ": " + 
-                            reportDta.getReportTitle() + " - " + subTitle; // email subject
+                        String subj = ReportTable._getEmailSubject(i18n, reportDta); // email subject
                         // -- body
                         String body = null; // <== null to prevent multiple attachmets
                         boolean inclBodyText = false; // [2.6.4-B44]
@@ -1282,6 +1587,15 @@ public class ReportDisplay
 
         /* write report to client browser output stream */
         String onload = error? JS_alert(true,m) : null;
+        if (privLabel.getBooleanProperty(PrivateLabel.PROP_ReportDisplay_streamHTML,false)) {
+            // -- stream report incrementally (not wrapped in page frame JSP)
+            try {
+                this._writeReportStream(response, reqState, reportDta, reportLayout, isTableSortable, onload);
+            } catch (ReportException re) {
+                Print.logException("Error streaming report: "  + reportID, re);
+            }
+            return;
+        }
         CommonServlet.writePageFrame(
             reqState,
             onload,null,                // onLoad/onUnload
@@ -278,6 +278,11 @@ public class ReportMenu
         out.write("   try { return document."+FORM_GET_REPORT+"."+PARM_EMAIL_ADDR[0]+".value; } catch(e) { return ''; }\n");
         out.write("}\n");
 
+        out.write("// run report in background \n");
+        out.write("function rptmGetAsync() {\n");
+        out.write("   try { return document."+FORM_GET_REPORT+"."+ReportDisplay.PARM_ASYNC+".checked? 'true' : ''; } catch(e) { return ''; }\n");
+        out.write("}\n");
+
         out.write("// submit command \n");
         out.write("function rptmSubmitCmd(page, cmd, arg) {\n");
         out.write("   var outFmt    = rptmGetFormat();\n");
@@ -359,6 +364,9 @@ public class ReportMenu
         out.write("   document."+FORM_COMMAND+"."+PARM_REPORT_OPT   +".value = rptOption;\n");
         out.write("   document."+FORM_COMMAND+"."+PARM_REPORT_TEXT  +".value = rptText;\n");
         out.write("   document."+FORM_COMMAND+"."+PARM_MENU         +".value = ReportPageName;\n");
+        if (ReportJobQueue.IsEnabled()) {
+        out.write("   document."+FORM_COMMAND+"."+ReportDisplay.PARM_ASYNC+".value = rptmGetAsync();\n");
+        }
         out.write("   document."+FORM_COMMAND+".submit();\n");
         out.write("}\n");
 
@@ -821,8 +829,9 @@ public class ReportMenu
             //ReportURL.hasFormatReadAccess(currUser, privLabel, this.getAclName(), ReportURL.FORMAT_CSV);
         final boolean outFormat_XML  = allowNonHtmlFormat; // && 
             //ReportURL.hasFormatReadAccess(currUser, privLabel, this.getAclName(), ReportURL.FORMAT_XML);
-        final boolean outFormat_XLS  = allowNonHtmlFormat && ReportSpreadsheet.IsExcelSpreadsheetSupported(); // &&
+        final boolean outFormat_XLS  = allowNonHtmlFormat && ReportSpreadsheet.IsExcelSpreadsheetSupported(false); // &&
             //ReportURL.hasFormatReadAccess(currUser, privLabel, this.getAclName(), ReportURL.FORMAT_XML);
+        final boolean outFormat_XLSX = allowNonHtmlFormat && ReportSpreadsheet.IsStreamingSupported(); // streamed XLSX
         final boolean outFormat_PDF  = false; // allowNonHtmlFormat && 
             //ReportURL.hasFormatReadAccess(currUser, privLabel, this.getAclName(), ReportURL.FORMAT_PDF);
 
@@ -925,6 +934,9 @@ public class ReportMenu
                 out.write(" <input type='hidden' name='"+PARM_FORMAT[0]         +"' value=''/>\n");
                 out.write(" <input type='hidden' name='"+PARM_EMAIL_ADDR[0]     +"' value=''/>\n");
                 out.write(" <input type='hidden' name='"+PARM_MENU              +"' value=''/>\n");
+                if (ReportJobQueue.IsEnabled()) {
+                out.write(" <input type='hidden' name='"+ReportDisplay.PARM_ASYNC+"' value=''/>\n");
+                }
                 out.write("</form>\n");
                 out.write("\n");
 
@@ -1279,7 +1291,9 @@ public class ReportMenu
                 }
                 if (outFormat_XLS) {
                     out.write("      <option value='"+ReportURL.FORMAT_XLS +"'>XLS</option>\n");
-                  //out.write("      <option value='"+ReportURL.FORMAT_XLSX +"'>XLSX</option>\n");
+                }
+                if (outFormat_XLSX) {
+                    out.write("      <option value='"+ReportURL.FORMAT_XLSX +"'>XLSX</option>\n");
                 }
                 if (outFormat_EHTML) {
                     out.write("      <option value='"+ReportURL.FORMAT_EHTML+"'>EMail</option>\n");
@@ -1292,6 +1306,15 @@ public class ReportMenu
                 }
                 out.write("    </select>\n");
                 out.write("    <span style='margin-left:30px;'><input type='submit' name='"+PARM_REPORT_SUBMIT+"' value='"+i18n.getString("ReportMenu.getReport","Get Report")+"'></span>\n");
+                if (ReportJobQueue.IsEnabled()) {
+                    // -- queued (background) reports (see "ReportDisplay.PARM_ASYNC")
+                    String jobStatusURL = privLabel.getWebPageURL(reqState, PAGE_REPORT_SHOW, ReportDisplay.COMMAND_JOB_STATUS);
+                    out.write("    <span style='margin-left:15px;'>");
+                    out.write("<input type='checkbox' id='"+ReportDisplay.PARM_ASYNC+"' name='"+ReportDisplay.PARM_ASYNC+"' value='true'/>");
+                    out.write("<label for='"+ReportDisplay.PARM_ASYNC+"'>"+i18n.getString("ReportMenu.runInBackground","Run in background")+"</label>");
+                    out.write("</span>\n");
+                    out.write("    <span style='margin-left:15px;'><a href=\""+jobStatusURL+"\">"+i18n.getString("ReportMenu.queuedReports","Queued Reports")+"</a></span>\n");
+                }
                 out.write("    <br>\n");
                 out.write("    <br>\n");
                 out.write("    <span id='formatMsgElem' style='margin-top:10px; margin-left:5px;'></span>\n");
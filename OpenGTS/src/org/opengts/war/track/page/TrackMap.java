@@ -88,6 +88,8 @@ import java.util.Iterator;
 import java.util.Vector;
 import java.util.Map;
 import java.util.Collection;
+import java.util.Set;
+import java.util.HashSet;
 import java.io.*;
 
 import javax.servlet.*;
@@ -137,6 +139,12 @@ public abstract class TrackMap
     public static final String   PROP_autoUpdate_interval       = "autoUpdate.interval";
     public static final String   PROP_autoUpdate_count          = "autoUpdate.count";
     public static final String   PROP_autoUpdate_skipRadius     = "autoUpdate.skipRadius";
+    public static final String   PROP_autoUpdate_push           = "autoUpdate.push";
+    public static final String   PROP_autoUpdate_pushTimeout    = "autoUpdate.pushTimeout";
+    public static final String   PROP_autoUpdate_pushMinInterval= "autoUpdate.pushMinInterval";
+
+    public static final long     DEFAULT_PUSH_TIMEOUT_SEC       = 25L;
+    public static final long     DEFAULT_PUSH_MIN_INTERVAL_SEC  = 5L;
 
     // ------------------------------------------------------------------------
     // forms
@@ -153,6 +161,7 @@ public abstract class TrackMap
     public  static final String  COMMAND_MAP_UPDATE             = "mapupd";                 // arg=<N/A>
     public  static final String  COMMAND_KML_UPDATE             = "kmlupd";                 // arg=<N/A>
     public  static final String  COMMAND_AUTO_UPDATE            = "auto";                   // arg=interval,maxcount
+    public  static final String  COMMAND_MAP_PUSH               = "mappush";                // arg=sequence
 
     // ------------------------------------------------------------------------
     // Calendar vars
@@ -308,7 +317,7 @@ public abstract class TrackMap
     protected void writeJS_MapUpdate(
         final RequestProperties reqState, 
         PrintWriter out,
-        String  mapUpdURL, String devicePingURL, String kmlUpdURL,
+        String  mapUpdURL, String devicePingURL, String kmlUpdURL, String mapPushURL,
         boolean autoUpdateEnabled, boolean autoUpdateOnLoad, long autoInterval, long autoMaxCount, double autoSkipRadius,
         boolean mapControlsOnLeft,
         int showBatteryLevel, int devicePushpinNdx
@@ -402,6 +411,11 @@ public abstract class TrackMap
         JavaScriptTools.writeJSVar(out, "AutoSkipRadius"            , autoSkipRadius); // required by JSMap
         JavaScriptTools.writeJSVar(out, "AutoInterval"              , autoInterval);
         JavaScriptTools.writeJSVar(out, "AutoUpdateRecenterMode"    , autoUpdateRecenterMode);
+        JavaScriptTools.writeJSVar(out, "AutoUpdatePush"            , (autoUpdateEnabled && !StringTools.isBlank(mapPushURL)));
+        JavaScriptTools.writeJSVar(out, "AutoUpdatePushRequest"     , null);
+        JavaScriptTools.writeJSVar(out, "AutoUpdatePushMinMS"       , this.getLongProperty(privLabel,PROP_autoUpdate_pushMinInterval,DEFAULT_PUSH_MIN_INTERVAL_SEC) * 1000L);
+        JavaScriptTools.writeJSVar(out, "AutoUpdatePushTimer"       , null);
+        JavaScriptTools.writeJSVar(out, "AutoUpdatePushLastMS"      , 0);
         JavaScriptTools.writeJSVar(out, "AutoUpdateMapTimer"        , null);
         JavaScriptTools.writeJSVar(out, "AutoIntervalCount"         , 0);
         JavaScriptTools.writeJSVar(out, "AutoUpdateMapCount"        , 0);
@@ -442,11 +456,16 @@ public abstract class TrackMap
         JavaScriptTools.writeJSVar(out, "DEVICE_PING_URL"           , devicePingURL);
         JavaScriptTools.writeJSVar(out, "DEVICE_PUSHPIN"            , devicePushpinNdx);
         JavaScriptTools.writeJSVar(out, "KML_UPDATE_URL"            , kmlUpdURL);
+        JavaScriptTools.writeJSVar(out, "MAP_PUSH_URL"              , mapPushURL);
+        JavaScriptTools.writeJSVar(out, "PARM_PUSH_SEQUENCE"        , PARM_ARGUMENT);
         JavaScriptTools.writeJSVar(out, "PARM_RANGE_FR"             , Calendar.PARM_RANGE_FR[0]);
         JavaScriptTools.writeJSVar(out, "PARM_RANGE_TO"             , Calendar.PARM_RANGE_TO[0]);
         JavaScriptTools.writeJSVar(out, "PARM_TIMEZONE"             , Calendar.PARM_TIMEZONE[0]);
         JavaScriptTools.writeJSVar(out, "PARM_LIMIT"                , PARM_MAP_LIMIT);
         JavaScriptTools.writeJSVar(out, "PARM_LIMIT_TYPE"           , PARM_MAP_LIMIT_TYPE);
+        JavaScriptTools.writeJSVar(out, "PARM_MAP_BOUNDS"           , MapProviderAdapter.PARM_BOUNDS);
+        JavaScriptTools.writeJSVar(out, "PARM_MAP_ZOOM"             , MapProviderAdapter.PARM_ZOOM);
+        JavaScriptTools.writeJSVar(out, "PARM_MAP_ENCODED"          , MapProviderAdapter.PARM_ENCODED);
         JavaScriptTools.writeJSVar(out, "PARM_DEVICE_GROUP"         , parmDevGrp);
         JavaScriptTools.writeJSVar(out, "PARM_DEVICE_COMMAND"       , PARM_DEVICE_COMMAND);
         JavaScriptTools.writeJSVar(out, "BATTERY_LEVEL_TYPE"        , showBatteryLevel);
@@ -525,6 +544,82 @@ public abstract class TrackMap
 
     // ------------------------------------------------------------------------
 
+    private static final String  SESSION_PUSH_DEVICES           = "TrackMap.push.devices";
+    private static final long    PUSH_DEVICES_CACHE_MS          = 60L * 1000L;
+
+    /**
+    *** Gets the set of devices for which updates are pushed to the current map.<br>
+    *** Fleet maps cache the authorized group device list in the session, to avoid
+    *** reading the group for each long-poll request.
+    *** @return The set of device IDs
+    **/
+    @SuppressWarnings("unchecked")
+    protected Set<String> getPushDeviceIDs(RequestProperties reqState, Device device)
+        throws DBException
+    {
+        if (!this.isFleet()) {
+            Set<String> devIDs = new HashSet<String>();
+            if (device != null) {
+                devIDs.add(device.getDeviceID());
+            }
+            return devIDs;
+        }
+        HttpServletRequest request = reqState.getHttpServletRequest();
+        String accountID = reqState.getCurrentAccountID();
+        String groupID   = reqState.getSelectedDeviceGroupID();
+        String cacheKey  = SESSION_PUSH_DEVICES + "." + accountID + "." + groupID;
+        long   nowMS     = System.currentTimeMillis();
+        Object cached[]  = (Object[])AttributeTools.getSessionAttribute(request, cacheKey, null);
+        if ((cached != null) && ((nowMS - ((Long)cached[0]).longValue()) < PUSH_DEVICES_CACHE_MS)) {
+            return (Set<String>)cached[1];
+        }
+        Set<String> devIDs = new HashSet<String>(
+            DeviceGroup.getDeviceIDsForGroup(accountID, groupID, reqState.getCurrentUser(), false));
+        AttributeTools.setSessionAttribute(request, cacheKey, new Object[] { new Long(nowMS), devIDs });
+        return devIDs;
+    }
+
+    /**
+    *** Long-poll request: waits for position updates for the devices displayed on
+    *** the current map, and writes the updates as JSON.  The sequence number
+    *** returned in the response is passed as the argument of the next request.
+    *** An argument of "-1" returns the current sequence number without waiting.
+    **/
+    protected void writeMapPush(RequestProperties reqState, Device device, String cmdArg)
+        throws IOException
+    {
+        PrivateLabel        privLabel = reqState.getPrivateLabel();
+        HttpServletResponse response  = reqState.getHttpServletResponse();
+        String              accountID = reqState.getCurrentAccountID();
+        DeviceUpdateHub     hub       = DeviceUpdateHub.getInstance();
+
+        /* wait for updates */
+        DeviceUpdateHub.Updates upd;
+        long sinceSeq = StringTools.parseLong(cmdArg, -1L);
+        if (sinceSeq < 0L) {
+            // -- initial request: current sequence
+            upd = new DeviceUpdateHub.Updates(hub.getSequence(accountID), false, null);
+        } else {
+            Set<String> devIDs;
+            try {
+                devIDs = this.getPushDeviceIDs(reqState, device);
+            } catch (DBException dbe) {
+                Print.logException("Reading map push devices", dbe);
+                devIDs = new HashSet<String>();
+            }
+            long timeoutSec = this.getLongProperty(privLabel, PROP_autoUpdate_pushTimeout, DEFAULT_PUSH_TIMEOUT_SEC);
+            upd = hub.waitForUpdates(accountID, devIDs, sinceSeq, timeoutSec * 1000L);
+        }
+
+        /* write response */
+        CommonServlet.setResponseContentType(response, HTMLTools.MIME_JSON());
+        PrintWriter out = response.getWriter();
+        out.println(upd.toJsonObject().toString());
+
+    }
+
+    // ------------------------------------------------------------------------
+
     public void writePage(
         final RequestProperties reqState, 
         String pageMsg)
@@ -827,6 +922,17 @@ public abstract class TrackMap
                 long perDevLimit = (!StringTools.isBlank(cmdArg) && cmdArg.equals("last"))? 1L : -1L;
                 Collection<Device> devList = reqState.getMapEventsByDevice(perDevLimit); // [KML] does not return null
                 CommonServlet.setResponseContentType(response, HTMLTools.MIME_KML());
+                // -- unchanged since the previous request?
+                ResponseValidator validator = new ResponseValidator(
+                    COMMAND_KML_UPDATE, ResponseValidator.getRequestKey(request, ResponseValidator.PARM_UNIQUE),
+                    currAcct.getAccountID(), reqState.getCurrentUserID());
+                for (Device dev : devList) {
+                    validator.addKey(dev.getDeviceID());
+                    validator.addEvents(dev.getSavedRangeEvents());
+                }
+                if (validator.checkNotModified(request, response)) {
+                    return;
+                }
                 GoogleKML.getInstance().writeEvents(out, 
                     currAcct, devList, 
                     privLabel);
@@ -842,7 +948,16 @@ public abstract class TrackMap
         // -- Page: csv:*, or *:csv
         if (cmdName.equals(COMMAND_MAP_UPDATE)) {
             // -- This is how/where the displayed map gets its data
-            mapProvider.writeMapUpdate(EventUtil.MAPDATA_JSON, reqState); // MAPDATA_DEFAULT, // [2.5.8-B04]
+            // -- "encoded=1": device tracks are returned as encoded polylines/value-streams
+            boolean encoded = AttributeTools.getRequestBoolean(request, MapProviderAdapter.PARM_ENCODED, false);
+            int mdf = encoded? EventUtil.MAPDATA_JSON_ENCODED : EventUtil.MAPDATA_JSON;
+            mapProvider.writeMapUpdate(mdf, reqState); // MAPDATA_DEFAULT, // [2.5.8-B04]
+            return;
+        }
+
+        /* AJAX: long-poll for device updates (see DeviceUpdateHub) */
+        if (cmdName.equals(COMMAND_MAP_PUSH)) {
+            this.writeMapPush(reqState, device, cmdArg);
             return;
         }
 
@@ -900,6 +1015,7 @@ public abstract class TrackMap
         final long    autoInterval;
         final long    autoMaxCount;
         final double  autoSkipRadius;
+        final boolean autoUpdatePush;
         long _autoIntrv = 0L;
         long _autoMaxCt = 0L;
         if (cmdName.equals(COMMAND_AUTO_UPDATE)) {
@@ -938,6 +1054,7 @@ public abstract class TrackMap
             autoMaxCount        = this.getLongProperty(   privLabel, PROP_autoUpdate_count     , dftAutoMaxCount);
             autoSkipRadius      = this.getDoubleProperty( privLabel, PROP_autoUpdate_skipRadius, dftAutoSkipRadius);
         }
+        autoUpdatePush = autoUpdateEnabled && this.getBooleanProperty(privLabel, PROP_autoUpdate_push, false);
 
         /* MapShapes */
         final Map<String,String> zoomRegions;
@@ -1020,6 +1137,7 @@ public abstract class TrackMap
                     //EncodeMakeURL(reqState,RequestProperties.TRACK_BASE_URI(),pageName,COMMAND_DEVICE_PING),
                     privLabel.getWebPageURL(reqState,pageName,COMMAND_DEVICE_PING),
                     EncodeMakeURL(reqState,(kmlName+".kml"),pageName,COMMAND_KML_UPDATE,googleKmlArg),
+                    (autoUpdatePush? privLabel.getWebPageURL(reqState,pageName,COMMAND_MAP_PUSH) : null),
                     autoUpdateEnabled, autoUpdateOnLoad, autoInterval, autoMaxCount, autoSkipRadius,
                     mapControlsOnLeft, showBatteryLevel, devicePushpinNdx
                     );
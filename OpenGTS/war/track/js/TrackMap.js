@@ -303,10 +303,28 @@ function trackMapUpdateMap(limit, limitType, recenterMode, replay)
     if (limitType != "") {
         url += "&" + PARM_LIMIT_TYPE + "=" + limitType;
     }
+    if (IS_FLEET && (typeof jsmGetMapViewportArgs == "function")) {
+        // -- map viewport, for server-side clustering of fleet pushpins
+        url += jsmGetMapViewportArgs(PARM_MAP_BOUNDS, PARM_MAP_ZOOM);
+    }
+    if ((typeof MAP_DATA_ENCODED != "undefined") && MAP_DATA_ENCODED && (typeof jsmDecodePoints == "function")) {
+        // -- compact (encoded-polyline) device tracks
+        url += "&" + PARM_MAP_ENCODED + "=1";
+    }
     mapProviderUpdateMap(url, recenterMode, replay);
     // "Replay" button ID is ID_MAP_REPLAY_BTN
 };
 
+/* called by "jsmInitViewportListener" when the fleet map has been panned/zoomed */
+function trackMapViewportChanged()
+{
+    if (!IS_FLEET) {
+        return;
+    }
+    // refetch the fleet clusters/pushpins for the new viewport, without recentering
+    trackMapUpdateMap(trackMapEventLimit(), trackMapLimitType(), RECENTER_NONE, 0);
+};
+
 /* this is executed when "Update KML" is clicked */
 function trackMapUpdateKML() 
 {
@@ -359,6 +377,11 @@ function _setAutoUpdateButtonText(text)
 /* periodic map update timer target */
 function _timerAutoUpdateMap() 
 {
+    if (AutoUpdatePush && (AutoUpdatePushRequest != null)) {
+        // map is updated when the server pushes device updates
+        _setAutoUpdateButtonText(TEXT_autoUpdateStop);
+        return;
+    }
     if (--AutoIntervalCount <= 0) {
         _resetCalandarDates();
         var limit = ((MapUpdateOnLoad == "last") && !IS_FLEET)? 1 : trackMapEventLimit();
@@ -384,6 +407,88 @@ function startAutoUpdateMapTimer()
     AutoUpdateMapCount = 0;
     _setAutoUpdateButtonText(TEXT_autoUpdateStop);
     AutoUpdateMapTimer = setInterval('_timerAutoUpdateMap()',1000); // setTimeout
+    if (AutoUpdatePush) {
+        _pushAutoUpdateMap(-1);
+    }
+};
+
+/* long-poll for pushed device updates, and update the map when devices have changed */
+function _pushAutoUpdateMap(seq)
+{
+    var req = jsmGetXMLHttpRequest();
+    if (!req) {
+        // push not supported, continue with periodic updates
+        AutoUpdatePushRequest = null;
+        return;
+    }
+    var dev = IS_FLEET? document.SelectDeviceForm.group.value : document.SelectDeviceForm.device.value; // PARM_GEOUP/PARM_DEVICE
+    var url = MAP_PUSH_URL + 
+        "&_uniq=" + Math.random() +  // necessary to make the URL unique
+        "&" + PARM_PUSH_SEQUENCE + "=" + seq +
+        "&" + PARM_DEVICE_GROUP + "=" + strEncode(dev);
+    AutoUpdatePushRequest = req;
+    req.open("GET", url, true);
+    req.setRequestHeader("If-Modified-Since", "Sat, 1 Jan 2000 00:00:00 GMT");
+    req.onreadystatechange = function() {
+        if (req.readyState != 4) {
+            return;
+        } else
+        if (AutoUpdatePushRequest != req) {
+            // aborted/stopped
+            return;
+        }
+        var upd = null;
+        try {
+            upd = (req.status == 200)? JSON.parse(req.responseText) : null;
+        } catch (e) {
+            upd = null; // ie. logged out
+        }
+        if ((upd == null) || (typeof upd.seq == "undefined")) {
+            // push failed, fall back to periodic updates
+            AutoUpdatePushRequest = null;
+            AutoIntervalCount = AutoInterval;
+            return;
+        }
+        if ((seq >= 0) && (upd.reset || (upd.updates && (upd.updates.length > 0)))) {
+            // devices have changed, update map
+            _pushUpdateMapCoalesced();
+        }
+        if (upd.busy) {
+            // too many waiting clients, use periodic updates until the next interval
+            AutoUpdatePushRequest = null;
+            AutoIntervalCount = AutoInterval;
+            var nextSeq = upd.seq;
+            setTimeout(function() {
+                if ((AutoUpdateMapTimer != null) && (AutoUpdatePushRequest == null)) {
+                    _pushAutoUpdateMap(nextSeq);
+                }
+            }, Math.max(AutoInterval,1) * 1000);
+            return;
+        }
+        _pushAutoUpdateMap(upd.seq);
+    };
+    req.send(null);
+};
+
+/* update the map for pushed device updates, at most once per "AutoUpdatePushMinMS" */
+function _pushUpdateMapCoalesced()
+{
+    if (AutoUpdatePushTimer != null) {
+        // an update is already scheduled, and will include these changes
+        return;
+    }
+    var delayMS = Math.max((AutoUpdatePushLastMS + AutoUpdatePushMinMS) - (new Date()).getTime(), 0);
+    AutoUpdatePushTimer = setTimeout(function() {
+        AutoUpdatePushTimer  = null;
+        AutoUpdatePushLastMS = (new Date()).getTime();
+        _resetCalandarDates();
+        var limit = ((MapUpdateOnLoad == "last") && !IS_FLEET)? 1 : trackMapEventLimit();
+        trackMapUpdateMap(limit, "last", jsmRecenterZoomMode(AutoUpdateRecenterMode), 0);
+        if ((AutoMaxCount > 0) && (++AutoUpdateMapCount >= AutoMaxCount)) {
+            // we've reached the maximum number of allowed updates.
+            stopAutoUpdateMapTimer();
+        }
+    }, delayMS);
 };
 
 /* stop any running map auto-update timer */
@@ -393,6 +498,15 @@ function stopAutoUpdateMapTimer()
         clearInterval(AutoUpdateMapTimer); // clearTimeout
         AutoUpdateMapTimer = null;
     }
+    if (AutoUpdatePushRequest != null) {
+        var req = AutoUpdatePushRequest;
+        AutoUpdatePushRequest = null;
+        try { req.abort(); } catch (e) {/*ignore*/}
+    }
+    if (AutoUpdatePushTimer != null) {
+        clearTimeout(AutoUpdatePushTimer);
+        AutoUpdatePushTimer = null;
+    }
     AutoIntervalCount  = 0;
     AutoUpdateMapCount = 0;
     _setAutoUpdateButtonText(TEXT_autoUpdateStart);
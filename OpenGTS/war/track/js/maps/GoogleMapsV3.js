@@ -1433,6 +1433,41 @@ JSMap.prototype.JSSetCenter = function(center/*JSMapPoint*/, zoom)
     }
 };
 
+/**
+*** Returns the current map viewport (bounds and zoom level), or null if unavailable
+**/
+JSMap.prototype.JSGetViewport = function()
+{
+    var gb = this.gmapGoogleMap.getBounds();
+    if (!gb) { return null; }
+    var sw = gb.getSouthWest();
+    var ne = gb.getNorthEast();
+    return {
+        minLat: sw.lat(), maxLat: ne.lat(),
+        minLon: sw.lng(), maxLon: ne.lng(),
+        zoom:   this.gmapGoogleMap.getZoom()
+    };
+};
+
+/**
+*** Adds a listener which is called when the map viewport has changed (after pan/zoom)
+**/
+JSMap.prototype.JSAddViewportListener = function(listener)
+{
+    google.maps.event.addListener(this.gmapGoogleMap, "idle", function() { listener(); });
+};
+
+/**
+*** Adds a click listener to the most recently drawn shape
+**/
+JSMap.prototype.JSAddShapeClickListener = function(listener)
+{
+    if (this.drawShapes && (this.drawShapes.length > 0)) {
+        var shape = this.drawShapes[this.drawShapes.length - 1];
+        google.maps.event.addListener(shape, "click", function(event) { listener(); });
+    }
+};
+
 /**
 *** Sets the center of the map
 **/
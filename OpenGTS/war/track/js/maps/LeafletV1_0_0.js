@@ -675,6 +675,45 @@ JSMap.prototype.JSSetCenter = function(center, zoom)
     }
 };
 
+/**
+*** Returns the current map viewport (bounds and zoom level), or null if unavailable
+**/
+JSMap.prototype.JSGetViewport = function()
+{
+    try {
+        var ob = this.leafletMap.getBounds();
+        return {
+            minLat: ob.getSouth(), maxLat: ob.getNorth(),
+            minLon: ob.getWest(),  maxLon: ob.getEast(),
+            zoom:   this.leafletMap.getZoom()
+        };
+    } catch (e) {
+        return null;
+    }
+};
+
+/**
+*** Adds a listener which is called when the map viewport has changed (after pan/zoom)
+**/
+JSMap.prototype.JSAddViewportListener = function(listener)
+{
+    this.leafletMap.on("moveend", function(e) { listener(); });
+};
+
+/**
+*** Adds a click listener to the most recently drawn shape
+**/
+JSMap.prototype.JSAddShapeClickListener = function(listener)
+{
+    if (this.drawShapes && (this.drawShapes.length > 0)) {
+        var shape = this.drawShapes[this.drawShapes.length - 1];
+        shape.on("click", function(me) {
+            L.DomEvent.stopPropagation(me);
+            listener();
+        });
+    }
+};
+
 /**
 *** Draw the specified pushpins on the map
 *** @param pushPins  An array of JSMapPushpin objects
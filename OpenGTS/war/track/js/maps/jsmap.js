@@ -652,6 +652,196 @@ function jsmSetCenter(lat, lon, zoom)
     jsmap.JSSetCenter(center, zoom);
 };
 
+/**
+*** Returns the current map viewport as map-update request arguments
+*** ("&bounds=minLat,maxLat,minLon,maxLon&zoom=N"), or "" if the map provider does
+*** not support "JSGetViewport".  Used by the server to cluster fleet pushpins.
+**/
+function jsmGetMapViewportArgs(boundsParm, zoomParm)
+{
+    if (!jsmap || !jsmap.JSGetViewport) { return ""; }
+    var vp = null;
+    try { vp = jsmap.JSGetViewport(); } catch (e) { vp = null; }
+    if (!vp) { return ""; }
+    var minLon = vp.minLon, maxLon = vp.maxLon;
+    if ((maxLon - minLon) >= 360.0) {
+        minLon = -180.0;
+        maxLon =  180.0;
+    } else {
+        // -- wrapped longitudes (minLon > maxLon if the viewport crosses the anti-meridian)
+        while (minLon < -180.0) { minLon += 360.0; }
+        while (minLon >  180.0) { minLon -= 360.0; }
+        while (maxLon < -180.0) { maxLon += 360.0; }
+        while (maxLon >  180.0) { maxLon -= 360.0; }
+    }
+    var args = "&" + boundsParm + "=" + numFormatFloat(vp.minLat,5) + "," + numFormatFloat(vp.maxLat,5) + "," +
+                                        numFormatFloat(minLon,5)    + "," + numFormatFloat(maxLon,5) +
+               "&" + zoomParm   + "=" + vp.zoom;
+    jsvViewportArgs = [ boundsParm, zoomParm, args ];
+    return args;
+};
+
+/* viewport arguments sent with the last map update [boundsParm, zoomParm, args] */
+var jsvViewportArgs = null;
+var jsvViewportListener = false;
+var jsvViewportTimer = null;
+
+/**
+*** Installs (once) a map viewport listener which calls "trackMapViewportChanged()" when
+*** the viewport differs from the one sent with the last map update (ie. so that the
+*** fleet clusters are refetched for the new bounds/zoom after a pan or zoom)
+**/
+function jsmInitViewportListener()
+{
+    if (jsvViewportListener || !jsmap || !jsmap.JSAddViewportListener) { return; }
+    jsvViewportListener = true;
+    jsmap.JSAddViewportListener(function() {
+        if (jsvViewportTimer != null) { clearTimeout(jsvViewportTimer); }
+        jsvViewportTimer = setTimeout(function() { // wait for pan/zoom to settle
+            jsvViewportTimer = null;
+            if (!jsvViewportArgs || (typeof trackMapViewportChanged != "function")) { return; }
+            var last = jsvViewportArgs[2];
+            var curr = jsmGetMapViewportArgs(jsvViewportArgs[0], jsvViewportArgs[1]);
+            jsvViewportArgs[2] = last; // restore until the map is actually updated
+            if ((curr != "") && (curr != last)) {
+                trackMapViewportChanged();
+            }
+        }, 500);
+    });
+};
+
+/**
+*** Zooms the map in on the specified cluster (the clusters are then refetched by the
+*** viewport listener)
+**/
+function jsmZoomToCluster(c, clusterZoom)
+{
+    if (!jsmap) { return; }
+    var vp = jsmap.JSGetViewport? jsmap.JSGetViewport() : null;
+    var zoom = (vp && vp.zoom)? vp.zoom : clusterZoom;
+    jsmSetCenter(c.lat, c.lon, Math.min(zoom + 2, 20));
+};
+
+/**
+*** Decodes a series of delta-encoded values ("Encoded Polyline" algorithm)
+*** @param enc     The encoded string
+*** @param stride  The number of interleaved series (ie. 2 for latitude/longitude)
+*** @return The array of (accumulated) values
+**/
+function jsmDecodeValues(enc, stride)
+{
+    var vals = [];
+    var v = [ 0, 0 ];
+    var p = 0;
+    while (enc && (p < enc.length)) {
+        var u = 0, shift = 0, b;
+        do {
+            b = enc.charCodeAt(p++) - 63;
+            u += (b & 0x1F) * Math.pow(2, shift); // avoid 32-bit overflow
+            shift += 5;
+        } while ((b >= 0x20) && (p < enc.length));
+        var n = (stride > 1)? (vals.length % stride) : 0;
+        v[n] += ((u % 2) != 0)? -((u + 1) / 2) : (u / 2);
+        vals.push(v[n]);
+    }
+    return vals;
+};
+
+/**
+*** Formats the specified time-of-day (seconds) using the specified format
+*** (only "H", "h", "m", "s", and "a" are supported, see "EventUtil.EncodedPoints")
+**/
+function jsmFormatTimeOfDay(tod, fmt)
+{
+    var H = Math.floor(tod / 3600), M = Math.floor(tod / 60) % 60, S = tod % 60;
+    var t = "";
+    for (var i = 0; i < fmt.length;) {
+        var ch = fmt.charAt(i);
+        var r  = 1;
+        while (((i + r) < fmt.length) && (fmt.charAt(i + r) == ch)) { r++; }
+        var v  = -1;
+        if (ch == "H") { v = H; } else
+        if (ch == "h") { v = ((H % 12) == 0)? 12 : (H % 12); } else
+        if (ch == "m") { v = M; } else
+        if (ch == "s") { v = S; } else
+        if (ch == "a") { t += (H < 12)? "AM" : "PM"; } else
+        { t += fmt.substring(i, i + r); }
+        if (v >= 0) {
+            t += ((r == 2) && (v < 10))? ("0" + v) : String(v);
+        }
+        i += r;
+    }
+    return t;
+};
+
+/**
+*** Decodes a compact device DataSet ("DataSet.Encoded") into the map event records
+*** which would otherwise have been returned in "DataSet.Points"
+*** @param enc  The "Encoded" object
+*** @return The array of '|' separated map event records
+**/
+function jsmDecodePoints(enc)
+{
+    var count = enc.count;
+    var strs  = enc.strs? enc.strs : [];
+    var cols  = enc.cols? enc.cols : [];
+    var ll    = enc.poly? jsmDecodeValues(enc.poly, 2) : [];
+    var llDiv = Math.pow(10, enc.prec);
+    var fld   = [];
+    for (var c = 0; c < cols.length; c++) {
+        var type = cols[c].charAt(0);
+        var vals = (type == "Y") || (type == "X")? null : jsmDecodeValues(cols[c].substring(1), 1);
+        fld[c] = [];
+        for (var r = 0; r < count; r++) {
+            var f = "";
+            if (type == "S") { f = strs[vals[r]]; } else
+            if (type == "I") { f = String(vals[r]); } else
+            if (type == "D") { f = (vals[r] / 10).toFixed(1); } else
+            if (type == "T") { f = (fld[2][r] > 0)? jsmFormatTimeOfDay(vals[r], enc.timeFmt) : ""; } else
+            if (type == "Y") { f = (ll[2 * r] / llDiv).toFixed(enc.prec); } else
+            if (type == "X") { f = (ll[(2 * r) + 1] / llDiv).toFixed(enc.prec); }
+            fld[c][r] = f;
+        }
+    }
+    var pts = [];
+    for (var r = 0; r < count; r++) {
+        var rcd = [];
+        for (var c = 0; c < cols.length; c++) { rcd.push(fld[c][r]); }
+        pts.push(rcd.join("|"));
+    }
+    return pts;
+};
+
+/**
+*** Draws the fleet device clusters returned by the server ("JMapData.Clusters").
+*** Clusters are drawn as circles, and the map is centered on the clusters if
+*** recentering was requested and no individual pushpins were drawn.  Clicking a
+*** cluster zooms in on it, and the clusters are refetched when the viewport changes.
+**/
+function jsmDrawClusters(clusters, recenterMode, pushpinCount)
+{
+    if (!jsmap || !clusters || !clusters.Points || (clusters.Points.length <= 0)) { return; }
+    jsmInitViewportListener();
+    var pts = clusters.Points;
+    var sumLat = 0.0, sumLon = 0.0, sumCnt = 0;
+    for (var i = 0; i < pts.length; i++) {
+        var c    = pts[i];
+        var desc = c.count + " " + TEXT_DEVICES_CLUSTER + ((c.desc && (c.desc != ""))? (" [" + c.desc + "]") : "");
+        var ok   = jsmDrawShape("circle", c.radius, [ new JSMapPoint(c.lat, c.lon) ], CLUSTER_COLOR, false, desc, -1);
+        if (ok && jsmap.JSAddShapeClickListener) {
+            (function(cc) {
+                jsmap.JSAddShapeClickListener(function() { jsmZoomToCluster(cc, clusters.zoom); });
+            })(c);
+        }
+        sumLat += c.lat * c.count;
+        sumLon += c.lon * c.count;
+        sumCnt += c.count;
+    }
+    if ((pushpinCount <= 0) && (sumCnt > 0) && (jsmRecenterZoomMode(recenterMode) != RECENTER_NONE)) {
+        jsmSetCenter(sumLat / sumCnt, sumLon / sumCnt, clusters.zoom);
+    }
+};
+
 /**
 *** Centers on the last available point
 **/
@@ -962,7 +1152,7 @@ function jsmParseAJAXPoints_JSON(jsonText, recenterMode, replay) // tmz
         }
 
         /* points */
-        var pts = ds.Points; // JSON_Points
+        var pts = ds.Encoded? jsmDecodePoints(ds.Encoded) : ds.Points; // JSON_Encoded, JSON_Points
         var startNdx = 0;
         if ((pts.length - startNdx) > MAX_PUSH_PINS) {
             startNdx = pts.length - MAX_PUSH_PINS;
@@ -1117,6 +1307,15 @@ function jsmParseAJAXPoints_JSON(jsonText, recenterMode, replay) // tmz
         }
     }
 
+    /* draw fleet device clusters [JSON] */
+    if (JMapData.Clusters) {
+        var ppCount = 0;
+        for (var d = 0; d < dsList.length; d++) {
+            ppCount += dsList[d].pushPins? dsList[d].pushPins.length : 0;
+        }
+        jsmDrawClusters(JMapData.Clusters, recenterMode, ppCount);
+    }
+
     /* update last event times */
     if (jsvLastEventDateFmt && jsvLastEventTimeFmt) {
         jsmSetIDInnerHTML(ID_LATEST_EVENT_DATE, jsvLastEventDateFmt);
@@ -1586,17 +1785,31 @@ function jsmParseAJAXPoints_XML(xmlText, recenterMode, replay) // tmz
 /**
 *** Load and display point from the specified URL and display them on the current map
 **/
+var jsmLoadPointsKey  = null; // last loaded URL (without "_uniq")
+var jsmLoadPointsETag = null; // last loaded ETag
 function jsmLoadPoints(mapURL, recenterMode, replay) 
 {
     try {
         var req = jsmGetXMLHttpRequest();
         if (req) {
+            var urlKey = mapURL.replace(/&_uniq=[^&]*/, "");
             req.open("GET", mapURL, true);
             //req.setRequestHeader("CACHE-CONTROL", "NO-CACHE");
             //req.setRequestHeader("PRAGMA", "NO-CACHE");
             req.setRequestHeader("If-Modified-Since", "Sat, 1 Jan 2000 00:00:00 GMT");
+            if (!replay && jsmLoadPointsETag && (jsmLoadPointsKey == urlKey)) {
+                // -- the points currently displayed are still valid if unchanged (304)
+                req.setRequestHeader("If-None-Match", jsmLoadPointsETag);
+            }
             req.onreadystatechange = function() {
                 if (req.readyState == 4) {
+                    if (req.status == 304) {
+                        // -- not modified, leave current points displayed
+                        jsmSetLoadingPointsState(0);
+                        return;
+                    }
+                    jsmLoadPointsKey  = urlKey;
+                    jsmLoadPointsETag = (req.status == 200)? req.getResponseHeader("ETag") : null;
                     var data = req.responseText; // JSON/XML
                     if (data.trim().toUpperCase() == DATA_RESPONSE_LOGOUT) {
                         alert(TEXT_TIMEOUT);